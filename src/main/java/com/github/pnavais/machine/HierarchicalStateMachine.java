@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.impl.StateHierarchy;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * A state machine whose states can be nested inside other (composite) states.
+ * <p>
+ * A message without transition in the current state bubbles up to its ancestors, the
+ * transition (or ANY fallback) of the innermost ancestor handling it is taken, so transitions
+ * shared by all the substates (e.g. timeouts or cancellations) are defined once in the composite
+ * state. Targeting a composite state enters its initial substate (the first one added unless
+ * otherwise specified) recursively until a leaf state is reached, so the current state is always
+ * a leaf. Departure and arrival are validated on the leaf states.
+ * </p>
+ * The ancestors, the leaves entered and the exit/entry paths are resolved using a {@link StateHierarchy}
+ * computed once and recomputed automatically when the hierarchy or the transitions change, so
+ * processing a message costs a single lookup per level of the hierarchy.
+ */
+public class HierarchicalStateMachine extends StateMachine {
+
+    /** The name of the parent of every nested state */
+    private final Map<String, String> parents;
+
+    /** The name of the initial substate of every composite state */
+    private final Map<String, String> initialSubstates;
+
+    /** The precomputed hierarchy */
+    private StateHierarchy hierarchy;
+
+    /**
+     * Creates the hierarchical state machine.
+     */
+    public HierarchicalStateMachine() {
+        this(new StateTransitionMap());
+    }
+
+    /**
+     * Creates the hierarchical state machine with
+     * the given transition map.
+     *
+     * @param transitionIndex the transition map
+     */
+    public HierarchicalStateMachine(@NonNull TransitionIndex<State, Message, StateTransition> transitionIndex) {
+        super(transitionIndex);
+        this.parents = new LinkedHashMap<>();
+        this.initialSubstates = new HashMap<>();
+    }
+
+    /**
+     * Nests the child state inside the parent state.
+     * Throws an {@link IllegalArgumentException} if the
+     * parent is the child or one of its substates.
+     *
+     * @param parent the name of the parent state
+     * @param child the name of the child state
+     * @return the state machine for chaining purposes
+     */
+    public HierarchicalStateMachine addSubstate(@NonNull String parent, @NonNull String child) {
+        for (String ancestor = parent; ancestor != null; ancestor = parents.get(ancestor)) {
+            if (ancestor.equals(child)) {
+                throw new IllegalArgumentException("State [" + child + "] cannot be nested inside [" + parent + "]");
+            }
+        }
+        String previous = parents.put(child, parent);
+        if ((previous != null) && !previous.equals(parent)) {
+            initialSubstates.remove(previous, child);
+        }
+        hierarchy = null;
+        return this;
+    }
+
+    /**
+     * Sets the substate entered when the given
+     * composite state is targeted.
+     *
+     * @param parent the name of the composite state
+     * @param child the name of the initial substate
+     * @return the state machine for chaining purposes
+     */
+    public HierarchicalStateMachine setInitialSubstate(@NonNull String parent, @NonNull String child) {
+        if (!parent.equals(parents.get(child))) {
+            throw new IllegalArgumentException("State [" + child + "] is not a substate of [" + parent + "]");
+        }
+        initialSubstates.put(parent, child);
+        hierarchy = null;
+        return this;
+    }
+
+    /**
+     * Retrieves the parent of the given state
+     *
+     * @param stateName the name of the state
+     * @return the parent or empty if not nested
+     */
+    public Optional<State> getParent(@NonNull String stateName) {
+        StateHierarchy h = getHierarchy();
+        int parent = h.getAncestor(idOf(h, stateName), 1);
+        return (parent >= 0) ? Optional.of(h.getState(parent)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the ancestors of the given state
+     * from its parent to the top level state.
+     *
+     * @param stateName the name of the state
+     * @return the ancestors
+     */
+    public List<State> getAncestors(@NonNull String stateName) {
+        StateHierarchy h = getHierarchy();
+        int id = idOf(h, stateName);
+        List<State> ancestors = new ArrayList<>();
+        for (int level = 1; level <= h.getDepth(id); level++) {
+            ancestors.add(h.getState(h.getAncestor(id, level)));
+        }
+        return ancestors;
+    }
+
+    /**
+     * Checks whether the current state is the given
+     * state or one of its substates.
+     *
+     * @param stateName the name of the state
+     * @return true if the state is active, false otherwise
+     */
+    public boolean isIn(@NonNull String stateName) {
+        StateHierarchy h = getHierarchy();
+        int id = h.indexOf(stateName);
+        return (getCurrent() != null) && (id >= 0) && h.isAncestor(id, idOf(h, getCurrent().getName()));
+    }
+
+    /**
+     * Retrieves the states exited when moving from the source state to the
+     * target state (innermost first) i.e. up to their lowest common ancestor.
+     *
+     * @param source the name of the source state
+     * @param target the name of the target state
+     * @return the exited states
+     */
+    public List<State> getExitPath(@NonNull String source, @NonNull String target) {
+        StateHierarchy h = getHierarchy();
+        return h.getExitPath(idOf(h, source), idOf(h, target));
+    }
+
+    /**
+     * Retrieves the states entered when moving from the source state to the
+     * target state (outermost first) i.e. from their lowest common ancestor down
+     * to the leaf state entered.
+     *
+     * @param source the name of the source state
+     * @param target the name of the target state
+     * @return the entered states
+     */
+    public List<State> getEntryPath(@NonNull String source, @NonNull String target) {
+        StateHierarchy h = getHierarchy();
+        return h.getEntryPath(idOf(h, source), idOf(h, target));
+    }
+
+    /**
+     * Initializes the current state to the leaf state entered
+     * from the first state added to the state machine (if any).
+     */
+    @Override
+    public void init() {
+        super.init();
+        enterLeaf();
+    }
+
+    /**
+     * Sets the current state to the leaf state entered from
+     * the given one. Throws a {@link NullStateException}
+     * in case the state is not found.
+     *
+     * @param stateName the name of the state
+     */
+    @Override
+    public void setCurrent(@NonNull String stateName) {
+        super.setCurrent(stateName);
+        enterLeaf();
+    }
+
+    /**
+     * Precomputes the tables of the hierarchy. Tables are
+     * recomputed automatically if the hierarchy or the transitions
+     * change.
+     */
+    public void precomputeHierarchy() {
+        this.hierarchy = new StateHierarchy(getTransitionsIndex(), parents, initialSubstates);
+    }
+
+    /**
+     * Obtains the target state for the given message looking for
+     * the transition (or the ANY fallback) in the current state and
+     * its ancestors and entering the leaf of the target found. The
+     * transition matched (from the ancestor) is the one counted.
+     *
+     * @param m the message
+     * @return the potential target state
+     */
+    @Override
+    protected Optional<State> obtainTargetState(Message m) {
+        State current = getCurrent();
+        StateHierarchy h = getHierarchy();
+        int id = (current != null) ? h.indexOf(current.getName()) : -1;
+        if (id < 0) {
+            return super.obtainTargetState(m);
+        }
+        TransitionIndex<State, Message, StateTransition> index = getTransitionsIndex();
+        for (int level = 0; level <= h.getDepth(id); level++) {
+            State state = h.getState(h.getAncestor(id, level));
+            Message matched = m;
+            Optional<State> target = index.getNext(state, m);
+            if (!target.isPresent()) {
+                matched = Messages.ANY;
+                target = index.getNext(state, Messages.ANY);
+            }
+            if (target.isPresent()) {
+                // The traversed transition is the one of the index, not the leaves
+                setMatchedTransition(state, matched, target.get());
+                int targetId = h.indexOf(target.get().getName());
+                return Optional.of(h.getState(h.getLeaf(targetId)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Moves the current state to the leaf entered from it
+     */
+    private void enterLeaf() {
+        State current = getCurrent();
+        if (current != null) {
+            StateHierarchy h = getHierarchy();
+            int leaf = h.getLeaf(idOf(h, current.getName()));
+            if (!h.getState(leaf).getName().equals(current.getName())) {
+                super.setCurrent(h.getState(leaf).getName());
+            }
+        }
+    }
+
+    /**
+     * Retrieves the hierarchy computing it again if outdated.
+     *
+     * @return the hierarchy
+     */
+    private StateHierarchy getHierarchy() {
+        long version = getTransitionsIndex().getVersion();
+        if ((hierarchy == null) || (version == TransitionIndex.UNVERSIONED) || (hierarchy.getVersion() != version)) {
+            precomputeHierarchy();
+        }
+        return hierarchy;
+    }
+
+    /**
+     * Retrieves the id of the given state in the hierarchy
+     *
+     * @param h the hierarchy
+     * @param stateName the name of the state
+     * @return the state id
+     */
+    private int idOf(StateHierarchy h, String stateName) {
+        int id = h.indexOf(stateName);
+        if (id < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        return id;
+    }
+}
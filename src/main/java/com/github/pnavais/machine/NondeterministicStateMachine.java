@@ -0,0 +1,705 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * A nondeterministic state machine allowing several target states
+ * for the same origin and message. The machine keeps the set of active
+ * states as a bit set indexed by the order of addition of the states.
+ * <p>
+ * Transitions using the {@link Messages#EMPTY} message are taken automatically (epsilon
+ * transitions) so the active set always contains its epsilon closure. Upon message reception
+ * every active state moves to its targets for that message or, when not defined, to the
+ * targets of the {@link Messages#ANY} message. Active states without transitions for the
+ * message remain active, the same way a {@link StateMachine} remains in its current state.
+ * Departure/arrival filters are not applied.
+ * </p>
+ * The sets of states reached are cached together with their successors so frequently
+ * visited sets behave as states of an equivalent deterministic machine built on demand.
+ */
+public class NondeterministicStateMachine {
+
+    /** The default maximum number of cached state sets */
+    public static final int DEFAULT_CACHE_SIZE = 4096;
+
+    /**
+     * The targets of every state and message
+     */
+    private final Map<State, Map<Message, Set<State>>> transitionMap;
+
+    /**
+     * The states by name
+     */
+    private final Map<String, State> stateNames;
+
+    /**
+     * The maximum number of cached state sets
+     */
+    private final int maxCachedSets;
+
+    /**
+     * The compiled automaton (rebuilt after modifications)
+     */
+    private Automaton automaton;
+
+    /**
+     * The cached state sets and their successors
+     */
+    private SubsetCache cache;
+
+    /**
+     * The currently active states
+     */
+    private long[] active;
+
+    /**
+     * The position of the active set in the cache (or -1 if not cached)
+     */
+    private int activeEntry;
+
+    /**
+     * The number of messages resolved using the cache
+     */
+    @Getter
+    private long cacheHits;
+
+    /**
+     * The number of messages resolved computing the successor set
+     */
+    @Getter
+    private long cacheMisses;
+
+    /**
+     * Creates the state machine
+     */
+    public NondeterministicStateMachine() {
+        this(DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates the state machine with a custom maximum
+     * number of cached state sets.
+     *
+     * @param maxCachedSets the maximum number of cached state sets
+     */
+    public NondeterministicStateMachine(int maxCachedSets) {
+        if (maxCachedSets < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one state set");
+        }
+        this.transitionMap = new LinkedHashMap<>();
+        this.stateNames = new HashMap<>();
+        this.maxCachedSets = maxCachedSets;
+        this.active = new long[0];
+        this.activeEntry = -1;
+    }
+
+    /**
+     * Adds a new transition to the state machine. Unlike
+     * deterministic machines, existing transitions for the same origin
+     * and message are kept.
+     *
+     * @param transition the transition to add
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine add(@NonNull StateTransition transition) {
+        State origin = intern(transition.getOrigin());
+        transitionMap.get(origin)
+                .computeIfAbsent(transition.getMessage(), m -> new LinkedHashSet<>())
+                .add(intern(transition.getTarget()));
+        automaton = null;
+        return this;
+    }
+
+    /**
+     * Adds a new transition to the state machine between the given
+     * states upon reception of the given message.
+     *
+     * @param origin the origin state
+     * @param message the message
+     * @param target the target state
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine add(String origin, String message, String target) {
+        return add(new StateTransition(origin, message, target));
+    }
+
+    /**
+     * Adds all the transitions of the given collection.
+     *
+     * @param transitions the transitions
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine addAll(@NonNull Collection<StateTransition> transitions) {
+        transitions.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Adds all the transitions of the given deterministic machine allowing
+     * to run several machines (with disjoint state names) at once.
+     *
+     * @param stateMachine the state machine
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine addAll(@NonNull StateMachine stateMachine) {
+        stateMachine.getTransitionsIndex().getTransitionsAsMap().keySet().forEach(this::intern);
+        return addAll(stateMachine.getTransitionsIndex().getAllTransitions());
+    }
+
+    /**
+     * Stores the given state if not present retrieving
+     * the instance stored.
+     *
+     * @param state the state
+     * @return the stored instance
+     */
+    private State intern(State state) {
+        State stored = stateNames.putIfAbsent(state.getName(), state);
+        if (stored == null) {
+            transitionMap.put(state, new LinkedHashMap<>());
+            automaton = null;
+            return state;
+        }
+        return stored;
+    }
+
+    /**
+     * Finds the state referenced by the given name.
+     *
+     * @param stateName the name of the state
+     * @return the state or empty if not found
+     */
+    public Optional<State> find(@NonNull String stateName) {
+        return Optional.ofNullable(stateNames.get(stateName));
+    }
+
+    /**
+     * Retrieves the targets of the given state upon reception
+     * of the given message (without fallbacks).
+     *
+     * @param stateName the name of the state
+     * @param message the message
+     * @return the target states
+     */
+    public Set<State> getTargets(@NonNull String stateName, @NonNull Message message) {
+        State state = find(stateName).orElseThrow(() -> new NullStateException("State [" + stateName + "] not found"));
+        return Collections.unmodifiableSet(transitionMap.get(state).getOrDefault(message, Collections.emptySet()));
+    }
+
+    /**
+     * Retrieves the number of states
+     *
+     * @return the number of states
+     */
+    public int size() {
+        return transitionMap.size();
+    }
+
+    /**
+     * Activates the first state added to the machine (and its epsilon closure)
+     */
+    public void init() {
+        setCurrent(transitionMap.keySet().stream().findFirst().map(State::getName).map(n -> new String[] { n }).orElse(new String[0]));
+    }
+
+    /**
+     * Activates the given states (and their epsilon closure) deactivating the rest.
+     * Throws a {@link NullStateException} in case a state is not found.
+     *
+     * @param stateNames the names of the states
+     */
+    public void setCurrent(@NonNull String... stateNames) {
+        Automaton compiled = compile();
+        long[] states = new long[compiled.words];
+        for (String stateName : stateNames) {
+            Integer id = compiled.stateIds.get(new State(stateName));
+            if (id == null) {
+                throw new NullStateException("State [" + stateName + "] not found");
+            }
+            compiled.close(id, states);
+        }
+        active = states;
+        activeEntry = cache.intern(states);
+    }
+
+    /**
+     * Retrieves the currently active states
+     *
+     * @return the active states
+     */
+    public Set<State> getCurrent() {
+        Automaton compiled = compile();
+        Set<State> states = new LinkedHashSet<>();
+        for (int i = nextSetBit(active, 0); i >= 0; i = nextSetBit(active, i + 1)) {
+            states.add(compiled.states[i]);
+        }
+        return states;
+    }
+
+    /**
+     * Retrieves a copy of the bit set of active states
+     * indexed by order of addition.
+     *
+     * @return the active states bit set
+     */
+    public long[] getActiveSet() {
+        return active.clone();
+    }
+
+    /**
+     * Checks whether the given state is active
+     *
+     * @param stateName the name of the state
+     * @return true if active, false otherwise
+     */
+    public boolean isActive(@NonNull String stateName) {
+        Integer id = compile().stateIds.get(new State(stateName));
+        return (id != null) && (id < (active.length << 6)) && ((active[id >>> 6] & (1L << id)) != 0);
+    }
+
+    /**
+     * Checks whether any final state is active
+     *
+     * @return true if a final state is active, false otherwise
+     */
+    public boolean isAccepting() {
+        long[] finals = compile().finals;
+        for (int i = 0; i < Math.min(finals.length, active.length); i++) {
+            if ((finals[i] & active[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves the number of state sets currently cached
+     *
+     * @return the number of cached sets
+     */
+    public int getCachedSets() {
+        compile();
+        return cache.size();
+    }
+
+    /**
+     * Sends a message to the state machine moving
+     * all the active states.
+     *
+     * @param message a string message
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine send(String message) {
+        return send(StringMessage.from(message));
+    }
+
+    /**
+     * Sends a message to the state machine moving
+     * all the active states. Sending the EMPTY message
+     * has no effect as epsilon transitions are already taken.
+     *
+     * @param message the message
+     * @return the state machine for chaining purposes
+     */
+    public NondeterministicStateMachine send(@NonNull Message message) {
+        Automaton compiled = compile();
+        if (Messages.EMPTY.equals(message)) {
+            return this;
+        }
+        int column = compiled.column(message);
+        int next = (activeEntry >= 0) ? cache.getSuccessor(activeEntry, column) : -1;
+        if (next >= 0) {
+            cacheHits++;
+            activeEntry = next;
+            active = cache.getSet(next);
+        } else {
+            cacheMisses++;
+            int origin = activeEntry;
+            int generation = cache.getGeneration();
+            activeEntry = cache.intern(compiled.step(active, column));
+            active = cache.getSet(activeEntry);
+            // Link the successor unless the origin was flushed
+            if ((origin >= 0) && (generation == cache.getGeneration())) {
+                cache.setSuccessor(origin, column, activeEntry);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Compiles the transitions if modified since the last compilation
+     * keeping the active states (ids are stable as states are never removed).
+     *
+     * @return the compiled automaton
+     */
+    private Automaton compile() {
+        if (automaton == null) {
+            automaton = new Automaton(transitionMap);
+            cache = new SubsetCache(maxCachedSets, automaton.columns);
+            long[] states = Arrays.copyOf(active, automaton.words);
+            for (int i = nextSetBit(active, 0); i >= 0; i = nextSetBit(active, i + 1)) {
+                automaton.close(i, states);
+            }
+            active = states;
+            activeEntry = (activeEntry >= 0) ? cache.intern(states) : -1;
+        }
+        return automaton;
+    }
+
+    /**
+     * Retrieves the next set bit starting at the given position
+     *
+     * @param bits the bit set
+     * @param from the starting position
+     * @return the position of the next bit set or -1 if not found
+     */
+    private static int nextSetBit(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long current = bits[word] & (-1L << from);
+        while (current == 0) {
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(current);
+    }
+
+    /**
+     * The int encoded representation of the transitions
+     */
+    private static class Automaton {
+
+        /** The states by id */
+        private final State[] states;
+
+        /** The ids of the states */
+        private final Map<State, Integer> stateIds;
+
+        /** The ids of the messages (the last column is used for unknown messages) */
+        private final Map<Message, Integer> messageIds;
+
+        /** The number of columns of the transition table */
+        private final int columns;
+
+        /** The number of words of the bit sets */
+        private final int words;
+
+        /** The start of the targets of every state and column */
+        private final int[] offsets;
+
+        /** The targets of every state and column */
+        private final int[] targets;
+
+        /** The epsilon closure of every state (null if only the state itself) */
+        private final long[][] closures;
+
+        /** The final states */
+        private final long[] finals;
+
+        /**
+         * Compiles the given transition map
+         *
+         * @param transitionMap the transition map
+         */
+        Automaton(Map<State, Map<Message, Set<State>>> transitionMap) {
+            int n = transitionMap.size();
+            this.states = transitionMap.keySet().toArray(new State[0]);
+            this.stateIds = new HashMap<>();
+            this.messageIds = new HashMap<>();
+            this.words = (n + 63) >>> 6;
+            this.finals = new long[words];
+            for (int i = 0; i < n; i++) {
+                stateIds.put(states[i], i);
+                if (states[i].isFinal()) {
+                    finals[i >>> 6] |= 1L << i;
+                }
+                transitionMap.get(states[i]).keySet().stream()
+                        .filter(m -> !Messages.EMPTY.equals(m) && !Messages.ANY.equals(m))
+                        .forEach(m -> messageIds.putIfAbsent(m, messageIds.size()));
+            }
+            this.columns = messageIds.size() + 1;
+
+            // Resolve the targets of every column applying the ANY fallback
+            this.offsets = new int[n * columns + 1];
+            int[] buffer = new int[16];
+            int size = 0;
+            Message[] messages = new Message[columns];
+            messageIds.forEach((m, c) -> messages[c] = m);
+            for (int i = 0; i < n; i++) {
+                Map<Message, Set<State>> messageStateMap = transitionMap.get(states[i]);
+                Set<State> fallback = messageStateMap.getOrDefault(Messages.ANY, Collections.emptySet());
+                for (int c = 0; c < columns; c++) {
+                    Set<State> targetSet = (messages[c] != null) ? messageStateMap.get(messages[c]) : null;
+                    targetSet = ((targetSet == null) || targetSet.isEmpty()) ? fallback : targetSet;
+                    if (targetSet.isEmpty()) {
+                        buffer = ensure(buffer, size + 1);
+                        buffer[size++] = i;
+                    } else {
+                        buffer = ensure(buffer, size + targetSet.size());
+                        for (State target : targetSet) {
+                            buffer[size++] = stateIds.get(target);
+                        }
+                    }
+                    offsets[i * columns + c + 1] = size;
+                }
+            }
+            this.targets = Arrays.copyOf(buffer, size);
+            this.closures = computeClosures(transitionMap);
+        }
+
+        /**
+         * Computes the epsilon closure of every state
+         * following the EMPTY transitions.
+         *
+         * @param transitionMap the transition map
+         * @return the closures
+         */
+        private long[][] computeClosures(Map<State, Map<Message, Set<State>>> transitionMap) {
+            long[][] result = new long[states.length][];
+            int[] stack = new int[states.length];
+            for (int i = 0; i < states.length; i++) {
+                if (transitionMap.get(states[i]).getOrDefault(Messages.EMPTY, Collections.emptySet()).isEmpty()) {
+                    continue;
+                }
+                long[] closure = new long[words];
+                closure[i >>> 6] |= 1L << i;
+                int top = 0;
+                stack[top++] = i;
+                while (top > 0) {
+                    State current = states[stack[--top]];
+                    for (State target : transitionMap.get(current).getOrDefault(Messages.EMPTY, Collections.emptySet())) {
+                        int t = stateIds.get(target);
+                        if ((closure[t >>> 6] & (1L << t)) == 0) {
+                            closure[t >>> 6] |= 1L << t;
+                            stack[top++] = t;
+                        }
+                    }
+                }
+                result[i] = closure;
+            }
+            return result;
+        }
+
+        /**
+         * Retrieves the column of the given message
+         *
+         * @param message the message
+         * @return the column
+         */
+        int column(Message message) {
+            return messageIds.getOrDefault(message, columns - 1);
+        }
+
+        /**
+         * Adds the epsilon closure of the given state to the set
+         *
+         * @param state the state
+         * @param set the set
+         */
+        void close(int state, long[] set) {
+            if (closures[state] == null) {
+                set[state >>> 6] |= 1L << state;
+            } else {
+                for (int w = 0; w < words; w++) {
+                    set[w] |= closures[state][w];
+                }
+            }
+        }
+
+        /**
+         * Computes the states reached from the given set upon
+         * reception of the message in the given column.
+         *
+         * @param set the active states
+         * @param column the message column
+         * @return the reached states
+         */
+        long[] step(long[] set, int column) {
+            long[] next = new long[words];
+            for (int i = nextSetBit(set, 0); i >= 0; i = nextSetBit(set, i + 1)) {
+                for (int t = offsets[i * columns + column]; t < offsets[i * columns + column + 1]; t++) {
+                    close(targets[t], next);
+                }
+            }
+            return next;
+        }
+
+        /**
+         * Ensures the buffer can hold the given number of elements
+         *
+         * @param buffer the buffer
+         * @param size the required size
+         * @return the buffer or a bigger copy
+         */
+        private static int[] ensure(int[] buffer, int size) {
+            return (size <= buffer.length) ? buffer : Arrays.copyOf(buffer, Math.max(size, buffer.length * 2));
+        }
+    }
+
+    /**
+     * Caches the state sets reached and their successors
+     * i.e. the states of the deterministic machine equivalent
+     * to the visited part of the nondeterministic one.
+     * The cache is flushed when full.
+     */
+    private static class SubsetCache {
+
+        /** The maximum number of entries */
+        private final int capacity;
+
+        /** The number of message columns */
+        private final int columns;
+
+        /** The entry of every set */
+        private final Map<SetKey, Integer> entries = new HashMap<>();
+
+        /** The sets by entry */
+        private final List<long[]> sets = new ArrayList<>();
+
+        /** The successor entries by entry and column (-1 if unknown) */
+        private final List<int[]> successors = new ArrayList<>();
+
+        /** The number of flushes */
+        @Getter
+        private int generation;
+
+        /**
+         * Creates the cache
+         *
+         * @param capacity the maximum number of entries
+         * @param columns the number of message columns
+         */
+        SubsetCache(int capacity, int columns) {
+            this.capacity = capacity;
+            this.columns = columns;
+        }
+
+        /**
+         * Retrieves the entry of the given set adding it
+         * if not present (flushing the cache if full).
+         *
+         * @param set the set
+         * @return the entry
+         */
+        int intern(long[] set) {
+            SetKey key = new SetKey(set);
+            Integer entry = entries.get(key);
+            if (entry == null) {
+                if (sets.size() == capacity) {
+                    entries.clear();
+                    sets.clear();
+                    successors.clear();
+                    generation++;
+                }
+                entry = sets.size();
+                int[] row = new int[columns];
+                Arrays.fill(row, -1);
+                entries.put(key, entry);
+                sets.add(set);
+                successors.add(row);
+            }
+            return entry;
+        }
+
+        /**
+         * Retrieves the set of the given entry
+         *
+         * @param entry the entry
+         * @return the set
+         */
+        long[] getSet(int entry) {
+            return sets.get(entry);
+        }
+
+        /**
+         * Retrieves the successor of the given entry
+         *
+         * @param entry the entry
+         * @param column the message column
+         * @return the successor entry or -1 if unknown
+         */
+        int getSuccessor(int entry, int column) {
+            return successors.get(entry)[column];
+        }
+
+        /**
+         * Links the successor of the given entry
+         *
+         * @param entry the entry
+         * @param column the message column
+         * @param successor the successor entry
+         */
+        void setSuccessor(int entry, int column, int successor) {
+            successors.get(entry)[column] = successor;
+        }
+
+        /**
+         * Retrieves the number of entries
+         *
+         * @return the number of entries
+         */
+        int size() {
+            return sets.size();
+        }
+    }
+
+    /**
+     * A bit set wrapper comparing contents
+     */
+    private static class SetKey {
+
+        /** The bits */
+        private final long[] bits;
+
+        /** The hash of the bits */
+        private final int hash;
+
+        /**
+         * Creates the key
+         *
+         * @param bits the bits
+         */
+        SetKey(long[] bits) {
+            this.bits = bits;
+            this.hash = Arrays.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof SetKey) && Arrays.equals(bits, ((SetKey) o).bits);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * A composite state machine made of orthogonal regions, i.e. independent
+ * state machines active at the same time, each one with its own current state.
+ * <p>
+ * Every message is dispatched to all the regions which react to it as standalone
+ * state machines (applying their own filters and fallbacks). The composite is complete
+ * when every region is in a final state. Unlike a {@link ProductStateMachine} the states
+ * of the regions are never combined so the number of states grows linearly with the regions.
+ * </p>
+ * Regions can optionally be evaluated concurrently on a {@link ForkJoinPool} (e.g. when their
+ * filters are expensive). In such case every region must be a different state machine instance
+ * and its filters must not depend on the other regions. The results are always merged in the
+ * order the regions were added and, if several regions fail, the exception of the first one
+ * in that order is raised, so the outcome does not depend on the scheduling.
+ */
+public class OrthogonalStateMachine {
+
+    /**
+     * The regions by name
+     */
+    private final Map<String, StateMachine> regions;
+
+    /**
+     * Flag to evaluate the regions concurrently
+     */
+    @Getter
+    @Setter
+    private boolean concurrent;
+
+    /**
+     * The pool evaluating the regions concurrently
+     */
+    @Getter
+    @Setter
+    @NonNull
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Creates the composite state machine without regions
+     */
+    public OrthogonalStateMachine() {
+        this.regions = new LinkedHashMap<>();
+    }
+
+    /**
+     * Adds a region. Throws an {@link IllegalArgumentException} if
+     * the name or the state machine are already used by another region.
+     *
+     * @param name the name of the region
+     * @param stateMachine the state machine of the region
+     * @return the state machine for chaining purposes
+     */
+    public OrthogonalStateMachine addRegion(@NonNull String name, @NonNull StateMachine stateMachine) {
+        if (regions.containsKey(name)) {
+            throw new IllegalArgumentException("Region [" + name + "] already exists");
+        }
+        if (regions.values().stream().anyMatch(r -> r == stateMachine)) {
+            throw new IllegalArgumentException("The state machine is already used by another region");
+        }
+        regions.put(name, stateMachine);
+        return this;
+    }
+
+    /**
+     * Retrieves the state machine of the given region
+     *
+     * @param name the name of the region
+     * @return the state machine of the region or empty if not found
+     */
+    public Optional<StateMachine> getRegion(@NonNull String name) {
+        return Optional.ofNullable(regions.get(name));
+    }
+
+    /**
+     * Retrieves the names of the regions in order of addition
+     *
+     * @return the names of the regions
+     */
+    public List<String> getRegionNames() {
+        return new ArrayList<>(regions.keySet());
+    }
+
+    /**
+     * Retrieves the number of regions
+     *
+     * @return the number of regions
+     */
+    public int size() {
+        return regions.size();
+    }
+
+    /**
+     * Initializes the current state of every region
+     * to the first one added to it.
+     */
+    public void init() {
+        regions.values().forEach(StateMachine::init);
+    }
+
+    /**
+     * Retrieves the current state of every region
+     *
+     * @return the current states by region
+     */
+    public Map<String, State> getCurrent() {
+        Map<String, State> current = new LinkedHashMap<>();
+        regions.forEach((name, region) -> current.put(name, region.getCurrent()));
+        return current;
+    }
+
+    /**
+     * Checks whether the given region is in the given state
+     *
+     * @param regionName the name of the region
+     * @param stateName the name of the state
+     * @return true if the region is in the state, false otherwise
+     */
+    public boolean isIn(@NonNull String regionName, @NonNull String stateName) {
+        State current = getRegionMachine(regionName).getCurrent();
+        return (current != null) && current.getName().equals(stateName);
+    }
+
+    /**
+     * Checks whether every region is in a final state
+     *
+     * @return true if complete, false otherwise
+     */
+    public boolean isComplete() {
+        return regions.values().stream().allMatch(r -> (r.getCurrent() != null) && r.getCurrent().isFinal());
+    }
+
+    /**
+     * Sends a message to all the regions
+     *
+     * @param message a string message
+     * @return the state machine for chaining purposes
+     */
+    public OrthogonalStateMachine send(String message) {
+        return send(StringMessage.from(message));
+    }
+
+    /**
+     * Sends a message to all the regions
+     *
+     * @param message the message
+     * @return the state machine for chaining purposes
+     */
+    public OrthogonalStateMachine send(@NonNull Message message) {
+        dispatch(message);
+        return this;
+    }
+
+    /**
+     * Dispatches a message to all the regions retrieving the next
+     * state of every region (empty when the region did not move).
+     *
+     * @param message the message
+     * @return the next states by region in order of addition
+     */
+    public Map<String, Optional<State>> dispatch(@NonNull Message message) {
+        Map<String, Optional<State>> results = new LinkedHashMap<>();
+        if (!concurrent || (regions.size() < 2)) {
+            regions.forEach((name, region) -> results.put(name, region.getNext(message)));
+            return results;
+        }
+
+        List<ForkJoinTask<Optional<State>>> tasks = new ArrayList<>();
+        regions.values().forEach(region -> tasks.add(ForkJoinTask.adapt(() -> region.getNext(message))));
+        pool.invoke(ForkJoinTask.adapt(() -> {
+            tasks.forEach(ForkJoinTask::fork);
+            tasks.forEach(ForkJoinTask::quietlyJoin);
+        }));
+
+        Iterator<ForkJoinTask<Optional<State>>> task = tasks.iterator();
+        for (String name : regions.keySet()) {
+            ForkJoinTask<Optional<State>> regionTask = task.next();
+            if (regionTask.isCompletedAbnormally()) {
+                Throwable cause = regionTask.getException();
+                throw (cause instanceof RuntimeException) ? (RuntimeException) cause
+                        : new IllegalStateException("Error dispatching message to region [" + name + "]", cause);
+            }
+            results.put(name, regionTask.getRawResult());
+        }
+        return results;
+    }
+
+    /**
+     * Retrieves the state machine of the given region
+     * or throws a {@link NullStateException} if not found.
+     *
+     * @param name the name of the region
+     * @return the state machine of the region
+     */
+    private StateMachine getRegionMachine(String name) {
+        return Optional.ofNullable(regions.get(name)).orElseThrow(() -> new NullStateException("Region [" + name + "] not found"));
+    }
+}
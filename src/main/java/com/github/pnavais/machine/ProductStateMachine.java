@@ -0,0 +1,374 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionVisitor;
+import com.github.pnavais.machine.impl.AdaptiveMap;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A state machine composed of several machines running in parallel
+ * (i.e. their product) so a single lookup per message advances all
+ * of them at once.
+ * <p>
+ * Every state of the product is a tuple of states of the composed machines named
+ * after them, e.g. (A,X), escaping commas, parentheses and backslashes of the component
+ * names with a backslash so every tuple has a distinct name. Upon message reception every component moves as its machine
+ * would do : following the transition for the message, the ANY fallback or remaining in
+ * the current state. A tuple is final when all its components are final. Filters of the
+ * composed states are not applied.
+ * </p>
+ * The reachable tuples can be computed eagerly or lazily as they are visited, in both
+ * cases bounded by a maximum number of states. The composed machines are captured
+ * at creation time so further modifications do not affect the product.
+ */
+public class ProductStateMachine extends StateMachine {
+
+    /** The default maximum number of states of the product */
+    public static final int DEFAULT_MAX_STATES = 100_000;
+
+    /**
+     * The product definition
+     */
+    private final Product product;
+
+    /**
+     * The names of the tuples whose transitions have been computed
+     */
+    private final Set<String> expanded;
+
+    /**
+     * The transitions of the expanded tuples
+     */
+    private final StateTransitionMap transitions;
+
+    /**
+     * Creates the product state machine with the given transitions
+     *
+     * @param product the product definition
+     * @param transitionMap the transitions computed
+     * @param expanded the names of the expanded tuples
+     */
+    private ProductStateMachine(Product product, Map<State, Map<Message, State>> transitionMap, Set<String> expanded) {
+        this(product, new StateTransitionMap(transitionMap), expanded);
+    }
+
+    /**
+     * Creates the product state machine with the given index
+     *
+     * @param product the product definition
+     * @param transitions the transitions computed
+     * @param expanded the names of the expanded tuples
+     */
+    private ProductStateMachine(Product product, StateTransitionMap transitions, Set<String> expanded) {
+        super(transitions);
+        this.product = product;
+        this.transitions = transitions;
+        this.expanded = expanded;
+        init();
+    }
+
+    /**
+     * Creates the product of the given machines computing
+     * the tuples lazily with the default maximum number of states.
+     *
+     * @param machines the machines to compose
+     * @return the product state machine
+     */
+    public static ProductStateMachine of(@NonNull StateMachine... machines) {
+        return of(DEFAULT_MAX_STATES, machines);
+    }
+
+    /**
+     * Creates the product of the given machines computing the tuples lazily
+     * as they are visited. Throws an {@link IllegalStateException} when the number
+     * of tuples visited exceeds the maximum.
+     *
+     * @param maxStates the maximum number of states
+     * @param machines the machines to compose
+     * @return the product state machine
+     */
+    public static ProductStateMachine of(int maxStates, @NonNull StateMachine... machines) {
+        Product product = new Product(maxStates, machines);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        transitionMap.put(product.getInitial(), new AdaptiveMap<>());
+        return new ProductStateMachine(product, transitionMap, new HashSet<>());
+    }
+
+    /**
+     * Creates the product of the given machines computing eagerly all the tuples
+     * reachable from the current states of the machines. Throws an {@link IllegalStateException}
+     * when the number of tuples exceeds the maximum.
+     *
+     * @param maxStates the maximum number of states
+     * @param machines the machines to compose
+     * @return the product state machine
+     */
+    public static ProductStateMachine compose(int maxStates, @NonNull StateMachine... machines) {
+        Product product = new Product(maxStates, machines);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        Set<String> expanded = new HashSet<>();
+        Deque<State> pending = new ArrayDeque<>();
+        pending.add(product.getInitial());
+        expanded.add(product.getInitial().getName());
+        while (!pending.isEmpty()) {
+            State tuple = pending.poll();
+            Map<Message, State> messageStateMap = new AdaptiveMap<>();
+            transitionMap.put(tuple, messageStateMap);
+            product.expand(tuple, (origin, message, target) -> {
+                messageStateMap.put(message, target);
+                if (expanded.add(target.getName())) {
+                    pending.add(target);
+                }
+            });
+        }
+        return new ProductStateMachine(product, transitionMap, expanded);
+    }
+
+    /**
+     * Retrieves the next state upon message reception computing
+     * the transitions of the current tuple if not available yet.
+     * The tuple is marked as expanded once its transitions are stored
+     * so a failed expansion is retried on the next message.
+     *
+     * @param m the message
+     * @return the next state or empty if not found
+     */
+    @Override
+    public Optional<State> getNext(Message m) {
+        State current = getCurrent();
+        if ((current != null) && !expanded.contains(current.getName())) {
+            Map<Message, State> messageStateMap = new AdaptiveMap<>();
+            product.expand(current, (origin, message, target) -> messageStateMap.put(message, target));
+            transitions.putTransitions(current, messageStateMap);
+            expanded.add(current.getName());
+        }
+        return super.getNext(m);
+    }
+
+    /**
+     * Retrieves the number of machines composed
+     *
+     * @return the number of machines
+     */
+    public int getMachineCount() {
+        return product.graphs.size();
+    }
+
+    /**
+     * Retrieves the number of tuples whose transitions
+     * have been computed.
+     *
+     * @return the number of expanded tuples
+     */
+    public int getExpandedStates() {
+        return expanded.size();
+    }
+
+    /**
+     * Retrieves the states of the composed machines
+     * for the given tuple.
+     *
+     * @param stateName the name of the tuple
+     * @return the states of the composed machines
+     */
+    public List<State> getComponents(@NonNull String stateName) {
+        int[] tuple = Optional.ofNullable(product.tuples.get(stateName))
+                .orElseThrow(() -> new NullStateException("State [" + stateName + "] not found"));
+        List<State> components = new ArrayList<>();
+        for (int i = 0; i < tuple.length; i++) {
+            components.add(product.graphs.get(i).getNode(tuple[i]));
+        }
+        return components;
+    }
+
+    /**
+     * The int encoded definition of the product of the machines
+     */
+    private static class Product {
+
+        /** The snapshots of the composed machines */
+        private final List<TransitionGraph<State, Message>> graphs;
+
+        /** The messages known by any machine (except ANY) */
+        private final List<Message> messages;
+
+        /** The id of every message in every machine (or -1 if unknown) */
+        private final int[][] columns;
+
+        /** The id of the ANY message in every machine (or -1 if unknown) */
+        private final int[] fallbacks;
+
+        /** The tuples by name */
+        private final Map<String, int[]> tuples;
+
+        /** The states of the tuples by name */
+        private final Map<String, State> states;
+
+        /** The maximum number of tuples */
+        private final int maxStates;
+
+        /** The initial tuple */
+        private final State initial;
+
+        /**
+         * Creates the product of the given machines
+         *
+         * @param maxStates the maximum number of tuples
+         * @param machines the machines
+         */
+        Product(int maxStates, StateMachine[] machines) {
+            if (machines.length == 0) {
+                throw new IllegalArgumentException("At least a state machine is required");
+            }
+            this.maxStates = maxStates;
+            this.graphs = Arrays.stream(machines).map(m -> m.getTransitionsIndex().snapshot()).collect(Collectors.toList());
+            Set<Message> alphabet = new LinkedHashSet<>();
+            graphs.forEach(g -> alphabet.addAll(g.getMessages()));
+            alphabet.remove(Messages.ANY);
+            this.messages = new ArrayList<>(alphabet);
+            this.columns = new int[graphs.size()][];
+            this.fallbacks = new int[graphs.size()];
+            for (int i = 0; i < graphs.size(); i++) {
+                List<Message> known = graphs.get(i).getMessages();
+                columns[i] = messages.stream().mapToInt(known::indexOf).toArray();
+                fallbacks[i] = known.indexOf(Messages.ANY);
+            }
+            this.tuples = new HashMap<>();
+            this.states = new HashMap<>();
+
+            int[] tuple = new int[machines.length];
+            for (int i = 0; i < machines.length; i++) {
+                StateMachine machine = machines[i];
+                State current = Optional.ofNullable(machine.getCurrent())
+                        .orElseGet(() -> machine.getTransitionsIndex().getFirst()
+                                .orElseThrow(() -> new NullStateException("Empty state machine")));
+                tuple[i] = graphs.get(i).indexOf(current.getName());
+            }
+            this.initial = getState(tuple);
+        }
+
+        /**
+         * Retrieves the initial tuple
+         *
+         * @return the initial tuple
+         */
+        State getInitial() {
+            return initial;
+        }
+
+        /**
+         * Retrieves the state of the given tuple creating it if needed
+         *
+         * @param tuple the tuple
+         * @return the state
+         */
+        State getState(int[] tuple) {
+            StringJoiner joiner = new StringJoiner(",", "(", ")");
+            boolean isFinal = true;
+            for (int i = 0; i < tuple.length; i++) {
+                State component = graphs.get(i).getNode(tuple[i]);
+                joiner.add(escape(component.getName()));
+                isFinal &= component.isFinal();
+            }
+            String name = joiner.toString();
+            State state = states.get(name);
+            if (state == null) {
+                if (states.size() == maxStates) {
+                    throw new IllegalStateException("Maximum number of product states exceeded [" + maxStates + "]");
+                }
+                state = State.from(name).isFinal(isFinal).build();
+                states.put(name, state);
+                tuples.put(name, tuple);
+            }
+            return state;
+        }
+
+        /**
+         * Escapes the separators of the tuple names in the given
+         * component name (commas, parentheses and backslashes).
+         *
+         * @param name the component name
+         * @return the escaped name
+         */
+        private static String escape(String name) {
+            StringBuilder builder = null;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if ((c == ',') || (c == '(') || (c == ')') || (c == '\\')) {
+                    if (builder == null) {
+                        builder = new StringBuilder(name.length() + 4).append(name, 0, i);
+                    }
+                    builder.append('\\');
+                }
+                if (builder != null) {
+                    builder.append(c);
+                }
+            }
+            return (builder != null) ? builder.toString() : name;
+        }
+
+        /**
+         * Computes the tuple reached upon reception of the message
+         * of the given column (or any other message if negative).
+         *
+         * @param tuple the origin tuple
+         * @param column the message column
+         * @return the target tuple
+         */
+        int[] step(int[] tuple, int column) {
+            int[] target = new int[tuple.length];
+            for (int i = 0; i < tuple.length; i++) {
+                int message = (column >= 0) ? columns[i][column] : -1;
+                int next = (message >= 0) ? graphs.get(i).getNext(tuple[i], message) : -1;
+                next = ((next < 0) && (fallbacks[i] >= 0)) ? graphs.get(i).getNext(tuple[i], fallbacks[i]) : next;
+                target[i] = (next >= 0) ? next : tuple[i];
+            }
+            return target;
+        }
+
+        /**
+         * Visits the transitions of the given tuple. Messages leading to
+         * the same tuple as the ANY fallback are omitted as well as the ANY
+         * transition when remaining in the same tuple.
+         *
+         * @param state the tuple state
+         * @param visitor the transition visitor
+         */
+        void expand(State state, TransitionVisitor<State, Message> visitor) {
+            int[] tuple = tuples.get(state.getName());
+            int[] fallback = step(tuple, -1);
+            if (!Arrays.equals(fallback, tuple)) {
+                visitor.visit(state, Messages.ANY, getState(fallback));
+            }
+            for (int c = 0; c < messages.size(); c++) {
+                int[] target = step(tuple, c);
+                if (!Arrays.equals(target, fallback)) {
+                    visitor.visit(state, messages.get(c), getState(target));
+                }
+            }
+        }
+    }
+}
@@ -16,8 +16,8 @@
 package com.github.pnavais.machine;
 
 import com.github.pnavais.machine.api.Status;
-import com.github.pnavais.machine.api.Transition;
 import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.exception.TransitionLoopException;
 import com.github.pnavais.machine.api.message.Envelope;
 import com.github.pnavais.machine.api.message.Event;
 import com.github.pnavais.machine.api.message.Message;
@@ -26,15 +26,17 @@ import com.github.pnavais.machine.api.transition.TransitionChecker;
 import com.github.pnavais.machine.api.transition.TransitionIndex;
 import com.github.pnavais.machine.api.transition.Transitioner;
 import com.github.pnavais.machine.builder.StateMachineBuilder;
+import com.github.pnavais.machine.impl.EmptyTransitionChains;
 import com.github.pnavais.machine.impl.StateTransitionChecker;
 import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.impl.TransitionCounter;
 import com.github.pnavais.machine.model.*;
 import lombok.NonNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 /**
  * The State Machine contains a simple map of Transitions between
@@ -42,6 +44,12 @@ import java.util.stream.Collectors;
  */
 public class StateMachine implements Transitioner<State, Message, StateTransition> {
 
+    /**
+     * The default maximum number of automatic transitions
+     * when running to completion
+     */
+    public static final int DEFAULT_MAX_STEPS = 1000;
+
     /**
      * The current state
      */
@@ -57,6 +65,32 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
      */
     private TransitionChecker<State, Message> transitionChecker;
 
+    /**
+     * The optional counter of traversed transitions
+     */
+    private TransitionCounter transitionCounter;
+
+    /**
+     * The origin of the transition of the index matched by the
+     * last target resolution (or null if not reported)
+     */
+    private State matchedOrigin;
+
+    /**
+     * The message of the transition matched (direct or ANY)
+     */
+    private Message matchedMessage;
+
+    /**
+     * The target of the transition matched
+     */
+    private State matchedTarget;
+
+    /**
+     * The precomputed chains of automatic transitions
+     */
+    private EmptyTransitionChains emptyTransitionChains;
+
     /**
      * Creates the state machine.
      */
@@ -264,6 +298,7 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
      */
     private Optional<State> getNext(Message m, boolean handleDeparture) {
         // Obtain next state
+        matchedOrigin = null;
         Optional<State> targetState = obtainTargetState(m);
 
         // If available do the processing
@@ -279,6 +314,11 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
             // Validates departure/arrival from current state to target state
             InfoStatus infoStatus = handleMessageFiltering(envelope, handleDeparture);
 
+            // Record the traversal when the target state is reached
+            if ((infoStatus.getStatus().isValid()) && (infoStatus.getEvent() != Event.DEPARTURE)) {
+                recordTransition(m, targetState.get());
+            }
+
             // Handles potential redirection on departure/arrival
             if (infoStatus.getStatus().isRedirect()) {
                 // Update state before redirection
@@ -295,6 +335,41 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
         return targetState;
     }
 
+    /**
+     * Records the traversal of the transition matched by the target
+     * resolution (if counting enabled). When not reported by the
+     * resolution, the transition from the current state to the given
+     * target upon message reception is assumed.
+     *
+     * @param m the message
+     * @param target the target state
+     */
+    private void recordTransition(Message m, State target) {
+        if (transitionCounter != null) {
+            if (matchedOrigin != null) {
+                transitionCounter.record(matchedOrigin, matchedMessage, matchedTarget);
+            } else {
+                Message matched = transitionsIndex.getNext(currentState, m).isPresent() ? m : Messages.ANY;
+                transitionCounter.record(currentState, matched, target);
+            }
+        }
+    }
+
+    /**
+     * Reports the transition of the index matched when resolving
+     * the target state so its traversal can be recorded without
+     * looking it up again. To be called by the target resolution.
+     *
+     * @param origin the origin of the transition
+     * @param message the message of the transition (direct or ANY)
+     * @param target the target of the transition
+     */
+    protected void setMatchedTransition(State origin, Message message, State target) {
+        this.matchedOrigin = origin;
+        this.matchedMessage = message;
+        this.matchedTarget = target;
+    }
+
     /**
      * Applies the departure and arrival validation functions
      * using the given envelope.
@@ -317,15 +392,25 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
     /**
      * Obtains the potential target state for the given message
      * using the optional fallback (*) in case direct transition
-     * not found.
+     * not found. Subclasses can extend the resolution of the target
+     * reporting the transition of the index matched with
+     * {@link #setMatchedTransition(State, Message, State)}.
      * @param m the message
      * @return the potential target state
      */
-    private Optional<State> obtainTargetState(Message m) {
+    protected Optional<State> obtainTargetState(Message m) {
+        Message matched = m;
         Optional<State> targetState = transitionsIndex.getNext(currentState, m);
 
         // Check if ANY mapping is available as fallback
-        return !(targetState.isPresent()) ? transitionsIndex.getNext(currentState, Messages.ANY) : targetState;
+        if (!targetState.isPresent()) {
+            matched = Messages.ANY;
+            targetState = transitionsIndex.getNext(currentState, Messages.ANY);
+        }
+        if (targetState.isPresent()) {
+            setMatchedTransition(currentState, matched, targetState.get());
+        }
+        return targetState;
     }
 
     /**
@@ -337,6 +422,85 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
         return send(Messages.EMPTY);
     }
 
+    /**
+     * Sends void messages to the state machine until it stops
+     * moving using the default maximum number of steps.
+     *
+     * @return the state machine for chaining purposes
+     */
+    public StateMachine runToCompletion() {
+        return runToCompletion(DEFAULT_MAX_STEPS);
+    }
+
+    /**
+     * Sends void messages to the state machine until it stops
+     * moving i.e. no transition is found, the transition is rejected
+     * or the target is the current state. The chains of unfiltered
+     * states are resolved in a single jump when no custom transition
+     * checker or counter is used (and the target resolution is not
+     * customized by a subclass) and the index is versioned. Throws a {@link TransitionLoopException} if
+     * the transitions loop or exceed the given maximum number of steps.
+     *
+     * @param maxSteps the maximum number of transitions
+     * @return the state machine for chaining purposes
+     */
+    public StateMachine runToCompletion(int maxSteps) {
+        int steps = 0;
+        while (currentState != null) {
+            if ((transitionCounter == null) && (transitionChecker.getClass() == StateTransitionChecker.class) && (getClass() == StateMachine.class)
+                    && (transitionsIndex.getVersion() != TransitionIndex.UNVERSIONED)) {
+                EmptyTransitionChains chains = getEmptyTransitionChains();
+                if (chains.isCyclic(currentState)) {
+                    throw new TransitionLoopException("Automatic transitions from state [" + currentState.getName() + "] never end");
+                }
+                steps += chains.getSteps(currentState);
+                checkSteps(steps, maxSteps);
+                currentState = chains.getEnd(currentState);
+            }
+
+            State previous = currentState;
+            if (!getNext(Messages.EMPTY).isPresent() || currentState.equals(previous)) {
+                break;
+            }
+            checkSteps(++steps, maxSteps);
+        }
+        return this;
+    }
+
+    /**
+     * Ensures the number of steps does not exceed the maximum
+     *
+     * @param steps the number of steps
+     * @param maxSteps the maximum number of steps
+     */
+    private void checkSteps(int steps, int maxSteps) {
+        if (steps > maxSteps) {
+            throw new TransitionLoopException("Maximum number of automatic transitions exceeded [" + maxSteps + "]");
+        }
+    }
+
+    /**
+     * Precomputes the chains of automatic transitions (EMPTY or ANY messages)
+     * between unfiltered states used when running to completion. Chains are
+     * recomputed automatically if the transitions change.
+     */
+    public void precomputeEmptyChains() {
+        this.emptyTransitionChains = new EmptyTransitionChains(transitionsIndex);
+    }
+
+    /**
+     * Retrieves the chains of automatic transitions
+     * computing them again if outdated.
+     *
+     * @return the chains of automatic transitions
+     */
+    private EmptyTransitionChains getEmptyTransitionChains() {
+        if ((emptyTransitionChains == null) || (emptyTransitionChains.getVersion() != transitionsIndex.getVersion())) {
+            precomputeEmptyChains();
+        }
+        return emptyTransitionChains;
+    }
+
     /**
      * Sends a message to the state machine triggering
      * a potential transition.
@@ -395,8 +559,9 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
      */
     @Override
     public Collection<State> getSiblings(String stateName) {
-        return transitionsIndex.getTransitions(stateName)
-                .stream().map(Transition::getTarget).collect(Collectors.toList());
+        List<State> siblings = new ArrayList<>();
+        transitionsIndex.forEachTransition(stateName, (origin, message, target) -> siblings.add(target));
+        return siblings;
     }
 
     /**
@@ -420,6 +585,25 @@ public class StateMachine implements Transitioner<State, Message, StateTransitio
         return transitionsIndex;
     }
 
+    /**
+     * Retrieves the counter of traversed transitions
+     *
+     * @return the transition counter or null if not enabled
+     */
+    public TransitionCounter getTransitionCounter() {
+        return transitionCounter;
+    }
+
+    /**
+     * Sets the counter used to record the traversed
+     * transitions. Use null to disable counting.
+     *
+     * @param transitionCounter the transition counter
+     */
+    public void setTransitionCounter(TransitionCounter transitionCounter) {
+        this.transitionCounter = transitionCounter;
+    }
+
     /**
      * Remove orphan states
      */
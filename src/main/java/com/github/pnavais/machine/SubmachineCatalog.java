@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * A catalog of state machine definitions invoked as submachines.
+ * <p>
+ * A state invokes a submachine when its {@link #SUBMACHINE_PROPERTY} property holds the
+ * name of a definition of the catalog. Every definition is stored once and shared by all
+ * the states invoking it and all the {@link SubmachineStateMachine} cursors running them,
+ * which never modify the definitions.
+ * </p>
+ */
+public class SubmachineCatalog {
+
+    /** The property of the states holding the name of the invoked submachine */
+    public static final String SUBMACHINE_PROPERTY = "submachine";
+
+    /** The definitions by id */
+    private final List<StateMachine> definitions;
+
+    /** The names of the definitions by id */
+    private final List<String> names;
+
+    /** The definition ids by name */
+    private final Map<String, Integer> ids;
+
+    /**
+     * Creates an empty catalog
+     */
+    public SubmachineCatalog() {
+        this.definitions = new ArrayList<>();
+        this.names = new ArrayList<>();
+        this.ids = new HashMap<>();
+    }
+
+    /**
+     * Registers a definition replacing the previous one with the same name
+     *
+     * @param name the name of the definition
+     * @param definition the state machine definition
+     * @return the catalog for chaining purposes
+     */
+    public SubmachineCatalog register(@NonNull String name, @NonNull StateMachine definition) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            definitions.set(id, definition);
+        } else {
+            ids.put(name, definitions.size());
+            definitions.add(definition);
+            names.add(name);
+        }
+        return this;
+    }
+
+    /**
+     * Retrieves the definition with the given name
+     *
+     * @param name the name of the definition
+     * @return the definition or empty if not found
+     */
+    public Optional<StateMachine> get(@NonNull String name) {
+        Integer id = ids.get(name);
+        return (id != null) ? Optional.of(definitions.get(id)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the names of the definitions in order of registration
+     *
+     * @return the names of the definitions
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Retrieves the number of definitions
+     *
+     * @return the number of definitions
+     */
+    public int size() {
+        return definitions.size();
+    }
+
+    /**
+     * Finds the submachines invoked by any definition
+     * which are not registered in the catalog.
+     *
+     * @return the names of the missing submachines
+     */
+    public Set<String> getMissingSubmachines() {
+        Set<String> missing = new TreeSet<>();
+        definitions.forEach(definition -> definition.getTransitionsIndex().getTransitionsAsMap().forEach((origin, targets) -> {
+            origin.getProperty(SUBMACHINE_PROPERTY).filter(s -> !ids.containsKey(s)).ifPresent(missing::add);
+            targets.values().forEach(t -> t.getProperty(SUBMACHINE_PROPERTY).filter(s -> !ids.containsKey(s)).ifPresent(missing::add));
+        }));
+        return missing;
+    }
+
+    /**
+     * Retrieves the id of the definition with the given name
+     *
+     * @param name the name of the definition
+     * @return the id or -1 if not found
+     */
+    int indexOf(String name) {
+        Integer id = ids.get(name);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Retrieves the definition with the given id
+     *
+     * @param id the id of the definition
+     * @return the definition
+     */
+    StateMachine getDefinition(int id) {
+        return definitions.get(id);
+    }
+
+    /**
+     * Retrieves the name of the definition with the given id
+     *
+     * @param id the id of the definition
+     * @return the name of the definition
+     */
+    String getName(int id) {
+        return names.get(id);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * A cursor running a definition of a {@link SubmachineCatalog} which
+ * invokes other definitions of the catalog as submachines.
+ * <p>
+ * Entering a state whose {@link SubmachineCatalog#SUBMACHINE_PROPERTY} property names a definition
+ * pushes the state on the return stack and moves the cursor to the first state of the submachine,
+ * which then receives all the messages. Reaching a final state of a submachine pops the stack
+ * returning to the invoking state, which immediately receives a message named after the final
+ * state reached (e.g. APPROVED or REJECTED) so the caller can branch on the outcome. The invoking
+ * state remains current if no transition is found for that message.
+ * </p>
+ * The return stack is kept as two parallel arrays (definition ids and invoking states) and
+ * the definitions are never modified, every cursor evaluating them with its own lightweight
+ * state machine per definition using the default transition checker. Recursive invocations
+ * are bounded by a maximum depth.
+ */
+public class SubmachineStateMachine {
+
+    /** The default maximum depth of the return stack */
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    /** The catalog of definitions */
+    private final SubmachineCatalog catalog;
+
+    /** The id of the root definition */
+    private final int root;
+
+    /** The maximum depth of the return stack */
+    private final int maxDepth;
+
+    /** The state machines evaluating every definition */
+    private StateMachine[] executors;
+
+    /** The messages returned by every final state name */
+    private final Map<String, Message> exitMessages;
+
+    /** The definition ids of the callers */
+    private int[] callers;
+
+    /** The invoking states of the callers */
+    private State[] returnStates;
+
+    /** The depth of the return stack */
+    private int depth;
+
+    /** The id of the active definition */
+    private int active;
+
+    /**
+     * Creates the cursor for the given root definition
+     * with the default maximum depth.
+     *
+     * @param catalog the catalog of definitions
+     * @param rootName the name of the root definition
+     */
+    public SubmachineStateMachine(@NonNull SubmachineCatalog catalog, @NonNull String rootName) {
+        this(catalog, rootName, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * Creates the cursor for the given root definition
+     *
+     * @param catalog the catalog of definitions
+     * @param rootName the name of the root definition
+     * @param maxDepth the maximum depth of the return stack
+     */
+    public SubmachineStateMachine(@NonNull SubmachineCatalog catalog, @NonNull String rootName, int maxDepth) {
+        this.catalog = catalog;
+        this.root = catalog.indexOf(rootName);
+        if (root < 0) {
+            throw new NullStateException("Submachine [" + rootName + "] not found");
+        }
+        this.maxDepth = maxDepth;
+        this.executors = new StateMachine[catalog.size()];
+        this.exitMessages = new HashMap<>();
+        this.callers = new int[4];
+        this.returnStates = new State[4];
+        this.active = root;
+    }
+
+    /**
+     * Initializes the cursor to the first state of the root
+     * definition clearing the return stack.
+     */
+    public void init() {
+        depth = 0;
+        active = root;
+        StateMachine executor = getExecutor(root);
+        executor.init();
+        if (executor.getCurrent() != null) {
+            settle(executor.getCurrent());
+        }
+    }
+
+    /**
+     * Retrieves the current state of the active definition
+     *
+     * @return the current state
+     */
+    public State getCurrent() {
+        return getExecutor(active).getCurrent();
+    }
+
+    /**
+     * Retrieves the name of the active definition
+     *
+     * @return the name of the active definition
+     */
+    public String getActiveSubmachine() {
+        return catalog.getName(active);
+    }
+
+    /**
+     * Retrieves the depth of the return stack
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Retrieves the states which invoked the active
+     * definition from the outermost one.
+     *
+     * @return the invoking states
+     */
+    public List<State> getCallStack() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(returnStates, depth)));
+    }
+
+    /**
+     * Retrieves the next state upon message reception
+     * entering and returning from submachines as needed.
+     *
+     * @param message the message
+     * @return the current state after the transition or empty if not found
+     */
+    public Optional<State> getNext(@NonNull Message message) {
+        StateMachine executor = getExecutor(active);
+        Optional<State> next = executor.getNext(message);
+        next.ifPresent(this::settle);
+        return next.isPresent() ? Optional.ofNullable(getCurrent()) : next;
+    }
+
+    /**
+     * Sends a message triggering a potential transition
+     *
+     * @param message a string message
+     * @return the cursor for chaining purposes
+     */
+    public SubmachineStateMachine send(String message) {
+        return send(StringMessage.from(message));
+    }
+
+    /**
+     * Sends a message triggering a potential transition
+     *
+     * @param message the message
+     * @return the cursor for chaining purposes
+     */
+    public SubmachineStateMachine send(@NonNull Message message) {
+        getNext(message);
+        return this;
+    }
+
+    /**
+     * Invokes the submachines and returns from the
+     * final states until a stable state is reached.
+     *
+     * @param state the state reached
+     */
+    private void settle(State state) {
+        while (true) {
+            Optional<String> submachine = state.getProperty(SubmachineCatalog.SUBMACHINE_PROPERTY);
+            if (submachine.isPresent()) {
+                call(state, submachine.get());
+            } else if (state.isFinal() && (depth > 0)) {
+                State returned = ret(state);
+                if (returned == null) {
+                    return;
+                }
+                state = returned;
+                continue;
+            } else {
+                return;
+            }
+            StateMachine executor = getExecutor(active);
+            executor.init();
+            if (executor.getCurrent() == null) {
+                throw new NullStateException("Empty submachine [" + catalog.getName(active) + "]");
+            }
+            state = executor.getCurrent();
+        }
+    }
+
+    /**
+     * Pushes the invoking state and activates the submachine
+     *
+     * @param state the invoking state
+     * @param submachine the name of the submachine
+     */
+    private void call(State state, String submachine) {
+        int id = catalog.indexOf(submachine);
+        if (id < 0) {
+            throw new NullStateException("Submachine [" + submachine + "] not found");
+        }
+        if (depth == maxDepth) {
+            throw new IllegalStateException("Maximum submachine depth exceeded [" + maxDepth + "]");
+        }
+        if (depth == callers.length) {
+            callers = Arrays.copyOf(callers, depth * 2);
+            returnStates = Arrays.copyOf(returnStates, depth * 2);
+        }
+        callers[depth] = active;
+        returnStates[depth++] = state;
+        active = id;
+    }
+
+    /**
+     * Pops the invoking state and sends it the message
+     * named after the final state reached.
+     *
+     * @param finalState the final state of the submachine
+     * @return the state reached by the caller or null if it remained in the invoking state
+     */
+    private State ret(State finalState) {
+        State invoking = returnStates[--depth];
+        returnStates[depth] = null;
+        active = callers[depth];
+
+        // The executor may have been reused by a recursive invocation
+        StateMachine executor = getExecutor(active);
+        executor.setCurrent(invoking);
+        Message exit = exitMessages.computeIfAbsent(finalState.getName(), StringMessage::from);
+        return executor.getNext(exit).orElse(null);
+    }
+
+    /**
+     * Retrieves the state machine evaluating the given definition
+     *
+     * @param id the id of the definition
+     * @return the state machine
+     */
+    private StateMachine getExecutor(int id) {
+        if (id >= executors.length) {
+            executors = Arrays.copyOf(executors, catalog.size());
+        }
+        if (executors[id] == null) {
+            executors[id] = new StateMachine(catalog.getDefinition(id).getTransitionsIndex());
+        }
+        return executors[id];
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.impl.TimerService;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * A state machine whose states can declare a timeout i.e. a message sent
+ * automatically after spending a given time in the state.
+ * <p>
+ * The timeout is declared using the {@link #TIMEOUT_PROPERTY} property of the state as a number of
+ * milliseconds or an ISO-8601 duration (e.g. PT30S) and the message sent using the {@link #TIMEOUT_MESSAGE_PROPERTY}
+ * property ({@link #DEFAULT_TIMEOUT_MESSAGE} by default). The timer is armed every time the state is entered (including
+ * self transitions) and cancelled as soon as the machine leaves it, so at most a timer per instance is pending.
+ * </p>
+ * Timers are managed by a {@link TimerService} shared by all the instances, scheduling and cancelling a timer
+ * in constant time. Timeouts are delivered by the thread advancing the service so, as any other message,
+ * they must not be processed concurrently with messages sent by other threads.
+ */
+public class TimedStateMachine extends StateMachine {
+
+    /** The property of the states declaring the timeout */
+    public static final String TIMEOUT_PROPERTY = "timeout";
+
+    /** The property of the states declaring the message sent upon timeout */
+    public static final String TIMEOUT_MESSAGE_PROPERTY = "timeoutMessage";
+
+    /** The message sent upon timeout by default */
+    public static final String DEFAULT_TIMEOUT_MESSAGE = "TIMEOUT";
+
+    /**
+     * The service managing the timers
+     */
+    @Getter
+    private final TimerService timerService;
+
+    /** The handle of the pending timer (or -1 if none) */
+    private long timerHandle = -1;
+
+    /** The number of timers armed, discarding the stale ones */
+    private long armed;
+
+    /**
+     * Creates the timed state machine with the given
+     * transition map and timer service.
+     *
+     * @param transitionIndex the transition map
+     * @param timerService the timer service
+     */
+    public TimedStateMachine(@NonNull TransitionIndex<State, Message, StateTransition> transitionIndex, @NonNull TimerService timerService) {
+        super(transitionIndex);
+        this.timerService = timerService;
+    }
+
+    /**
+     * Initializes the current state to the first one
+     * added arming its timeout (if any).
+     */
+    @Override
+    public void init() {
+        super.init();
+        rearm();
+    }
+
+    /**
+     * Sets the current state to the given one arming its
+     * timeout (if any). Throws a {@link com.github.pnavais.machine.api.exception.NullStateException}
+     * in case the state is not found.
+     *
+     * @param stateName the name of the state
+     */
+    @Override
+    public void setCurrent(@NonNull String stateName) {
+        super.setCurrent(stateName);
+        rearm();
+    }
+
+    /**
+     * Retrieves the next state upon message reception
+     * cancelling the timeout of the current state and arming
+     * the one of the target state when the transition is taken.
+     *
+     * @param m the message
+     * @return the next state or empty if not found
+     */
+    @Override
+    public Optional<State> getNext(Message m) {
+        Optional<State> next = super.getNext(m);
+        if (next.isPresent()) {
+            rearm();
+        }
+        return next;
+    }
+
+    /**
+     * Checks if a timeout is pending
+     *
+     * @return true if a timeout is pending, false otherwise
+     */
+    public boolean isTimeoutPending() {
+        return timerHandle >= 0;
+    }
+
+    /**
+     * Cancels the pending timeout (if any)
+     */
+    public void cancelTimeout() {
+        if (timerHandle >= 0) {
+            timerService.cancel(timerHandle);
+            timerHandle = -1;
+        }
+        armed++;
+    }
+
+    /**
+     * Cancels the pending timeout and arms the one
+     * declared by the current state (if any).
+     */
+    private void rearm() {
+        cancelTimeout();
+        State current = getCurrent();
+        Optional<String> timeout = (current != null) ? current.getProperty(TIMEOUT_PROPERTY) : Optional.empty();
+        if (timeout.isPresent()) {
+            String message = current.getProperty(TIMEOUT_MESSAGE_PROPERTY).orElse(DEFAULT_TIMEOUT_MESSAGE);
+            long generation = armed;
+            timerHandle = timerService.schedule(parseTimeout(timeout.get()), () -> onTimeout(generation, message));
+        }
+    }
+
+    /**
+     * Sends the timeout message unless the timer
+     * was cancelled after expiring.
+     *
+     * @param generation the generation of the timer
+     * @param message the timeout message
+     */
+    private void onTimeout(long generation, String message) {
+        if (generation == armed) {
+            timerHandle = -1;
+            send(message);
+        }
+    }
+
+    /**
+     * Parses the timeout as a number of milliseconds or
+     * an ISO-8601 duration.
+     *
+     * @param timeout the timeout
+     * @return the duration
+     */
+    private static Duration parseTimeout(String timeout) {
+        String value = timeout.trim();
+        return (!value.isEmpty() && Character.isDigit(value.charAt(0))) ? Duration.ofMillis(Long.parseLong(value)) : Duration.parse(value);
+    }
+}
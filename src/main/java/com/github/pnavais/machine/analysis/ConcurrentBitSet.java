@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.analysis;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bit set allowing to set bits concurrently
+ * using compare and swap operations.
+ */
+class ConcurrentBitSet {
+
+    /** The words of the bit set */
+    private final AtomicLongArray words;
+
+    /**
+     * Creates the bit set with the given number of bits
+     *
+     * @param size the number of bits
+     */
+    ConcurrentBitSet(int size) {
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * Sets the given bit
+     *
+     * @param bit the bit
+     * @return true if the bit was not set before, false otherwise
+     */
+    boolean set(int bit) {
+        int word = bit >>> 6;
+        long mask = 1L << bit;
+        long current;
+        do {
+            current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+        } while (!words.compareAndSet(word, current, current | mask));
+        return true;
+    }
+
+    /**
+     * Checks the given bit
+     *
+     * @param bit the bit
+     * @return true if set, false otherwise
+     */
+    boolean get(int bit) {
+        return (words.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Creates a regular bit set with the same bits
+     *
+     * @return the bit set
+     */
+    BitSet toBitSet() {
+        long[] values = new long[words.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = words.get(i);
+        }
+        return BitSet.valueOf(values);
+    }
+}
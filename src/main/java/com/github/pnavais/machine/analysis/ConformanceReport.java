@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregated outcome of replaying a set of traces against
+ * a state machine definition including the number of traces of
+ * every verdict, the non conformant traces (up to a maximum) and
+ * the counts by state.
+ */
+public class ConformanceReport {
+
+    /** The snapshot of the definition */
+    private final TransitionGraph<State, Message> graph;
+
+    /** The number of traces by verdict */
+    private final long[] verdicts;
+
+    /** The number of visits of every state */
+    private final long[] visits;
+
+    /** The number of traces stuck in every state */
+    private final long[] stuck;
+
+    /** The number of traces aborted in every state */
+    private final long[] aborted;
+
+    /**
+     * The non conformant traces in input order (up to the maximum retained)
+     */
+    @Getter
+    private final List<TraceResult> violations;
+
+    /**
+     * Creates the report
+     *
+     * @param graph the snapshot of the definition
+     * @param verdicts the number of traces by verdict
+     * @param visits the visits of every state
+     * @param stuck the traces stuck in every state
+     * @param aborted the traces aborted in every state
+     * @param violations the non conformant traces retained
+     */
+    ConformanceReport(TransitionGraph<State, Message> graph, long[] verdicts, long[] visits, long[] stuck, long[] aborted, List<TraceResult> violations) {
+        this.graph = graph;
+        this.verdicts = verdicts;
+        this.visits = visits;
+        this.stuck = stuck;
+        this.aborted = aborted;
+        this.violations = Collections.unmodifiableList(violations);
+    }
+
+    /**
+     * Retrieves the number of traces replayed
+     *
+     * @return the number of traces
+     */
+    public long getTraceCount() {
+        long count = 0;
+        for (long verdict : verdicts) {
+            count += verdict;
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the number of traces with the given verdict
+     *
+     * @param verdict the verdict
+     * @return the number of traces
+     */
+    public long getCount(@NonNull TraceResult.Verdict verdict) {
+        return verdicts[verdict.ordinal()];
+    }
+
+    /**
+     * Retrieves the number of traces conforming to the definition
+     *
+     * @return the number of conformant traces
+     */
+    public long getConformantCount() {
+        return getCount(TraceResult.Verdict.ACCEPTED) + getCount(TraceResult.Verdict.INCOMPLETE);
+    }
+
+    /**
+     * Retrieves the number of times every state was visited
+     * by the traces (including the initial state).
+     *
+     * @return the visits by state
+     */
+    public Map<State, Long> getVisitCounts() {
+        return toMap(visits);
+    }
+
+    /**
+     * Retrieves the number of traces stuck in every state
+     *
+     * @return the stuck traces by state
+     */
+    public Map<State, Long> getStuckCounts() {
+        return toMap(stuck);
+    }
+
+    /**
+     * Retrieves the number of traces aborted in every state
+     *
+     * @return the aborted traces by state
+     */
+    public Map<State, Long> getAbortedCounts() {
+        return toMap(aborted);
+    }
+
+    /**
+     * Converts the given counts into a map by state
+     * omitting the states without any count.
+     *
+     * @param counts the counts by state id
+     * @return the counts by state
+     */
+    private Map<State, Long> toMap(long[] counts) {
+        Map<State, Long> countMap = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                countMap.put(graph.getNode(i), counts[i]);
+            }
+        }
+        return Collections.unmodifiableMap(countMap);
+    }
+
+    @Override
+    public String toString() {
+        return "Traces [" + getTraceCount() + "] conformant [" + getConformantCount() + "] stuck [" + getCount(TraceResult.Verdict.STUCK)
+                + "] aborted [" + getCount(TraceResult.Verdict.ABORTED) + "]";
+    }
+}
@@ -0,0 +1,745 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Generates sequences of messages covering the transitions of a graph,
+ * every sequence starting at the initial node (i.e. after a reset of the machine).
+ * <p>
+ * The transition tour is computed as a directed Chinese postman problem where the
+ * machine can be reset from any node back to the initial one at a given cost. The
+ * transitions to repeat (and the resets) are found solving a minimum cost flow
+ * between the unbalanced nodes and the resulting Eulerian multigraph is traversed
+ * using Hierholzer's algorithm, so the sequences have the minimum total length
+ * (counting every reset with its cost). The tour is split at every reset and the
+ * transitions after the last one covered are discarded.
+ * </p>
+ * Additionally, sequences covering every path of k consecutive transitions can be
+ * generated. Transitions whose origin is not reachable from the initial node cannot
+ * be covered and are ignored. This class is not thread safe.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+public class CoverageGenerator<N extends Node, M extends Message> {
+
+    /** The capacity of the transitions in the flow network */
+    private static final int UNBOUNDED = Integer.MAX_VALUE / 2;
+
+    /** The graph to cover */
+    @Getter
+    private final TransitionGraph<N, M> graph;
+
+    /** The id of the initial node */
+    @Getter
+    private final int initial;
+
+    /** The nodes reachable from the initial one */
+    private final BitSet reachable;
+
+    /**
+     * Creates the generator for the given graph
+     *
+     * @param graph the graph
+     * @param initial the id of the initial node
+     */
+    public CoverageGenerator(@NonNull TransitionGraph<N, M> graph, int initial) {
+        this.graph = graph;
+        this.initial = initial;
+        this.reachable = new GraphAnalyzer<>(graph, initial).getReachable();
+    }
+
+    /**
+     * Creates the generator for a snapshot of the given index
+     * using its first node as initial node.
+     *
+     * @param index the transition index
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the generator
+     */
+    public static <N extends Node, M extends Message> CoverageGenerator<N, M> of(@NonNull TransitionIndex<N, M, ?> index) {
+        TransitionGraph<N, M> graph = index.snapshot();
+        return new CoverageGenerator<>(graph, index.getFirst().map(n -> graph.indexOf(n.getName())).orElse(-1));
+    }
+
+    /**
+     * Retrieves the positions of the transitions which cannot be
+     * covered as their origin is not reachable.
+     *
+     * @return the positions of the uncoverable transitions
+     */
+    public BitSet getUncoverableTransitions() {
+        BitSet uncoverable = new BitSet(graph.getTransitionCount());
+        for (int node = reachable.nextClearBit(0); node < graph.getNodeCount(); node = reachable.nextClearBit(node + 1)) {
+            uncoverable.set(graph.getOffset(node), graph.getOffset(node + 1));
+        }
+        return uncoverable;
+    }
+
+    /**
+     * Generates the minimum sequences covering all the transitions
+     * considering every reset as costly as a transition.
+     *
+     * @return the sequences of messages
+     */
+    public List<List<M>> generateTransitionTour() {
+        return generateTransitionTour(1);
+    }
+
+    /**
+     * Generates the minimum sequences covering all the transitions
+     * using the given cost of resetting the machine.
+     *
+     * @param resetCost the cost of every reset
+     * @return the sequences of messages
+     */
+    public List<List<M>> generateTransitionTour(int resetCost) {
+        if (resetCost < 0) {
+            throw new IllegalArgumentException("Invalid reset cost [" + resetCost + "]");
+        }
+        if (initial < 0) {
+            return new ArrayList<>();
+        }
+        int n = graph.getNodeCount();
+        int m = graph.getTransitionCount();
+
+        // The number of traversals of every transition and the resets (position m + node)
+        int[] traversals = new int[m + n];
+        int[] balance = new int[n];
+        for (int node = reachable.nextSetBit(0); node >= 0; node = reachable.nextSetBit(node + 1)) {
+            for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                traversals[t] = 1;
+                balance[graph.getTarget(t)]++;
+                balance[node]--;
+            }
+        }
+        addRepetitions(traversals, balance, resetCost);
+        return split(traverse(traversals));
+    }
+
+    /**
+     * Adds the repetitions of transitions and resets balancing every node
+     * using a minimum cost flow from the nodes with more incoming
+     * traversals to the nodes with more outgoing traversals.
+     *
+     * @param traversals the traversals of every transition and reset
+     * @param balance the incoming minus outgoing traversals of every node
+     * @param resetCost the cost of every reset
+     */
+    private void addRepetitions(int[] traversals, int[] balance, int resetCost) {
+        int n = graph.getNodeCount();
+        int m = graph.getTransitionCount();
+        FlowNetwork network = new FlowNetwork(n + 2);
+        int source = n;
+        int sink = n + 1;
+        int required = 0;
+        for (int node = reachable.nextSetBit(0); node >= 0; node = reachable.nextSetBit(node + 1)) {
+            for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                network.addEdge(node, graph.getTarget(t), UNBOUNDED, 1, t);
+            }
+            if (node != initial) {
+                network.addEdge(node, initial, UNBOUNDED, resetCost, m + node);
+            }
+            if (balance[node] > 0) {
+                network.addEdge(source, node, balance[node], 0, -1);
+                required += balance[node];
+            } else if (balance[node] < 0) {
+                network.addEdge(node, sink, -balance[node], 0, -1);
+            }
+        }
+        network.solve(source, sink, required);
+        network.forEachFlow((position, flow) -> traversals[position] += flow);
+    }
+
+    /**
+     * Computes an Eulerian circuit from the initial node traversing every
+     * transition and reset the given number of times (Hierholzer's algorithm).
+     *
+     * @param traversals the traversals of every transition and reset
+     * @return the positions of the transitions and resets of the circuit
+     */
+    private int[] traverse(int[] traversals) {
+        int n = graph.getNodeCount();
+        int m = graph.getTransitionCount();
+        int total = Arrays.stream(traversals).sum();
+        int[] next = new int[n];
+        for (int node = 0; node < n; node++) {
+            next[node] = graph.getOffset(node);
+        }
+        int[] nodes = new int[total + 1];
+        int[] edges = new int[total + 1];
+        int[] circuit = new int[total];
+        int top = 0;
+        int length = total;
+        nodes[top] = initial;
+        edges[top++] = -1;
+        while (top > 0) {
+            int node = nodes[top - 1];
+            // Transitions of the node followed by its reset
+            int edge = -1;
+            while (next[node] <= graph.getOffset(node + 1)) {
+                int position = (next[node] < graph.getOffset(node + 1)) ? next[node] : m + node;
+                if (traversals[position] > 0) {
+                    edge = position;
+                    break;
+                }
+                next[node]++;
+            }
+            if (edge >= 0) {
+                traversals[edge]--;
+                nodes[top] = (edge < m) ? graph.getTarget(edge) : initial;
+                edges[top++] = edge;
+            } else if (edges[--top] >= 0) {
+                circuit[--length] = edges[top];
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * Splits the circuit at every reset discarding
+     * the transitions after the last one covered.
+     *
+     * @param circuit the circuit
+     * @return the sequences of messages
+     */
+    private List<List<M>> split(int[] circuit) {
+        int m = graph.getTransitionCount();
+        BitSet covered = new BitSet(m);
+        int last = -1;
+        for (int i = 0; i < circuit.length; i++) {
+            if ((circuit[i] < m) && !covered.get(circuit[i])) {
+                covered.set(circuit[i]);
+                last = i;
+            }
+        }
+        List<List<M>> sequences = new ArrayList<>();
+        List<M> sequence = new ArrayList<>();
+        for (int i = 0; i <= last; i++) {
+            if (circuit[i] >= m) {
+                sequences.add(sequence);
+                sequence = new ArrayList<>();
+            } else {
+                sequence.add(graph.getMessage(graph.getMessageId(circuit[i])));
+            }
+        }
+        if (!sequence.isEmpty()) {
+            sequences.add(sequence);
+        }
+        return sequences;
+    }
+
+    /**
+     * Generates sequences covering every path of k consecutive transitions reachable
+     * from the initial node. Every path is reached using the shortest prefix unless
+     * already covered by a previous sequence.
+     *
+     * @param k the number of transitions of the paths
+     * @param maxSequences the maximum number of sequences to generate
+     * @return the sequences of messages
+     */
+    public List<List<M>> generateKPaths(int k, int maxSequences) {
+        if (k < 1) {
+            throw new IllegalArgumentException("Invalid path length [" + k + "]");
+        }
+        List<List<M>> sequences = new ArrayList<>();
+        if (initial < 0) {
+            return sequences;
+        }
+
+        // Shortest prefix to every node (breadth first search tree)
+        int n = graph.getNodeCount();
+        int[] parentEdges = new int[n];
+        int[] parentNodes = new int[n];
+        Arrays.fill(parentEdges, -1);
+        int[] queue = new int[n];
+        int size = 0;
+        queue[size++] = initial;
+        for (int head = 0; head < size; head++) {
+            int node = queue[head];
+            for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                int target = graph.getTarget(t);
+                if ((target != initial) && (parentEdges[target] < 0)) {
+                    parentEdges[target] = t;
+                    parentNodes[target] = node;
+                    queue[size++] = target;
+                }
+            }
+        }
+
+        // Enumerate the paths depth first from every reachable node
+        Set<PathKey> covered = new HashSet<>();
+        int[] path = new int[k];
+        int[] next = new int[k];
+        for (int i = 0; (i < size) && (sequences.size() < maxSequences); i++) {
+            int start = queue[i];
+            int depth = 0;
+            int node = start;
+            next[0] = graph.getOffset(start);
+            while ((depth >= 0) && (sequences.size() < maxSequences)) {
+                if (next[depth] == graph.getOffset(node + 1)) {
+                    // Backtrack
+                    depth--;
+                    node = (depth > 0) ? graph.getTarget(path[depth - 1]) : start;
+                    if (depth >= 0) {
+                        next[depth]++;
+                    }
+                    continue;
+                }
+                path[depth] = next[depth];
+                if (depth == k - 1) {
+                    if (!covered.contains(new PathKey(path))) {
+                        int[] edges = prefix(start, parentEdges, parentNodes, path);
+                        for (int w = 0; w + k <= edges.length; w++) {
+                            covered.add(new PathKey(Arrays.copyOfRange(edges, w, w + k)));
+                        }
+                        sequences.add(toMessages(edges));
+                    }
+                    next[depth]++;
+                } else {
+                    node = graph.getTarget(path[depth]);
+                    next[++depth] = graph.getOffset(node);
+                }
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Builds the transitions reaching the start of the path
+     * followed by the path itself.
+     *
+     * @param start the start of the path
+     * @param parentEdges the transition reaching every node in the search tree
+     * @param parentNodes the parent of every node in the search tree
+     * @param path the path
+     * @return the transitions
+     */
+    private int[] prefix(int start, int[] parentEdges, int[] parentNodes, int[] path) {
+        Deque<Integer> edges = new ArrayDeque<>();
+        for (int node = start; parentEdges[node] >= 0; node = parentNodes[node]) {
+            edges.addFirst(parentEdges[node]);
+        }
+        int[] result = new int[edges.size() + path.length];
+        int i = 0;
+        for (int edge : edges) {
+            result[i++] = edge;
+        }
+        System.arraycopy(path, 0, result, i, path.length);
+        return result;
+    }
+
+    /**
+     * Converts the given transitions to their messages
+     *
+     * @param edges the positions of the transitions
+     * @return the messages
+     */
+    private List<M> toMessages(int[] edges) {
+        List<M> messages = new ArrayList<>(edges.length);
+        for (int edge : edges) {
+            messages.add(graph.getMessage(graph.getMessageId(edge)));
+        }
+        return messages;
+    }
+
+    /**
+     * A path of transitions comparing contents
+     */
+    private static class PathKey {
+
+        /** The positions of the transitions */
+        private final int[] edges;
+
+        /** The hash of the transitions */
+        private final int hash;
+
+        /**
+         * Creates the key (copying the transitions)
+         *
+         * @param edges the positions of the transitions
+         */
+        PathKey(int[] edges) {
+            this.edges = edges.clone();
+            this.hash = Arrays.hashCode(edges);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return (o instanceof PathKey) && Arrays.equals(edges, ((PathKey) o).edges);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A flow network solved by a primal-dual algorithm : every phase computes
+     * the shortest distances with Dijkstra's algorithm (using node potentials and
+     * a primitive indexed heap) and then pushes flow along all the shortest paths
+     * with depth first searches (with current arcs, as in Dinic's algorithm) on the
+     * subgraph of edges of zero reduced cost until no more flow can be pushed.
+     */
+    private static class FlowNetwork {
+
+        /** The mark of nodes not visited */
+        private static final byte UNVISITED = 0;
+
+        /** The mark of nodes in the current path */
+        private static final byte ON_PATH = 1;
+
+        /** The mark of nodes without path to the sink */
+        private static final byte DEAD = 2;
+
+        /** The number of nodes */
+        private final int size;
+
+        /** The first edge of every node */
+        private final int[] heads;
+
+        /** The target of every edge (residual edges at odd positions) */
+        private int[] targets = new int[16];
+
+        /** The remaining capacity of every edge */
+        private int[] capacities = new int[16];
+
+        /** The cost per unit of flow of every edge */
+        private int[] costs = new int[16];
+
+        /** The next edge of the same origin */
+        private int[] links = new int[16];
+
+        /** The label of every pair of edges */
+        private int[] labels = new int[8];
+
+        /** The number of edges */
+        private int edgeCount;
+
+        /**
+         * Creates an empty network
+         *
+         * @param size the number of nodes
+         */
+        FlowNetwork(int size) {
+            this.size = size;
+            this.heads = new int[size];
+            Arrays.fill(heads, -1);
+        }
+
+        /**
+         * Adds an edge and its residual counterpart
+         *
+         * @param from the origin node
+         * @param to the target node
+         * @param capacity the capacity
+         * @param cost the cost per unit of flow
+         * @param label the label of the edge (or -1 if none)
+         */
+        void addEdge(int from, int to, int capacity, int cost, int label) {
+            if (edgeCount + 2 > targets.length) {
+                targets = Arrays.copyOf(targets, targets.length * 2);
+                capacities = Arrays.copyOf(capacities, capacities.length * 2);
+                costs = Arrays.copyOf(costs, costs.length * 2);
+                links = Arrays.copyOf(links, links.length * 2);
+                labels = Arrays.copyOf(labels, labels.length * 2);
+            }
+            labels[edgeCount >>> 1] = label;
+            append(from, to, capacity, cost);
+            append(to, from, 0, -cost);
+        }
+
+        /**
+         * Appends an edge to the adjacency of the origin
+         *
+         * @param from the origin node
+         * @param to the target node
+         * @param capacity the capacity
+         * @param cost the cost
+         */
+        private void append(int from, int to, int capacity, int cost) {
+            targets[edgeCount] = to;
+            capacities[edgeCount] = capacity;
+            costs[edgeCount] = cost;
+            links[edgeCount] = heads[from];
+            heads[from] = edgeCount++;
+        }
+
+        /**
+         * Pushes the required flow from source to sink at minimum cost
+         *
+         * @param source the source node
+         * @param sink the sink node
+         * @param required the flow required
+         */
+        void solve(int source, int sink, int required) {
+            long[] potentials = new long[size];
+            long[] distances = new long[size];
+            NodeHeap heap = new NodeHeap(size, distances);
+            byte[] marks = new byte[size];
+            int[] arcs = new int[size];
+            int[] path = new int[size];
+            int flow = 0;
+            while (flow < required) {
+                // Shortest distances using the reduced costs (up to the sink)
+                Arrays.fill(distances, Long.MAX_VALUE);
+                distances[source] = 0;
+                heap.push(source);
+                while (!heap.isEmpty()) {
+                    int node = heap.pop();
+                    if (node == sink) {
+                        heap.clear();
+                        break;
+                    }
+                    for (int e = heads[node]; e >= 0; e = links[e]) {
+                        int target = targets[e];
+                        long candidate = distances[node] + costs[e] + potentials[node] - potentials[target];
+                        if ((capacities[e] > 0) && (candidate < distances[target])) {
+                            distances[target] = candidate;
+                            heap.push(target);
+                        }
+                    }
+                }
+                if (distances[sink] == Long.MAX_VALUE) {
+                    throw new IllegalStateException("The transitions cannot be balanced");
+                }
+                // Nodes farther than the sink keep non-negative reduced costs using its distance
+                for (int node = 0; node < size; node++) {
+                    potentials[node] += Math.min(distances[node], distances[sink]);
+                }
+
+                // Saturate the shortest paths (edges of zero reduced cost)
+                int pushed;
+                do {
+                    Arrays.fill(marks, UNVISITED);
+                    System.arraycopy(heads, 0, arcs, 0, size);
+                    pushed = augment(source, sink, required - flow, potentials, marks, arcs, path);
+                    flow += pushed;
+                } while ((pushed > 0) && (flow < required));
+            }
+        }
+
+        /**
+         * Checks if the edge has remaining capacity and zero reduced cost
+         *
+         * @param e the edge
+         * @param from the origin node
+         * @param potentials the node potentials
+         * @return true if admissible, false otherwise
+         */
+        private boolean isAdmissible(int e, int from, long[] potentials) {
+            return (capacities[e] > 0) && (costs[e] + potentials[from] - potentials[targets[e]] == 0);
+        }
+
+        /**
+         * Pushes flow along the admissible edges using a depth first search with
+         * current arcs, so every edge is advanced at most once per call. Nodes in
+         * the current path are skipped (the admissible edges may form cycles) and
+         * nodes without path to the sink are discarded.
+         *
+         * @param source the source node
+         * @param sink the sink node
+         * @param limit the maximum flow to push
+         * @param potentials the node potentials
+         * @param marks the mark of every node
+         * @param arcs the current arc of every node
+         * @param path the edges of the current path
+         * @return the flow pushed
+         */
+        private int augment(int source, int sink, int limit, long[] potentials, byte[] marks, int[] arcs, int[] path) {
+            int pushed = 0;
+            int depth = 0;
+            int node = source;
+            marks[source] = ON_PATH;
+            while (pushed < limit) {
+                if (node == sink) {
+                    // Augment along the path and retreat to its first saturated edge
+                    int push = limit - pushed;
+                    for (int i = 0; i < depth; i++) {
+                        push = Math.min(push, capacities[path[i]]);
+                    }
+                    int retreat = depth;
+                    for (int i = depth - 1; i >= 0; i--) {
+                        capacities[path[i]] -= push;
+                        capacities[path[i] ^ 1] += push;
+                        retreat = (capacities[path[i]] == 0) ? i : retreat;
+                    }
+                    for (int i = retreat; i < depth; i++) {
+                        marks[targets[path[i]]] = UNVISITED;
+                    }
+                    pushed += push;
+                    depth = retreat;
+                    node = (depth == 0) ? source : targets[path[depth - 1]];
+                    continue;
+                }
+                int e = arcs[node];
+                while ((e >= 0) && ((marks[targets[e]] != UNVISITED) || !isAdmissible(e, node, potentials))) {
+                    e = links[e];
+                }
+                arcs[node] = e;
+                if (e >= 0) {
+                    path[depth++] = e;
+                    node = targets[e];
+                    marks[node] = ON_PATH;
+                } else {
+                    // Dead end, discard the node and retreat
+                    marks[node] = DEAD;
+                    if (depth == 0) {
+                        break;
+                    }
+                    node = targets[path[--depth] ^ 1];
+                    arcs[node] = links[arcs[node]];
+                }
+            }
+            return pushed;
+        }
+
+        /**
+         * Visits the flow of every labelled edge
+         *
+         * @param consumer the consumer of the label and its flow
+         */
+        void forEachFlow(BiConsumer<Integer, Integer> consumer) {
+            for (int e = 0; e < edgeCount; e += 2) {
+                if ((labels[e >>> 1] >= 0) && (capacities[e + 1] > 0)) {
+                    consumer.accept(labels[e >>> 1], capacities[e + 1]);
+                }
+            }
+        }
+
+        /**
+         * A binary min-heap of nodes indexed by node and ordered
+         * by their distances, supporting decrease-key in place.
+         */
+        private static class NodeHeap {
+
+            /** The nodes of the heap */
+            private final int[] nodes;
+
+            /** The position of every node in the heap (or -1 if absent) */
+            private final int[] positions;
+
+            /** The distances used as keys */
+            private final long[] keys;
+
+            /** The number of nodes in the heap */
+            private int count;
+
+            /**
+             * Creates an empty heap
+             *
+             * @param size the number of nodes
+             * @param keys the distances used as keys
+             */
+            NodeHeap(int size, long[] keys) {
+                this.nodes = new int[size];
+                this.positions = new int[size];
+                this.keys = keys;
+                Arrays.fill(positions, -1);
+            }
+
+            /**
+             * Inserts the node or moves it up after its key decreased
+             *
+             * @param node the node
+             */
+            void push(int node) {
+                int i = positions[node];
+                if (i < 0) {
+                    i = count++;
+                }
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (keys[nodes[parent]] <= keys[node]) {
+                        break;
+                    }
+                    place(nodes[parent], i);
+                    i = parent;
+                }
+                place(node, i);
+            }
+
+            /**
+             * Removes the node with the minimum key
+             *
+             * @return the node
+             */
+            int pop() {
+                int top = nodes[0];
+                positions[top] = -1;
+                int last = nodes[--count];
+                if (count > 0) {
+                    int i = 0;
+                    while (2 * i + 1 < count) {
+                        int child = 2 * i + 1;
+                        if ((child + 1 < count) && (keys[nodes[child + 1]] < keys[nodes[child]])) {
+                            child++;
+                        }
+                        if (keys[last] <= keys[nodes[child]]) {
+                            break;
+                        }
+                        place(nodes[child], i);
+                        i = child;
+                    }
+                    place(last, i);
+                }
+                return top;
+            }
+
+            /**
+             * Removes all the nodes
+             */
+            void clear() {
+                for (int i = 0; i < count; i++) {
+                    positions[nodes[i]] = -1;
+                }
+                count = 0;
+            }
+
+            /**
+             * Checks if the heap is empty
+             *
+             * @return true if empty, false otherwise
+             */
+            boolean isEmpty() {
+                return count == 0;
+            }
+
+            /**
+             * Stores the node at the given position
+             *
+             * @param node the node
+             * @param i the position
+             */
+            private void place(int node, int i) {
+                nodes[i] = node;
+                positions[node] = i;
+            }
+        }
+    }
+}
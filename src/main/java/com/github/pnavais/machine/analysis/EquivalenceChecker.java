@@ -0,0 +1,426 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Checks whether two state machines are equivalent i.e. every sequence of messages
+ * sent from their first states leads both machines to states with the same final
+ * flag and values of the selected properties.
+ * <p>
+ * Messages without transition fall back to the ANY transition (if present) or leave
+ * the machine in the current state. The equivalence is decided using Hopcroft and
+ * Karp's algorithm merging pairs of states with a union-find structure, visiting only
+ * the messages with explicit transitions in any of the states of every pair, so it runs
+ * in almost linear time on the number of transitions. When not equivalent, the shortest
+ * distinguishing sequence is found using a breadth first search over the pairs of states
+ * (kept in primitive arrays) visiting the same messages, where the ANY message stands for
+ * any message unknown to both machines.
+ * </p>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class EquivalenceChecker {
+
+    /** The number of ints of every entry of the search (pair of states, parent entry and message) */
+    private static final int ENTRY = 4;
+
+    /**
+     * Checks the equivalence of the given state machines
+     *
+     * @param first the first state machine
+     * @param second the second state machine
+     * @param propertyKeys the keys of the properties that must match in equivalent states
+     * @return the result of the check
+     */
+    public static EquivalenceResult check(@NonNull StateMachine first, @NonNull StateMachine second, String... propertyKeys) {
+        Map<Message, Integer> alphabet = new HashMap<>();
+        Map<List<Object>, Integer> observations = new HashMap<>();
+        Automaton a = new Automaton(first, alphabet, observations, propertyKeys);
+        Automaton b = new Automaton(second, alphabet, observations, propertyKeys);
+        if ((a.initial < 0) || (b.initial < 0)) {
+            boolean equivalent = (a.initial < 0) && (b.initial < 0);
+            return new EquivalenceResult(equivalent, new ArrayList<>());
+        }
+        if (isEquivalent(a, b)) {
+            return new EquivalenceResult(true, new ArrayList<>());
+        }
+        Message[] messages = new Message[alphabet.size()];
+        alphabet.forEach((m, id) -> messages[id] = m);
+        return new EquivalenceResult(false, findDistinguishingSequence(a, b, messages));
+    }
+
+    /**
+     * Decides the equivalence of the automata (Hopcroft-Karp)
+     *
+     * @param a the first automaton
+     * @param b the second automaton
+     * @return true if equivalent, false otherwise
+     */
+    private static boolean isEquivalent(Automaton a, Automaton b) {
+        int offset = a.size();
+        int[] parents = new int[offset + b.size()];
+        int[] sizes = new int[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+            sizes[i] = 1;
+        }
+        if (a.observations[a.initial] != b.observations[b.initial]) {
+            return false;
+        }
+        union(parents, sizes, a.initial, offset + b.initial);
+        int[] pending = new int[2 * parents.length];
+        int top = 0;
+        pending[top++] = a.initial;
+        pending[top++] = b.initial;
+        while (top > 0) {
+            int q = pending[--top];
+            int p = pending[--top];
+            int i = a.offsets[p];
+            int j = b.offsets[q];
+            // Messages with explicit transitions in any state (merged by id) and unknown messages
+            while (true) {
+                int message;
+                if ((i < a.offsets[p + 1]) && ((j == b.offsets[q + 1]) || (a.messages[i] <= b.messages[j]))) {
+                    message = a.messages[i];
+                } else if (j < b.offsets[q + 1]) {
+                    message = b.messages[j];
+                } else {
+                    message = -1;
+                }
+                int pn = a.step(p, message);
+                int qn = b.step(q, message);
+                int rp = find(parents, pn);
+                int rq = find(parents, offset + qn);
+                if (rp != rq) {
+                    if (a.observations[pn] != b.observations[qn]) {
+                        return false;
+                    }
+                    union(parents, sizes, rp, rq);
+                    pending[top++] = pn;
+                    pending[top++] = qn;
+                }
+                if (message < 0) {
+                    break;
+                }
+                while ((i < a.offsets[p + 1]) && (a.messages[i] == message)) {
+                    i++;
+                }
+                while ((j < b.offsets[q + 1]) && (b.messages[j] == message)) {
+                    j++;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the root of the given element compressing the path
+     *
+     * @param parents the parent of every element
+     * @param element the element
+     * @return the root
+     */
+    private static int find(int[] parents, int element) {
+        while (parents[element] != element) {
+            parents[element] = parents[parents[element]];
+            element = parents[element];
+        }
+        return element;
+    }
+
+    /**
+     * Merges the sets of the given elements (by size)
+     *
+     * @param parents the parent of every element
+     * @param sizes the size of every set
+     * @param x the first element
+     * @param y the second element
+     */
+    private static void union(int[] parents, int[] sizes, int x, int y) {
+        int rx = find(parents, x);
+        int ry = find(parents, y);
+        if (rx != ry) {
+            if (sizes[rx] < sizes[ry]) {
+                int swap = rx;
+                rx = ry;
+                ry = swap;
+            }
+            parents[ry] = rx;
+            sizes[rx] += sizes[ry];
+        }
+    }
+
+    /**
+     * Finds the shortest sequence leading the automata to states
+     * with different observations (breadth first search over pairs).
+     *
+     * @param a the first automaton
+     * @param b the second automaton
+     * @param messages the messages by id
+     * @return the distinguishing sequence
+     */
+    private static List<Message> findDistinguishingSequence(Automaton a, Automaton b, Message[] messages) {
+        PairSet visited = new PairSet();
+        visited.add(pair(a.initial, b.initial));
+        // Every entry holds the pair of states, the parent entry and the message
+        int[] entries = new int[ENTRY * 64];
+        entries[0] = a.initial;
+        entries[1] = b.initial;
+        entries[2] = -1;
+        entries[3] = -1;
+        int size = 1;
+        for (int head = 0; head < size; head++) {
+            int p = entries[ENTRY * head];
+            int q = entries[ENTRY * head + 1];
+            if (a.observations[p] != b.observations[q]) {
+                LinkedList<Message> sequence = new LinkedList<>();
+                for (int entry = head; entries[ENTRY * entry + 2] >= 0; entry = entries[ENTRY * entry + 2]) {
+                    int message = entries[ENTRY * entry + 3];
+                    sequence.addFirst((message >= 0) ? messages[message] : Messages.ANY);
+                }
+                return new ArrayList<>(sequence);
+            }
+            // Unknown messages first, then the messages with explicit transitions in any state (merged by id)
+            int i = a.offsets[p];
+            int j = b.offsets[q];
+            int message = -1;
+            while (true) {
+                int pn = a.step(p, message);
+                int qn = b.step(q, message);
+                if (visited.add(pair(pn, qn))) {
+                    if (ENTRY * size == entries.length) {
+                        entries = Arrays.copyOf(entries, 2 * entries.length);
+                    }
+                    entries[ENTRY * size] = pn;
+                    entries[ENTRY * size + 1] = qn;
+                    entries[ENTRY * size + 2] = head;
+                    entries[ENTRY * size + 3] = message;
+                    size++;
+                }
+                while ((i < a.offsets[p + 1]) && (a.messages[i] <= message)) {
+                    i++;
+                }
+                while ((j < b.offsets[q + 1]) && (b.messages[j] <= message)) {
+                    j++;
+                }
+                if ((i < a.offsets[p + 1]) && ((j == b.offsets[q + 1]) || (a.messages[i] <= b.messages[j]))) {
+                    message = a.messages[i];
+                } else if (j < b.offsets[q + 1]) {
+                    message = b.messages[j];
+                } else {
+                    break;
+                }
+            }
+        }
+        throw new IllegalStateException("No distinguishing sequence found");
+    }
+
+    /**
+     * Encodes a pair of states as a long
+     *
+     * @param p the state of the first automaton
+     * @param q the state of the second automaton
+     * @return the encoded pair
+     */
+    private static long pair(int p, int q) {
+        return ((long) p << 32) | (q & 0xFFFFFFFFL);
+    }
+
+    /**
+     * An open addressing hash set of encoded pairs of states
+     */
+    private static class PairSet {
+
+        /** The marker of empty slots (pairs are never negative) */
+        private static final long EMPTY = -1;
+
+        /** The slots */
+        private long[] slots;
+
+        /** The number of pairs */
+        private int size;
+
+        /**
+         * Creates an empty set
+         */
+        PairSet() {
+            this.slots = new long[64];
+            Arrays.fill(slots, EMPTY);
+        }
+
+        /**
+         * Adds the given pair
+         *
+         * @param pair the encoded pair
+         * @return true if added, false if already present
+         */
+        boolean add(long pair) {
+            if (2 * (size + 1) > slots.length) {
+                long[] previous = slots;
+                slots = new long[2 * previous.length];
+                Arrays.fill(slots, EMPTY);
+                for (long value : previous) {
+                    if (value != EMPTY) {
+                        slots[findSlot(value)] = value;
+                    }
+                }
+            }
+            int slot = findSlot(pair);
+            if (slots[slot] == pair) {
+                return false;
+            }
+            slots[slot] = pair;
+            size++;
+            return true;
+        }
+
+        /**
+         * Finds the slot holding the given pair or
+         * the empty slot where it should be placed.
+         *
+         * @param pair the encoded pair
+         * @return the slot
+         */
+        private int findSlot(long pair) {
+            int mask = slots.length - 1;
+            int slot = (int) ((pair * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while ((slots[slot] != EMPTY) && (slots[slot] != pair)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * The int encoded transitions of a machine sorted by message id
+     */
+    private static class Automaton {
+
+        /** The start of the transitions of every state */
+        private final int[] offsets;
+
+        /** The message id of every transition */
+        private final int[] messages;
+
+        /** The target of every transition */
+        private final int[] targets;
+
+        /** The target of the ANY transition of every state (or -1) */
+        private final int[] fallbacks;
+
+        /** The observation class of every state */
+        private final int[] observations;
+
+        /** The id of the initial state (or -1 if empty) */
+        private final int initial;
+
+        /**
+         * Encodes the given machine
+         *
+         * @param stateMachine the state machine
+         * @param alphabet the ids of the messages (shared)
+         * @param classes the ids of the observations (shared)
+         * @param propertyKeys the keys of the observed properties
+         */
+        Automaton(StateMachine stateMachine, Map<Message, Integer> alphabet, Map<List<Object>, Integer> classes, String[] propertyKeys) {
+            TransitionGraph<State, Message> graph = stateMachine.getTransitionsIndex().snapshot();
+            int n = graph.getNodeCount();
+            int[] ids = new int[graph.getMessageCount()];
+            for (int m = 0; m < ids.length; m++) {
+                Message message = graph.getMessage(m);
+                ids[m] = Messages.ANY.equals(message) ? -1 : alphabet.computeIfAbsent(message, k -> alphabet.size());
+            }
+            this.offsets = new int[n + 1];
+            this.messages = new int[graph.getTransitionCount()];
+            this.targets = new int[graph.getTransitionCount()];
+            this.fallbacks = new int[n];
+            this.observations = new int[n];
+            int size = 0;
+            for (int node = 0; node < n; node++) {
+                fallbacks[node] = -1;
+                long[] sorted = new long[graph.getDegree(node)];
+                int count = 0;
+                for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                    if (ids[graph.getMessageId(t)] < 0) {
+                        fallbacks[node] = graph.getTarget(t);
+                    } else {
+                        sorted[count++] = ((long) ids[graph.getMessageId(t)] << 32) | graph.getTarget(t);
+                    }
+                }
+                Arrays.sort(sorted, 0, count);
+                for (int i = 0; i < count; i++) {
+                    messages[size] = (int) (sorted[i] >>> 32);
+                    targets[size++] = (int) sorted[i];
+                }
+                offsets[node + 1] = size;
+
+                State state = graph.getNode(node);
+                List<Object> key = new ArrayList<>();
+                key.add(state.isFinal());
+                for (String propertyKey : propertyKeys) {
+                    key.add(state.getProperty(propertyKey).orElse(null));
+                }
+                observations[node] = classes.computeIfAbsent(key, k -> classes.size());
+            }
+            this.initial = stateMachine.getTransitionsIndex().getFirst().map(s -> graph.indexOf(s.getName())).orElse(-1);
+        }
+
+        /**
+         * Retrieves the number of states
+         *
+         * @return the number of states
+         */
+        int size() {
+            return fallbacks.length;
+        }
+
+        /**
+         * Computes the target of the given state upon reception of
+         * the given message (or an unknown message if negative).
+         *
+         * @param state the state
+         * @param message the message id
+         * @return the target state
+         */
+        int step(int state, int message) {
+            if (message >= 0) {
+                int low = offsets[state];
+                int high = offsets[state + 1] - 1;
+                while (low <= high) {
+                    int middle = (low + high) >>> 1;
+                    if (messages[middle] < message) {
+                        low = middle + 1;
+                    } else if (messages[middle] > message) {
+                        high = middle - 1;
+                    } else {
+                        return targets[middle];
+                    }
+                }
+            }
+            return (fallbacks[state] >= 0) ? fallbacks[state] : state;
+        }
+    }
+}
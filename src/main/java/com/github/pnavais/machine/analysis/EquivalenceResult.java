@@ -0,0 +1,48 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.message.Message;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of checking the equivalence of two machines
+ * including the shortest sequence of messages distinguishing
+ * them (if not equivalent).
+ */
+@Getter
+public class EquivalenceResult {
+
+    /** Flag indicating whether the machines are equivalent */
+    private final boolean equivalent;
+
+    /** The shortest sequence of messages leading the machines to distinguishable states */
+    private final List<Message> distinguishingSequence;
+
+    /**
+     * Creates the result
+     *
+     * @param equivalent true if the machines are equivalent
+     * @param distinguishingSequence the distinguishing sequence (empty if equivalent)
+     */
+    public EquivalenceResult(boolean equivalent, List<Message> distinguishingSequence) {
+        this.equivalent = equivalent;
+        this.distinguishingSequence = Collections.unmodifiableList(distinguishingSequence);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.AbstractNode;
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * Performs structural analysis of the transitions of an index
+ * (reachability, strongly connected components, trap states and
+ * dead transitions) over a snapshot of the index in compressed sparse
+ * row layout.
+ * <p>
+ * Sets of states and transitions are represented as bit sets of their ids in the
+ * snapshot (see {@link TransitionGraph}). Reachability is computed using a level
+ * synchronous breadth first search expanding big frontiers in parallel, while strongly
+ * connected components are computed using an iterative version of Tarjan's algorithm
+ * so deep graphs do not overflow the stack.
+ * </p>
+ * The results are computed on demand and cached. This class is not thread safe.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+public class GraphAnalyzer<N extends Node, M extends Message> {
+
+    /** The minimum size of the frontiers expanded in parallel */
+    private static final int PARALLEL_THRESHOLD = 1024;
+
+    /** The number of frontier nodes expanded by every parallel task */
+    private static final int CHUNK_SIZE = 256;
+
+    /** The analyzed graph */
+    @Getter
+    private final TransitionGraph<N, M> graph;
+
+    /** The id of the initial node or -1 if none */
+    @Getter
+    private final int initial;
+
+    /** The nodes reachable from the initial one */
+    private BitSet reachable;
+
+    /** The transposed graph */
+    private TransitionGraph<N, M> transposed;
+
+    /** The strongly connected component of every node */
+    private int[] componentIds;
+
+    /** The number of strongly connected components */
+    private int componentCount;
+
+    /**
+     * Creates the analyzer for the given graph
+     *
+     * @param graph the graph to analyze
+     * @param initial the id of the initial node or -1 if none
+     */
+    public GraphAnalyzer(@NonNull TransitionGraph<N, M> graph, int initial) {
+        if ((initial < -1) || (initial >= graph.getNodeCount())) {
+            throw new IllegalArgumentException("Invalid initial node [" + initial + "]");
+        }
+        this.graph = graph;
+        this.initial = initial;
+    }
+
+    /**
+     * Creates the analyzer for a snapshot of the given index
+     * using its first node as initial node.
+     *
+     * @param index the transition index
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the analyzer
+     */
+    public static <N extends Node, M extends Message> GraphAnalyzer<N, M> of(@NonNull TransitionIndex<N, M, ?> index) {
+        TransitionGraph<N, M> graph = index.snapshot();
+        return new GraphAnalyzer<>(graph, index.getFirst().map(n -> graph.indexOf(n.getName())).orElse(-1));
+    }
+
+    /**
+     * Retrieves the ids of the nodes reachable from the initial
+     * node (including itself).
+     *
+     * @return the ids of the reachable nodes
+     */
+    public BitSet getReachable() {
+        if (reachable == null) {
+            reachable = (initial >= 0) ? search(graph, new int[]{ initial }) : new BitSet();
+        }
+        return (BitSet) reachable.clone();
+    }
+
+    /**
+     * Retrieves the ids of the nodes reachable from
+     * any of the given ones (including themselves).
+     *
+     * @param sources the ids of the source nodes
+     * @return the ids of the reachable nodes
+     */
+    public BitSet getReachable(int... sources) {
+        return search(graph, sources);
+    }
+
+    /**
+     * Retrieves the nodes reachable from the initial node
+     *
+     * @return the reachable nodes
+     */
+    public List<N> getReachableStates() {
+        return toNodes(getReachable());
+    }
+
+    /**
+     * Retrieves the nodes not reachable from the initial node
+     *
+     * @return the unreachable nodes
+     */
+    public List<N> getUnreachableStates() {
+        BitSet unreachable = getReachable();
+        unreachable.flip(0, graph.getNodeCount());
+        return toNodes(unreachable);
+    }
+
+    /**
+     * Retrieves the ids of the nodes having no path to a final node,
+     * using {@link AbstractNode#isFinal()} to identify final nodes.
+     *
+     * @return the ids of the trap nodes
+     */
+    public BitSet getTraps() {
+        return getTraps(n -> (n instanceof AbstractNode) && ((AbstractNode) n).isFinal());
+    }
+
+    /**
+     * Retrieves the ids of the nodes having no path to a node
+     * accepted by the given predicate.
+     *
+     * @param isFinal the predicate identifying final nodes
+     * @return the ids of the trap nodes
+     */
+    public BitSet getTraps(@NonNull Predicate<N> isFinal) {
+        int[] finals = IntStream.range(0, graph.getNodeCount()).filter(i -> isFinal.test(graph.getNode(i))).toArray();
+        if (transposed == null) {
+            transposed = graph.transpose();
+        }
+        BitSet traps = search(transposed, finals);
+        traps.flip(0, graph.getNodeCount());
+        return traps;
+    }
+
+    /**
+     * Retrieves the nodes having no path to a final node.
+     * Be aware that all nodes are traps if there are
+     * no final nodes.
+     *
+     * @return the trap nodes
+     */
+    public List<N> getTrapStates() {
+        return toNodes(getTraps());
+    }
+
+    /**
+     * Retrieves the positions (see {@link TransitionGraph#getOffset(int)}) of
+     * the dead transitions i.e. transitions that can never be
+     * performed as their origin is not reachable from the initial node.
+     *
+     * @return the positions of the dead transitions
+     */
+    public BitSet getDeadTransitionPositions() {
+        BitSet live = getReachable();
+        BitSet dead = new BitSet(graph.getTransitionCount());
+        for (int node = live.nextClearBit(0); node < graph.getNodeCount(); node = live.nextClearBit(node + 1)) {
+            dead.set(graph.getOffset(node), graph.getOffset(node + 1));
+        }
+        return dead;
+    }
+
+    /**
+     * Retrieves the dead transitions i.e. transitions that can
+     * never be performed as their origin is not reachable from the
+     * initial node.
+     *
+     * @param factory the factory of the transition instances
+     * @param <T> the type of Transition
+     * @return the dead transitions
+     */
+    public <T> List<T> getDeadTransitions(@NonNull TransitionGraph.TransitionFactory<N, M, T> factory) {
+        List<T> transitions = new ArrayList<>();
+        BitSet live = getReachable();
+        for (int node = live.nextClearBit(0); node < graph.getNodeCount(); node = live.nextClearBit(node + 1)) {
+            for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                transitions.add(factory.create(graph.getNode(node), graph.getMessage(graph.getMessageId(t)), graph.getNode(graph.getTarget(t))));
+            }
+        }
+        return transitions;
+    }
+
+    /**
+     * Retrieves the strongly connected component of every node.
+     * Components are numbered in reverse topological order i.e.
+     * transitions between components always lead to a component
+     * with a lower number.
+     *
+     * @return the component of every node
+     */
+    public int[] getComponentIds() {
+        computeComponents();
+        return componentIds.clone();
+    }
+
+    /**
+     * Retrieves the number of strongly connected components
+     *
+     * @return the number of components
+     */
+    public int getComponentCount() {
+        computeComponents();
+        return componentCount;
+    }
+
+    /**
+     * Retrieves the nodes of every strongly connected component
+     * in reverse topological order.
+     *
+     * @return the strongly connected components
+     */
+    public List<List<N>> getStronglyConnectedComponents() {
+        computeComponents();
+        List<List<N>> components = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            components.add(new ArrayList<>());
+        }
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            components.get(componentIds[node]).add(graph.getNode(node));
+        }
+        return components;
+    }
+
+    /**
+     * Computes the strongly connected components using an iterative
+     * version of Tarjan's algorithm (explicit call stack).
+     */
+    private void computeComponents() {
+        if (componentIds != null) {
+            return;
+        }
+
+        int n = graph.getNodeCount();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] components = new int[n];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(n);
+        int[] stack = new int[n];
+        int[] callNodes = new int[n];
+        int[] callEdges = new int[n];
+        int stackSize = 0;
+        int counter = 0;
+        int count = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = low[root] = counter++;
+            stack[stackSize++] = root;
+            onStack.set(root);
+            callNodes[0] = root;
+            callEdges[0] = graph.getOffset(root);
+            int depth = 1;
+
+            while (depth > 0) {
+                int node = callNodes[depth - 1];
+                int edge = callEdges[depth - 1];
+                if (edge < graph.getOffset(node + 1)) {
+                    callEdges[depth - 1]++;
+                    int target = graph.getTarget(edge);
+                    if (index[target] < 0) {
+                        // Descend into the target
+                        index[target] = low[target] = counter++;
+                        stack[stackSize++] = target;
+                        onStack.set(target);
+                        callNodes[depth] = target;
+                        callEdges[depth] = graph.getOffset(target);
+                        depth++;
+                    } else if (onStack.get(target)) {
+                        low[node] = Math.min(low[node], index[target]);
+                    }
+                } else {
+                    if (low[node] == index[node]) {
+                        // Pop the component rooted at the node
+                        int member;
+                        do {
+                            member = stack[--stackSize];
+                            onStack.clear(member);
+                            components[member] = count;
+                        } while (member != node);
+                        count++;
+                    }
+                    depth--;
+                    if (depth > 0) {
+                        int parent = callNodes[depth - 1];
+                        low[parent] = Math.min(low[parent], low[node]);
+                    }
+                }
+            }
+        }
+
+        this.componentIds = components;
+        this.componentCount = count;
+    }
+
+    /**
+     * Performs a level synchronous breadth first search from the given
+     * sources expanding big frontiers in parallel.
+     *
+     * @param target the graph to search
+     * @param sources the ids of the source nodes
+     * @return the ids of the visited nodes
+     */
+    private static BitSet search(TransitionGraph<?, ?> target, int[] sources) {
+        ConcurrentBitSet visited = new ConcurrentBitSet(target.getNodeCount());
+        int[] frontier = Arrays.stream(sources).filter(visited::set).toArray();
+        while (frontier.length > 0) {
+            int[] current = frontier;
+            if (current.length < PARALLEL_THRESHOLD) {
+                frontier = expand(target, current, 0, current.length, visited);
+            } else {
+                int chunks = (current.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                int[][] expanded = IntStream.range(0, chunks).parallel()
+                        .mapToObj(c -> expand(target, current, c * CHUNK_SIZE, Math.min(current.length, (c + 1) * CHUNK_SIZE), visited))
+                        .toArray(int[][]::new);
+                frontier = new int[Arrays.stream(expanded).mapToInt(e -> e.length).sum()];
+                int position = 0;
+                for (int[] e : expanded) {
+                    System.arraycopy(e, 0, frontier, position, e.length);
+                    position += e.length;
+                }
+            }
+        }
+        return visited.toBitSet();
+    }
+
+    /**
+     * Expands the given range of the frontier collecting the
+     * nodes not visited yet.
+     *
+     * @param target the graph to search
+     * @param frontier the frontier
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param visited the visited nodes
+     * @return the next frontier
+     */
+    private static int[] expand(TransitionGraph<?, ?> target, int[] frontier, int from, int to, ConcurrentBitSet visited) {
+        int[] next = new int[Math.max(16, to - from)];
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            int node = frontier[i];
+            for (int t = target.getOffset(node); t < target.getOffset(node + 1); t++) {
+                int adjacent = target.getTarget(t);
+                if ((!visited.get(adjacent)) && (visited.set(adjacent))) {
+                    if (size == next.length) {
+                        next = Arrays.copyOf(next, size * 2);
+                    }
+                    next[size++] = adjacent;
+                }
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    /**
+     * Retrieves the nodes of the given ids
+     *
+     * @param ids the ids of the nodes
+     * @return the nodes
+     */
+    private List<N> toNodes(BitSet ids) {
+        List<N> nodes = new ArrayList<>(ids.cardinality());
+        ids.stream().forEach(i -> nodes.add(graph.getNode(i)));
+        return nodes;
+    }
+}
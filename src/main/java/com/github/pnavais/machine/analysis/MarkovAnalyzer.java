@@ -0,0 +1,469 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Analyzes a state machine as a discrete time Markov chain whose transition
+ * probabilities are proportional to the weights of the transitions.
+ * <p>
+ * Final states and states without transitions of positive weight are absorbing. The transition
+ * matrix and its transpose are stored as sparse matrices in compressed sparse row layout and all
+ * the analyses are iterative methods whose sparse matrix-vector products run in parallel on a
+ * {@link ForkJoinPool} (the common pool by default) splitting the rows in blocks :
+ * </p>
+ * <ul>
+ *     <li>The stationary distribution reached from the initial state by power iteration
+ *     (over the lazy chain so periodic chains converge too).</li>
+ *     <li>The probability of ever hitting a set of states from every state and the
+ *     absorption probabilities from the initial state.</li>
+ *     <li>The expected number of steps to absorption from every state (infinite
+ *     when absorption is not certain).</li>
+ * </ul>
+ * An {@link IllegalStateException} is thrown when an analysis does not converge
+ * within the maximum number of iterations.
+ */
+public class MarkovAnalyzer {
+
+    /** The default convergence tolerance */
+    public static final double DEFAULT_TOLERANCE = 1e-10;
+
+    /** The default maximum number of iterations */
+    public static final int DEFAULT_MAX_ITERATIONS = 100_000;
+
+    /** The number of rows below which products are not split */
+    private static final int BLOCK_SIZE = 4096;
+
+    /** The weighted transitions */
+    private final WeightedTransitions transitions;
+
+    /** The transition matrix */
+    private final SparseMatrix matrix;
+
+    /** The transpose of the transition matrix */
+    private final SparseMatrix transpose;
+
+    /** The initial state id */
+    private int initial;
+
+    /**
+     * The maximum difference between two iterations to stop
+     */
+    @Getter
+    @Setter
+    private double tolerance = DEFAULT_TOLERANCE;
+
+    /**
+     * The maximum number of iterations
+     */
+    @Getter
+    @Setter
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+
+    /**
+     * The pool running the products
+     */
+    @Getter
+    @Setter
+    @NonNull
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    /**
+     * Creates the analyzer with the given weighted transitions
+     *
+     * @param transitions the weighted transitions
+     */
+    private MarkovAnalyzer(WeightedTransitions transitions) {
+        this.transitions = transitions;
+        int n = transitions.size();
+        double[] probabilities = new double[transitions.targets.length];
+        for (int i = 0; i < n; i++) {
+            for (int t = transitions.offsets[i]; t < transitions.offsets[i + 1]; t++) {
+                probabilities[t] = transitions.getProbability(i, t);
+            }
+        }
+        this.matrix = new SparseMatrix(transitions.offsets, transitions.targets, probabilities);
+        this.transpose = matrix.transpose(n);
+        this.initial = (n > 0) ? 0 : -1;
+    }
+
+    /**
+     * Creates an analyzer for the given state machine where all
+     * the transitions of a state are equally likely.
+     *
+     * @param stateMachine the state machine
+     * @return the analyzer
+     */
+    public static MarkovAnalyzer of(@NonNull StateMachine stateMachine) {
+        return of(stateMachine, t -> 1.0);
+    }
+
+    /**
+     * Creates an analyzer for the given state machine using as weight of every
+     * transition the numeric value of the given property in the target state
+     * (1 if not present).
+     *
+     * @param stateMachine the state machine
+     * @param propertyKey the key of the weight property
+     * @return the analyzer
+     */
+    public static MarkovAnalyzer weighted(@NonNull StateMachine stateMachine, @NonNull String propertyKey) {
+        return of(stateMachine, WeightedTransitions.property(propertyKey));
+    }
+
+    /**
+     * Creates an analyzer for the given state machine using
+     * the given weights for the transitions.
+     *
+     * @param stateMachine the state machine
+     * @param weights the weight of every transition
+     * @return the analyzer
+     */
+    public static MarkovAnalyzer of(@NonNull StateMachine stateMachine, @NonNull ToDoubleFunction<StateTransition> weights) {
+        return new MarkovAnalyzer(WeightedTransitions.of(stateMachine, weights));
+    }
+
+    /**
+     * Sets the state where the chain starts (the
+     * first state by default).
+     *
+     * @param stateName the name of the initial state
+     */
+    public void setInitialState(@NonNull String stateName) {
+        this.initial = idOf(stateName);
+    }
+
+    /**
+     * Computes the long run probability of being in every state starting
+     * from the initial state. For absorbing chains the probability concentrates
+     * in the absorbing states.
+     *
+     * @return the stationary distribution by state
+     */
+    public Map<State, Double> getStationaryDistribution() {
+        if (initial < 0) {
+            throw new NullStateException("Empty state machine");
+        }
+        double[] distribution = new double[transitions.size()];
+        distribution[initial] = 1;
+        boolean[] absorbing = transitions.absorbing;
+        // Lazy chain (P + I) / 2 sharing the stationary distribution of P
+        distribution = solve(transpose, distribution, (row, product, previous) ->
+                0.5 * previous + 0.5 * (product + (absorbing[row] ? previous : 0)), "Stationary distribution");
+        return toMap(distribution);
+    }
+
+    /**
+     * Computes the probability of ever reaching any of the
+     * given states from every state.
+     *
+     * @param stateNames the names of the target states
+     * @return the hitting probabilities by state
+     */
+    public Map<State, Double> getHittingProbabilities(@NonNull String... stateNames) {
+        boolean[] targets = new boolean[transitions.size()];
+        for (String stateName : stateNames) {
+            targets[idOf(stateName)] = true;
+        }
+        return toMap(computeHittingProbabilities(targets));
+    }
+
+    /**
+     * Computes the probability of ending in every absorbing
+     * state starting from the initial state.
+     *
+     * @return the absorption probabilities by absorbing state
+     */
+    public Map<State, Double> getAbsorptionProbabilities() {
+        // The long run mass of every absorbing state is its absorption probability
+        Map<State, Double> probabilities = new LinkedHashMap<>();
+        getStationaryDistribution().forEach((state, probability) -> {
+            if (transitions.absorbing[transitions.graph.indexOf(state.getName())]) {
+                probabilities.put(state, probability);
+            }
+        });
+        return Collections.unmodifiableMap(probabilities);
+    }
+
+    /**
+     * Computes the expected number of steps to reach an absorbing state
+     * from every state (infinite if absorption is not certain).
+     *
+     * @return the expected steps by state
+     */
+    public Map<State, Double> getExpectedSteps() {
+        boolean[] absorbing = transitions.absorbing;
+        double[] absorption = computeHittingProbabilities(absorbing);
+        double[] steps = new double[transitions.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = (absorption[i] < 1 - Math.sqrt(tolerance)) ? Double.POSITIVE_INFINITY : 0;
+        }
+        steps = solve(matrix, steps, (row, product, previous) ->
+                (absorbing[row] || Double.isInfinite(previous)) ? previous : 1 + product, "Expected steps");
+        return toMap(steps);
+    }
+
+    /**
+     * Computes the probability of ever reaching the given states
+     * from every state.
+     *
+     * @param targets the flag of the target states
+     * @return the hitting probabilities
+     */
+    private double[] computeHittingProbabilities(boolean[] targets) {
+        // States unable to reach the targets are excluded from the iterations
+        boolean[] reaching = transpose.reach(targets);
+        double[] probabilities = new double[transitions.size()];
+        for (int i = 0; i < probabilities.length; i++) {
+            probabilities[i] = targets[i] ? 1 : 0;
+        }
+        return solve(matrix, probabilities, (row, product, previous) ->
+                (targets[row] || !reaching[row]) ? previous : product, "Hitting probabilities");
+    }
+
+    /**
+     * Iterates the given update using the product of the matrix and
+     * the current vector until the maximum difference between iterations
+     * falls below the tolerance.
+     *
+     * @param m the matrix
+     * @param vector the initial vector
+     * @param update the update of every row
+     * @param analysis the name of the analysis
+     * @return the solution
+     */
+    private double[] solve(SparseMatrix m, double[] vector, RowUpdate update, String analysis) {
+        double[] next = new double[vector.length];
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            double delta = pool.invoke(new Product(m, vector, next, update, 0, vector.length));
+            double[] swap = vector;
+            vector = next;
+            next = swap;
+            if (delta <= tolerance) {
+                return vector;
+            }
+        }
+        throw new IllegalStateException(analysis + " did not converge after [" + maxIterations + "] iterations");
+    }
+
+    /**
+     * Retrieves the id of the given state
+     *
+     * @param stateName the name of the state
+     * @return the state id
+     */
+    private int idOf(String stateName) {
+        int node = transitions.graph.indexOf(stateName);
+        if (node < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        return node;
+    }
+
+    /**
+     * Converts the given values into a map by state
+     *
+     * @param values the values by state id
+     * @return the values by state
+     */
+    private Map<State, Double> toMap(double[] values) {
+        Map<State, Double> valueMap = new LinkedHashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            valueMap.put(transitions.graph.getNode(i), values[i]);
+        }
+        return Collections.unmodifiableMap(valueMap);
+    }
+
+    /**
+     * Computes the new value of a row
+     */
+    @FunctionalInterface
+    private interface RowUpdate {
+
+        /**
+         * Computes the new value of the row
+         *
+         * @param row the row
+         * @param product the product of the row and the current vector
+         * @param previous the current value of the row
+         * @return the new value
+         */
+        double apply(int row, double product, double previous);
+    }
+
+    /**
+     * A sparse matrix in compressed sparse row layout
+     */
+    private static class SparseMatrix {
+
+        /** The position of the first entry of every row (plus the total) */
+        private final int[] offsets;
+
+        /** The column of every entry */
+        private final int[] columns;
+
+        /** The value of every entry */
+        private final double[] values;
+
+        /**
+         * Creates the matrix from its arrays (not copied)
+         *
+         * @param offsets the position of the first entry of every row
+         * @param columns the column of every entry
+         * @param values the value of every entry
+         */
+        SparseMatrix(int[] offsets, int[] columns, double[] values) {
+            this.offsets = offsets;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /**
+         * Computes the transpose of this square matrix
+         *
+         * @param n the number of rows
+         * @return the transpose
+         */
+        SparseMatrix transpose(int n) {
+            int[] transposedOffsets = new int[n + 1];
+            for (int column : columns) {
+                transposedOffsets[column + 1]++;
+            }
+            for (int i = 0; i < n; i++) {
+                transposedOffsets[i + 1] += transposedOffsets[i];
+            }
+            int[] positions = Arrays.copyOf(transposedOffsets, n);
+            int[] transposedColumns = new int[columns.length];
+            double[] transposedValues = new double[values.length];
+            for (int row = 0; row < n; row++) {
+                for (int e = offsets[row]; e < offsets[row + 1]; e++) {
+                    int position = positions[columns[e]]++;
+                    transposedColumns[position] = row;
+                    transposedValues[position] = values[e];
+                }
+            }
+            return new SparseMatrix(transposedOffsets, transposedColumns, transposedValues);
+        }
+
+        /**
+         * Finds the rows reachable from the given ones
+         * following the non zero entries.
+         *
+         * @param sources the flag of the source rows
+         * @return the flag of the reachable rows
+         */
+        boolean[] reach(boolean[] sources) {
+            boolean[] reached = Arrays.copyOf(sources, sources.length);
+            int[] pending = new int[sources.length];
+            int size = 0;
+            for (int i = 0; i < sources.length; i++) {
+                if (sources[i]) {
+                    pending[size++] = i;
+                }
+            }
+            while (size > 0) {
+                int row = pending[--size];
+                for (int e = offsets[row]; e < offsets[row + 1]; e++) {
+                    if (!reached[columns[e]]) {
+                        reached[columns[e]] = true;
+                        pending[size++] = columns[e];
+                    }
+                }
+            }
+            return reached;
+        }
+    }
+
+    /**
+     * Computes a block of rows of the product of a sparse matrix
+     * and a vector, splitting it among the workers of the pool.
+     * Yields the maximum difference between the old and new values.
+     */
+    private static class Product extends RecursiveTask<Double> {
+
+        /** The matrix */
+        private final SparseMatrix m;
+
+        /** The current vector */
+        private final double[] vector;
+
+        /** The next vector */
+        private final double[] next;
+
+        /** The update of every row */
+        private final RowUpdate update;
+
+        /** The first row (inclusive) */
+        private final int from;
+
+        /** The last row (exclusive) */
+        private final int to;
+
+        /**
+         * Creates the product task for the given rows
+         *
+         * @param m the matrix
+         * @param vector the current vector
+         * @param next the next vector
+         * @param update the update of every row
+         * @param from the first row
+         * @param to the last row
+         */
+        Product(SparseMatrix m, double[] vector, double[] next, RowUpdate update, int from, int to) {
+            this.m = m;
+            this.vector = vector;
+            this.next = next;
+            this.update = update;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from > BLOCK_SIZE) {
+                int middle = (from + to) >>> 1;
+                Product left = new Product(m, vector, next, update, from, middle);
+                left.fork();
+                double right = new Product(m, vector, next, update, middle, to).compute();
+                return Math.max(left.join(), right);
+            }
+            double delta = 0;
+            for (int row = from; row < to; row++) {
+                double product = 0;
+                for (int e = m.offsets[row]; e < m.offsets[row + 1]; e++) {
+                    product += m.values[e] * vector[m.columns[e]];
+                }
+                next[row] = update.apply(row, product, vector[row]);
+                if (next[row] != vector[row]) {
+                    delta = Math.max(delta, Math.abs(next[row] - vector[row]));
+                }
+            }
+            return delta;
+        }
+    }
+}
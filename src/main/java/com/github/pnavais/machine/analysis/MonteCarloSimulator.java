@@ -0,0 +1,255 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.SplittableRandom;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Simulates random walks over a state machine whose transitions
+ * are weighted by their probability of being taken.
+ * <p>
+ * Walks start in the initial state and pick every transition with a probability proportional
+ * to its weight until an absorbing state (a final state or a state without transitions of positive
+ * weight) is reached or the maximum number of steps is exceeded. Messages are not sent, i.e. message
+ * filters and ANY fallbacks have no special meaning, every transition is just a weighted edge.
+ * </p>
+ * The weights are compiled into cumulative arrays in compressed sparse row layout so every step
+ * is a random number and a binary search without allocations. Walks are run in parallel in chunks,
+ * every chunk with its own {@link SplittableRandom} split from the seed in advance so the results
+ * are reproducible for a given seed regardless of the scheduling. Every worker accumulates the
+ * counts of all its chunks in its own arrays, merged once at the end.
+ */
+public class MonteCarloSimulator {
+
+    /** The default maximum number of steps of every walk */
+    public static final int DEFAULT_MAX_STEPS = 1000;
+
+    /** The number of walks of every chunk */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** The weighted transitions */
+    private final WeightedTransitions transitions;
+
+    /** The position of the first weighted transition of every state (plus the total) */
+    private final int[] offsets;
+
+    /** The cumulative weights of the transitions of every state */
+    private final double[] cumulative;
+
+    /** The target state ids of the weighted transitions */
+    private final int[] targets;
+
+    /** The flag of absorbing states */
+    private final boolean[] absorbing;
+
+    /** The initial state id */
+    private int initial;
+
+    /**
+     * The maximum number of steps of every walk
+     */
+    @Getter
+    @Setter
+    private int maxSteps = DEFAULT_MAX_STEPS;
+
+    /**
+     * The seed of the random number generators
+     */
+    @Getter
+    @Setter
+    private long seed = new SplittableRandom().nextLong();
+
+    /**
+     * Creates the simulator with the given weighted transitions
+     *
+     * @param transitions the weighted transitions
+     */
+    private MonteCarloSimulator(WeightedTransitions transitions) {
+        this.transitions = transitions;
+        this.offsets = transitions.offsets;
+        this.cumulative = transitions.cumulative;
+        this.targets = transitions.targets;
+        this.absorbing = transitions.absorbing;
+        this.initial = (transitions.size() > 0) ? 0 : -1;
+    }
+
+    /**
+     * Creates a simulator for the given state machine where all
+     * the transitions of a state are equally likely.
+     *
+     * @param stateMachine the state machine
+     * @return the simulator
+     */
+    public static MonteCarloSimulator of(@NonNull StateMachine stateMachine) {
+        return of(stateMachine, t -> 1.0);
+    }
+
+    /**
+     * Creates a simulator for the given state machine using as weight of every
+     * transition the numeric value of the given property in the target state
+     * (1 if not present).
+     *
+     * @param stateMachine the state machine
+     * @param propertyKey the key of the weight property
+     * @return the simulator
+     */
+    public static MonteCarloSimulator weighted(@NonNull StateMachine stateMachine, @NonNull String propertyKey) {
+        return of(stateMachine, WeightedTransitions.property(propertyKey));
+    }
+
+    /**
+     * Creates a simulator for the given state machine using
+     * the given weights for the transitions.
+     *
+     * @param stateMachine the state machine
+     * @param weights the weight of every transition
+     * @return the simulator
+     */
+    public static MonteCarloSimulator of(@NonNull StateMachine stateMachine, @NonNull ToDoubleFunction<StateTransition> weights) {
+        return new MonteCarloSimulator(WeightedTransitions.of(stateMachine, weights));
+    }
+
+    /**
+     * Sets the state where the walks start (the
+     * first state by default).
+     *
+     * @param stateName the name of the initial state
+     */
+    public void setInitialState(@NonNull String stateName) {
+        int node = transitions.graph.indexOf(stateName);
+        if (node < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        this.initial = node;
+    }
+
+    /**
+     * Runs the given number of random walks in parallel
+     *
+     * @param walks the number of walks
+     * @return the result of the simulation
+     */
+    public SimulationResult simulate(long walks) {
+        if (initial < 0) {
+            throw new NullStateException("Empty state machine");
+        }
+        if (walks < 0) {
+            throw new IllegalArgumentException("The number of walks cannot be negative");
+        }
+        long chunks = (walks + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (chunks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many walks [" + walks + "]");
+        }
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[(int) chunks];
+        for (int c = 0; c < randoms.length; c++) {
+            randoms[c] = root.split();
+        }
+
+        Tally tally = WorkerTally.forEach(randoms.length, Tally::new,
+                (t, c) -> t.walk(randoms[c], (int) Math.min(CHUNK_SIZE, walks - (long) c * CHUNK_SIZE)));
+        return new SimulationResult(transitions.graph, walks, tally.visits, tally.absorbed, tally.lengths, tally.truncated);
+    }
+
+    /**
+     * The counts accumulated by a worker
+     */
+    private class Tally extends WorkerTally<Tally> {
+
+        /** The visits of every state */
+        private final long[] visits = new long[transitions.size()];
+
+        /** The walks absorbed in every state */
+        private final long[] absorbed = new long[transitions.size()];
+
+        /** The number of absorbed walks by length */
+        private final long[] lengths = new long[maxSteps + 1];
+
+        /** The number of truncated walks */
+        private long truncated;
+
+        /**
+         * Runs the given number of walks
+         *
+         * @param random the random number generator
+         * @param count the number of walks
+         */
+        void walk(SplittableRandom random, int count) {
+            for (int w = 0; w < count; w++) {
+                int node = initial;
+                int steps = 0;
+                visits[node]++;
+                while (!absorbing[node] && (steps < maxSteps)) {
+                    node = targets[pick(node, random)];
+                    steps++;
+                    visits[node]++;
+                }
+                if (absorbing[node]) {
+                    absorbed[node]++;
+                    lengths[steps]++;
+                } else {
+                    truncated++;
+                }
+            }
+        }
+
+        /**
+         * Picks a random transition of the given state
+         *
+         * @param node the state id
+         * @param random the random number generator
+         * @return the position of the transition
+         */
+        private int pick(int node, SplittableRandom random) {
+            int low = offsets[node];
+            int high = offsets[node + 1] - 1;
+            if (low == high) {
+                return low;
+            }
+            double value = random.nextDouble() * cumulative[high];
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] <= value) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Merges the counts of the given tally
+         *
+         * @param other the other tally
+         */
+        @Override
+        void merge(Tally other) {
+            add(visits, other.visits);
+            add(absorbed, other.absorbed);
+            add(lengths, other.lengths);
+            truncated += other.truncated;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.message.Message;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A path between two nodes i.e. the sequence of nodes
+ * traversed (including both ends) and the messages
+ * triggering every transition along with its total cost.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+@Getter
+public class Path<N extends Node, M extends Message> {
+
+    /** The nodes traversed */
+    private final List<N> nodes;
+
+    /** The messages triggering the transitions */
+    private final List<M> messages;
+
+    /** The total cost of the transitions */
+    private final double cost;
+
+    /**
+     * Creates the path
+     *
+     * @param nodes the nodes traversed
+     * @param messages the messages triggering the transitions
+     * @param cost the total cost
+     */
+    public Path(List<N> nodes, List<M> messages, double cost) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.messages = Collections.unmodifiableList(messages);
+        this.cost = cost;
+    }
+
+    /**
+     * Retrieves the number of transitions of the path
+     *
+     * @return the length of the path
+     */
+    public int length() {
+        return messages.size();
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.model.State;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.util.*;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Finds the shortest paths between the nodes of a transition index
+ * i.e. the sequences of messages leading from a source node to a target node.
+ * <p>
+ * Paths are computed using a breadth first search or, when weights are given,
+ * Dijkstra's algorithm where the cost of a transition is the weight of its target
+ * node. Searches run over a snapshot of the index in compressed sparse row layout
+ * and the resulting trees are kept in a bounded cache by source node. The snapshot
+ * and the cache are discarded whenever the version of the index changes.
+ * </p>
+ * Optionally, for small indexes, a table with the first message of the shortest
+ * path between every pair of nodes can be computed. This class is not thread safe.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+public class PathFinder<N extends Node, M extends Message> {
+
+    /** The default number of search trees cached */
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    /** The maximum number of nodes allowed to compute the next hops table */
+    public static final int MAX_NEXT_HOP_NODES = 4096;
+
+    /** The transition index */
+    private final TransitionIndex<N, M, ?> index;
+
+    /** The weight of every node (or null for unweighted searches) */
+    private final ToDoubleFunction<N> weights;
+
+    /** The search trees by source node */
+    private final Map<Integer, SearchTree> trees;
+
+    /**
+     * Enables the table of next hops between all pairs of nodes
+     */
+    @Getter
+    @Setter
+    private boolean nextHopsEnabled;
+
+    /** The snapshot of the index */
+    private TransitionGraph<N, M> graph;
+
+    /** The version of the index used to build the snapshot */
+    private long version;
+
+    /** The cost of the transitions leading to every node */
+    private double[] costs;
+
+    /** The first transition of the shortest path between every pair of nodes */
+    private int[] nextHops;
+
+    /**
+     * Creates the path finder for the given index
+     *
+     * @param index the transition index
+     * @param weights the weight of every node (null for unweighted searches)
+     * @param cacheSize the maximum number of search trees cached
+     */
+    public PathFinder(@NonNull TransitionIndex<N, M, ?> index, ToDoubleFunction<N> weights, int cacheSize) {
+        if (cacheSize < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one search tree");
+        }
+        this.index = index;
+        this.weights = weights;
+        this.trees = new LinkedHashMap<Integer, SearchTree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, SearchTree> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Creates an unweighted path finder for the given index
+     *
+     * @param index the transition index
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the path finder
+     */
+    public static <N extends Node, M extends Message> PathFinder<N, M> of(@NonNull TransitionIndex<N, M, ?> index) {
+        return new PathFinder<>(index, null, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a weighted path finder for the given index using as cost of every
+     * transition the numeric value of the given property in the target state
+     * (1 if not present).
+     *
+     * @param index the transition index
+     * @param propertyKey the key of the weight property
+     * @param <M> the type of Message
+     * @return the path finder
+     */
+    public static <M extends Message> PathFinder<State, M> weighted(@NonNull TransitionIndex<State, M, ?> index, @NonNull String propertyKey) {
+        return new PathFinder<>(index, s -> s.getProperty(propertyKey).map(Double::parseDouble).orElse(1.0), DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Finds the shortest path between the given nodes
+     *
+     * @param source the name of the source node
+     * @param target the name of the target node
+     * @return the path or empty if the target is not reachable
+     */
+    public Optional<Path<N, M>> findPath(@NonNull String source, @NonNull String target) {
+        int targetId = idOf(target);
+        SearchTree tree = getTree(idOf(source));
+        if (Double.isInfinite(tree.distances[targetId])) {
+            return Optional.empty();
+        }
+        LinkedList<N> nodes = new LinkedList<>();
+        LinkedList<M> messages = new LinkedList<>();
+        nodes.add(graph.getNode(targetId));
+        for (int node = targetId; tree.parentEdges[node] >= 0; node = tree.parentNodes[node]) {
+            messages.addFirst(graph.getMessage(graph.getMessageId(tree.parentEdges[node])));
+            nodes.addFirst(graph.getNode(tree.parentNodes[node]));
+        }
+        return Optional.of(new Path<>(new ArrayList<>(nodes), new ArrayList<>(messages), tree.distances[targetId]));
+    }
+
+    /**
+     * Finds the messages of the shortest path between the given nodes
+     *
+     * @param source the name of the source node
+     * @param target the name of the target node
+     * @return the messages or empty if the target is not reachable
+     */
+    public Optional<List<M>> findMessages(@NonNull String source, @NonNull String target) {
+        return findPath(source, target).map(Path::getMessages);
+    }
+
+    /**
+     * Retrieves the cost of the shortest path between the given nodes
+     *
+     * @param source the name of the source node
+     * @param target the name of the target node
+     * @return the cost or infinity if the target is not reachable
+     */
+    public double getDistance(@NonNull String source, @NonNull String target) {
+        int targetId = idOf(target);
+        return getTree(idOf(source)).distances[targetId];
+    }
+
+    /**
+     * Retrieves the nodes reachable from the given one
+     * (including itself) ordered by distance.
+     *
+     * @param source the name of the source node
+     * @return the reachable nodes
+     */
+    public List<N> getReachableTargets(@NonNull String source) {
+        SearchTree tree = getTree(idOf(source));
+        List<N> nodes = new ArrayList<>(tree.settled);
+        for (int i = 0; i < tree.settled; i++) {
+            nodes.add(graph.getNode(tree.order[i]));
+        }
+        return nodes;
+    }
+
+    /**
+     * Retrieves the first message of the shortest path between the given nodes
+     * using the table of next hops if enabled.
+     *
+     * @param source the name of the source node
+     * @param target the name of the target node
+     * @return the message or empty if the target is not reachable or is the source itself
+     */
+    public Optional<M> getNextMessage(@NonNull String source, @NonNull String target) {
+        int sourceId = idOf(source);
+        int targetId = idOf(target);
+        if (!nextHopsEnabled) {
+            return findPath(source, target).filter(p -> p.length() > 0).map(p -> p.getMessages().get(0));
+        }
+        if (nextHops == null) {
+            nextHops = computeNextHops();
+        }
+        int edge = nextHops[sourceId * graph.getNodeCount() + targetId];
+        return (edge >= 0) ? Optional.of(graph.getMessage(graph.getMessageId(edge))) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the number of search trees currently cached
+     *
+     * @return the number of cached trees
+     */
+    public int getCachedTrees() {
+        return trees.size();
+    }
+
+    /**
+     * Retrieves the id of the given node in the current snapshot
+     *
+     * @param name the name of the node
+     * @return the id of the node
+     */
+    private int idOf(String name) {
+        refresh();
+        int id = graph.indexOf(name);
+        if (id < 0) {
+            throw new NullStateException("State [" + name + "] not found");
+        }
+        return id;
+    }
+
+    /**
+     * Takes a new snapshot of the index discarding the cached
+     * results if the index has been modified.
+     */
+    private void refresh() {
+        if ((graph == null) || (version != index.getVersion()) || (version == TransitionIndex.UNVERSIONED)) {
+            version = index.getVersion();
+            graph = index.snapshot();
+            trees.clear();
+            nextHops = null;
+            costs = new double[graph.getNodeCount()];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = (weights != null) ? weights.applyAsDouble(graph.getNode(i)) : 1.0;
+                if (!(costs[i] >= 0)) {
+                    throw new IllegalArgumentException("Invalid weight for state [" + graph.getName(i) + "]");
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves the search tree of the given source
+     * computing it if not cached.
+     *
+     * @param source the id of the source node
+     * @return the search tree
+     */
+    private SearchTree getTree(int source) {
+        SearchTree tree = trees.get(source);
+        if (tree == null) {
+            tree = search(source);
+            trees.put(source, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Computes the shortest paths tree from the given source
+     *
+     * @param source the id of the source node
+     * @return the search tree
+     */
+    private SearchTree search(int source) {
+        SearchTree tree = new SearchTree(graph.getNodeCount());
+        tree.distances[source] = 0;
+        if (weights == null) {
+            // Breadth first search (nodes are settled in queue order)
+            tree.order[tree.settled++] = source;
+            for (int head = 0; head < tree.settled; head++) {
+                int node = tree.order[head];
+                for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                    int target = graph.getTarget(t);
+                    if (Double.isInfinite(tree.distances[target])) {
+                        tree.distances[target] = tree.distances[node] + 1;
+                        tree.parentNodes[target] = node;
+                        tree.parentEdges[target] = t;
+                        tree.order[tree.settled++] = target;
+                    }
+                }
+            }
+        } else {
+            // Dijkstra's algorithm with lazy deletion of outdated heap entries
+            Heap heap = new Heap();
+            boolean[] done = new boolean[graph.getNodeCount()];
+            heap.push(0, source);
+            while (!heap.isEmpty()) {
+                double distance = heap.peekKey();
+                int node = heap.pop();
+                if (done[node] || (distance > tree.distances[node])) {
+                    continue;
+                }
+                done[node] = true;
+                tree.order[tree.settled++] = node;
+                for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                    int target = graph.getTarget(t);
+                    double candidate = distance + costs[target];
+                    if (candidate < tree.distances[target]) {
+                        tree.distances[target] = candidate;
+                        tree.parentNodes[target] = node;
+                        tree.parentEdges[target] = t;
+                        heap.push(candidate, target);
+                    }
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Computes the first transition of the shortest path between
+     * every pair of nodes.
+     *
+     * @return the table of next hops
+     */
+    private int[] computeNextHops() {
+        int n = graph.getNodeCount();
+        if (n > MAX_NEXT_HOP_NODES) {
+            throw new IllegalStateException("Too many states to compute the next hops [" + n + "]");
+        }
+        int[] table = new int[n * n];
+        Arrays.fill(table, -1);
+        for (int source = 0; source < n; source++) {
+            SearchTree tree = trees.containsKey(source) ? trees.get(source) : search(source);
+            // Parents are settled before their children
+            for (int i = 1; i < tree.settled; i++) {
+                int node = tree.order[i];
+                int parent = tree.parentNodes[node];
+                table[source * n + node] = (parent == source) ? tree.parentEdges[node] : table[source * n + parent];
+            }
+        }
+        return table;
+    }
+
+    /**
+     * The shortest paths tree from a source node
+     */
+    private static class SearchTree {
+
+        /** The distance to every node (infinity if not reachable) */
+        private final double[] distances;
+
+        /** The parent of every node in the tree (or -1 if none) */
+        private final int[] parentNodes;
+
+        /** The position of the transition from the parent (or -1 if none) */
+        private final int[] parentEdges;
+
+        /** The nodes in order of settlement */
+        private final int[] order;
+
+        /** The number of nodes settled */
+        private int settled;
+
+        /**
+         * Creates an empty tree
+         *
+         * @param size the number of nodes
+         */
+        SearchTree(int size) {
+            this.distances = new double[size];
+            this.parentNodes = new int[size];
+            this.parentEdges = new int[size];
+            this.order = new int[size];
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            Arrays.fill(parentNodes, -1);
+            Arrays.fill(parentEdges, -1);
+        }
+    }
+
+    /**
+     * A binary min heap of nodes keyed by distance
+     */
+    private static class Heap {
+
+        /** The keys of the entries */
+        private double[] keys = new double[16];
+
+        /** The nodes of the entries */
+        private int[] nodes = new int[16];
+
+        /** The number of entries */
+        private int size;
+
+        /**
+         * Adds a new entry
+         *
+         * @param key the key
+         * @param node the node
+         */
+        void push(double key, int node) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                nodes = Arrays.copyOf(nodes, size * 2);
+            }
+            int i = size++;
+            while ((i > 0) && (keys[(i - 1) >>> 1] > key)) {
+                int parent = (i - 1) >>> 1;
+                keys[i] = keys[parent];
+                nodes[i] = nodes[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+        }
+
+        /**
+         * Retrieves the minimum key
+         *
+         * @return the minimum key
+         */
+        double peekKey() {
+            return keys[0];
+        }
+
+        /**
+         * Removes the entry with the minimum key
+         *
+         * @return the node of the entry
+         */
+        int pop() {
+            int result = nodes[0];
+            double key = keys[--size];
+            int node = nodes[size];
+            int i = 0;
+            while ((i << 1) + 1 < size) {
+                int child = (i << 1) + 1;
+                if ((child + 1 < size) && (keys[child + 1] < keys[child])) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                nodes[i] = nodes[child];
+                i = child;
+            }
+            keys[i] = key;
+            nodes[i] = node;
+            return result;
+        }
+
+        /**
+         * Checks if the heap is empty
+         *
+         * @return true if empty, false otherwise
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
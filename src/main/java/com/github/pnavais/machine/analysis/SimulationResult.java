@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The aggregated outcome of a Monte Carlo simulation of random walks
+ * including the visits of every state, the absorption probabilities and
+ * the distribution of the lengths of the absorbed walks.
+ */
+public class SimulationResult {
+
+    /** The snapshot of the simulated machine */
+    private final TransitionGraph<State, Message> graph;
+
+    /** The visits of every state */
+    private final long[] visits;
+
+    /** The walks absorbed in every state */
+    private final long[] absorbed;
+
+    /** The number of absorbed walks by length */
+    private final long[] lengths;
+
+    /**
+     * The number of walks simulated
+     */
+    @Getter
+    private final long walks;
+
+    /**
+     * The number of walks stopped after the maximum number of steps
+     */
+    @Getter
+    private final long truncatedWalks;
+
+    /**
+     * Creates the result
+     *
+     * @param graph the snapshot of the simulated machine
+     * @param walks the number of walks
+     * @param visits the visits of every state
+     * @param absorbed the walks absorbed in every state
+     * @param lengths the number of absorbed walks by length
+     * @param truncatedWalks the number of truncated walks
+     */
+    SimulationResult(TransitionGraph<State, Message> graph, long walks, long[] visits, long[] absorbed, long[] lengths, long truncatedWalks) {
+        this.graph = graph;
+        this.walks = walks;
+        this.visits = visits;
+        this.absorbed = absorbed;
+        this.lengths = lengths;
+        this.truncatedWalks = truncatedWalks;
+    }
+
+    /**
+     * Retrieves the number of times every state was visited
+     * (including the initial state).
+     *
+     * @return the visits by state
+     */
+    public Map<State, Long> getVisitCounts() {
+        Map<State, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < visits.length; i++) {
+            if (visits[i] > 0) {
+                counts.put(graph.getNode(i), visits[i]);
+            }
+        }
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * Retrieves the average number of visits
+     * of every state per walk.
+     *
+     * @return the visit frequencies by state
+     */
+    public Map<State, Double> getVisitFrequencies() {
+        return toFrequencies(visits);
+    }
+
+    /**
+     * Retrieves the probability of ending the walks in every absorbing
+     * state (final states and states without transitions).
+     *
+     * @return the absorption probabilities by state
+     */
+    public Map<State, Double> getAbsorptionProbabilities() {
+        return toFrequencies(absorbed);
+    }
+
+    /**
+     * Retrieves the number of absorbed walks of every length,
+     * i.e. position l holds the walks absorbed after l transitions.
+     *
+     * @return the path length histogram
+     */
+    public long[] getPathLengths() {
+        return Arrays.copyOf(lengths, lengths.length);
+    }
+
+    /**
+     * Retrieves the mean length of the absorbed walks
+     *
+     * @return the mean path length (NaN if no walk was absorbed)
+     */
+    public double getMeanPathLength() {
+        long count = 0;
+        double total = 0;
+        for (int l = 0; l < lengths.length; l++) {
+            count += lengths[l];
+            total += (double) l * lengths[l];
+        }
+        return (count > 0) ? total / count : Double.NaN;
+    }
+
+    /**
+     * Retrieves the length not exceeded by the given
+     * fraction of the absorbed walks.
+     *
+     * @param fraction the fraction of walks (between 0 and 1)
+     * @return the path length percentile (-1 if no walk was absorbed)
+     */
+    public int getPathLengthPercentile(double fraction) {
+        if ((fraction < 0) || (fraction > 1)) {
+            throw new IllegalArgumentException("The fraction must be between 0 and 1");
+        }
+        long count = Arrays.stream(lengths).sum();
+        long accumulated = 0;
+        for (int l = 0; l < lengths.length; l++) {
+            accumulated += lengths[l];
+            if ((accumulated > 0) && (accumulated >= fraction * count)) {
+                return l;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Divides the given counts by the number of walks
+     * omitting the states without any count.
+     *
+     * @param counts the counts by state id
+     * @return the frequencies by state
+     */
+    private Map<State, Double> toFrequencies(long[] counts) {
+        Map<State, Double> frequencies = new LinkedHashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                frequencies.put(graph.getNode(i), (double) counts[i] / walks);
+            }
+        }
+        return Collections.unmodifiableMap(frequencies);
+    }
+
+    @Override
+    public String toString() {
+        return "Walks [" + walks + "] truncated [" + truncatedWalks + "] mean length [" + getMeanPathLength() + "]";
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * The structural differences between two versions of a state machine
+ * i.e. the states and transitions added or removed and the states whose
+ * final flag or properties changed. States are matched by name and
+ * transitions by origin, message and target.
+ */
+@Getter
+public class StateMachineDiff {
+
+    /** The states only present in the new version */
+    private final List<State> addedStates;
+
+    /** The states only present in the old version */
+    private final List<State> removedStates;
+
+    /** The states (in the new version) with a different final flag or properties */
+    private final List<State> modifiedStates;
+
+    /** The transitions only present in the new version */
+    private final List<StateTransition> addedTransitions;
+
+    /** The transitions only present in the old version */
+    private final List<StateTransition> removedTransitions;
+
+    /**
+     * Computes the differences between the given versions
+     *
+     * @param oldVersion the old version of the state machine
+     * @param newVersion the new version of the state machine
+     */
+    private StateMachineDiff(StateMachine oldVersion, StateMachine newVersion) {
+        TransitionGraph<State, Message> oldGraph = oldVersion.getTransitionsIndex().snapshot();
+        TransitionGraph<State, Message> newGraph = newVersion.getTransitionsIndex().snapshot();
+        this.addedStates = new ArrayList<>();
+        this.removedStates = new ArrayList<>();
+        this.modifiedStates = new ArrayList<>();
+        for (State state : newGraph.getNodes()) {
+            int id = oldGraph.indexOf(state.getName());
+            if (id < 0) {
+                addedStates.add(state);
+            } else if (isModified(oldGraph.getNode(id), state)) {
+                modifiedStates.add(state);
+            }
+        }
+        for (State state : oldGraph.getNodes()) {
+            if (newGraph.indexOf(state.getName()) < 0) {
+                removedStates.add(state);
+            }
+        }
+
+        Set<StateTransition> oldTransitions = transitions(oldGraph);
+        Set<StateTransition> newTransitions = transitions(newGraph);
+        this.addedTransitions = new ArrayList<>();
+        this.removedTransitions = new ArrayList<>();
+        newTransitions.stream().filter(t -> !oldTransitions.contains(t)).forEach(addedTransitions::add);
+        oldTransitions.stream().filter(t -> !newTransitions.contains(t)).forEach(removedTransitions::add);
+    }
+
+    /**
+     * Computes the differences between the given versions
+     *
+     * @param oldVersion the old version of the state machine
+     * @param newVersion the new version of the state machine
+     * @return the differences
+     */
+    public static StateMachineDiff of(@NonNull StateMachine oldVersion, @NonNull StateMachine newVersion) {
+        return new StateMachineDiff(oldVersion, newVersion);
+    }
+
+    /**
+     * Checks whether both versions are structurally identical
+     *
+     * @return true if no differences found, false otherwise
+     */
+    public boolean isEmpty() {
+        return addedStates.isEmpty() && removedStates.isEmpty() && modifiedStates.isEmpty()
+                && addedTransitions.isEmpty() && removedTransitions.isEmpty();
+    }
+
+    /**
+     * Checks whether the final flag or the properties of the state changed
+     *
+     * @param oldState the old version of the state
+     * @param newState the new version of the state
+     * @return true if modified, false otherwise
+     */
+    private static boolean isModified(State oldState, State newState) {
+        Map<String, String> oldProperties = oldState.hasProperties() ? oldState.getProperties() : Collections.emptyMap();
+        Map<String, String> newProperties = newState.hasProperties() ? newState.getProperties() : Collections.emptyMap();
+        return (oldState.isFinal() != newState.isFinal()) || !oldProperties.equals(newProperties);
+    }
+
+    /**
+     * Retrieves the transitions of the given graph in order
+     *
+     * @param graph the graph
+     * @return the transitions
+     */
+    private static Set<StateTransition> transitions(TransitionGraph<State, Message> graph) {
+        Set<StateTransition> transitions = new LinkedHashSet<>();
+        for (int node = 0; node < graph.getNodeCount(); node++) {
+            for (int t = graph.getOffset(node); t < graph.getOffset(node + 1); t++) {
+                transitions.add(new StateTransition(graph.getNode(node), graph.getMessage(graph.getMessageId(t)), graph.getNode(graph.getTarget(t))));
+            }
+        }
+        return transitions;
+    }
+}
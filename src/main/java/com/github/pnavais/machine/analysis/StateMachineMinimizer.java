@@ -0,0 +1,343 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.impl.AdaptiveMap;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Minimizes state machines merging equivalent states i.e. states
+ * which cannot be distinguished by any sequence of messages.
+ * <p>
+ * Only the states reachable from the first state are kept. Two states are considered
+ * equivalent if they share the same final flag and values of the selected properties and
+ * every message leads to equivalent states, taking into account that messages without
+ * transition fall back to the ANY transition (if present) or leave the machine in the
+ * current state. Instances of {@link State} subclasses (e.g. filtered states) carry
+ * additional behaviour so they are never merged with other states.
+ * </p>
+ * States and messages are encoded as ints and the equivalence classes are computed using
+ * Hopcroft's partition refinement algorithm in O(m·n·log n) for n states and m messages.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class StateMachineMinimizer {
+
+    /**
+     * Creates the minimal state machine equivalent to the given one.
+     * The states of the new machine are copies of the first state
+     * (in insertion order) of every equivalence class.
+     *
+     * @param stateMachine the state machine to minimize
+     * @param propertyKeys the keys of the properties that must match in equivalent states
+     * @return the minimal state machine
+     */
+    public static StateMachine minimize(@NonNull StateMachine stateMachine, String... propertyKeys) {
+        GraphAnalyzer<State, Message> analyzer = GraphAnalyzer.of(stateMachine.getTransitionsIndex());
+        TransitionGraph<State, Message> graph = analyzer.getGraph();
+        int[] states = analyzer.getReachable().stream().toArray();
+        int n = states.length;
+        int k = graph.getMessageCount();
+        if (n == 0) {
+            return new StateMachine(new StateTransitionMap());
+        }
+        if ((long) n * k >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The state machine is too big to be minimized");
+        }
+
+        int[] compact = new int[graph.getNodeCount()];
+        Arrays.fill(compact, -1);
+        for (int i = 0; i < n; i++) {
+            compact[states[i]] = i;
+        }
+
+        int[] delta = computeDelta(graph, states, compact);
+        int[] blocks = refine(delta, n, k, initialPartition(graph, states, propertyKeys));
+        return build(graph, states, compact, blocks, compact[analyzer.getInitial()]);
+    }
+
+    /**
+     * Computes the complete transition function of the reachable states.
+     * The target of state i upon message a is stored at position a·n + i.
+     *
+     * @param graph the graph
+     * @param states the graph ids of the reachable states
+     * @param compact the compact id of every graph id (or -1 if unreachable)
+     * @return the transition function
+     */
+    private static int[] computeDelta(TransitionGraph<State, Message> graph, int[] states, int[] compact) {
+        int n = states.length;
+        int any = graph.getMessages().indexOf(Messages.ANY);
+        int[] delta = new int[n * graph.getMessageCount()];
+        for (int i = 0; i < n; i++) {
+            // Messages without transition fall back to ANY or remain in the state
+            int fallback = (any >= 0) ? graph.getNext(states[i], any) : -1;
+            fallback = (fallback >= 0) ? compact[fallback] : i;
+            for (int a = 0; a < graph.getMessageCount(); a++) {
+                delta[a * n + i] = fallback;
+            }
+            for (int t = graph.getOffset(states[i]); t < graph.getOffset(states[i] + 1); t++) {
+                delta[graph.getMessageId(t) * n + i] = compact[graph.getTarget(t)];
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Assigns the initial block of every state using the final flag,
+     * the selected properties and the type of the state as key.
+     *
+     * @param graph the graph
+     * @param states the graph ids of the reachable states
+     * @param propertyKeys the keys of the properties
+     * @return the initial block of every state
+     */
+    private static int[] initialPartition(TransitionGraph<State, Message> graph, int[] states, String[] propertyKeys) {
+        Map<List<Object>, Integer> keys = new HashMap<>();
+        int[] initial = new int[states.length];
+        for (int i = 0; i < states.length; i++) {
+            State state = graph.getNode(states[i]);
+            List<Object> key = new ArrayList<>();
+            key.add(state.isFinal());
+            key.add((state.getClass() == State.class) ? State.class : state);
+            for (String propertyKey : propertyKeys) {
+                key.add(state.getProperty(propertyKey).orElse(null));
+            }
+            initial[i] = keys.computeIfAbsent(key, k -> keys.size());
+        }
+        return initial;
+    }
+
+    /**
+     * Refines the initial partition until all the states of every block
+     * lead to the same blocks upon every message (Hopcroft's algorithm).
+     *
+     * @param delta the transition function
+     * @param n the number of states
+     * @param k the number of messages
+     * @param initial the initial block of every state
+     * @return the final block of every state
+     */
+    private static int[] refine(int[] delta, int n, int k, int[] initial) {
+        // Inverse transition function in CSR layout (position a·n + target)
+        int[] predecessorOffsets = new int[n * k + 1];
+        for (int a = 0; a < k; a++) {
+            for (int i = 0; i < n; i++) {
+                predecessorOffsets[a * n + delta[a * n + i] + 1]++;
+            }
+        }
+        for (int i = 0; i < n * k; i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+        int[] predecessors = new int[n * k];
+        int[] positions = Arrays.copyOf(predecessorOffsets, n * k);
+        for (int a = 0; a < k; a++) {
+            for (int i = 0; i < n; i++) {
+                predecessors[positions[a * n + delta[a * n + i]]++] = i;
+            }
+        }
+
+        // Lay out the states grouped by block
+        int blockCount = Arrays.stream(initial).max().orElse(-1) + 1;
+        int[] first = new int[n];
+        int[] end = new int[n];
+        for (int block : initial) {
+            end[block]++;
+        }
+        for (int b = 0, position = 0; b < blockCount; b++) {
+            first[b] = position;
+            position += end[b];
+            end[b] = first[b];
+        }
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blocks = Arrays.copyOf(initial, n);
+        for (int i = 0; i < n; i++) {
+            location[i] = end[blocks[i]]++;
+            elements[location[i]] = i;
+        }
+
+        // Every block but the largest one is used as initial splitter
+        int largest = 0;
+        for (int b = 1; b < blockCount; b++) {
+            largest = (end[b] - first[b] > end[largest] - first[largest]) ? b : largest;
+        }
+        IntStack pending = new IntStack();
+        for (int b = 0; b < blockCount; b++) {
+            if (b != largest) {
+                for (int a = 0; a < k; a++) {
+                    pending.push(b * k + a);
+                }
+            }
+        }
+
+        int[] marked = new int[n];
+        IntStack touched = new IntStack();
+        int[] splitter = new int[n];
+        while (!pending.isEmpty()) {
+            int entry = pending.pop();
+            int block = entry / k;
+            int a = entry % k;
+
+            // Mark the predecessors of the splitter moving them to the front of their blocks
+            int size = end[block] - first[block];
+            System.arraycopy(elements, first[block], splitter, 0, size);
+            for (int s = 0; s < size; s++) {
+                int target = splitter[s];
+                for (int p = predecessorOffsets[a * n + target]; p < predecessorOffsets[a * n + target + 1]; p++) {
+                    int state = predecessors[p];
+                    int b = blocks[state];
+                    int boundary = first[b] + marked[b];
+                    if (location[state] >= boundary) {
+                        int other = elements[boundary];
+                        elements[boundary] = state;
+                        elements[location[state]] = other;
+                        location[other] = location[state];
+                        location[state] = boundary;
+                        if (marked[b]++ == 0) {
+                            touched.push(b);
+                        }
+                    }
+                }
+            }
+
+            // Split the touched blocks moving the smaller part to a new block
+            while (!touched.isEmpty()) {
+                int b = touched.pop();
+                int count = marked[b];
+                marked[b] = 0;
+                if (count == end[b] - first[b]) {
+                    continue;
+                }
+                int created = blockCount++;
+                if (count <= end[b] - first[b] - count) {
+                    first[created] = first[b];
+                    end[created] = first[b] + count;
+                    first[b] += count;
+                } else {
+                    first[created] = first[b] + count;
+                    end[created] = end[b];
+                    end[b] = first[created];
+                }
+                for (int i = first[created]; i < end[created]; i++) {
+                    blocks[elements[i]] = created;
+                }
+                for (int m = 0; m < k; m++) {
+                    pending.push(created * k + m);
+                }
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Builds the minimal state machine from the final partition
+     *
+     * @param graph the graph
+     * @param states the graph ids of the reachable states
+     * @param compact the compact id of every graph id (or -1 if unreachable)
+     * @param blocks the block of every state
+     * @param initial the compact id of the initial state
+     * @return the minimal state machine
+     */
+    private static StateMachine build(TransitionGraph<State, Message> graph, int[] states, int[] compact, int[] blocks, int initial) {
+        // The initial state represents its block, the first state the others
+        int[] representatives = new int[states.length];
+        Arrays.fill(representatives, -1);
+        representatives[blocks[initial]] = initial;
+        List<Integer> order = new ArrayList<>();
+        order.add(initial);
+        for (int i = 0; i < states.length; i++) {
+            if (representatives[blocks[i]] < 0) {
+                representatives[blocks[i]] = i;
+                order.add(i);
+            }
+        }
+
+        Map<Integer, State> copies = new HashMap<>();
+        for (int i : order) {
+            State state = graph.getNode(states[i]);
+            State copy = state;
+            if (state.getClass() == State.class) {
+                copy = new State(state.getName());
+                copy.merge(state);
+            }
+            copies.put(blocks[i], copy);
+        }
+
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        for (int i : order) {
+            Map<Message, State> messageStateMap = new AdaptiveMap<>();
+            for (int t = graph.getOffset(states[i]); t < graph.getOffset(states[i] + 1); t++) {
+                messageStateMap.put(graph.getMessage(graph.getMessageId(t)), copies.get(blocks[compact[graph.getTarget(t)]]));
+            }
+            transitionMap.put(copies.get(blocks[i]), messageStateMap);
+        }
+        return new StateMachine(new StateTransitionMap(transitionMap));
+    }
+
+    /**
+     * A growable stack of ints
+     */
+    private static class IntStack {
+
+        /** The elements */
+        private int[] elements = new int[16];
+
+        /** The number of elements */
+        private int size;
+
+        /**
+         * Pushes the given value
+         *
+         * @param value the value
+         */
+        void push(int value) {
+            if (size == elements.length) {
+                elements = Arrays.copyOf(elements, size * 2);
+            }
+            elements[size++] = value;
+        }
+
+        /**
+         * Pops the last value pushed
+         *
+         * @return the value
+         */
+        int pop() {
+            return elements[--size];
+        }
+
+        /**
+         * Checks if the stack is empty
+         *
+         * @return true if empty, false otherwise
+         */
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.FileImportException;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Replays recorded traces of messages against a state machine definition
+ * checking their conformance without instantiating any state machine.
+ * <p>
+ * Every trace is replayed by a lightweight cursor (an int state id) over an immutable
+ * snapshot of the definition in compressed sparse row layout, with the transitions of every
+ * state sorted by message id. Messages are resolved as the state machine does (direct
+ * transition or ANY fallback). A trace gets stuck when no transition is found for a
+ * message and aborts when a message is received in a final state, the replay of the trace
+ * stops in both cases. Message filters of custom states are not evaluated.
+ * </p>
+ * Traces are replayed in parallel by a fixed set of workers reading batches of traces in turns,
+ * every worker accumulating the counts by state in its own arrays for the whole replay, merged
+ * once at the end. The definition is captured at creation time so this class can be shared
+ * by several threads.
+ */
+public class TraceReplayer {
+
+    /** The default number of traces read at once by a worker */
+    public static final int DEFAULT_BATCH_SIZE = 1_024;
+
+    /** The default maximum number of non conformant traces retained in reports */
+    public static final int DEFAULT_MAX_VIOLATIONS = 10_000;
+
+    /** The snapshot of the definition */
+    private final TransitionGraph<State, Message> graph;
+
+    /** The position of the first sorted transition of every state (plus the total) */
+    private final int[] offsets;
+
+    /** The message ids of the sorted transitions */
+    private final int[] messages;
+
+    /** The target state ids of the sorted transitions */
+    private final int[] targets;
+
+    /** The target of the ANY transition of every state (or -1 if not defined) */
+    private final int[] fallbacks;
+
+    /** The final flag of every state */
+    private final boolean[] finals;
+
+    /** The initial state id */
+    private final int initial;
+
+    /** The message ids by message */
+    private final Map<Message, Integer> messageIds;
+
+    /** The message ids by key (string messages only) */
+    private final Map<String, Integer> keyIds;
+
+    /**
+     * The number of traces read at once by a worker
+     */
+    @Getter
+    @Setter
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * The maximum number of non conformant traces retained in reports
+     */
+    @Getter
+    @Setter
+    private int maxViolations = DEFAULT_MAX_VIOLATIONS;
+
+    /**
+     * Creates the replayer for the given definition
+     *
+     * @param graph the snapshot of the definition
+     * @param initial the initial state id
+     */
+    private TraceReplayer(TransitionGraph<State, Message> graph, int initial) {
+        this.graph = graph;
+        this.initial = initial;
+        int n = graph.getNodeCount();
+        int any = graph.getMessages().indexOf(Messages.ANY);
+
+        this.messageIds = new HashMap<>();
+        this.keyIds = new HashMap<>();
+        for (int m = 0; m < graph.getMessageCount(); m++) {
+            Message message = graph.getMessage(m);
+            messageIds.put(message, m);
+            if (message instanceof StringMessage) {
+                keyIds.put(message.toString(), m);
+            }
+        }
+
+        // Sort the transitions of every state by message id for binary search
+        this.offsets = Arrays.copyOf(graph.getOffsets(), n + 1);
+        this.messages = new int[graph.getTransitionCount()];
+        this.targets = new int[graph.getTransitionCount()];
+        this.fallbacks = new int[n];
+        this.finals = new boolean[n];
+        long[] sorted = new long[0];
+        for (int i = 0; i < n; i++) {
+            finals[i] = graph.getNode(i).isFinal();
+            fallbacks[i] = (any >= 0) ? graph.getNext(i, any) : -1;
+            int degree = graph.getDegree(i);
+            sorted = (sorted.length < degree) ? new long[degree] : sorted;
+            for (int t = 0; t < degree; t++) {
+                int e = offsets[i] + t;
+                sorted[t] = ((long) graph.getMessageId(e) << 32) | graph.getTarget(e);
+            }
+            Arrays.sort(sorted, 0, degree);
+            for (int t = 0; t < degree; t++) {
+                messages[offsets[i] + t] = (int) (sorted[t] >>> 32);
+                targets[offsets[i] + t] = (int) sorted[t];
+            }
+        }
+    }
+
+    /**
+     * Creates the replayer for the given state machine
+     * starting the traces in its first state.
+     *
+     * @param stateMachine the state machine definition
+     * @return the trace replayer
+     */
+    public static TraceReplayer of(@NonNull StateMachine stateMachine) {
+        State first = stateMachine.getTransitionsIndex().getFirst()
+                .orElseThrow(() -> new NullStateException("Empty state machine"));
+        return of(stateMachine, first.getName());
+    }
+
+    /**
+     * Creates the replayer for the given state machine
+     * starting the traces in the given state.
+     *
+     * @param stateMachine the state machine definition
+     * @param initialState the name of the initial state
+     * @return the trace replayer
+     */
+    public static TraceReplayer of(@NonNull StateMachine stateMachine, @NonNull String initialState) {
+        TransitionGraph<State, Message> graph = stateMachine.getTransitionsIndex().snapshot();
+        int initial = graph.indexOf(initialState);
+        if (initial < 0) {
+            throw new NullStateException("State [" + initialState + "] not found");
+        }
+        return new TraceReplayer(graph, initial);
+    }
+
+    /**
+     * Replays a single trace
+     *
+     * @param trace the messages of the trace
+     * @return the result of the trace
+     */
+    public TraceResult replay(@NonNull List<? extends Message> trace) {
+        Tally tally = new Tally();
+        tally.replay(0, trace, this::feed);
+        return tally.getResult(0);
+    }
+
+    /**
+     * Replays the given traces
+     *
+     * @param traces the traces
+     * @return the conformance report
+     */
+    public ConformanceReport replayAll(@NonNull Iterable<? extends List<? extends Message>> traces) {
+        return replayAll(traces.iterator());
+    }
+
+    /**
+     * Replays the traces supplied by the given iterator
+     *
+     * @param traces the traces iterator
+     * @return the conformance report
+     */
+    public ConformanceReport replayAll(@NonNull Iterator<? extends List<? extends Message>> traces) {
+        return replay(traces, this::feed);
+    }
+
+    /**
+     * Replays the traces stored in the given file, one per line, every
+     * trace being the keys of the messages split by the separator. Unknown keys
+     * are handled as messages without transition.
+     *
+     * @param file the traces file
+     * @param separator the separator of the message keys
+     * @return the conformance report
+     */
+    public ConformanceReport replayFile(@NonNull Path file, @NonNull String separator) {
+        if (separator.isEmpty()) {
+            throw new IllegalArgumentException("The separator cannot be empty");
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Iterator<String> lines = reader.lines().iterator();
+            return replay(lines, (line, cursor) -> feed(line, separator, cursor));
+        } catch (IOException | UncheckedIOException e) {
+            throw new FileImportException("Error processing [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Replays the traces of the iterator in parallel, every
+     * worker reading the next batch of traces in turns.
+     *
+     * @param traces the traces iterator
+     * @param feeder the feeder of the messages of every trace
+     * @param <T> the type of the traces
+     * @return the conformance report
+     */
+    private <T> ConformanceReport replay(Iterator<T> traces, TraceFeeder<T> feeder) {
+        int size = Math.max(1, batchSize);
+        long[] read = new long[1];
+        Tally total = WorkerTally.run(Tally::new, tally -> {
+            List<T> batch = new ArrayList<>(size);
+            while (true) {
+                long first;
+                synchronized (read) {
+                    first = read[0];
+                    while ((batch.size() < size) && traces.hasNext()) {
+                        batch.add(traces.next());
+                    }
+                    read[0] += batch.size();
+                }
+                if (batch.isEmpty()) {
+                    return;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    tally.replay(first + i, batch.get(i), feeder);
+                }
+                batch.clear();
+            }
+        });
+        return new ConformanceReport(graph, total.verdicts, total.visits, total.stuck, total.aborted, total.violations);
+    }
+
+    /**
+     * Feeds the cursor with the given messages
+     *
+     * @param trace the messages
+     * @param cursor the cursor
+     */
+    private void feed(List<? extends Message> trace, Cursor cursor) {
+        for (int i = 0; i < trace.size(); i++) {
+            Integer message = messageIds.get(trace.get(i));
+            if (!cursor.advance((message != null) ? message : -1)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Feeds the cursor with the messages of the given line
+     *
+     * @param line the line
+     * @param separator the separator of the message keys
+     * @param cursor the cursor
+     */
+    private void feed(String line, String separator, Cursor cursor) {
+        int start = 0;
+        while (start < line.length()) {
+            int end = line.indexOf(separator, start);
+            end = (end < 0) ? line.length() : end;
+            String key = line.substring(start, end).trim();
+            if (!key.isEmpty()) {
+                Integer message = keyIds.get(key);
+                if (!cursor.advance((message != null) ? message : -1)) {
+                    break;
+                }
+            }
+            start = end + separator.length();
+        }
+    }
+
+    /**
+     * Feeds a cursor with the messages of a trace
+     *
+     * @param <T> the type of the traces
+     */
+    @FunctionalInterface
+    private interface TraceFeeder<T> {
+
+        /**
+         * Advances the cursor with the messages of the trace
+         * until the trace ends or the cursor stops.
+         *
+         * @param trace the trace
+         * @param cursor the cursor
+         */
+        void feed(T trace, Cursor cursor);
+    }
+
+    /**
+     * The position of a trace being replayed
+     */
+    private class Cursor {
+
+        /** The current state id */
+        private int node;
+
+        /** The number of messages processed */
+        private int step;
+
+        /** The verdict (or null while replaying) */
+        private TraceResult.Verdict verdict;
+
+        /** The visits of every state */
+        private final long[] visits;
+
+        /**
+         * Creates the cursor
+         *
+         * @param visits the visits of every state
+         */
+        Cursor(long[] visits) {
+            this.visits = visits;
+        }
+
+        /**
+         * Moves the cursor to the initial state
+         */
+        void reset() {
+            node = initial;
+            step = 0;
+            verdict = null;
+            visits[node]++;
+        }
+
+        /**
+         * Processes the message with the given id
+         *
+         * @param message the message id (or -1 if unknown)
+         * @return true if the transition was found, false otherwise
+         */
+        boolean advance(int message) {
+            if (finals[node]) {
+                verdict = TraceResult.Verdict.ABORTED;
+                return false;
+            }
+            int next = (message >= 0) ? find(node, message) : -1;
+            next = (next < 0) ? fallbacks[node] : next;
+            if (next < 0) {
+                verdict = TraceResult.Verdict.STUCK;
+                return false;
+            }
+            node = next;
+            step++;
+            visits[node]++;
+            return true;
+        }
+
+        /**
+         * Retrieves the verdict once the trace has been fed
+         *
+         * @return the verdict
+         */
+        TraceResult.Verdict finish() {
+            if (verdict == null) {
+                verdict = finals[node] ? TraceResult.Verdict.ACCEPTED : TraceResult.Verdict.INCOMPLETE;
+            }
+            return verdict;
+        }
+
+        /**
+         * Finds the target of the transition upon the given message
+         *
+         * @param node the state id
+         * @param message the message id
+         * @return the target state id or -1 if not found
+         */
+        private int find(int node, int message) {
+            int low = offsets[node];
+            int high = offsets[node + 1] - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (messages[middle] < message) {
+                    low = middle + 1;
+                } else if (messages[middle] > message) {
+                    high = middle - 1;
+                } else {
+                    return targets[middle];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The counts accumulated by a worker
+     */
+    private class Tally extends WorkerTally<Tally> {
+
+        /** The number of traces by verdict */
+        private final long[] verdicts = new long[TraceResult.Verdict.values().length];
+
+        /** The visits of every state */
+        private final long[] visits = new long[graph.getNodeCount()];
+
+        /** The traces stuck in every state */
+        private final long[] stuck = new long[graph.getNodeCount()];
+
+        /** The traces aborted in every state */
+        private final long[] aborted = new long[graph.getNodeCount()];
+
+        /** The first non conformant traces in input order */
+        private final List<TraceResult> violations = new ArrayList<>();
+
+        /** The cursor */
+        private final Cursor cursor = new Cursor(visits);
+
+        /**
+         * Replays the given trace
+         *
+         * @param index the position of the trace
+         * @param trace the trace
+         * @param feeder the feeder of the messages of the trace
+         * @param <T> the type of the trace
+         */
+        <T> void replay(long index, T trace, TraceFeeder<T> feeder) {
+            cursor.reset();
+            feeder.feed(trace, cursor);
+            TraceResult.Verdict verdict = cursor.finish();
+            verdicts[verdict.ordinal()]++;
+            if (verdict == TraceResult.Verdict.STUCK) {
+                stuck[cursor.node]++;
+            } else if (verdict == TraceResult.Verdict.ABORTED) {
+                aborted[cursor.node]++;
+            }
+            if ((verdict == TraceResult.Verdict.STUCK || verdict == TraceResult.Verdict.ABORTED) && (violations.size() < maxViolations)) {
+                violations.add(getResult(index));
+            }
+        }
+
+        /**
+         * Retrieves the result of the last trace replayed
+         *
+         * @param index the position of the trace
+         * @return the result of the trace
+         */
+        TraceResult getResult(long index) {
+            return new TraceResult(index, cursor.verdict, cursor.step, graph.getNode(cursor.node));
+        }
+
+        /**
+         * Merges the counts of the given tally keeping
+         * the first violations of both in input order.
+         *
+         * @param other the other tally
+         */
+        @Override
+        void merge(Tally other) {
+            add(verdicts, other.verdicts);
+            add(visits, other.visits);
+            add(stuck, other.stuck);
+            add(aborted, other.aborted);
+            violations.addAll(other.violations);
+            violations.sort(Comparator.comparingLong(TraceResult::getIndex));
+            if (violations.size() > maxViolations) {
+                violations.subList(maxViolations, violations.size()).clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.model.State;
+import lombok.Getter;
+
+/**
+ * The outcome of replaying a recorded trace of messages
+ * against a state machine definition.
+ */
+@Getter
+public class TraceResult {
+
+    /**
+     * The verdicts of a replayed trace
+     */
+    public enum Verdict {
+        /** All the messages were processed ending in a final state */
+        ACCEPTED,
+        /** All the messages were processed ending in a non final state */
+        INCOMPLETE,
+        /** No transition found for a message in the current state */
+        STUCK,
+        /** A message was received in a final state */
+        ABORTED
+    }
+
+    /** The position of the trace in the input */
+    private final long index;
+
+    /** The verdict */
+    private final Verdict verdict;
+
+    /** The number of messages processed (i.e. the position of the offending message if not conformant) */
+    private final int step;
+
+    /** The state reached when the replay ended */
+    private final State state;
+
+    /**
+     * Creates the result of a trace
+     *
+     * @param index the position of the trace
+     * @param verdict the verdict
+     * @param step the number of messages processed
+     * @param state the last state reached
+     */
+    public TraceResult(long index, Verdict verdict, int step, State state) {
+        this.index = index;
+        this.verdict = verdict;
+        this.step = step;
+        this.state = state;
+    }
+
+    /**
+     * Checks whether the trace conforms to the definition
+     * i.e. all its messages were processed.
+     *
+     * @return true if conformant, false otherwise
+     */
+    public boolean isConformant() {
+        return (verdict == Verdict.ACCEPTED) || (verdict == Verdict.INCOMPLETE);
+    }
+
+    @Override
+    public String toString() {
+        return "Trace [" + index + "] " + verdict + " at step [" + step + "] in state [" + state.getName() + "]";
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * The transitions of a state machine weighted by their probability
+ * of being taken in compressed sparse row layout.
+ * <p>
+ * Only transitions of positive weight are kept. Final states and states without
+ * transitions of positive weight are absorbing, i.e. their rows are empty.
+ * </p>
+ */
+class WeightedTransitions {
+
+    /** The snapshot of the machine */
+    final TransitionGraph<State, Message> graph;
+
+    /** The position of the first weighted transition of every state (plus the total) */
+    final int[] offsets;
+
+    /** The target state ids of the weighted transitions */
+    final int[] targets;
+
+    /** The cumulative weights of the transitions of every state */
+    final double[] cumulative;
+
+    /** The flag of absorbing states */
+    final boolean[] absorbing;
+
+    /**
+     * Weights the transitions of the given snapshot
+     *
+     * @param graph the snapshot of the machine
+     * @param weights the weight of every transition
+     */
+    WeightedTransitions(TransitionGraph<State, Message> graph, ToDoubleFunction<StateTransition> weights) {
+        this.graph = graph;
+        int n = graph.getNodeCount();
+        this.offsets = new int[n + 1];
+        this.absorbing = new boolean[n];
+        int[] allTargets = new int[graph.getTransitionCount()];
+        double[] allWeights = new double[graph.getTransitionCount()];
+        int position = 0;
+        for (int i = 0; i < n; i++) {
+            State origin = graph.getNode(i);
+            double total = 0;
+            for (int t = graph.getOffset(i); (t < graph.getOffset(i + 1)) && !origin.isFinal(); t++) {
+                State target = graph.getNode(graph.getTarget(t));
+                double weight = weights.applyAsDouble(new StateTransition(origin, graph.getMessage(graph.getMessageId(t)), target));
+                if ((weight < 0) || Double.isNaN(weight) || Double.isInfinite(weight)) {
+                    throw new IllegalArgumentException("Invalid weight [" + weight + "] for transition from [" + origin.getName() + "] to [" + target.getName() + "]");
+                }
+                if (weight > 0) {
+                    total += weight;
+                    allWeights[position] = total;
+                    allTargets[position++] = graph.getTarget(t);
+                }
+            }
+            offsets[i + 1] = position;
+            absorbing[i] = (offsets[i] == position);
+        }
+        this.targets = Arrays.copyOf(allTargets, position);
+        this.cumulative = Arrays.copyOf(allWeights, position);
+    }
+
+    /**
+     * Weights the transitions of the given state machine
+     *
+     * @param stateMachine the state machine
+     * @param weights the weight of every transition
+     * @return the weighted transitions
+     */
+    static WeightedTransitions of(StateMachine stateMachine, ToDoubleFunction<StateTransition> weights) {
+        return new WeightedTransitions(stateMachine.getTransitionsIndex().snapshot(), weights);
+    }
+
+    /**
+     * Creates the weight function using the numeric value of the
+     * given property in the target state (1 if not present).
+     *
+     * @param propertyKey the key of the weight property
+     * @return the weight function
+     */
+    static ToDoubleFunction<StateTransition> property(String propertyKey) {
+        return t -> t.getTarget().getProperty(propertyKey).map(Double::parseDouble).orElse(1.0);
+    }
+
+    /**
+     * Retrieves the number of states
+     *
+     * @return the number of states
+     */
+    int size() {
+        return absorbing.length;
+    }
+
+    /**
+     * Retrieves the probability of the transition at the given position
+     *
+     * @param state the origin state id
+     * @param position the position of the transition
+     * @return the probability of the transition
+     */
+    double getProbability(int state, int position) {
+        double previous = (position > offsets[state]) ? cumulative[position - 1] : 0;
+        return (cumulative[position] - previous) / cumulative[offsets[state + 1] - 1];
+    }
+}
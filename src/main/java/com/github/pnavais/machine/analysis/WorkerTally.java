@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The counts accumulated by a parallel worker.
+ * <p>
+ * A fixed set of workers (one per available processor) is started, every worker
+ * owning a single tally for all the work it pulls, so the tallies are allocated and
+ * merged once regardless of the amount of work.
+ * </p>
+ *
+ * @param <T> the type of the tally
+ */
+abstract class WorkerTally<T extends WorkerTally<T>> {
+
+    /**
+     * Merges the counts of the given tally
+     *
+     * @param other the other tally
+     */
+    abstract void merge(T other);
+
+    /**
+     * Runs the work on a fixed set of parallel workers with a
+     * tally each, every worker pulling work until exhausted.
+     *
+     * @param tallies the supplier of the tally of every worker
+     * @param work the work of a worker over its tally
+     * @param <T> the type of the tally
+     * @return the merged tally
+     */
+    static <T extends WorkerTally<T>> T run(Supplier<T> tallies, Consumer<T> work) {
+        List<T> results = IntStream.range(0, Runtime.getRuntime().availableProcessors()).parallel()
+                .mapToObj(w -> {
+                    T tally = tallies.get();
+                    work.accept(tally);
+                    return tally;
+                }).collect(Collectors.toList());
+        T total = results.get(0);
+        for (int w = 1; w < results.size(); w++) {
+            total.merge(results.get(w));
+        }
+        return total;
+    }
+
+    /**
+     * Runs the given number of tasks on a fixed set of parallel workers
+     * with a tally each, every worker pulling the next pending task.
+     *
+     * @param count the number of tasks
+     * @param tallies the supplier of the tally of every worker
+     * @param task the task over the tally of its worker
+     * @param <T> the type of the tally
+     * @return the merged tally
+     */
+    static <T extends WorkerTally<T>> T forEach(int count, Supplier<T> tallies, ObjIntConsumer<T> task) {
+        AtomicInteger next = new AtomicInteger();
+        return run(tallies, tally -> {
+            for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                task.accept(tally, i);
+            }
+        });
+    }
+
+    /**
+     * Adds the counts of the source to the target
+     *
+     * @param target the target counts
+     * @param source the source counts
+     */
+    static void add(long[] target, long[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] += source[i];
+        }
+    }
+}
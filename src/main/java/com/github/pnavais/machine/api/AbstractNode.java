@@ -34,6 +34,9 @@ public abstract class AbstractNode implements Node, Mergeable<AbstractNode>  {
     /** Flag to control whether the node is final or not */
     private boolean finalState;
 
+    /** The number of modifications applied in place to the node */
+    private int modifications;
+
     /**
      * Constructor with node name
      *
@@ -60,6 +63,7 @@ public abstract class AbstractNode implements Node, Mergeable<AbstractNode>  {
      */
     public void setFinal(boolean finalState) {
         this.finalState = finalState;
+        modified();
     }
 
     /**
@@ -72,6 +76,24 @@ public abstract class AbstractNode implements Node, Mergeable<AbstractNode>  {
         return this.finalState;
     }
 
+    /**
+     * Retrieves the number of modifications applied in place
+     * to the node through its methods (e.g. final flag changed)
+     * allowing to detect changes without inspecting its contents.
+     *
+     * @return the number of modifications
+     */
+    public int getModifications() {
+        return modifications;
+    }
+
+    /**
+     * Records a modification applied in place to the node
+     */
+    protected void modified() {
+        modifications++;
+    }
+
     /**
      * Retrieves the name of the node
      *
@@ -91,8 +113,9 @@ public abstract class AbstractNode implements Node, Mergeable<AbstractNode>  {
      */
     @Override
     public AbstractNode merge(AbstractNode node) {
-        if (node != null) {
-            finalState = (node.isFinal() || finalState);
+        if ((node != null) && node.isFinal() && !finalState) {
+            finalState = true;
+            modified();
         }
         return this;
     }
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.api.transition;
+
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.message.Message;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable snapshot of the transitions of an index in
+ * compressed sparse row (CSR) layout.
+ * <p>
+ * Nodes and messages are identified by consecutive int ids (nodes in the
+ * iteration order of the index). The transitions of node {@code i} are the
+ * positions {@code getOffset(i)} (inclusive) to {@code getOffset(i + 1)} (exclusive)
+ * of the targets and messages arrays, allowing to iterate all the transitions
+ * without allocating any object.
+ * </p>
+ * The snapshot is not affected by later modifications of the index although the node
+ * and message instances are shared with it.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+public final class TransitionGraph<N extends Node, M extends Message> {
+
+    /** The nodes by id */
+    private final List<N> nodes;
+
+    /** The message table */
+    private final List<M> messageTable;
+
+    /** The position of the first transition of every node (plus the total) */
+    private final int[] offsets;
+
+    /** The target node ids of the transitions */
+    private final int[] targets;
+
+    /** The message ids of the transitions */
+    private final int[] messages;
+
+    /** The version of the index at snapshot time */
+    private final long version;
+
+    /** The lookup of node ids by name */
+    private final ToIntFunction<String> nodeIds;
+
+    /**
+     * Creates the graph from its CSR representation.
+     * The arrays are not copied.
+     *
+     * @param nodes the nodes by id
+     * @param messageTable the messages by id
+     * @param offsets the position of the first transition of every node (plus the total)
+     * @param targets the target node ids of the transitions
+     * @param messages the message ids of the transitions
+     * @param version the version of the index
+     */
+    private TransitionGraph(List<N> nodes, List<M> messageTable, int[] offsets, int[] targets, int[] messages, long version) {
+        this(nodes, null, messageTable, offsets, targets, messages, version);
+    }
+
+    /**
+     * Creates the graph from its CSR representation resolving
+     * the node ids with the given lookup (or indexing the names of
+     * the nodes if not available). The arrays are not copied.
+     *
+     * @param nodes the nodes by id
+     * @param nodeIds the lookup of node ids by name (optional)
+     * @param messageTable the messages by id
+     * @param offsets the position of the first transition of every node (plus the total)
+     * @param targets the target node ids of the transitions
+     * @param messages the message ids of the transitions
+     * @param version the version of the index
+     */
+    private TransitionGraph(List<N> nodes, ToIntFunction<String> nodeIds, List<M> messageTable, int[] offsets, int[] targets, int[] messages, long version) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.messageTable = Collections.unmodifiableList(messageTable);
+        this.offsets = offsets;
+        this.targets = targets;
+        this.messages = messages;
+        this.version = version;
+        if (nodeIds == null) {
+            Map<String, Integer> ids = new HashMap<>(nodes.size() * 2);
+            for (int i = 0; i < nodes.size(); i++) {
+                ids.putIfAbsent(nodes.get(i).getName(), i);
+            }
+            nodeIds = name -> ids.getOrDefault(name, -1);
+        }
+        this.nodeIds = nodeIds;
+    }
+
+    /**
+     * Creates a snapshot of the given index
+     *
+     * @param index the transition index
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the snapshot of the index
+     */
+    public static <N extends Node, M extends Message> TransitionGraph<N, M> of(@NonNull TransitionIndex<N, M, ?> index) {
+        return of(index.getTransitionsAsMap(), index.getVersion());
+    }
+
+    /**
+     * Creates a snapshot of the given transitions map
+     *
+     * @param transitionMap the transitions map
+     * @param version the version of the source of the transitions
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the snapshot of the transitions
+     */
+    public static <N extends Node, M extends Message> TransitionGraph<N, M> of(@NonNull Map<N, Map<M, N>> transitionMap, long version) {
+        List<N> nodes = new ArrayList<>(transitionMap.keySet());
+        Map<String, Integer> ids = new HashMap<>(nodes.size() * 2);
+        nodes.forEach(n -> ids.putIfAbsent(n.getName(), ids.size()));
+
+        int[] offsets = new int[nodes.size() + 1];
+        for (int i = 0; i < nodes.size(); i++) {
+            offsets[i + 1] = offsets[i] + transitionMap.get(nodes.get(i)).size();
+        }
+
+        List<M> messageTable = new ArrayList<>();
+        Map<M, Integer> messageIds = new HashMap<>();
+        int[] targets = new int[offsets[nodes.size()]];
+        int[] messages = new int[targets.length];
+        int e = 0;
+        for (N node : nodes) {
+            for (Map.Entry<M, N> transition : transitionMap.get(node).entrySet()) {
+                targets[e] = ids.get(transition.getValue().getName());
+                messages[e++] = messageIds.computeIfAbsent(transition.getKey(), m -> {
+                    messageTable.add(m);
+                    return messageTable.size() - 1;
+                });
+            }
+        }
+        return new TransitionGraph<>(nodes, messageTable, offsets, targets, messages, version);
+    }
+
+    /**
+     * Creates a graph from its CSR representation, e.g. read from the tables of an
+     * index not kept on heap. The arrays are not copied and the nodes are retrieved
+     * from the given list, which may materialize them on demand, resolving their
+     * ids by name with the given lookup.
+     *
+     * @param nodes the nodes by id
+     * @param nodeIds the lookup of node ids by name (-1 if not found)
+     * @param messageTable the messages by id
+     * @param offsets the position of the first transition of every node (plus the total)
+     * @param targets the target node ids of the transitions
+     * @param messages the message ids of the transitions
+     * @param version the version of the source of the transitions
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @return the graph
+     */
+    public static <N extends Node, M extends Message> TransitionGraph<N, M> of(@NonNull List<N> nodes, @NonNull ToIntFunction<String> nodeIds,
+                                                                              @NonNull List<M> messageTable, @NonNull int[] offsets,
+                                                                              @NonNull int[] targets, @NonNull int[] messages, long version) {
+        if ((offsets.length != nodes.size() + 1) || (targets.length != offsets[nodes.size()]) || (messages.length != targets.length)) {
+            throw new IllegalArgumentException("Inconsistent compressed sparse row layout");
+        }
+        return new TransitionGraph<>(nodes, nodeIds, messageTable, offsets, targets, messages, version);
+    }
+
+    /**
+     * Creates the transposed graph i.e. a graph with the same
+     * nodes and messages and all the transitions reversed. The
+     * incoming transitions of every node keep the order of their origins.
+     *
+     * @return the transposed graph
+     */
+    public TransitionGraph<N, M> transpose() {
+        int[] reverseOffsets = new int[offsets.length];
+        for (int target : targets) {
+            reverseOffsets[target + 1]++;
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        int[] positions = Arrays.copyOf(reverseOffsets, nodes.size());
+        int[] origins = new int[targets.length];
+        int[] reverseMessages = new int[targets.length];
+        for (int i = 0; i < nodes.size(); i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int position = positions[targets[e]]++;
+                origins[position] = i;
+                reverseMessages[position] = messages[e];
+            }
+        }
+        return new TransitionGraph<>(nodes, nodeIds, messageTable, reverseOffsets, origins, reverseMessages, version);
+    }
+
+    /**
+     * Retrieves the number of nodes
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Retrieves the number of transitions
+     *
+     * @return the number of transitions
+     */
+    public int getTransitionCount() {
+        return targets.length;
+    }
+
+    /**
+     * Retrieves the number of distinct messages
+     *
+     * @return the number of messages
+     */
+    public int getMessageCount() {
+        return messageTable.size();
+    }
+
+    /**
+     * Retrieves the version of the index at the time
+     * the snapshot was taken.
+     *
+     * @return the version of the index
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Retrieves the node with the given id
+     *
+     * @param node the node id
+     * @return the node
+     */
+    public N getNode(int node) {
+        return nodes.get(node);
+    }
+
+    /**
+     * Retrieves the name of the node with the given id
+     *
+     * @param node the node id
+     * @return the name of the node
+     */
+    public String getName(int node) {
+        return nodes.get(node).getName();
+    }
+
+    /**
+     * Retrieves the id of the node with the given name
+     *
+     * @param name the name of the node
+     * @return the node id or -1 if not found
+     */
+    public int indexOf(@NonNull String name) {
+        return nodeIds.applyAsInt(name);
+    }
+
+    /**
+     * Retrieves the message with the given id
+     *
+     * @param message the message id
+     * @return the message
+     */
+    public M getMessage(int message) {
+        return messageTable.get(message);
+    }
+
+    /**
+     * Retrieves the (unmodifiable) nodes ordered by id
+     *
+     * @return the nodes
+     */
+    public List<N> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Retrieves the (unmodifiable) messages ordered by id
+     *
+     * @return the messages
+     */
+    public List<M> getMessages() {
+        return messageTable;
+    }
+
+    /**
+     * Retrieves the position of the first transition of the given node
+     * (or the total number of transitions for {@code getNodeCount()}).
+     *
+     * @param node the node id
+     * @return the position of the first transition of the node
+     */
+    public int getOffset(int node) {
+        return offsets[node];
+    }
+
+    /**
+     * Retrieves the number of transitions of the given node
+     *
+     * @param node the node id
+     * @return the number of transitions of the node
+     */
+    public int getDegree(int node) {
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Retrieves the target node id of the transition at the given position
+     *
+     * @param transition the position of the transition
+     * @return the target node id
+     */
+    public int getTarget(int transition) {
+        return targets[transition];
+    }
+
+    /**
+     * Retrieves the message id of the transition at the given position
+     *
+     * @param transition the position of the transition
+     * @return the message id
+     */
+    public int getMessageId(int transition) {
+        return messages[transition];
+    }
+
+    /**
+     * Finds the target of the transition from the given node
+     * upon the message.
+     *
+     * @param node the node id
+     * @param message the message id
+     * @return the target node id or -1 if not found
+     */
+    public int getNext(int node, int message) {
+        for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+            if (messages[e] == message) {
+                return targets[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a spliterator over the nodes ordered by id
+     *
+     * @return the spliterator of nodes
+     */
+    public Spliterator<N> nodeSpliterator() {
+        return Spliterators.<N>spliterator(nodes.toArray(), Spliterator.IMMUTABLE | Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /**
+     * Creates a spliterator over the transitions ordered by origin id
+     * building the elements with the given factory. The spliterator is
+     * split by ranges of origins holding a similar number of transitions.
+     *
+     * @param factory the factory of the transition instances
+     * @param <T> the type of Transition
+     * @return the spliterator of transitions
+     */
+    public <T> Spliterator<T> transitionSpliterator(@NonNull TransitionFactory<N, M, T> factory) {
+        return new TransitionSpliterator<>(factory, 0, nodes.size());
+    }
+
+    /**
+     * Retrieves a copy of the offsets array (one entry per
+     * node plus the total number of transitions).
+     *
+     * @return the offsets
+     */
+    public int[] getOffsets() {
+        return offsets.clone();
+    }
+
+    /**
+     * Retrieves a copy of the target node ids array
+     *
+     * @return the targets
+     */
+    public int[] getTargets() {
+        return targets.clone();
+    }
+
+    /**
+     * Retrieves a copy of the message ids array
+     *
+     * @return the message ids
+     */
+    public int[] getMessageIds() {
+        return messages.clone();
+    }
+
+    /**
+     * Creates the transition instances of the spliterators
+     *
+     * @param <N> the type of Node
+     * @param <M> the type of Message
+     * @param <T> the type of Transition
+     */
+    @FunctionalInterface
+    public interface TransitionFactory<N extends Node, M extends Message, T> {
+
+        /**
+         * Creates the transition
+         *
+         * @param origin the origin of the transition
+         * @param message the message triggering the transition
+         * @param target the target of the transition
+         * @return the transition
+         */
+        T create(N origin, M message, N target);
+    }
+
+    /**
+     * A spliterator over the transitions of a range of origins
+     *
+     * @param <T> the type of Transition
+     */
+    private class TransitionSpliterator<T> implements Spliterator<T> {
+
+        /** The minimum number of transitions to allow splitting */
+        private static final int SPLIT_THRESHOLD = 64;
+
+        /** The factory of the transition instances */
+        private final TransitionFactory<N, M, T> factory;
+
+        /** The current origin */
+        private int node;
+
+        /** The end of the range of origins (exclusive) */
+        private final int end;
+
+        /** The position of the next transition */
+        private int position;
+
+        /**
+         * Creates the spliterator for the given range of origins
+         *
+         * @param factory the factory of the transition instances
+         * @param start the first origin
+         * @param end the end of the range of origins (exclusive)
+         */
+        TransitionSpliterator(TransitionFactory<N, M, T> factory, int start, int end) {
+            this.factory = factory;
+            this.node = start;
+            this.end = end;
+            this.position = offsets[start];
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (position >= offsets[end]) {
+                return false;
+            }
+            while (position >= offsets[node + 1]) {
+                node++;
+            }
+            action.accept(factory.create(nodes.get(node), messageTable.get(messages[position]), nodes.get(targets[position])));
+            position++;
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            for (; node < end; node++) {
+                N origin = nodes.get(node);
+                for (; position < offsets[node + 1]; position++) {
+                    action.accept(factory.create(origin, messageTable.get(messages[position]), nodes.get(targets[position])));
+                }
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            int remaining = offsets[end] - position;
+            if ((remaining < SPLIT_THRESHOLD) || (end - node < 2)) {
+                return null;
+            }
+
+            // Find the origin splitting the remaining transitions in halves
+            int middle = position + remaining / 2;
+            int low = node + 1;
+            int high = end - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (offsets[mid] < middle) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            TransitionSpliterator<T> prefix = new TransitionSpliterator<>(factory, node, low);
+            prefix.position = position;
+            node = low;
+            position = offsets[low];
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return offsets[end] - position;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.IMMUTABLE | Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+        }
+    }
+}
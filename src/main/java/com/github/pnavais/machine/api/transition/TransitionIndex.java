@@ -24,6 +24,9 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * An index allowing to store and fetch defined transitions.
@@ -34,6 +37,9 @@ import java.util.Optional;
  */
 public interface TransitionIndex<N extends Node, M extends Message, T extends Transition<N,M>> {
 
+    /** The version of indexes not tracking their modifications */
+    long UNVERSIONED = -1;
+
     /**
      * Adds a new transition to the index
      *
@@ -167,6 +173,19 @@ public interface TransitionIndex<N extends Node, M extends Message, T extends Tr
      */
     Collection<T> getTransitions(String name);
 
+    /**
+     * Retrieves the transitions stored in the index
+     * having the given node as target. By default all the
+     * transitions are scanned, implementations keeping a reverse
+     * adjacency should override it.
+     *
+     * @param node the node
+     * @return the transitions targeting the node
+     */
+    default Collection<T> getIncomingTransitions(@NonNull N node) {
+        return getAllTransitions().stream().filter(t -> node.equals(t.getTarget())).collect(Collectors.toList());
+    }
+
     /**
      * Retrieve all transitions stored in the index.
      *
@@ -174,6 +193,89 @@ public interface TransitionIndex<N extends Node, M extends Message, T extends Tr
      */
     Collection<T> getAllTransitions();
 
+    /**
+     * Retrieves the modification version of the index.
+     * The version changes every time a node or transition
+     * is added or removed, allowing to detect changes
+     * without inspecting the contents of the index.
+     * Indexes not tracking their modifications return
+     * {@link #UNVERSIONED} so any result derived from them
+     * is never reused.
+     *
+     * @return the current version of the index
+     */
+    default long getVersion() {
+        return UNVERSIONED;
+    }
+
+    /**
+     * Visits all the transitions stored in the index
+     * without building transition instances.
+     *
+     * @param visitor the transition visitor
+     */
+    default void forEachTransition(@NonNull TransitionVisitor<N, M> visitor) {
+        getTransitionsAsMap().forEach((origin, transitions) -> transitions.forEach((message, target) -> visitor.visit(origin, message, target)));
+    }
+
+    /**
+     * Visits the transitions from the given node
+     * without building transition instances.
+     *
+     * @param node the node
+     * @param visitor the transition visitor
+     */
+    default void forEachTransition(@NonNull N node, @NonNull TransitionVisitor<N, M> visitor) {
+        getTransitions(node).forEach(t -> visitor.visit(t.getOrigin(), t.getMessage(), t.getTarget()));
+    }
+
+    /**
+     * Visits the transitions from the node with the given name
+     * without building transition instances.
+     *
+     * @param nodeName the node's name
+     * @param visitor the transition visitor
+     */
+    default void forEachTransition(@NonNull String nodeName, @NonNull TransitionVisitor<N, M> visitor) {
+        getTransitions(nodeName).forEach(t -> visitor.visit(t.getOrigin(), t.getMessage(), t.getTarget()));
+    }
+
+    /**
+     * Creates a stream of the nodes of the index.
+     * The stream is backed by a snapshot of the index so it is
+     * not affected by later modifications and can be split evenly
+     * in parallel streams.
+     *
+     * @return the stream of nodes
+     */
+    default Stream<N> states() {
+        return StreamSupport.stream(snapshot().nodeSpliterator(), false);
+    }
+
+    /**
+     * Creates a stream of the transitions of the index.
+     * By default, the stream is backed by all the transitions
+     * of the index, implementations are encouraged to provide
+     * streams backed by a snapshot (see {@link TransitionGraph#transitionSpliterator(TransitionGraph.TransitionFactory)})
+     * so they can be split evenly in parallel streams.
+     *
+     * @return the stream of transitions
+     */
+    default Stream<T> transitions() {
+        return getAllTransitions().stream();
+    }
+
+    /**
+     * Creates an immutable snapshot of the transitions in
+     * compressed sparse row layout allowing to iterate them
+     * without allocating objects.
+     *
+     * @return the snapshot of the transitions
+     */
+    default TransitionGraph<N, M> snapshot() {
+        return TransitionGraph.of(this);
+    }
+
     /**
      * Retrieves the transitions as a map
      *
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.api.transition;
+
+import com.github.pnavais.machine.api.Node;
+import com.github.pnavais.machine.api.message.Message;
+
+/**
+ * A visitor of transitions receiving the origin, message
+ * and target directly i.e. without building a transition
+ * instance for every visited transition.
+ *
+ * @param <N> the type of Node
+ * @param <M> the type of Message
+ */
+@FunctionalInterface
+public interface TransitionVisitor<N extends Node, M extends Message> {
+
+    /**
+     * Visits a transition
+     *
+     * @param origin the origin of the transition
+     * @param message the message triggering the transition
+     * @param target the target of the transition
+     */
+    void visit(N origin, M message, N target);
+}
@@ -22,6 +22,7 @@ import com.github.pnavais.machine.api.message.Message;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * An interface for defining methods common to entities
@@ -166,6 +167,28 @@ public interface Transitioner<N extends Node, M extends Message, T extends Trans
      */
     Collection<N> getSiblings(String nodeName);
 
+    /**
+     * Visits the adjacent nodes i.e. the nodes
+     * that can be reached from the given node
+     * by any transition, without collecting them.
+     *
+     * @param nodeName the node's name
+     * @param consumer the consumer of adjacent nodes
+     */
+    default void forEachSibling(String nodeName, Consumer<N> consumer) {
+        getTransitionsIndex().forEachTransition(nodeName, (origin, message, target) -> consumer.accept(target));
+    }
+
+    /**
+     * Visits all the transitions currently defined
+     * without building transition instances.
+     *
+     * @param visitor the transition visitor
+     */
+    default void forEachTransition(TransitionVisitor<N, M> visitor) {
+        getTransitionsIndex().forEachTransition(visitor);
+    }
+
     /**
      * Retrieves all state transitions currently
      * defined.
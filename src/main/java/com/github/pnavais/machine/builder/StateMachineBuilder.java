@@ -206,6 +206,7 @@ public class StateMachineBuilder {
         // Create and initialize the machine with the built transitions
         StateMachine stateMachine = new StateMachine(transitionMap);
         stateMachine.init();
+        stateMachine.precomputeEmptyChains();
         return stateMachine;
     }
 
@@ -20,8 +20,12 @@ import com.github.pnavais.machine.api.Transition;
 import com.github.pnavais.machine.api.exception.FileExportException;
 import com.github.pnavais.machine.api.exporter.Exporter;
 import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
 import com.github.pnavais.machine.api.transition.Transitioner;
+import com.github.pnavais.machine.exporter.util.FragmentCache;
 import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.TransitionStatistics;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
@@ -35,6 +39,9 @@ import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
 
 @Log
 @Getter
@@ -71,8 +78,19 @@ public abstract class AbstractStatesExporter<R, S extends State, M extends Messa
     /** The color for final states */
     protected Color currentStateColor = Color.decode(DEFAULT_CURRENT_COLOR);
 
+    /** Reuse the fragments rendered in previous exports when possible */
+    protected boolean incremental;
+
+    /** The optional traffic statistics to annotate states and transitions */
+    protected TransitionStatistics statistics;
+
+    /** The fragments rendered in previous exports */
+    @Getter(AccessLevel.PROTECTED)
+    @Setter(AccessLevel.NONE)
+    private final FragmentCache fragmentCache = new FragmentCache();
+
     /**
-     * All arguments constructor
+     * Constructor without incremental export
      *
      * @param fileSystem the filesystem
      * @param graphName the graph name
@@ -82,12 +100,30 @@ public abstract class AbstractStatesExporter<R, S extends State, M extends Messa
      * @param currentStateColor the current state color
      */
     public AbstractStatesExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor) {
+        this(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor, false, null);
+    }
+
+    /**
+     * All arguments constructor
+     *
+     * @param fileSystem the filesystem
+     * @param graphName the graph name
+     * @param finalStateColor the final state color
+     * @param useHSB the flag to control exporting using HSB color format
+     * @param showCurrent the flag to control annotating current status
+     * @param currentStateColor the current state color
+     * @param incremental the flag to control reusing fragments from previous exports
+     * @param statistics the traffic statistics
+     */
+    public AbstractStatesExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor, boolean incremental, TransitionStatistics statistics) {
         this.fileSystem = fileSystem;
         this.graphName = graphName;
         this.finalStateColor = finalStateColor;
         this.useHSB = useHSB;
         this.showCurrent = showCurrent;
         this.currentStateColor = currentStateColor;
+        this.incremental = incremental;
+        this.statistics = statistics;
         fillDefaults();
     }
 
@@ -108,6 +144,77 @@ public abstract class AbstractStatesExporter<R, S extends State, M extends Messa
         currentStateColor = (currentStateColor == null) ?  Color.decode(DEFAULT_CURRENT_COLOR) : currentStateColor;
     }
 
+    /**
+     * Prepares the fragment cache before exporting the given
+     * index discarding the fragments no longer valid.
+     *
+     * @param index the index to export
+     */
+    protected void prepareFragments(TransitionIndex<?, ?, ?> index) {
+        if (isIncremental()) {
+            fragmentCache.validate(index, getRenderingSettings());
+        }
+    }
+
+    /**
+     * Retrieves the settings affecting the rendering of the
+     * node and edge fragments. Any change on these settings
+     * invalidates the cached fragments.
+     *
+     * @return the rendering settings
+     */
+    protected List<Object> getRenderingSettings() {
+        return Arrays.asList(finalStateColor, useHSB, showCurrent, currentStateColor, statistics);
+    }
+
+    /**
+     * Appends the fragment of the given node to the builder
+     * reusing the cached fragment if possible.
+     *
+     * @param builder the builder
+     * @param node the node
+     * @param cacheable true if the fragment can be cached, false otherwise
+     * @param renderer the renderer of the fragment
+     */
+    protected void appendNode(StringBuilder builder, S node, boolean cacheable, BiConsumer<StringBuilder, S> renderer) {
+        if (isIncremental() && cacheable) {
+            builder.append(fragmentCache.getNode(node, node.getModifications(), () -> render(node, renderer)));
+        } else {
+            renderer.accept(builder, node);
+        }
+    }
+
+    /**
+     * Appends the fragment of the given transition to the builder
+     * reusing the cached fragment if possible.
+     *
+     * @param builder the builder
+     * @param transition the transition
+     * @param renderer the renderer of the fragment
+     * @param <E> the type of transition
+     */
+    protected <E extends Transition<S, M>> void appendEdge(StringBuilder builder, E transition, BiConsumer<StringBuilder, E> renderer) {
+        if (isIncremental()) {
+            builder.append(fragmentCache.getEdge(transition, () -> render(transition, renderer)));
+        } else {
+            renderer.accept(builder, transition);
+        }
+    }
+
+    /**
+     * Renders the fragment of the given element
+     *
+     * @param element the element
+     * @param renderer the renderer of the fragment
+     * @param <E> the type of element
+     * @return the fragment
+     */
+    private <E> String render(E element, BiConsumer<StringBuilder, E> renderer) {
+        StringBuilder fragment = new StringBuilder();
+        renderer.accept(fragment, element);
+        return fragment.toString();
+    }
+
     /**
      * Export the current contents of the transitioner
      * to the DOT language to the given file path.
@@ -17,16 +17,22 @@
 package com.github.pnavais.machine.exporter;
 
 import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
 import com.github.pnavais.machine.api.message.Message;
 import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
 import com.github.pnavais.machine.exporter.util.ColorTranslator;
+import com.github.pnavais.machine.exporter.util.HeatScale;
 import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.TransitionStatistics;
 import lombok.*;
 import lombok.extern.java.Log;
 
 import java.awt.*;
 import java.nio.file.FileSystem;
-import java.util.Map;
+import java.util.*;
+import java.util.List;
 
 /**
  * An exporter allowing to translate
@@ -58,9 +64,27 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
         }
     }
 
+    /** The label used for collapsed transitions */
+    private static final String ELLIPSIS = "\u2026";
+
     /** The graph direction */
     private RankDir rankDir = RankDir.LR;
 
+    /**
+     * Constructor without incremental export
+     *
+     * @param fileSystem the filesystem
+     * @param graphName the graph name
+     * @param finalStateColor the final state color
+     * @param useHSB the flag to control exporting using HSB color format
+     * @param showCurrent the flag to control annotating current status
+     * @param currentStateColor the current state color
+     * @param rankDir the graph direction
+     */
+    public DOTExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor, RankDir rankDir) {
+        this(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor, rankDir, false, null);
+    }
+
     /**
      * All arguments constructor
      *
@@ -71,10 +95,12 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
      * @param showCurrent the flag to control annotating current status
      * @param currentStateColor the current state color
      * @param rankDir the graph direction
+     * @param incremental the flag to control reusing fragments from previous exports
+     * @param statistics the traffic statistics
      */
     @Builder
-    public DOTExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor, RankDir rankDir) {
-        super(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor);
+    public DOTExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor, RankDir rankDir, boolean incremental, TransitionStatistics statistics) {
+        super(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor, incremental, statistics);
         setRankDir((rankDir != null) ? rankDir : this.rankDir);
     }
 
@@ -88,6 +114,7 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
      */
     @Override
     public String export(@NonNull StateMachine stateMachine) {
+        prepareFragments(stateMachine.getTransitionsIndex());
         StringBuilder builder = new StringBuilder("digraph ");
         builder.append(getGraphName());
         builder.append(" {");
@@ -99,6 +126,134 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
         return builder.append("}").toString();
     }
 
+    /**
+     * Export the neighborhood of the current state of the state machine
+     * to the DOT language i.e. only the states reachable from/to the current state
+     * in the given number of hops (following transitions in any direction).
+     * Transitions leading outside the neighborhood are collapsed
+     * in "…" placeholders.
+     *
+     * @param stateMachine the state machine to export
+     * @param hops the maximum distance to the current state
+     * @return the string representation of the neighborhood
+     * in DOT language.
+     */
+    public String exportNeighborhood(@NonNull StateMachine stateMachine, int hops) {
+        State current = Optional.ofNullable(stateMachine.getCurrent())
+                .orElseThrow(() -> new NullStateException("Current state not initialized"));
+        return exportNeighborhood(stateMachine, Collections.singletonList(current), hops);
+    }
+
+    /**
+     * Export the neighborhood of the given states of the state machine
+     * to the DOT language i.e. only the states reachable from/to the given states
+     * in the given number of hops (following transitions in any direction).
+     * Transitions leading outside the neighborhood are collapsed
+     * in "…" placeholders.
+     * <p>
+     * The neighborhood is discovered using both the outgoing and incoming
+     * transitions of the visited states so the time spent is proportional
+     * to the size of the exported subgraph.
+     * </p>
+     *
+     * @param stateMachine the state machine to export
+     * @param states the states at the center of the neighborhood
+     * @param hops the maximum distance to the given states
+     * @return the string representation of the neighborhood
+     * in DOT language.
+     */
+    public String exportNeighborhood(@NonNull StateMachine stateMachine, @NonNull Collection<State> states, int hops) {
+        TransitionIndex<State, Message, StateTransition> index = stateMachine.getTransitionsIndex();
+        Set<State> neighborhood = findNeighborhood(index, states, Math.max(hops, 0));
+        prepareFragments(index);
+
+        StringBuilder builder = new StringBuilder("digraph ");
+        builder.append(getGraphName());
+        builder.append(" {");
+        builder.append(NL);
+        builder.append(TB).append(getRankDir()).append(NL);
+        neighborhood.forEach(s -> appendNode(stateMachine, builder, s));
+
+        StringBuilder placeholders = new StringBuilder();
+        for (State s : neighborhood) {
+            int omitted = 0;
+            for (StateTransition t : index.getTransitions(s)) {
+                if (neighborhood.contains(t.getTarget())) {
+                    appendEdge(builder, t, this::appendTransition);
+                } else {
+                    omitted++;
+                }
+            }
+            appendPlaceholder(placeholders, s, omitted, true);
+
+            omitted = (int) index.getIncomingTransitions(s).stream().filter(t -> !neighborhood.contains(t.getOrigin())).count();
+            appendPlaceholder(placeholders, s, omitted, false);
+        }
+
+        return builder.append(placeholders).append("}").toString();
+    }
+
+    /**
+     * Collects the states placed at the given maximum distance
+     * of the initial states using a breadth first search
+     * on both the outgoing and incoming transitions.
+     *
+     * @param index the transition index
+     * @param states the initial states
+     * @param hops the maximum distance
+     * @return the states of the neighborhood in discovery order
+     */
+    private Set<State> findNeighborhood(TransitionIndex<State, Message, StateTransition> index, Collection<State> states, int hops) {
+        Set<State> visited = new LinkedHashSet<>();
+        List<State> frontier = new ArrayList<>();
+        for (State s : states) {
+            State found = index.find(s.getName()).orElseThrow(() -> new NullStateException("State [" + s.getName() + "] not found"));
+            if (visited.add(found)) {
+                frontier.add(found);
+            }
+        }
+
+        for (int i = 0; (i < hops) && (!frontier.isEmpty()); i++) {
+            List<State> next = new ArrayList<>();
+            for (State s : frontier) {
+                index.getTransitions(s).forEach(t -> {
+                    if (visited.add(t.getTarget())) {
+                        next.add(t.getTarget());
+                    }
+                });
+                index.getIncomingTransitions(s).forEach(t -> {
+                    if (visited.add(t.getOrigin())) {
+                        next.add(t.getOrigin());
+                    }
+                });
+            }
+            frontier = next;
+        }
+
+        return visited;
+    }
+
+    /**
+     * Appends a placeholder node collapsing the transitions
+     * omitted from/to the given state.
+     *
+     * @param builder the builder
+     * @param state the state
+     * @param omitted the number of omitted transitions
+     * @param outgoing the direction of the omitted transitions
+     */
+    private void appendPlaceholder(StringBuilder builder, State state, int omitted, boolean outgoing) {
+        if (omitted > 0) {
+            String placeholder = '"' + (outgoing ? state.getName() + " " + ELLIPSIS : ELLIPSIS + " " + state.getName()) + '"';
+            builder.append(TB).append(placeholder).append(" [shape=\"plaintext\", label=\"").append(ELLIPSIS)
+                    .append(" (").append(omitted).append(")\"];").append(NL);
+            builder.append(TB).append(outgoing ? formatNodeName(state.getName()) : placeholder)
+                    .append(" -> ")
+                    .append(outgoing ? placeholder : formatNodeName(state.getName()))
+                    .append(" [style=\"dashed\"];").append(NL);
+        }
+    }
+
     /**
      * Appends the node properties of the state machine.
      *
@@ -108,14 +263,40 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
     private void appendNodesDescription(StateMachine stateMachine, StringBuilder builder) {
         Map<State, Map<Message, State>> transitions = stateMachine.getTransitionsIndex().getTransitionsAsMap();
         for (State s : transitions.keySet()) {
-            String prefix = TB + formatNodeName(s.getName()) + " [";
+            appendNode(stateMachine, builder, s);
+        }
+    }
 
-            prefix = formatCurrentNodeAttributes(stateMachine, builder, s, prefix);
-            prefix = formatNodeProperties(builder, s, prefix);
+    /**
+     * Appends the properties of the given node reusing
+     * the previous exports if possible (the current state
+     * is always rendered again as it changes between exports).
+     *
+     * @param stateMachine the state machine
+     * @param builder the builder
+     * @param s the state
+     */
+    private void appendNode(StateMachine stateMachine, StringBuilder builder, State s) {
+        boolean cacheable = !(isShowCurrent() && s.equals(stateMachine.getCurrent()));
+        appendNode(builder, s, cacheable, (b, state) -> appendNodeDescription(stateMachine, b, state));
+    }
 
-            if (prefix.equals("")) {
-                builder.append("];").append(NL);
-            }
+    /**
+     * Appends the properties of the given node.
+     *
+     * @param stateMachine the state machine
+     * @param builder the builder
+     * @param s the state
+     */
+    private void appendNodeDescription(StateMachine stateMachine, StringBuilder builder, State s) {
+        String prefix = TB + formatNodeName(s.getName()) + " [";
+
+        prefix = formatCurrentNodeAttributes(stateMachine, builder, s, prefix);
+        prefix = formatTrafficAttributes(builder, s, prefix);
+        prefix = formatNodeProperties(builder, s, prefix);
+
+        if (prefix.equals("")) {
+            builder.append("];").append(NL);
         }
     }
 
@@ -129,7 +310,7 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
      * @return the properties as a string
      */
     private String formatCurrentNodeAttributes(StateMachine stateMachine, StringBuilder builder, State state, String prefix) {
-        if ((state.isFinal() && (!state.hasProperty("color")))) {
+        if ((state.isFinal() && (!state.hasProperty("color")) && (getTrafficBucket(state) == 0))) {
             builder.append(prefix).append("style=\"filled\", fillcolor=\"").append(toOutputColor(getFinalStateColor())).append("\"");
             prefix = "";
         }
@@ -157,6 +338,43 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
         return prefix;
     }
 
+    /**
+     * Format the node traffic attributes (if statistics available)
+     * filling the node with the color of its traffic bucket.
+     *
+     * @param builder the builder
+     * @param state   the state
+     * @param prefix  the prefix
+     * @return the prefix
+     */
+    private String formatTrafficAttributes(StringBuilder builder, State state, String prefix) {
+        int bucket = getTrafficBucket(state);
+        if ((bucket > 0) && (!state.hasProperty("color"))) {
+            prefix = prefix.equals("") ? ", " : prefix;
+            builder.append(prefix).append("style=\"filled\", fillcolor=\"").append(toOutputColor(HeatScale.toColor(bucket))).append("\"");
+            prefix = "";
+        }
+
+        // Add traffic label (ignored by DOT)
+        if (bucket > 0) {
+            prefix = prefix.equals("") ? ", " : prefix;
+            builder.append(prefix).append("traffic=\"").append(statistics.getCount(state)).append("\"");
+            prefix = "";
+        }
+
+        return prefix;
+    }
+
+    /**
+     * Retrieves the traffic bucket of the given state
+     *
+     * @param state the state
+     * @return the bucket or 0 if no statistics available
+     */
+    private int getTrafficBucket(State state) {
+        return (statistics != null) ? HeatScale.toBucket(statistics.getCount(state), statistics.getMaxStateCount()) : 0;
+    }
+
     /**
      * Appends the node internal properties.
      *
@@ -186,10 +404,43 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
      * @param builder the builder
      */
     private void appendTransitions(StateMachine stateMachine, StringBuilder builder) {
-        stateMachine.getAllTransitions().forEach(t ->
-                builder.append(TB).append(String.format("%s -> %s", formatNodeName(t.getOrigin().getName()), formatNodeName(t.getTarget().getName())))
-                        .append(formatMessage(t.getMessage()))
-                        .append(NL));
+        stateMachine.getAllTransitions().forEach(t -> appendEdge(builder, t, this::appendTransition));
+    }
+
+    /**
+     * Appends the given transition.
+     *
+     * @param builder the builder
+     * @param t the transition
+     */
+    private void appendTransition(StringBuilder builder, StateTransition t) {
+        List<String> attributes = new ArrayList<>();
+        Optional.ofNullable(formatMessage(t.getMessage())).ifPresent(m -> attributes.add("label=\"" + m + "\""));
+        appendTrafficAttributes(attributes, t);
+
+        builder.append(TB).append(String.format("%s -> %s", formatNodeName(t.getOrigin().getName()), formatNodeName(t.getTarget().getName())));
+        if (!attributes.isEmpty()) {
+            builder.append(" [").append(String.join(", ", attributes)).append("];");
+        }
+        builder.append(NL);
+    }
+
+    /**
+     * Adds the traffic attributes of the transition (if statistics available)
+     * scaling its width and color with its traffic bucket.
+     *
+     * @param attributes the attributes of the transition
+     * @param t the transition
+     */
+    private void appendTrafficAttributes(List<String> attributes, StateTransition t) {
+        long count = (statistics != null) ? statistics.getCount(t) : 0L;
+        int bucket = HeatScale.toBucket(count, (statistics != null) ? statistics.getMaxTransitionCount() : 0L);
+        if (bucket > 0) {
+            attributes.add("penwidth=\"" + HeatScale.toWidth(bucket) + "\"");
+            attributes.add("color=\"" + toOutputColor(HeatScale.toColor(bucket)) + "\"");
+            // Add traffic label (ignored by DOT)
+            attributes.add("traffic=\"" + count + "\"");
+        }
     }
 
     /**
@@ -197,7 +448,7 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
      * depending on its nature and contents.
      *
      * @param m the message
-     * @return the formatted representation of the message.
+     * @return the formatted representation of the message or null if not labeled
      */
     private String formatMessage(Message m) {
         String formattedMessage = null;
@@ -208,7 +459,7 @@ public class DOTExporter extends AbstractStatesExporter<String, State, Message,
             formattedMessage = (payload == null) ? m.toString() : payload.toString();
         }
 
-        return (formattedMessage == null) ? "" : " [label=\""+formattedMessage+"\"];";
+        return formattedMessage;
     }
 
     /**
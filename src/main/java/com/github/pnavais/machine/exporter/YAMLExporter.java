@@ -20,6 +20,8 @@ import com.github.pnavais.machine.StateMachine;
 import com.github.pnavais.machine.api.message.Message;
 import com.github.pnavais.machine.api.message.Messages;
 import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.TransitionStatistics;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -28,6 +30,8 @@ import lombok.extern.java.Log;
 
 import java.awt.*;
 import java.nio.file.FileSystem;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.IntStream;
 
@@ -48,6 +52,9 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
     /** Margin of 4 spaces */
     private static final String MARGIN_4_PTS = MARGIN_2_PTS + MARGIN_2_PTS;
 
+    /** The property holding the traffic of states and transitions */
+    private static final String TRAFFIC_KEY = "traffic";
+
     /**
      * The margin spacing options (2 or 4 spaces)
      */
@@ -71,6 +78,21 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
     /** The margin size */
     private MarginSize marginSize = MarginSize.FOUR_SP;
 
+    /**
+     * Constructor without incremental export
+     *
+     * @param fileSystem the filesystem
+     * @param graphName the graph name
+     * @param finalStateColor the final state color
+     * @param useHSB the flag to control exporting using HSB color format
+     * @param showCurrent the flag to control annotating current status
+     * @param currentStateColor the current state color
+     * @param marginSize the margin size
+     */
+    public YAMLExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor,MarginSize marginSize) {
+        this(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor, marginSize, false, null);
+    }
+
     /**
      * All arguments constructor
      *
@@ -80,10 +102,13 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
      * @param useHSB the flag to control exporting using HSB color format
      * @param showCurrent the flag to control annotating current status
      * @param currentStateColor the current state color
+     * @param marginSize the margin size
+     * @param incremental the flag to control reusing fragments from previous exports
+     * @param statistics the traffic statistics
      */
     @Builder
-    public YAMLExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor,MarginSize marginSize) {
-        super(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor);
+    public YAMLExporter(FileSystem fileSystem, String graphName, Color finalStateColor, boolean useHSB, boolean showCurrent, Color currentStateColor, MarginSize marginSize, boolean incremental, TransitionStatistics statistics) {
+        super(fileSystem, graphName, finalStateColor, useHSB, showCurrent, currentStateColor, incremental, statistics);
         setMarginSize(marginSize == null ? this.marginSize : marginSize);
     }
 
@@ -98,6 +123,7 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
      */
     @Override
     public String export(StateMachine stateMachine) {
+        prepareFragments(stateMachine.getTransitionsIndex());
         StringBuilder builder = new StringBuilder();
         appendNodes(builder, stateMachine);
         appendTransitions(builder, stateMachine);
@@ -115,25 +141,37 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
         builder.append("states:").append(NL);
         Map<State, Map<Message, State>> transitions = stateMachine.getTransitionsIndex().getTransitionsAsMap();
         for (State s : transitions.keySet()) {
-            builder.append(marginSize)
-                    .append("- state:").append(NL);
+            boolean current = isShowCurrent() && s.equals(stateMachine.getCurrent());
+            appendNode(builder, s, !current, (b, state) -> appendState(b, state, current));
+        }
+    }
+
+    /**
+     * Append the attributes of the given state to the builder
+     *
+     * @param builder the builder
+     * @param s the state
+     * @param current true if the state must be annotated as current
+     */
+    private void appendState(StringBuilder builder, State s, boolean current) {
+        builder.append(marginSize)
+                .append("- state:").append(NL);
+        printMargin(builder, 3);
+        builder.append("name: ")
+                .append("\"")
+                .append(s.getName())
+                .append("\"").append(NL);
+
+        if (current) {
             printMargin(builder, 3);
-            builder.append("name: ")
-                    .append("\"")
-                    .append(s.getName())
-                    .append("\"").append(NL);
-
-            if (isShowCurrent() && s.equals(stateMachine.getCurrent())) {
-                printMargin(builder, 3);
-                builder.append("current: \"true\"").append(NL);
-            }
+            builder.append("current: \"true\"").append(NL);
+        }
 
-            if (s.isFinal()) {
-                printMargin(builder, 3);
-                builder.append("final: \"true\"").append(NL);
-            }
-            appendNodeProperties(builder, s);
+        if (s.isFinal()) {
+            printMargin(builder, 3);
+            builder.append("final: \"true\"").append(NL);
         }
+        appendNodeProperties(builder, s);
     }
 
     /**
@@ -150,22 +188,43 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
             builder.append("transitions:");
         }
 
-        transitions.keySet().forEach(source ->
-                transitions.get(source).forEach((message, target) -> {
-                    builder.append(NL).append(getMarginSize()).append("- transition:")
-                            .append(NL);
-                    printMargin(builder, 3);
-                    builder.append("source: ");
-                    builder.append("\"")
-                            .append(source.getName())
-                            .append("\"").append(NL);
-                    printMargin(builder, 3);
-                    builder.append("target: ");
-                    builder.append("\"")
-                            .append(target.getName())
-                            .append("\"");
-                    formatMessage(builder, message);
-                }));
+        stateMachine.getAllTransitions().forEach(t -> appendEdge(builder, t, this::appendTransition));
+    }
+
+    /**
+     * Append the given transition to the builder
+     *
+     * @param builder the builder
+     * @param transition the transition
+     */
+    private void appendTransition(StringBuilder builder, StateTransition transition) {
+        builder.append(NL).append(getMarginSize()).append("- transition:")
+                .append(NL);
+        printMargin(builder, 3);
+        builder.append("source: ");
+        builder.append("\"")
+                .append(transition.getOrigin().getName())
+                .append("\"").append(NL);
+        printMargin(builder, 3);
+        builder.append("target: ");
+        builder.append("\"")
+                .append(transition.getTarget().getName())
+                .append("\"");
+        formatMessage(builder, transition.getMessage());
+        appendTransitionProperties(builder, transition);
+    }
+
+    /**
+     * Retrieves the settings affecting the rendering of the
+     * node and edge fragments including the margin size.
+     *
+     * @return the rendering settings
+     */
+    @Override
+    protected List<Object> getRenderingSettings() {
+        List<Object> settings = new ArrayList<>(super.getRenderingSettings());
+        settings.add(marginSize);
+        return settings;
     }
 
     /**
@@ -198,14 +257,39 @@ public class YAMLExporter extends AbstractStatesExporter<String, State, Message,
      * @param state the state
      */
     private void appendNodeProperties(StringBuilder builder, State state) {
-        if (state.hasProperties()) {
+        long traffic = (statistics != null) && (!state.hasProperty(TRAFFIC_KEY)) ? statistics.getCount(state) : 0L;
+        if ((state.hasProperties()) || (traffic > 0)) {
             printMargin(builder, 3);
             builder.append("properties:").append(NL);
-            state.getProperties().forEach((k, v) -> {
+            if (state.hasProperties()) {
+                state.getProperties().forEach((k, v) -> {
+                    printMargin(builder, 4);
+                    builder.append(formatKey(k)).append(":").append(" \"");
+                    builder.append(v).append("\"").append(NL);
+                });
+            }
+            if (traffic > 0) {
                 printMargin(builder, 4);
-                builder.append(formatKey(k)).append(":").append(" \"");
-                builder.append(v).append("\"").append(NL);
-            });
+                builder.append(TRAFFIC_KEY).append(": \"").append(traffic).append("\"").append(NL);
+            }
+        }
+    }
+
+    /**
+     * Appends the transition traffic (if statistics available)
+     * as a dictionary of properties to the builder
+     *
+     * @param builder the builder
+     * @param transition the transition
+     */
+    private void appendTransitionProperties(StringBuilder builder, StateTransition transition) {
+        long traffic = (statistics != null) ? statistics.getCount(transition) : 0L;
+        if (traffic > 0) {
+            builder.append(NL);
+            printMargin(builder, 3);
+            builder.append("properties:").append(NL);
+            printMargin(builder, 4);
+            builder.append(TRAFFIC_KEY).append(": \"").append(traffic).append("\"");
         }
     }
 
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.exporter.util;
+
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Stores the rendered fragments (nodes and edges) of the last
+ * exports of a transition index allowing to reuse them in subsequent
+ * exports.
+ * <p>
+ * The cache is bound to a single index and to the rendering settings
+ * of the exporter. Node fragments are discarded every time the version
+ * of the index changes (as the properties of the nodes may have been
+ * merged) and are only reused for the same node instance with the same number
+ * of modifications (see {@link com.github.pnavais.machine.api.AbstractNode#getModifications()}),
+ * as nodes can be modified in place without changing the version. Indexes
+ * materializing new node instances on every lookup get their node fragments
+ * rendered again. Edge fragments only depend on the transition
+ * itself and are kept across versions. Edge fragments not used since the last
+ * version change are evicted on the next one. Nothing is reused for
+ * unversioned indexes.
+ * </p>
+ * This class is not thread safe.
+ */
+public class FragmentCache {
+
+    /** The index whose fragments are cached */
+    private WeakReference<TransitionIndex<?, ?, ?>> indexRef = new WeakReference<>(null);
+
+    /** The version of the index when the node fragments were rendered */
+    private long version;
+
+    /** The rendering settings used for the cached fragments */
+    private Object settings;
+
+    /** The node fragments */
+    private Map<Object, NodeFragment> nodes = new HashMap<>();
+
+    /** The edge fragments used since the last version change */
+    private Map<Object, String> edges = new HashMap<>();
+
+    /** The edge fragments used before the last version change */
+    private Map<Object, String> previousEdges = new HashMap<>();
+
+    /**
+     * Checks the cached fragments against the given index and
+     * rendering settings, discarding the ones no longer valid.
+     *
+     * @param index the index to export
+     * @param settings the rendering settings
+     */
+    public void validate(TransitionIndex<?, ?, ?> index, Object settings) {
+        if ((indexRef.get() != index) || (!Objects.equals(this.settings, settings))) {
+            clear();
+            this.indexRef = new WeakReference<>(index);
+            this.settings = settings;
+            this.version = index.getVersion();
+        } else if (index.getVersion() == TransitionIndex.UNVERSIONED) {
+            nodes.clear();
+            edges.clear();
+            previousEdges.clear();
+        } else if (version != index.getVersion()) {
+            nodes.clear();
+            previousEdges = edges;
+            edges = new HashMap<>();
+            this.version = index.getVersion();
+        }
+    }
+
+    /**
+     * Retrieves the fragment of the given node rendering it if not
+     * found or rendered for another instance or number of modifications.
+     *
+     * @param node the node
+     * @param modifications the number of modifications of the node
+     * @param renderer the renderer of the fragment
+     * @return the node fragment
+     */
+    public String getNode(Object node, int modifications, Supplier<String> renderer) {
+        NodeFragment fragment = nodes.get(node);
+        if ((fragment == null) || (fragment.node != node) || (fragment.modifications != modifications)) {
+            fragment = new NodeFragment(node, modifications, renderer.get());
+            nodes.put(node, fragment);
+        }
+        return fragment.text;
+    }
+
+    /**
+     * Retrieves the fragment of the given edge rendering it
+     * if not found.
+     *
+     * @param edge the edge
+     * @param renderer the renderer of the fragment
+     * @return the edge fragment
+     */
+    public String getEdge(Object edge, Supplier<String> renderer) {
+        return edges.computeIfAbsent(edge, e -> {
+            String fragment = previousEdges.remove(e);
+            return (fragment != null) ? fragment : renderer.get();
+        });
+    }
+
+    /**
+     * Discards all cached fragments
+     */
+    public void clear() {
+        nodes.clear();
+        edges.clear();
+        previousEdges.clear();
+        indexRef = new WeakReference<>(null);
+        settings = null;
+    }
+
+    /**
+     * A node fragment along with the node instance
+     * and its number of modifications when rendered
+     */
+    private static class NodeFragment {
+
+        /** The node instance */
+        private final Object node;
+
+        /** The number of modifications of the node */
+        private final int modifications;
+
+        /** The rendered fragment */
+        private final String text;
+
+        /**
+         * Creates the node fragment
+         *
+         * @param node the node instance
+         * @param modifications the number of modifications of the node
+         * @param text the rendered fragment
+         */
+        NodeFragment(Object node, int modifications, String text) {
+            this.node = node;
+            this.modifications = modifications;
+            this.text = text;
+        }
+    }
+
+}
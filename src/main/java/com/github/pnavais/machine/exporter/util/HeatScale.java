@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.exporter.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.awt.*;
+
+/**
+ * Contains utility methods to translate traffic counts
+ * to a logarithmic scale of buckets and their colors.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class HeatScale {
+
+    /** The number of buckets of the scale */
+    public static final int BUCKETS = 5;
+
+    /** The hue of the coldest bucket (yellow) */
+    private static final float COLD_HUE = 1.0f / 6.0f;
+
+    /**
+     * Retrieves the bucket of the given count using
+     * a logarithmic scale up to the maximum count.
+     * Zero counts are always placed in bucket 0 whereas
+     * the maximum count is placed in the last bucket.
+     *
+     * @param count the count
+     * @param max the maximum count
+     * @return the bucket (from 0 to {@link #BUCKETS})
+     */
+    public static int toBucket(long count, long max) {
+        if ((count <= 0) || (max <= 0)) {
+            return 0;
+        }
+        double ratio = Math.log1p(Math.min(count, max)) / Math.log1p(max);
+        return Math.max(1, (int) Math.ceil(ratio * BUCKETS));
+    }
+
+    /**
+     * Retrieves the color of the given bucket ranging
+     * from pale yellow (coldest) to red (hottest).
+     *
+     * @param bucket the bucket
+     * @return the color of the bucket
+     */
+    public static Color toColor(int bucket) {
+        float heat = (float) Math.min(Math.max(bucket, 0), BUCKETS) / BUCKETS;
+        return Color.getHSBColor(COLD_HUE * (1.0f - heat), 0.2f + 0.8f * heat, 1.0f);
+    }
+
+    /**
+     * Retrieves the line width of the given bucket
+     *
+     * @param bucket the bucket
+     * @return the line width
+     */
+    public static int toWidth(int bucket) {
+        return 1 + Math.min(Math.max(bucket, 0), BUCKETS);
+    }
+}
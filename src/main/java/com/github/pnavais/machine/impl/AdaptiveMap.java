@@ -0,0 +1,303 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * A compact map preserving the insertion order and adapting its
+ * representation to the number of entries.
+ * <p>
+ * Small maps (up to {@link #INLINE_CAPACITY} entries) keep their keys and
+ * values inline in a single array scanned linearly, avoiding the overhead
+ * of the hash table and its entries. Bigger maps are backed by a {@link LinkedHashMap}
+ * and go back to the inline representation once enough keys are removed.
+ * </p>
+ * This map is not thread safe.
+ *
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public class AdaptiveMap<K, V> extends AbstractMap<K, V> {
+
+    /** The maximum number of entries stored inline */
+    public static final int INLINE_CAPACITY = 8;
+
+    /** The size below which a hashed map is stored inline again */
+    private static final int SHRINK_THRESHOLD = INLINE_CAPACITY / 2;
+
+    /** The shared array of empty maps */
+    private static final Object[] EMPTY_ENTRIES = {};
+
+    /** The inline keys and values (interleaved) */
+    private Object[] entries = EMPTY_ENTRIES;
+
+    /** The number of inline entries */
+    private int size;
+
+    /** The hash table used when the inline capacity is exceeded */
+    private LinkedHashMap<K, V> table;
+
+    /** The entry set view */
+    private Set<Map.Entry<K, V>> entrySet;
+
+    /**
+     * Creates an empty map
+     */
+    public AdaptiveMap() {
+    }
+
+    /**
+     * Creates a map with the entries of the given map
+     *
+     * @param map the map to copy
+     */
+    public AdaptiveMap(Map<? extends K, ? extends V> map) {
+        putAll(map);
+    }
+
+    @Override
+    public int size() {
+        return (table != null) ? table.size() : size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (table != null) ? table.containsKey(key) : indexOf(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        if (table != null) {
+            return table.containsValue(value);
+        }
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(entries[2 * i + 1], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        if (table != null) {
+            return table.get(key);
+        }
+        int index = indexOf(key);
+        return (index >= 0) ? (V) entries[2 * index + 1] : null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (table != null) {
+            return table.put(key, value);
+        }
+
+        int index = indexOf(key);
+        if (index >= 0) {
+            V previous = (V) entries[2 * index + 1];
+            entries[2 * index + 1] = value;
+            return previous;
+        }
+
+        if (size == INLINE_CAPACITY) {
+            LinkedHashMap<K, V> hashed = new LinkedHashMap<>();
+            forEach(hashed::put);
+            hashed.put(key, value);
+            table = hashed;
+            entries = EMPTY_ENTRIES;
+            size = 0;
+        } else {
+            if (2 * size == entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(2, Math.min(2 * entries.length, 2 * INLINE_CAPACITY)));
+            }
+            entries[2 * size] = key;
+            entries[2 * size + 1] = value;
+            size++;
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (table != null) {
+            V previous = table.remove(key);
+            shrink();
+            return previous;
+        }
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) entries[2 * index + 1];
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        table = null;
+        entries = EMPTY_ENTRIES;
+        size = 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (table != null) {
+            table.forEach(action);
+        } else {
+            for (int i = 0; i < size; i++) {
+                action.accept((K) entries[2 * i], (V) entries[2 * i + 1]);
+            }
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    /**
+     * Retrieves the position of the given key in the
+     * inline entries.
+     *
+     * @param key the key
+     * @return the position or -1 if not found
+     */
+    private int indexOf(Object key) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(entries[2 * i], key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes the inline entry at the given position
+     * preserving the order of the remaining ones.
+     *
+     * @param index the position of the entry
+     */
+    private void removeAt(int index) {
+        System.arraycopy(entries, 2 * (index + 1), entries, 2 * index, 2 * (size - index - 1));
+        size--;
+        entries[2 * size] = null;
+        entries[2 * size + 1] = null;
+        if (size == 0) {
+            entries = EMPTY_ENTRIES;
+        }
+    }
+
+    /**
+     * Moves back the entries of the hash table to the
+     * inline representation if small enough.
+     */
+    private void shrink() {
+        if ((table != null) && (table.size() <= SHRINK_THRESHOLD)) {
+            LinkedHashMap<K, V> hashed = table;
+            table = null;
+            entries = (hashed.isEmpty()) ? EMPTY_ENTRIES : new Object[2 * hashed.size()];
+            size = 0;
+            hashed.forEach((k, v) -> {
+                entries[2 * size] = k;
+                entries[2 * size + 1] = v;
+                size++;
+            });
+        }
+    }
+
+    /**
+     * The entry set view of the map
+     */
+    private class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return (table != null) ? table.entrySet().iterator() : new InlineIterator();
+        }
+
+        @Override
+        public int size() {
+            return AdaptiveMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            AdaptiveMap.this.clear();
+        }
+    }
+
+    /**
+     * Iterates the inline entries
+     */
+    private class InlineIterator implements Iterator<Map.Entry<K, V>> {
+
+        /** The position of the next entry */
+        private int next;
+
+        /** The position of the last returned entry */
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return next < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            int index = last;
+            return new SimpleEntry<K, V>((K) entries[2 * index], (V) entries[2 * index + 1]) {
+                @Override
+                public V setValue(V value) {
+                    entries[2 * index + 1] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            next = last;
+            last = -1;
+        }
+    }
+}
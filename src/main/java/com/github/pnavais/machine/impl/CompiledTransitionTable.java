@@ -0,0 +1,910 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.exception.FileExportException;
+import com.github.pnavais.machine.api.exception.FileImportException;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.api.transition.TransitionVisitor;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import lombok.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable transition index backed by a compiled transition table file
+ * mapped read-only in memory.
+ * <p>
+ * The table is compiled once from any existing index using {@link #compile(TransitionIndex, Path)}
+ * and later opened using {@link #map(Path)}. Opening the table just maps the file, all the
+ * lookups (state names, adjacency) are performed directly against the mapped buffer so several
+ * processes mapping the same file share a single copy of it in the page cache of the OS.
+ * </p>
+ * <p>
+ * The file stores the states (name, final flag and properties), the messages and
+ * the transitions in compressed sparse row layout (outgoing and incoming). Only plain
+ * states and string messages are preserved, i.e. the behaviour of custom states (e.g. message
+ * filters) is not compiled and custom messages are compiled as {@link StringMessage} using
+ * their string representation. Tables are limited to 2 GB.
+ * </p>
+ * States returned by the index are materialized on demand, modifying them has no effect
+ * on the table. Any attempt to modify the index raises an {@link UnsupportedOperationException}.
+ */
+public class CompiledTransitionTable implements TransitionIndex<State, Message, StateTransition> {
+
+    /** The magic number of compiled tables ("SMCT") */
+    static final int MAGIC = 0x534D4354;
+
+    /** The version of the compiled table format */
+    static final int FORMAT_VERSION = 1;
+
+    /** The size of the header */
+    static final int HEADER_SIZE = 56;
+
+    /** The size of the state records (name offset, name length, hash, flags, properties offset) */
+    static final int STATE_RECORD = 20;
+
+    /** The size of the message records (kind, offset, length) */
+    static final int MESSAGE_RECORD = 12;
+
+    /** The size of the edge records (message, adjacent state) */
+    static final int EDGE_RECORD = 8;
+
+    /** The flag of final states */
+    static final int FINAL_FLAG = 1;
+
+    /** The kind of string messages */
+    static final int STRING_MESSAGE = 0;
+
+    /** The kind of the ANY message */
+    private static final int ANY_MESSAGE = 1;
+
+    /** The kind of the EMPTY message */
+    private static final int EMPTY_MESSAGE = 2;
+
+    /** The kind of the NULL message */
+    private static final int NULL_MESSAGE = 3;
+
+    /** The mapped table */
+    private final ByteBuffer buffer;
+
+    /** The number of states */
+    private final int stateCount;
+
+    /** The number of transitions */
+    private final int transitionCount;
+
+    /** The number of slots of the name hash table */
+    private final int slotCount;
+
+    /** The offset of the state records */
+    private final int statesOffset;
+
+    /** The offset of the outgoing transitions index */
+    private final int outIndexOffset;
+
+    /** The offset of the outgoing transitions */
+    private final int outEdgesOffset;
+
+    /** The offset of the incoming transitions index */
+    private final int inIndexOffset;
+
+    /** The offset of the incoming transitions */
+    private final int inEdgesOffset;
+
+    /** The offset of the name hash table */
+    private final int slotsOffset;
+
+    /** The offset of the encoded strings */
+    private final int dataOffset;
+
+    /** The messages by id */
+    private final List<Message> messages;
+
+    /** The message ids */
+    private final Map<Message, Integer> messageIds;
+
+    /**
+     * Creates the index from the given compiled table
+     *
+     * @param buffer the compiled table
+     */
+    private CompiledTransitionTable(ByteBuffer buffer) {
+        checkHeader(buffer);
+        this.buffer = buffer;
+        this.stateCount = buffer.getInt(8);
+        int messageCount = buffer.getInt(12);
+        this.transitionCount = buffer.getInt(16);
+        this.slotCount = buffer.getInt(20);
+        this.statesOffset = buffer.getInt(24);
+        int messagesOffset = buffer.getInt(28);
+        this.outIndexOffset = buffer.getInt(32);
+        this.outEdgesOffset = buffer.getInt(36);
+        this.inIndexOffset = buffer.getInt(40);
+        this.inEdgesOffset = buffer.getInt(44);
+        this.slotsOffset = buffer.getInt(48);
+        this.dataOffset = buffer.getInt(52);
+
+        // Messages are few, decode them once
+        this.messages = new ArrayList<>(messageCount);
+        this.messageIds = new HashMap<>();
+        for (int i = 0; i < messageCount; i++) {
+            int record = messagesOffset + i * MESSAGE_RECORD;
+            int kind = buffer.getInt(record);
+            Message message = decodeMessage(kind, (kind == STRING_MESSAGE) ? decodeString(buffer.getInt(record + 4), buffer.getInt(record + 8)) : null);
+            messages.add(message);
+            messageIds.putIfAbsent(message, i);
+        }
+    }
+
+    /**
+     * Maps read-only the given compiled transition table
+     *
+     * @param file the compiled table file
+     * @return the transition index
+     */
+    public static CompiledTransitionTable map(@NonNull Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping remains valid after closing the channel
+            return new CompiledTransitionTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new FileImportException("Error mapping [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Creates an in-memory compiled table from the given index
+     *
+     * @param index the transition index
+     * @return the compiled transition index
+     */
+    public static CompiledTransitionTable of(@NonNull TransitionIndex<State, Message, StateTransition> index) {
+        return new CompiledTransitionTable(encode(index));
+    }
+
+    /**
+     * Compiles the given index writing the resulting table
+     * to the given file.
+     *
+     * @param index the transition index
+     * @param file the compiled table file
+     */
+    public static void compile(@NonNull TransitionIndex<State, Message, StateTransition> index, @NonNull Path file) {
+        ByteBuffer table = encode(index);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (table.hasRemaining()) {
+                channel.write(table);
+            }
+        } catch (IOException e) {
+            throw new FileExportException("Error compiling [" + file + "]", e);
+        }
+    }
+
+    /**
+     * Encodes the given index as a compiled table
+     *
+     * @param index the transition index
+     * @return the compiled table
+     */
+    private static ByteBuffer encode(TransitionIndex<State, Message, StateTransition> index) {
+        Map<State, Map<Message, State>> transitionMap = index.getTransitionsAsMap();
+
+        // Assign the ids of states and messages
+        List<State> states = new ArrayList<>(transitionMap.keySet());
+        Map<String, Integer> stateIds = new HashMap<>();
+        states.forEach(s -> stateIds.putIfAbsent(s.getName(), stateIds.size()));
+        List<Message> messageList = new ArrayList<>();
+        Map<Message, Integer> messageIdMap = new HashMap<>();
+        int[] outIndex = new int[states.size() + 1];
+        int[] inIndex = new int[states.size() + 1];
+        List<int[]> edges = new ArrayList<>();
+        for (int i = 0; i < states.size(); i++) {
+            for (Map.Entry<Message, State> entry : transitionMap.get(states.get(i)).entrySet()) {
+                int message = messageIdMap.computeIfAbsent(entry.getKey(), m -> {
+                    messageList.add(m);
+                    return messageList.size() - 1;
+                });
+                int target = stateIds.get(entry.getValue().getName());
+                edges.add(new int[]{ i, message, target });
+                inIndex[target + 1]++;
+            }
+            outIndex[i + 1] = edges.size();
+        }
+        for (int i = 0; i < states.size(); i++) {
+            inIndex[i + 1] += inIndex[i];
+        }
+
+        // Encode the strings
+        StringTable strings = new StringTable();
+        int[][] stateNames = new int[states.size()][];
+        int[] stateProperties = new int[states.size()];
+        for (int i = 0; i < states.size(); i++) {
+            State state = states.get(i);
+            stateNames[i] = strings.add(state.getName());
+            stateProperties[i] = state.hasProperties() ? strings.addProperties(state.getProperties()) : -1;
+        }
+        int[][] messageStrings = new int[messageList.size()][];
+        for (int i = 0; i < messageList.size(); i++) {
+            messageStrings[i] = (encodeKind(messageList.get(i)) == STRING_MESSAGE) ? strings.add(messageList.get(i).toString()) : new int[]{ 0, 0 };
+        }
+
+        // Compute the layout
+        int slots = Integer.highestOneBit(Math.max(1, states.size() * 2 - 1)) << 1;
+        int statesOffset = HEADER_SIZE;
+        int messagesOffset = statesOffset + states.size() * STATE_RECORD;
+        int outIndexOffset = messagesOffset + messageList.size() * MESSAGE_RECORD;
+        int outEdgesOffset = outIndexOffset + outIndex.length * 4;
+        int inIndexOffset = outEdgesOffset + edges.size() * EDGE_RECORD;
+        int inEdgesOffset = inIndexOffset + inIndex.length * 4;
+        int slotsOffset = inEdgesOffset + edges.size() * EDGE_RECORD;
+        int dataOffset = slotsOffset + slots * 4;
+        long size = (long) dataOffset + strings.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The compiled transition table exceeds the maximum size");
+        }
+
+        ByteBuffer table = ByteBuffer.allocate((int) size);
+        table.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(states.size()).putInt(messageList.size()).putInt(edges.size()).putInt(slots)
+                .putInt(statesOffset).putInt(messagesOffset).putInt(outIndexOffset).putInt(outEdgesOffset)
+                .putInt(inIndexOffset).putInt(inEdgesOffset).putInt(slotsOffset).putInt(dataOffset);
+
+        for (int i = 0; i < states.size(); i++) {
+            table.putInt(stateNames[i][0]).putInt(stateNames[i][1]).putInt(states.get(i).getName().hashCode())
+                    .putInt(states.get(i).isFinal() ? FINAL_FLAG : 0).putInt(stateProperties[i]);
+        }
+        for (int i = 0; i < messageList.size(); i++) {
+            table.putInt(encodeKind(messageList.get(i))).putInt(messageStrings[i][0]).putInt(messageStrings[i][1]);
+        }
+        Arrays.stream(outIndex).forEach(table::putInt);
+        edges.forEach(e -> table.putInt(e[1]).putInt(e[2]));
+        Arrays.stream(inIndex).forEach(table::putInt);
+        int[] inPositions = Arrays.copyOf(inIndex, inIndex.length);
+        for (int[] e : edges) {
+            int record = inEdgesOffset + (inPositions[e[2]]++) * EDGE_RECORD;
+            table.putInt(record, e[1]).putInt(record + 4, e[0]);
+        }
+        for (int i = 0; i < states.size(); i++) {
+            int slot = states.get(i).getName().hashCode() & (slots - 1);
+            while (table.getInt(slotsOffset + slot * 4) != 0) {
+                slot = (slot + 1) & (slots - 1);
+            }
+            table.putInt(slotsOffset + slot * 4, i + 1);
+        }
+        table.position(dataOffset);
+        table.put(strings.toByteArray());
+        table.flip();
+        return table;
+    }
+
+    /**
+     * Retrieves the kind of the given message
+     *
+     * @param message the message
+     * @return the kind of the message
+     */
+    private static int encodeKind(Message message) {
+        if (message.equals(Messages.ANY)) {
+            return ANY_MESSAGE;
+        } else if (message.equals(Messages.EMPTY)) {
+            return EMPTY_MESSAGE;
+        } else if (message.equals(Messages.NULL)) {
+            return NULL_MESSAGE;
+        }
+        return STRING_MESSAGE;
+    }
+
+    /**
+     * Checks the header of a compiled table
+     *
+     * @param header the buffer starting with the header
+     */
+    static void checkHeader(ByteBuffer header) {
+        if ((header.limit() < HEADER_SIZE) || (header.getInt(0) != MAGIC)) {
+            throw new IllegalArgumentException("Not a compiled transition table");
+        }
+        if (header.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported compiled transition table version [" + header.getInt(4) + "]");
+        }
+    }
+
+    /**
+     * Creates the message of the given kind
+     *
+     * @param kind the kind of message
+     * @param key the key of string messages
+     * @return the message
+     */
+    static Message decodeMessage(int kind, String key) {
+        switch (kind) {
+            case ANY_MESSAGE:
+                return Messages.ANY;
+            case EMPTY_MESSAGE:
+                return Messages.EMPTY;
+            case NULL_MESSAGE:
+                return Messages.NULL;
+            default:
+                return StringMessage.from(key);
+        }
+    }
+
+    /**
+     * Retrieves the next state in the transition from
+     * source state upon message m reception
+     *
+     * @param source the origin state
+     * @param m the received message
+     * @return the next state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getNext(@NonNull State source, @NonNull Message m) {
+        int target = findTarget(findId(source.getName()), m);
+        return (target >= 0) ? Optional.of(materialize(target)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the first state (in compilation order) having
+     * a transition to the given state upon message m reception.
+     *
+     * @param source the target state
+     * @param m the message
+     * @return the previous state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getPrevious(@NonNull State source, @NonNull Message m) {
+        int target = findId(source.getName());
+        Integer message = messageIds.get(m);
+        int previous = -1;
+        if ((target >= 0) && (message != null)) {
+            for (int e = getIndex(inIndexOffset, target); e < getIndex(inIndexOffset, target + 1); e++) {
+                int origin = buffer.getInt(inEdgesOffset + e * EDGE_RECORD + 4);
+                if ((buffer.getInt(inEdgesOffset + e * EDGE_RECORD) == message) && ((previous < 0) || (origin < previous))) {
+                    previous = origin;
+                }
+            }
+        }
+        return (previous >= 0) ? Optional.of(materialize(previous)) : Optional.empty();
+    }
+
+    /**
+     * Finds the given state by its name.
+     *
+     * @param stateName the name of the state
+     * @return the state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> find(@NonNull String stateName) {
+        int id = findId(stateName);
+        return (id >= 0) ? Optional.of(materialize(id)) : Optional.empty();
+    }
+
+    /**
+     * Checks the presence of the given state in
+     * the index.
+     *
+     * @param state the state to find
+     * @return true if state present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull State state) {
+        return findId(state.getName()) >= 0;
+    }
+
+    /**
+     * Checks the presence of the given transition in
+     * the index.
+     *
+     * @param transition the transition to find
+     * @return true if transition present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull StateTransition transition) {
+        int target = findTarget(findId(transition.getOrigin().getName()), transition.getMessage());
+        return (target >= 0) && (target == findId(transition.getTarget().getName()));
+    }
+
+    /**
+     * Retrieves the first state of the table
+     *
+     * @return the first state in the index
+     */
+    @Override
+    public Optional<State> getFirst() {
+        return (stateCount > 0) ? Optional.of(materialize(0)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the number of states in the index
+     *
+     * @return the number of states in the index
+     */
+    @Override
+    public int size() {
+        return stateCount;
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param stateName the state's name
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull String stateName) {
+        return collectTransitions(getId(stateName), outIndexOffset, outEdgesOffset, true);
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull State state) {
+        return getTransitions(state.getName());
+    }
+
+    /**
+     * Retrieves the transitions targeting the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the incoming transitions
+     */
+    @Override
+    public Collection<StateTransition> getIncomingTransitions(@NonNull State state) {
+        return collectTransitions(getId(state.getName()), inIndexOffset, inEdgesOffset, false);
+    }
+
+    /**
+     * Retrieve all the transitions stored in the index.
+     *
+     * @return the collection of transitions
+     */
+    @Override
+    public Collection<StateTransition> getAllTransitions() {
+        Collection<StateTransition> transitions = new ArrayList<>(transitionCount);
+        for (int id = 0; id < stateCount; id++) {
+            transitions.addAll(collectTransitions(id, outIndexOffset, outEdgesOffset, true));
+        }
+        return transitions;
+    }
+
+    /**
+     * Visits all the transitions stored in the table
+     * without building transition instances.
+     *
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull TransitionVisitor<State, Message> visitor) {
+        State[] states = new State[stateCount];
+        for (int id = 0; id < stateCount; id++) {
+            states[id] = materialize(id);
+        }
+        for (int id = 0; id < stateCount; id++) {
+            for (int e = getIndex(outIndexOffset, id); e < getIndex(outIndexOffset, id + 1); e++) {
+                int record = outEdgesOffset + e * EDGE_RECORD;
+                visitor.visit(states[id], messages.get(buffer.getInt(record)), states[buffer.getInt(record + 4)]);
+            }
+        }
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param state the state
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull State state, @NonNull TransitionVisitor<State, Message> visitor) {
+        forEachTransition(state.getName(), visitor);
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state's name
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull String stateName, @NonNull TransitionVisitor<State, Message> visitor) {
+        int id = getId(stateName);
+        State origin = materialize(id);
+        for (int e = getIndex(outIndexOffset, id); e < getIndex(outIndexOffset, id + 1); e++) {
+            int record = outEdgesOffset + e * EDGE_RECORD;
+            int target = buffer.getInt(record + 4);
+            visitor.visit(origin, messages.get(buffer.getInt(record)), (target == id) ? origin : materialize(target));
+        }
+    }
+
+    /**
+     * Retrieves the version of the index which, being
+     * immutable, never changes.
+     *
+     * @return the version of the index
+     */
+    @Override
+    public long getVersion() {
+        return 0;
+    }
+
+    /**
+     * Retrieves a copy of the transitions as a map.
+     * The whole map is materialized so its use is discouraged
+     * for large tables.
+     *
+     * @return the transitions as a map
+     */
+    @Override
+    public Map<State, Map<Message, State>> getTransitionsAsMap() {
+        State[] states = new State[stateCount];
+        for (int id = 0; id < stateCount; id++) {
+            states[id] = materialize(id);
+        }
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        for (int id = 0; id < stateCount; id++) {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            for (int e = getIndex(outIndexOffset, id); e < getIndex(outIndexOffset, id + 1); e++) {
+                int record = outEdgesOffset + e * EDGE_RECORD;
+                messageStateMap.put(messages.get(buffer.getInt(record)), states[buffer.getInt(record + 4)]);
+            }
+            transitionMap.put(states[id], messageStateMap);
+        }
+        return transitionMap;
+    }
+
+    /**
+     * Creates a snapshot of the table reading its compressed
+     * sparse row layout straight from the mapped buffer. The states
+     * of the snapshot are materialized on demand.
+     *
+     * @return the snapshot of the transitions
+     */
+    @Override
+    public TransitionGraph<State, Message> snapshot() {
+        int[] offsets = new int[stateCount + 1];
+        for (int id = 0; id <= stateCount; id++) {
+            offsets[id] = getIndex(outIndexOffset, id);
+        }
+        int[] targets = new int[transitionCount];
+        int[] messageIds = new int[transitionCount];
+        for (int e = 0; e < transitionCount; e++) {
+            int record = outEdgesOffset + e * EDGE_RECORD;
+            messageIds[e] = buffer.getInt(record);
+            targets[e] = buffer.getInt(record + 4);
+        }
+        return TransitionGraph.of(new StateList(), this::findId, messages, offsets, targets, messageIds, getVersion());
+    }
+
+    /**
+     * Creates a stream of the transitions of the index backed
+     * by a snapshot of the index, hence not affected by later
+     * modifications and evenly split in parallel streams.
+     *
+     * @return the stream of transitions
+     */
+    @Override
+    public Stream<StateTransition> transitions() {
+        return StreamSupport.stream(snapshot().transitionSpliterator(StateTransition::new), false);
+    }
+
+    @Override
+    public void add(StateTransition transition) {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<StateTransition> transitions) {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void remove(StateTransition transition) {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void remove(State state) {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void remove(String stateName) {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void removeAllTransitions() {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    @Override
+    public List<State> prune() {
+        throw new UnsupportedOperationException("Compiled transition tables are immutable");
+    }
+
+    /**
+     * Finds the target of the transition from the given
+     * origin upon the message
+     *
+     * @param origin the origin state id
+     * @param m the message
+     * @return the target state id or -1 if not found
+     */
+    private int findTarget(int origin, Message m) {
+        Integer message = messageIds.get(m);
+        if ((origin >= 0) && (message != null)) {
+            for (int e = getIndex(outIndexOffset, origin); e < getIndex(outIndexOffset, origin + 1); e++) {
+                if (buffer.getInt(outEdgesOffset + e * EDGE_RECORD) == message) {
+                    return buffer.getInt(outEdgesOffset + e * EDGE_RECORD + 4);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the transitions of the given state
+     *
+     * @param id the state id
+     * @param indexOffset the offset of the adjacency index
+     * @param edgesOffset the offset of the adjacency edges
+     * @param outgoing true for outgoing transitions, false for incoming
+     * @return the transitions
+     */
+    private Collection<StateTransition> collectTransitions(int id, int indexOffset, int edgesOffset, boolean outgoing) {
+        State state = materialize(id);
+        Map<Integer, State> states = new HashMap<>();
+        Collection<StateTransition> transitions = new ArrayList<>();
+        for (int e = getIndex(indexOffset, id); e < getIndex(indexOffset, id + 1); e++) {
+            int record = edgesOffset + e * EDGE_RECORD;
+            int adjacent = buffer.getInt(record + 4);
+            State other = (adjacent == id) ? state : states.computeIfAbsent(adjacent, this::materialize);
+            Message message = messages.get(buffer.getInt(record));
+            transitions.add(outgoing ? new StateTransition(state, message, other) : new StateTransition(other, message, state));
+        }
+        return transitions;
+    }
+
+    /**
+     * Creates the state instance for the given id
+     *
+     * @param id the state id
+     * @return the state
+     */
+    private State materialize(int id) {
+        int record = statesOffset + id * STATE_RECORD;
+        State state = new State(decodeString(buffer.getInt(record), buffer.getInt(record + 4)));
+        state.setFinal((buffer.getInt(record + 12) & FINAL_FLAG) != 0);
+        int propertiesOffset = buffer.getInt(record + 16);
+        if (propertiesOffset >= 0) {
+            int position = dataOffset + propertiesOffset;
+            int count = buffer.getInt(position);
+            position += 4;
+            for (int i = 0; i < count; i++) {
+                int keyLength = buffer.getInt(position);
+                String key = decodeString(position + 4 - dataOffset, keyLength);
+                position += 4 + keyLength;
+                int valueLength = buffer.getInt(position);
+                state.addProperty(key, decodeString(position + 4 - dataOffset, valueLength));
+                position += 4 + valueLength;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Retrieves the id of the given state name
+     * looking it up in the mapped hash table.
+     *
+     * @param stateName the state name
+     * @return the id or -1 if not found
+     */
+    private int findId(String stateName) {
+        byte[] encoded = stateName.getBytes(StandardCharsets.UTF_8);
+        int hash = stateName.hashCode();
+        int slot = hash & (slotCount - 1);
+        int value;
+        while ((value = buffer.getInt(slotsOffset + slot * 4)) != 0) {
+            if (matches(value - 1, hash, encoded)) {
+                return value - 1;
+            }
+            slot = (slot + 1) & (slotCount - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the id of the given state name or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state name
+     * @return the id
+     */
+    private int getId(String stateName) {
+        int id = findId(stateName);
+        if (id < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        return id;
+    }
+
+    /**
+     * Checks if the name of the given state matches the encoded name
+     *
+     * @param id the state id
+     * @param hash the hash of the name
+     * @param encoded the encoded name
+     * @return true if matches, false otherwise
+     */
+    private boolean matches(int id, int hash, byte[] encoded) {
+        int record = statesOffset + id * STATE_RECORD;
+        if ((buffer.getInt(record + 8) != hash) || (buffer.getInt(record + 4) != encoded.length)) {
+            return false;
+        }
+        int offset = dataOffset + buffer.getInt(record);
+        for (int i = 0; i < encoded.length; i++) {
+            if (buffer.get(offset + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads an entry of the given adjacency index
+     *
+     * @param indexOffset the offset of the adjacency index
+     * @param id the state id
+     * @return the position of the first edge of the state
+     */
+    private int getIndex(int indexOffset, int id) {
+        return buffer.getInt(indexOffset + id * 4);
+    }
+
+    /**
+     * Decodes the string stored at the given offset
+     *
+     * @param offset the offset relative to the strings section
+     * @param length the length of the encoded string
+     * @return the string
+     */
+    private String decodeString(int offset, int length) {
+        byte[] encoded = new byte[length];
+        buffer.get(dataOffset + offset, encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The states of the table by id materialized on demand
+     */
+    private class StateList extends AbstractList<State> implements RandomAccess {
+
+        @Override
+        public State get(int id) {
+            return materialize(Objects.checkIndex(id, stateCount));
+        }
+
+        @Override
+        public int size() {
+            return stateCount;
+        }
+    }
+
+    /**
+     * Accumulates the UTF-8 encoded strings of the table
+     */
+    private static class StringTable {
+
+        /** The encoded strings */
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        /**
+         * Adds the given string
+         *
+         * @param value the string
+         * @return the offset and length of the encoded string
+         */
+        int[] add(String value) {
+            byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            int offset = data.size();
+            data.write(encoded, 0, encoded.length);
+            return new int[]{ offset, encoded.length };
+        }
+
+        /**
+         * Adds the given properties as a count followed by
+         * the length prefixed keys and values.
+         *
+         * @param properties the properties
+         * @return the offset of the encoded properties
+         */
+        int addProperties(Map<String, String> properties) {
+            int offset = data.size();
+            writeInt(properties.size());
+            properties.forEach((k, v) -> {
+                byte[] key = k.getBytes(StandardCharsets.UTF_8);
+                byte[] value = v.getBytes(StandardCharsets.UTF_8);
+                writeInt(key.length);
+                data.write(key, 0, key.length);
+                writeInt(value.length);
+                data.write(value, 0, value.length);
+            });
+            return offset;
+        }
+
+        /**
+         * Writes a big-endian int
+         *
+         * @param value the value
+         */
+        private void writeInt(int value) {
+            data.write(value >>> 24);
+            data.write(value >>> 16);
+            data.write(value >>> 8);
+            data.write(value);
+        }
+
+        /**
+         * Retrieves the size of the encoded strings
+         *
+         * @return the size
+         */
+        int size() {
+            return data.size();
+        }
+
+        /**
+         * Retrieves the encoded strings
+         *
+         * @return the encoded strings
+         */
+        byte[] toByteArray() {
+            return data.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.model.AbstractFilteredState;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Precomputes the chains of automatic transitions i.e. the transitions
+ * triggered by the {@link Messages#EMPTY} message (or the {@link Messages#ANY}
+ * fallback) so a chain can be resolved in a single jump.
+ * <p>
+ * Only the steps between non final states without filters are chained as they are
+ * always accepted by the default transition checker. Chains end at states without
+ * automatic transitions, self loops, final states or before entering/leaving a
+ * filtered state. States leading to a loop of chained steps are flagged as cyclic.
+ * </p>
+ * The table is an immutable snapshot of the transitions at the given version.
+ */
+public class EmptyTransitionChains {
+
+    /** The graph of transitions */
+    private final TransitionGraph<State, Message> graph;
+
+    /** The id of the state ending the chain of every state */
+    private final int[] ends;
+
+    /** The number of steps of the chain of every state */
+    private final int[] steps;
+
+    /** The states leading to a loop */
+    private final BitSet cyclic;
+
+    /**
+     * The version of the transition index
+     */
+    @Getter
+    private final long version;
+
+    /**
+     * Precomputes the chains of the given transition index
+     *
+     * @param transitionIndex the transition index
+     */
+    public EmptyTransitionChains(@NonNull TransitionIndex<State, Message, StateTransition> transitionIndex) {
+        this.graph = transitionIndex.snapshot();
+        this.version = transitionIndex.getVersion();
+        int n = graph.getNodeCount();
+        int empty = graph.getMessages().indexOf(Messages.EMPTY);
+        int any = graph.getMessages().indexOf(Messages.ANY);
+
+        // The chained step of every state (or -1 if not chained)
+        int[] next = new int[n];
+        for (int i = 0; i < n; i++) {
+            int target = (empty >= 0) ? graph.getNext(i, empty) : -1;
+            target = ((target < 0) && (any >= 0)) ? graph.getNext(i, any) : target;
+            next[i] = ((target >= 0) && (target != i) && isPlain(graph.getNode(i)) && !graph.getNode(i).isFinal()
+                    && isPlain(graph.getNode(target))) ? target : -1;
+        }
+
+        this.ends = new int[n];
+        this.steps = new int[n];
+        this.cyclic = new BitSet(n);
+        Arrays.fill(ends, -1);
+        int[] path = new int[n];
+        for (int i = 0; i < n; i++) {
+            // Walk until a resolved state (or a state of the current path) is found
+            int length = 0;
+            int current = i;
+            while ((current >= 0) && (ends[current] == -1)) {
+                ends[current] = -2;
+                path[length++] = current;
+                current = next[current];
+            }
+            boolean loop = (current >= 0) && ((ends[current] == -2) || cyclic.get(current));
+            int end = (current < 0) ? path[length - 1] : ends[current];
+            int count = (current < 0) ? -1 : steps[current];
+            for (int p = length - 1; p >= 0; p--) {
+                count++;
+                ends[path[p]] = loop ? path[p] : end;
+                steps[path[p]] = loop ? 0 : count;
+                cyclic.set(path[p], loop);
+            }
+        }
+    }
+
+    /**
+     * Checks whether the given state can be chained i.e. has no filters
+     *
+     * @param state the state
+     * @return true if chainable, false otherwise
+     */
+    private static boolean isPlain(State state) {
+        return !(state instanceof AbstractFilteredState);
+    }
+
+    /**
+     * Retrieves the state ending the chain starting at the given state
+     * (or the state itself if not chained or unknown).
+     *
+     * @param state the state
+     * @return the end of the chain
+     */
+    public State getEnd(@NonNull State state) {
+        int id = graph.indexOf(state.getName());
+        return (id >= 0) ? graph.getNode(ends[id]) : state;
+    }
+
+    /**
+     * Retrieves the number of automatic transitions of the chain
+     * starting at the given state.
+     *
+     * @param state the state
+     * @return the number of steps
+     */
+    public int getSteps(@NonNull State state) {
+        int id = graph.indexOf(state.getName());
+        return (id >= 0) ? steps[id] : 0;
+    }
+
+    /**
+     * Checks whether the chain starting at the given state
+     * never ends.
+     *
+     * @param state the state
+     * @return true if the chain loops, false otherwise
+     */
+    public boolean isCyclic(@NonNull State state) {
+        int id = graph.indexOf(state.getName());
+        return (id >= 0) && cyclic.get(id);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import lombok.NonNull;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Assigns consecutive int identifiers to names storing both
+ * the names (UTF-8 encoded) and the lookup hash table off-heap.
+ * <p>
+ * Identifiers are never reused, once a name is removed its identifier
+ * is discarded and a new one is assigned if the name is added again.
+ * </p>
+ * This class is not thread safe.
+ */
+public class OffHeapNameTable {
+
+    /** The size of the record of every name (offset, length and hash) */
+    private static final int RECORD_SIZE = 16;
+
+    /** The empty slot marker of the hash table */
+    private static final int EMPTY = 0;
+
+    /** The removed slot marker of the hash table */
+    private static final int REMOVED = -1;
+
+    /** The encoded names */
+    private final OffHeapStore data = new OffHeapStore();
+
+    /** The records of the names by identifier */
+    private final OffHeapStore records = new OffHeapStore();
+
+    /** The hash table slots (identifier + 1) */
+    private final OffHeapStore slots = new OffHeapStore();
+
+    /** The number of slots of the hash table */
+    private int capacity;
+
+    /** The number of used slots (including removed ones) */
+    private int used;
+
+    /** The number of identifiers assigned */
+    private int count;
+
+    /** The end of the encoded names */
+    private long dataEnd;
+
+    /**
+     * Creates the name table
+     */
+    public OffHeapNameTable() {
+        clear();
+    }
+
+    /**
+     * Retrieves the number of identifiers assigned so far
+     * (including the ones of removed names).
+     *
+     * @return the number of identifiers
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Retrieves the identifier of the given name
+     *
+     * @param name the name
+     * @return the identifier or -1 if not found
+     */
+    public int find(@NonNull String name) {
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int hash = name.hashCode();
+        int slot = hash & (capacity - 1);
+        int value;
+        while ((value = getSlot(slot)) != EMPTY) {
+            if ((value != REMOVED) && (matches(value - 1, hash, encoded))) {
+                return value - 1;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the identifier of the given name
+     * assigning a new one if not found.
+     *
+     * @param name the name
+     * @return the identifier
+     */
+    public int intern(@NonNull String name) {
+        int id = find(name);
+        if (id < 0) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            id = count++;
+            records.ensureCapacity((long) count * RECORD_SIZE);
+            data.ensureCapacity(dataEnd + encoded.length);
+            for (int i = 0; i < encoded.length; i++) {
+                data.putByte(dataEnd + i, encoded[i]);
+            }
+            long record = (long) id * RECORD_SIZE;
+            records.putLong(record, dataEnd);
+            records.putInt(record + 8, encoded.length);
+            records.putInt(record + 12, name.hashCode());
+            dataEnd += encoded.length;
+            insert(id, name.hashCode());
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the name of the given identifier
+     *
+     * @param id the identifier
+     * @return the name
+     */
+    public String get(int id) {
+        long record = (long) id * RECORD_SIZE;
+        long offset = records.getLong(record);
+        byte[] encoded = new byte[records.getInt(record + 8)];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = data.getByte(offset + i);
+        }
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Removes the given name from the lookup table
+     * (the name remains accessible by its identifier).
+     *
+     * @param name the name
+     * @return the identifier removed or -1 if not found
+     */
+    public int remove(@NonNull String name) {
+        int id = find(name);
+        if (id >= 0) {
+            int slot = name.hashCode() & (capacity - 1);
+            while (getSlot(slot) != id + 1) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            setSlot(slot, REMOVED);
+        }
+        return id;
+    }
+
+    /**
+     * Removes all the names
+     */
+    public void clear() {
+        data.clear();
+        records.clear();
+        slots.clear();
+        capacity = 16;
+        slots.ensureCapacity(4L * capacity);
+        used = 0;
+        count = 0;
+        dataEnd = 0;
+    }
+
+    /**
+     * Inserts the given identifier in the hash table
+     * growing it if needed.
+     *
+     * @param id the identifier
+     * @param hash the hash of the name
+     */
+    private void insert(int id, int hash) {
+        if (2L * (used + 1) > capacity) {
+            rehash();
+        }
+        int slot = hash & (capacity - 1);
+        while (getSlot(slot) > 0) {
+            slot = (slot + 1) & (capacity - 1);
+        }
+        used += (getSlot(slot) == EMPTY) ? 1 : 0;
+        setSlot(slot, id + 1);
+    }
+
+    /**
+     * Rebuilds the hash table discarding the removed slots and
+     * doubling its capacity if needed.
+     */
+    private void rehash() {
+        int[] live = new int[used];
+        int size = 0;
+        for (int i = 0; i < capacity; i++) {
+            int value = getSlot(i);
+            if (value > 0) {
+                live[size++] = value - 1;
+            }
+        }
+
+        while (4L * (size + 1) > capacity) {
+            capacity <<= 1;
+        }
+        slots.clear();
+        slots.ensureCapacity(4L * capacity);
+        used = 0;
+        for (int i = 0; i < size; i++) {
+            insert(live[i], records.getInt((long) live[i] * RECORD_SIZE + 12));
+        }
+    }
+
+    /**
+     * Checks if the name of the given identifier matches the encoded name
+     *
+     * @param id the identifier
+     * @param hash the hash of the name
+     * @param encoded the encoded name
+     * @return true if matches, false otherwise
+     */
+    private boolean matches(int id, int hash, byte[] encoded) {
+        long record = (long) id * RECORD_SIZE;
+        if ((records.getInt(record + 12) != hash) || (records.getInt(record + 8) != encoded.length)) {
+            return false;
+        }
+        long offset = records.getLong(record);
+        for (int i = 0; i < encoded.length; i++) {
+            if (data.getByte(offset + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves the value of the given slot
+     *
+     * @param slot the slot
+     * @return the value
+     */
+    private int getSlot(int slot) {
+        return slots.getInt(4L * slot);
+    }
+
+    /**
+     * Sets the value of the given slot
+     *
+     * @param slot the slot
+     * @param value the value
+     */
+    private void setSlot(int slot, int value) {
+        slots.putInt(4L * slot, value);
+    }
+}
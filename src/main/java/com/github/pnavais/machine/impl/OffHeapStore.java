@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable block of memory allocated outside of the heap
+ * (using direct byte buffers) and addressed by long offsets.
+ * <p>
+ * The memory is split in segments of a fixed size in order to overcome
+ * the limits of a single buffer. Small stores use a single segment grown
+ * on demand until reaching the segment size. Primitive values must be
+ * aligned to their size so they never span two segments.
+ * </p>
+ * This class is not thread safe.
+ */
+public class OffHeapStore {
+
+    /** The default size of the segments (4 MB) */
+    public static final int DEFAULT_SEGMENT_BITS = 22;
+
+    /** The initial size of the first segment */
+    private static final int INITIAL_SIZE = 256;
+
+    /** The number of bits of the segment size */
+    private final int segmentBits;
+
+    /** The mask to obtain the position inside a segment */
+    private final long segmentMask;
+
+    /** The segments */
+    private ByteBuffer[] segments = new ByteBuffer[0];
+
+    /**
+     * Creates the store with the default segment size
+     */
+    public OffHeapStore() {
+        this(DEFAULT_SEGMENT_BITS);
+    }
+
+    /**
+     * Creates the store with segments of 2^segmentBits bytes
+     *
+     * @param segmentBits the number of bits of the segment size
+     */
+    public OffHeapStore(int segmentBits) {
+        if ((segmentBits < 8) || (segmentBits > 30)) {
+            throw new IllegalArgumentException("Segment bits must be between 8 and 30");
+        }
+        this.segmentBits = segmentBits;
+        this.segmentMask = (1L << segmentBits) - 1;
+    }
+
+    /**
+     * Retrieves the number of bytes currently allocated
+     *
+     * @return the capacity of the store
+     */
+    public long capacity() {
+        return (segments.length == 1) ? segments[0].capacity() : ((long) segments.length) << segmentBits;
+    }
+
+    /**
+     * Ensures the store can hold at least the given number of bytes
+     * allocating new segments if needed. The new memory is zeroed.
+     *
+     * @param bytes the minimum capacity
+     */
+    public void ensureCapacity(long bytes) {
+        if (bytes <= capacity()) {
+            return;
+        }
+
+        int segmentSize = 1 << segmentBits;
+        if (segments.length <= 1) {
+            // Grow the first segment up to the segment size
+            long size = Math.max(INITIAL_SIZE, capacity());
+            while ((size < bytes) && (size < segmentSize)) {
+                size <<= 1;
+            }
+            ByteBuffer first = ByteBuffer.allocateDirect((int) Math.min(size, segmentSize));
+            if (segments.length == 1) {
+                segments[0].clear();
+                first.put(segments[0]);
+            }
+            segments = new ByteBuffer[]{ first };
+        }
+
+        if (bytes > capacity()) {
+            int count = (int) ((bytes + segmentMask) >>> segmentBits);
+            int current = segments.length;
+            segments = Arrays.copyOf(segments, count);
+            for (int i = current; i < count; i++) {
+                segments[i] = ByteBuffer.allocateDirect(segmentSize);
+            }
+        }
+    }
+
+    /**
+     * Reads the int at the given offset
+     *
+     * @param offset the offset
+     * @return the value
+     */
+    public int getInt(long offset) {
+        return segments[(int) (offset >>> segmentBits)].getInt((int) (offset & segmentMask));
+    }
+
+    /**
+     * Writes the int at the given offset
+     *
+     * @param offset the offset
+     * @param value the value
+     */
+    public void putInt(long offset, int value) {
+        segments[(int) (offset >>> segmentBits)].putInt((int) (offset & segmentMask), value);
+    }
+
+    /**
+     * Reads the long at the given offset
+     *
+     * @param offset the offset
+     * @return the value
+     */
+    public long getLong(long offset) {
+        return segments[(int) (offset >>> segmentBits)].getLong((int) (offset & segmentMask));
+    }
+
+    /**
+     * Writes the long at the given offset
+     *
+     * @param offset the offset
+     * @param value the value
+     */
+    public void putLong(long offset, long value) {
+        segments[(int) (offset >>> segmentBits)].putLong((int) (offset & segmentMask), value);
+    }
+
+    /**
+     * Reads the byte at the given offset
+     *
+     * @param offset the offset
+     * @return the value
+     */
+    public byte getByte(long offset) {
+        return segments[(int) (offset >>> segmentBits)].get((int) (offset & segmentMask));
+    }
+
+    /**
+     * Writes the byte at the given offset
+     *
+     * @param offset the offset
+     * @param value the value
+     */
+    public void putByte(long offset, byte value) {
+        segments[(int) (offset >>> segmentBits)].put((int) (offset & segmentMask), value);
+    }
+
+    /**
+     * Releases all the segments of the store
+     */
+    public void clear() {
+        segments = new ByteBuffer[0];
+    }
+}
@@ -0,0 +1,839 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.exception.ValidationException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.api.transition.TransitionVisitor;
+import com.github.pnavais.machine.api.validator.TransitionValidator;
+import com.github.pnavais.machine.api.validator.ValidationResult;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.function.Consumer;
+
+/**
+ * A transition index storing the states and transitions outside of the heap.
+ * <p>
+ * States are identified by consecutive int ids (assigned in insertion order) and
+ * messages by int ids. The state names and the adjacency (outgoing and incoming
+ * transitions of every state as linked lists of transition records) live in direct
+ * memory so the garbage collector does not need to trace them.
+ * </p>
+ * <p>
+ * {@link State} instances are not retained, they are materialized on demand
+ * (flyweight) from the stored name, final flag and properties. Hence, modifying
+ * a state returned by the index has no effect on the index. The only exception
+ * are instances of {@link State} subclasses (e.g. filtered states) which are kept
+ * on heap as they carry additional behaviour.
+ * </p>
+ * Messages and the (optional) state properties are kept on heap.
+ */
+@Getter
+public class OffHeapTransitionMap implements TransitionIndex<State, Message, StateTransition> {
+
+    /** The size of the state records (out head/tail, in head/tail and flags) */
+    private static final int STATE_RECORD = 20;
+
+    /** The size of the transition records (origin, message, target, next out, next in) */
+    private static final int TRANSITION_RECORD = 20;
+
+    /** The offset of the first outgoing transition */
+    private static final int OUT_HEAD = 0;
+
+    /** The offset of the last outgoing transition */
+    private static final int OUT_TAIL = 4;
+
+    /** The offset of the first incoming transition */
+    private static final int IN_HEAD = 8;
+
+    /** The offset of the last incoming transition */
+    private static final int IN_TAIL = 12;
+
+    /** The offset of the state flags */
+    private static final int FLAGS = 16;
+
+    /** The offset of the transition origin */
+    private static final int ORIGIN = 0;
+
+    /** The offset of the transition message */
+    private static final int MESSAGE = 4;
+
+    /** The offset of the transition target */
+    private static final int TARGET = 8;
+
+    /** The offset of the next outgoing transition of the origin */
+    private static final int NEXT_OUT = 12;
+
+    /** The offset of the next incoming transition of the target */
+    private static final int NEXT_IN = 16;
+
+    /** The flag of states present in the index */
+    private static final int LIVE_FLAG = 1;
+
+    /** The flag of final states */
+    private static final int FINAL_FLAG = 2;
+
+    /** The transition validator */
+    private TransitionValidator<State, Message, StateTransition> transitionValidator;
+
+    /** The modification version of the index */
+    private long version;
+
+    /** The names of the states */
+    @Getter(AccessLevel.NONE)
+    private final OffHeapNameTable names = new OffHeapNameTable();
+
+    /** The state records (links are stored as transition id + 1) */
+    @Getter(AccessLevel.NONE)
+    private final OffHeapStore stateRecords = new OffHeapStore();
+
+    /** The transition records (links are stored as transition id + 1) */
+    @Getter(AccessLevel.NONE)
+    private final OffHeapStore transitionRecords = new OffHeapStore();
+
+    /** The messages by id */
+    @Getter(AccessLevel.NONE)
+    private final List<Message> messages = new ArrayList<>();
+
+    /** The message ids */
+    @Getter(AccessLevel.NONE)
+    private final Map<Message, Integer> messageIds = new HashMap<>();
+
+    /** The properties of the states having any */
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, Map<String, String>> properties = new HashMap<>();
+
+    /** The instances of State subclasses */
+    @Getter(AccessLevel.NONE)
+    private final Map<Integer, State> pinned = new HashMap<>();
+
+    /** The number of state ids assigned */
+    @Getter(AccessLevel.NONE)
+    private int stateCount;
+
+    /** The number of states present in the index */
+    @Getter(AccessLevel.NONE)
+    private int liveCount;
+
+    /** The number of transition records allocated */
+    @Getter(AccessLevel.NONE)
+    private int transitionCount;
+
+    /** The first free transition record (id + 1) */
+    @Getter(AccessLevel.NONE)
+    private int freeTransitions;
+
+    /**
+     * Creates the index with the default validator
+     */
+    public OffHeapTransitionMap() {
+        this(new StateTransitionValidator());
+    }
+
+    /**
+     * Creates the index with a custom transition validator.
+     *
+     * @param transitionValidator transition validator
+     */
+    public OffHeapTransitionMap(@NonNull TransitionValidator<State, Message, StateTransition> transitionValidator) {
+        this.transitionValidator = transitionValidator;
+    }
+
+    /**
+     * Adds a new transition to the index.
+     * If already present, it is replaced silently
+     * i.e if a transition is found from a source state with
+     * the input message, the destination is updated by the
+     * one given in the transition.
+     *
+     * @param transition the transition to add
+     */
+    @Override
+    public void add(StateTransition transition) {
+        validateAndExecute(transition, TransitionValidator.Operation.ADD, this::addTransition);
+    }
+
+    /**
+     * Adds the transition to the index.
+     * A validation has been performed previously so it
+     * is safe to assume the transition is fine.
+     *
+     * @param transition transition to add
+     */
+    private void addTransition(StateTransition transition) {
+        int origin = mergeState(transition.getOrigin());
+        int target = mergeState(transition.getTarget());
+        int message = messageIds.computeIfAbsent(transition.getMessage(), m -> {
+            messages.add(m);
+            return messages.size() - 1;
+        });
+
+        int id = findTransition(origin, message);
+        if (id < 0) {
+            id = allocateTransition();
+            putTransitionField(id, ORIGIN, origin);
+            putTransitionField(id, MESSAGE, message);
+            putTransitionField(id, TARGET, target);
+            append(origin, id, OUT_HEAD, OUT_TAIL, NEXT_OUT);
+            append(target, id, IN_HEAD, IN_TAIL, NEXT_IN);
+        } else if (getTransitionField(id, TARGET) != target) {
+            unlink(getTransitionField(id, TARGET), id, IN_HEAD, IN_TAIL, NEXT_IN);
+            putTransitionField(id, TARGET, target);
+            append(target, id, IN_HEAD, IN_TAIL, NEXT_IN);
+        }
+        version++;
+    }
+
+    /**
+     * Registers the given state (if not already present) merging
+     * its information with the stored one.
+     *
+     * @param state the state
+     * @return the state id
+     */
+    private int mergeState(State state) {
+        int id = names.intern(state.getName());
+        if (id == stateCount) {
+            stateCount++;
+            liveCount++;
+            stateRecords.ensureCapacity((long) stateCount * STATE_RECORD);
+            putStateField(id, FLAGS, LIVE_FLAG);
+        }
+
+        if (state.isFinal()) {
+            putStateField(id, FLAGS, getStateField(id, FLAGS) | FINAL_FLAG);
+        }
+        if (state.hasProperties()) {
+            properties.computeIfAbsent(id, i -> new LinkedHashMap<>()).putAll(state.getProperties());
+        }
+
+        // Keep the instances of subclasses as they may carry behaviour
+        State current = pinned.get(id);
+        if (current != null) {
+            current.merge(state);
+        } else if (state.getClass() != State.class) {
+            state.merge(materialize(id));
+            pinned.put(id, state);
+        }
+        return id;
+    }
+
+    /**
+     * Removes an existing transition from the index.
+     *
+     * @param transition the transition to remove
+     */
+    @Override
+    public void remove(StateTransition transition) {
+        validateAndExecute(transition, TransitionValidator.Operation.REMOVE, t -> {
+            int origin = findId(t.getOrigin().getName());
+            Integer message = messageIds.get(t.getMessage());
+            int id = ((origin >= 0) && (message != null)) ? findTransition(origin, message) : -1;
+            if (id >= 0) {
+                removeTransition(id);
+                version++;
+            }
+        });
+    }
+
+    /**
+     * Performs a validation of the transition before executing the function associated
+     * to the given operation.
+     *
+     * @param transition the transition to validate
+     * @param operation the operation to execute
+     * @param transitionFunction the function associated with the operation
+     */
+    private void validateAndExecute(StateTransition transition, TransitionValidator.Operation operation, Consumer<StateTransition> transitionFunction) {
+        ValidationResult result = transitionValidator.validate(transition, this, operation);
+        if ((result.isValid()) || (!result.isValid() && TransitionValidator.FailurePolicy.PROCEED.equals(transitionValidator.getFailurePolicy()))) {
+            transitionFunction.accept(transition);
+        } else if (!result.isValid() && TransitionValidator.FailurePolicy.THROW_ON_FAILURE.equals(transitionValidator.getFailurePolicy())) {
+            // Throws the exception on failure
+            throw (result.getException() != null) ? result.getException() : new ValidationException(result.getDescription());
+        }
+    }
+
+    /**
+     * Removes the state from the index
+     * including its transitions.
+     *
+     * @param state the state to remove
+     */
+    @Override
+    public void remove(@NonNull State state) {
+        remove(state.getName());
+    }
+
+    /**
+     * Removes the state from the index
+     * including its transitions.
+     *
+     * @param stateName the state to remove
+     */
+    @Override
+    public void remove(@NonNull String stateName) {
+        int id = getId(stateName);
+        for (int t = getStateField(id, OUT_HEAD) - 1; t >= 0; t = getStateField(id, OUT_HEAD) - 1) {
+            removeTransition(t);
+        }
+        for (int t = getStateField(id, IN_HEAD) - 1; t >= 0; t = getStateField(id, IN_HEAD) - 1) {
+            removeTransition(t);
+        }
+        putStateField(id, FLAGS, 0);
+        liveCount--;
+        names.remove(stateName);
+        properties.remove(id);
+        pinned.remove(id);
+        version++;
+    }
+
+    /**
+     * Removes all transitions from the index
+     */
+    @Override
+    public void removeAllTransitions() {
+        for (int id = 0; id < stateCount; id++) {
+            putStateField(id, OUT_HEAD, 0);
+            putStateField(id, OUT_TAIL, 0);
+            putStateField(id, IN_HEAD, 0);
+            putStateField(id, IN_TAIL, 0);
+        }
+        transitionRecords.clear();
+        transitionCount = 0;
+        freeTransitions = 0;
+        version++;
+    }
+
+    /**
+     * Removes all states and transitions from the index
+     */
+    @Override
+    public void clear() {
+        names.clear();
+        stateRecords.clear();
+        transitionRecords.clear();
+        messages.clear();
+        messageIds.clear();
+        properties.clear();
+        pinned.clear();
+        stateCount = 0;
+        liveCount = 0;
+        transitionCount = 0;
+        freeTransitions = 0;
+        version++;
+    }
+
+    /**
+     * Retrieves the next state in the transition from
+     * source state upon message m reception
+     *
+     * @param source the origin state
+     * @param m the received message
+     * @return the next state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getNext(@NonNull State source, @NonNull Message m) {
+        int origin = findId(source.getName());
+        Integer message = messageIds.get(m);
+        int id = ((origin >= 0) && (message != null)) ? findTransition(origin, message) : -1;
+        return (id >= 0) ? Optional.of(materialize(getTransitionField(id, TARGET))) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the first state (in insertion order) having
+     * a transition to the given state upon message m reception.
+     *
+     * @param source the target state
+     * @param m the message
+     * @return the previous state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getPrevious(@NonNull State source, @NonNull Message m) {
+        int target = findId(source.getName());
+        Integer message = messageIds.get(m);
+        int previous = -1;
+        if ((target >= 0) && (message != null)) {
+            for (int t = getStateField(target, IN_HEAD) - 1; t >= 0; t = getTransitionField(t, NEXT_IN) - 1) {
+                int origin = getTransitionField(t, ORIGIN);
+                if ((getTransitionField(t, MESSAGE) == message) && ((previous < 0) || (origin < previous))) {
+                    previous = origin;
+                }
+            }
+        }
+        return (previous >= 0) ? Optional.of(materialize(previous)) : Optional.empty();
+    }
+
+    /**
+     * Finds the given state by its name.
+     *
+     * @param stateName the name of the state
+     * @return the state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> find(@NonNull String stateName) {
+        int id = findId(stateName);
+        return (id >= 0) ? Optional.of(materialize(id)) : Optional.empty();
+    }
+
+    /**
+     * Checks the presence of the given state in
+     * the index.
+     *
+     * @param state the state to find
+     * @return true if state present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull State state) {
+        return findId(state.getName()) >= 0;
+    }
+
+    /**
+     * Checks the presence of the given transition in
+     * the index.
+     *
+     * @param transition the transition to find
+     * @return true if transition present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull StateTransition transition) {
+        int origin = findId(transition.getOrigin().getName());
+        Integer message = messageIds.get(transition.getMessage());
+        int id = ((origin >= 0) && (message != null)) ? findTransition(origin, message) : -1;
+        return (id >= 0) && (names.get(getTransitionField(id, TARGET)).equals(transition.getTarget().getName()));
+    }
+
+    /**
+     * Retrieves the first state added to the index
+     *
+     * @return the first state in the index
+     */
+    @Override
+    public Optional<State> getFirst() {
+        int id = nextLive(0);
+        return (id >= 0) ? Optional.of(materialize(id)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the number of states in the index
+     *
+     * @return the number of states in the index
+     */
+    @Override
+    public int size() {
+        return liveCount;
+    }
+
+    /**
+     * Remove orphan states from the index
+     * i.e. States with no transitions and not involved in other
+     * state transitions.
+     *
+     * @return the removed states
+     */
+    @Override
+    public List<State> prune() {
+        List<State> orphanStates = new ArrayList<>();
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            if ((getStateField(id, OUT_HEAD) == 0) && (getStateField(id, IN_HEAD) == 0)) {
+                State orphan = materialize(id);
+                remove(orphan.getName());
+                orphanStates.add(orphan);
+            }
+        }
+        return orphanStates;
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param stateName the state's name
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull String stateName) {
+        return collectTransitions(getId(stateName), OUT_HEAD, NEXT_OUT);
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull State state) {
+        return getTransitions(state.getName());
+    }
+
+    /**
+     * Retrieves the transitions targeting the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the incoming transitions
+     */
+    @Override
+    public Collection<StateTransition> getIncomingTransitions(@NonNull State state) {
+        return collectTransitions(getId(state.getName()), IN_HEAD, NEXT_IN);
+    }
+
+    /**
+     * Retrieve all the transitions stored in the index.
+     *
+     * @return the collection of transitions
+     */
+    @Override
+    public Collection<StateTransition> getAllTransitions() {
+        Collection<StateTransition> transitions = new ArrayList<>();
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            transitions.addAll(collectTransitions(id, OUT_HEAD, NEXT_OUT));
+        }
+        return transitions;
+    }
+
+    /**
+     * Visits all the transitions stored in the index
+     * without building transition instances.
+     *
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull TransitionVisitor<State, Message> visitor) {
+        State[] states = new State[stateCount];
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            states[id] = materialize(id);
+        }
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            for (int t = getStateField(id, OUT_HEAD) - 1; t >= 0; t = getTransitionField(t, NEXT_OUT) - 1) {
+                visitor.visit(states[id], messages.get(getTransitionField(t, MESSAGE)), states[getTransitionField(t, TARGET)]);
+            }
+        }
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param state the state
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull State state, @NonNull TransitionVisitor<State, Message> visitor) {
+        forEachTransition(state.getName(), visitor);
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state's name
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull String stateName, @NonNull TransitionVisitor<State, Message> visitor) {
+        int id = getId(stateName);
+        State origin = materialize(id);
+        for (int t = getStateField(id, OUT_HEAD) - 1; t >= 0; t = getTransitionField(t, NEXT_OUT) - 1) {
+            int target = getTransitionField(t, TARGET);
+            visitor.visit(origin, messages.get(getTransitionField(t, MESSAGE)), (target == id) ? origin : materialize(target));
+        }
+    }
+
+    /**
+     * Retrieves a copy of the transitions as a map.
+     * As the states and transitions are not kept on heap,
+     * the whole map is materialized so its use is discouraged
+     * for large indexes. Modifying the map has no effect
+     * on the index.
+     *
+     * @return the transitions as a map
+     */
+    @Override
+    public Map<State, Map<Message, State>> getTransitionsAsMap() {
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        State[] states = new State[stateCount];
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            states[id] = materialize(id);
+        }
+        for (int id = nextLive(0); id >= 0; id = nextLive(id + 1)) {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            for (int t = getStateField(id, OUT_HEAD) - 1; t >= 0; t = getTransitionField(t, NEXT_OUT) - 1) {
+                messageStateMap.put(messages.get(getTransitionField(t, MESSAGE)), states[getTransitionField(t, TARGET)]);
+            }
+            transitionMap.put(states[id], messageStateMap);
+        }
+        return transitionMap;
+    }
+
+    /**
+     * Creates a stream of the transitions of the index backed
+     * by a snapshot of the index, hence not affected by later
+     * modifications and evenly split in parallel streams.
+     *
+     * @return the stream of transitions
+     */
+    @Override
+    public Stream<StateTransition> transitions() {
+        return StreamSupport.stream(snapshot().transitionSpliterator(StateTransition::new), false);
+    }
+
+    /**
+     * Adds all supplied transitions to the index.
+     *
+     * @param transitions the transitions to add
+     */
+    @Override
+    public void addAll(@NonNull Collection<StateTransition> transitions) {
+        transitions.forEach(this::add);
+    }
+
+    /**
+     * Creates the state instance for the given id
+     *
+     * @param id the state id
+     * @return the state
+     */
+    private State materialize(int id) {
+        State state = pinned.get(id);
+        if (state == null) {
+            State flyweight = new State(names.get(id));
+            flyweight.setFinal((getStateField(id, FLAGS) & FINAL_FLAG) != 0);
+            Optional.ofNullable(properties.get(id)).ifPresent(props -> props.forEach(flyweight::addProperty));
+            state = flyweight;
+        }
+        return state;
+    }
+
+    /**
+     * Collects the transitions of the given linked list
+     *
+     * @param id the state id
+     * @param head the offset of the list head in the state record
+     * @param next the offset of the next link in the transition record
+     * @return the transitions
+     */
+    private Collection<StateTransition> collectTransitions(int id, int head, int next) {
+        Map<Integer, State> states = new HashMap<>();
+        Collection<StateTransition> transitions = new ArrayList<>();
+        for (int t = getStateField(id, head) - 1; t >= 0; t = getTransitionField(t, next) - 1) {
+            State origin = states.computeIfAbsent(getTransitionField(t, ORIGIN), this::materialize);
+            State target = states.computeIfAbsent(getTransitionField(t, TARGET), this::materialize);
+            transitions.add(new StateTransition(origin, messages.get(getTransitionField(t, MESSAGE)), target));
+        }
+        return transitions;
+    }
+
+    /**
+     * Finds the transition from the given origin upon the message
+     *
+     * @param origin the origin state id
+     * @param message the message id
+     * @return the transition id or -1 if not found
+     */
+    private int findTransition(int origin, int message) {
+        for (int t = getStateField(origin, OUT_HEAD) - 1; t >= 0; t = getTransitionField(t, NEXT_OUT) - 1) {
+            if (getTransitionField(t, MESSAGE) == message) {
+                return t;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Unlinks the transition from both lists and releases its record
+     *
+     * @param id the transition id
+     */
+    private void removeTransition(int id) {
+        unlink(getTransitionField(id, ORIGIN), id, OUT_HEAD, OUT_TAIL, NEXT_OUT);
+        unlink(getTransitionField(id, TARGET), id, IN_HEAD, IN_TAIL, NEXT_IN);
+        putTransitionField(id, NEXT_IN, 0);
+        putTransitionField(id, NEXT_OUT, freeTransitions);
+        freeTransitions = id + 1;
+    }
+
+    /**
+     * Allocates a new transition record reusing released ones
+     *
+     * @return the transition id
+     */
+    private int allocateTransition() {
+        int id;
+        if (freeTransitions > 0) {
+            id = freeTransitions - 1;
+            freeTransitions = getTransitionField(id, NEXT_OUT);
+            putTransitionField(id, NEXT_OUT, 0);
+        } else {
+            id = transitionCount++;
+            transitionRecords.ensureCapacity((long) transitionCount * TRANSITION_RECORD);
+        }
+        return id;
+    }
+
+    /**
+     * Appends the transition to the tail of the given state list
+     *
+     * @param state the state id
+     * @param id the transition id
+     * @param head the offset of the list head in the state record
+     * @param tail the offset of the list tail in the state record
+     * @param next the offset of the next link in the transition record
+     */
+    private void append(int state, int id, int head, int tail, int next) {
+        int last = getStateField(state, tail) - 1;
+        if (last >= 0) {
+            putTransitionField(last, next, id + 1);
+        } else {
+            putStateField(state, head, id + 1);
+        }
+        putStateField(state, tail, id + 1);
+    }
+
+    /**
+     * Unlinks the transition from the given state list
+     *
+     * @param state the state id
+     * @param id the transition id
+     * @param head the offset of the list head in the state record
+     * @param tail the offset of the list tail in the state record
+     * @param next the offset of the next link in the transition record
+     */
+    private void unlink(int state, int id, int head, int tail, int next) {
+        int previous = -1;
+        int t = getStateField(state, head) - 1;
+        while ((t >= 0) && (t != id)) {
+            previous = t;
+            t = getTransitionField(t, next) - 1;
+        }
+        if (t < 0) {
+            return;
+        }
+
+        int following = getTransitionField(id, next);
+        if (previous >= 0) {
+            putTransitionField(previous, next, following);
+        } else {
+            putStateField(state, head, following);
+        }
+        if (getStateField(state, tail) == id + 1) {
+            putStateField(state, tail, previous + 1);
+        }
+        putTransitionField(id, next, 0);
+    }
+
+    /**
+     * Retrieves the next state present in the index
+     * starting at the given id.
+     *
+     * @param from the first id to check
+     * @return the id of the state or -1 if not found
+     */
+    private int nextLive(int from) {
+        for (int id = from; id < stateCount; id++) {
+            if ((getStateField(id, FLAGS) & LIVE_FLAG) != 0) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the id of the given state name
+     *
+     * @param stateName the state name
+     * @return the id or -1 if not found
+     */
+    private int findId(String stateName) {
+        return names.find(stateName);
+    }
+
+    /**
+     * Retrieves the id of the given state name or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state name
+     * @return the id
+     */
+    private int getId(String stateName) {
+        int id = findId(stateName);
+        if (id < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        return id;
+    }
+
+    /**
+     * Reads a field of the given state record
+     *
+     * @param id the state id
+     * @param field the offset of the field
+     * @return the value of the field
+     */
+    private int getStateField(int id, int field) {
+        return stateRecords.getInt((long) id * STATE_RECORD + field);
+    }
+
+    /**
+     * Writes a field of the given state record
+     *
+     * @param id the state id
+     * @param field the offset of the field
+     * @param value the value of the field
+     */
+    private void putStateField(int id, int field, int value) {
+        stateRecords.putInt((long) id * STATE_RECORD + field, value);
+    }
+
+    /**
+     * Reads a field of the given transition record
+     *
+     * @param id the transition id
+     * @param field the offset of the field
+     * @return the value of the field
+     */
+    private int getTransitionField(int id, int field) {
+        return transitionRecords.getInt((long) id * TRANSITION_RECORD + field);
+    }
+
+    /**
+     * Writes a field of the given transition record
+     *
+     * @param id the transition id
+     * @param field the offset of the field
+     * @param value the value of the field
+     */
+    private void putTransitionField(int id, int field, int value) {
+        transitionRecords.putInt((long) id * TRANSITION_RECORD + field, value);
+    }
+}
@@ -0,0 +1,919 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.exception.FileImportException;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.api.transition.TransitionVisitor;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.github.pnavais.machine.impl.CompiledTransitionTable.*;
+
+/**
+ * An immutable transition index reading a compiled transition table
+ * (see {@link CompiledTransitionTable#compile(TransitionIndex, Path)}) from disk
+ * on demand.
+ * <p>
+ * The states of the table are partitioned in pages of consecutive ids. A page (holding the
+ * names, flags, properties and the outgoing/incoming transitions of its states) is only
+ * read from disk the first time one of its states is reached (e.g. when {@link #getNext(State, Message)}
+ * arrives at a state whose page is not resident). At most a given number of pages are kept in memory,
+ * evicting the ones not recently used (second chance), so huge definitions can be used with a bounded
+ * heap at the cost of an occasional page fault. The names of the resident states are indexed in memory
+ * so only names of non resident states are probed in the hash table on disk.
+ * </p>
+ * <p>
+ * Lookups hitting resident pages are lock free, only page faults are serialized.
+ * </p>
+ * <p>
+ * States returned by the index are materialized on demand, modifying them has no effect
+ * on the index. Any attempt to modify the index raises an {@link UnsupportedOperationException}.
+ * The index must be closed once no longer used in order to release the file.
+ * </p>
+ * This class is thread safe.
+ */
+public class PagedTransitionIndex implements TransitionIndex<State, Message, StateTransition>, AutoCloseable {
+
+    /** The default number of states per page */
+    public static final int DEFAULT_PAGE_SIZE = 256;
+
+    /** The default maximum number of resident pages */
+    public static final int DEFAULT_MAX_PAGES = 64;
+
+    /** The number of transitions read at once when taking snapshots */
+    private static final int SNAPSHOT_CHUNK = 65_536;
+
+    /** The file channel */
+    private final FileChannel channel;
+
+    /** The number of states per page */
+    @Getter
+    private final int pageSize;
+
+    /** The maximum number of resident pages */
+    @Getter
+    private final int maxPages;
+
+    /** The number of states */
+    private final int stateCount;
+
+    /** The number of slots of the name hash table */
+    private final int slotCount;
+
+    /** The offset of the state records */
+    private final int statesOffset;
+
+    /** The offset of the outgoing transitions index */
+    private final int outIndexOffset;
+
+    /** The offset of the outgoing transitions */
+    private final int outEdgesOffset;
+
+    /** The offset of the incoming transitions index */
+    private final int inIndexOffset;
+
+    /** The offset of the incoming transitions */
+    private final int inEdgesOffset;
+
+    /** The offset of the name hash table */
+    private final int slotsOffset;
+
+    /** The offset of the encoded strings */
+    private final int dataOffset;
+
+    /** The offset of the strings of the messages */
+    private final int messageDataOffset;
+
+    /** The messages by id */
+    private final List<Message> messages;
+
+    /** The message ids */
+    private final Map<Message, Integer> messageIds;
+
+    /** The resident pages by number */
+    private final Map<Integer, Page> pages;
+
+    /** The numbers of the resident pages in loading order (the eviction candidates) */
+    private final ArrayDeque<Integer> residentOrder;
+
+    /** The ids of the states of the resident pages by name */
+    private final Map<String, Integer> residentIds;
+
+    /** The number of pages read from disk */
+    @Getter
+    private volatile long pageFaults;
+
+    /**
+     * Creates the index for the given file
+     *
+     * @param channel the file channel
+     * @param pageSize the number of states per page
+     * @param maxPages the maximum number of resident pages
+     * @throws IOException if the file cannot be read
+     */
+    private PagedTransitionIndex(FileChannel channel, int pageSize, int maxPages) throws IOException {
+        if ((pageSize <= 0) || (maxPages <= 0)) {
+            throw new IllegalArgumentException("The page size and the maximum number of pages must be positive");
+        }
+        this.channel = channel;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.pages = new ConcurrentHashMap<>();
+        this.residentOrder = new ArrayDeque<>();
+        this.residentIds = new ConcurrentHashMap<>();
+
+        ByteBuffer header = read(0, (int) Math.min(HEADER_SIZE, channel.size()));
+        checkHeader(header);
+        this.stateCount = header.getInt(8);
+        int messageCount = header.getInt(12);
+        this.slotCount = header.getInt(20);
+        this.statesOffset = header.getInt(24);
+        int messagesOffset = header.getInt(28);
+        this.outIndexOffset = header.getInt(32);
+        this.outEdgesOffset = header.getInt(36);
+        this.inIndexOffset = header.getInt(40);
+        this.inEdgesOffset = header.getInt(44);
+        this.slotsOffset = header.getInt(48);
+        this.dataOffset = header.getInt(52);
+
+        // Messages are few, decode them once
+        this.messages = new ArrayList<>(messageCount);
+        this.messageIds = new HashMap<>();
+        ByteBuffer records = read(messagesOffset, messageCount * MESSAGE_RECORD);
+        int firstMessageData = Integer.MAX_VALUE;
+        for (int i = 0; i < messageCount; i++) {
+            int kind = records.getInt(i * MESSAGE_RECORD);
+            String key = null;
+            if (kind == STRING_MESSAGE) {
+                int offset = records.getInt(i * MESSAGE_RECORD + 4);
+                key = readString(dataOffset + offset, records.getInt(i * MESSAGE_RECORD + 8));
+                firstMessageData = Math.min(firstMessageData, offset);
+            }
+            Message message = decodeMessage(kind, key);
+            messages.add(message);
+            messageIds.putIfAbsent(message, i);
+        }
+        this.messageDataOffset = dataOffset + ((firstMessageData == Integer.MAX_VALUE) ? (int) (channel.size() - dataOffset) : firstMessageData);
+    }
+
+    /**
+     * Opens the given compiled transition table using the
+     * default page size and maximum number of resident pages.
+     *
+     * @param file the compiled table file
+     * @return the transition index
+     */
+    public static PagedTransitionIndex open(@NonNull Path file) {
+        return open(file, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Opens the given compiled transition table
+     *
+     * @param file the compiled table file
+     * @param pageSize the number of states per page
+     * @param maxPages the maximum number of resident pages
+     * @return the transition index
+     */
+    public static PagedTransitionIndex open(@NonNull Path file, int pageSize, int maxPages) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            return new PagedTransitionIndex(channel, pageSize, maxPages);
+        } catch (IOException e) {
+            throw new FileImportException("Error opening [" + file + "]", e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves the number of pages currently
+     * resident in memory.
+     *
+     * @return the number of resident pages
+     */
+    public int getResidentPages() {
+        return pages.size();
+    }
+
+    /**
+     * Releases the underlying file and the resident pages
+     */
+    @Override
+    public synchronized void close() {
+        pages.clear();
+        residentOrder.clear();
+        residentIds.clear();
+        closeQuietly(channel);
+    }
+
+    /**
+     * Retrieves the next state in the transition from
+     * source state upon message m reception
+     *
+     * @param source the origin state
+     * @param m the received message
+     * @return the next state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getNext(@NonNull State source, @NonNull Message m) {
+        int target = findTarget(findId(source.getName()), m);
+        return (target >= 0) ? Optional.of(materialize(target)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the first state (in compilation order) having
+     * a transition to the given state upon message m reception.
+     *
+     * @param source the target state
+     * @param m the message
+     * @return the previous state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> getPrevious(@NonNull State source, @NonNull Message m) {
+        int target = findId(source.getName());
+        Integer message = messageIds.get(m);
+        int previous = -1;
+        if ((target >= 0) && (message != null)) {
+            Page page = getPage(target);
+            for (int e = page.inIndex[target - page.first]; e < page.inIndex[target - page.first + 1]; e++) {
+                int origin = page.inEdges[2 * e + 1];
+                if ((page.inEdges[2 * e] == message) && ((previous < 0) || (origin < previous))) {
+                    previous = origin;
+                }
+            }
+        }
+        return (previous >= 0) ? Optional.of(materialize(previous)) : Optional.empty();
+    }
+
+    /**
+     * Finds the given state by its name.
+     *
+     * @param stateName the name of the state
+     * @return the state if found or empty otherwise
+     */
+    @Override
+    public Optional<State> find(@NonNull String stateName) {
+        int id = findId(stateName);
+        return (id >= 0) ? Optional.of(materialize(id)) : Optional.empty();
+    }
+
+    /**
+     * Checks the presence of the given state in
+     * the index.
+     *
+     * @param state the state to find
+     * @return true if state present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull State state) {
+        return findId(state.getName()) >= 0;
+    }
+
+    /**
+     * Checks the presence of the given transition in
+     * the index.
+     *
+     * @param transition the transition to find
+     * @return true if transition present, false otherwise
+     */
+    @Override
+    public boolean contains(@NonNull StateTransition transition) {
+        int target = findTarget(findId(transition.getOrigin().getName()), transition.getMessage());
+        return (target >= 0) && (target == findId(transition.getTarget().getName()));
+    }
+
+    /**
+     * Retrieves the first state of the table
+     *
+     * @return the first state in the index
+     */
+    @Override
+    public Optional<State> getFirst() {
+        return (stateCount > 0) ? Optional.of(materialize(0)) : Optional.empty();
+    }
+
+    /**
+     * Retrieves the number of states in the index
+     *
+     * @return the number of states in the index
+     */
+    @Override
+    public int size() {
+        return stateCount;
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param stateName the state's name
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull String stateName) {
+        return collectTransitions(getId(stateName), true);
+    }
+
+    /**
+     * Retrieves the transitions from the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the transitions
+     */
+    @Override
+    public Collection<StateTransition> getTransitions(@NonNull State state) {
+        return getTransitions(state.getName());
+    }
+
+    /**
+     * Retrieves the transitions targeting the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     *
+     * @param state the state
+     * @return the incoming transitions
+     */
+    @Override
+    public Collection<StateTransition> getIncomingTransitions(@NonNull State state) {
+        return collectTransitions(getId(state.getName()), false);
+    }
+
+    /**
+     * Retrieve all the transitions stored in the index.
+     * All the pages are read in turn so its use is discouraged
+     * for large tables.
+     *
+     * @return the collection of transitions
+     */
+    @Override
+    public Collection<StateTransition> getAllTransitions() {
+        Collection<StateTransition> transitions = new ArrayList<>();
+        for (int id = 0; id < stateCount; id++) {
+            transitions.addAll(collectTransitions(id, true));
+        }
+        return transitions;
+    }
+
+    /**
+     * Visits all the transitions stored in the index
+     * without building transition instances. All the
+     * pages are read in turn.
+     *
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull TransitionVisitor<State, Message> visitor) {
+        State[] states = new State[stateCount];
+        for (int id = 0; id < stateCount; id++) {
+            states[id] = materialize(id);
+        }
+        for (int id = 0; id < stateCount; id++) {
+            Page page = getPage(id);
+            for (int e = page.outIndex[id - page.first]; e < page.outIndex[id - page.first + 1]; e++) {
+                visitor.visit(states[id], messages.get(page.outEdges[2 * e]), states[page.outEdges[2 * e + 1]]);
+            }
+        }
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param state the state
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull State state, @NonNull TransitionVisitor<State, Message> visitor) {
+        forEachTransition(state.getName(), visitor);
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state's name
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull String stateName, @NonNull TransitionVisitor<State, Message> visitor) {
+        int id = getId(stateName);
+        Page page = getPage(id);
+        State origin = page.materialize(id);
+        for (int e = page.outIndex[id - page.first]; e < page.outIndex[id - page.first + 1]; e++) {
+            int target = page.outEdges[2 * e + 1];
+            visitor.visit(origin, messages.get(page.outEdges[2 * e]), (target == id) ? origin : materialize(target));
+        }
+    }
+
+    /**
+     * Retrieves the version of the index which, being
+     * immutable, never changes.
+     *
+     * @return the version of the index
+     */
+    @Override
+    public long getVersion() {
+        return 0;
+    }
+
+    /**
+     * Retrieves a copy of the transitions as a map.
+     * All the pages are read in turn and the whole map is
+     * materialized so its use is discouraged for large tables.
+     *
+     * @return the transitions as a map
+     */
+    @Override
+    public Map<State, Map<Message, State>> getTransitionsAsMap() {
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        for (int id = 0; id < stateCount; id++) {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            collectTransitions(id, true).forEach(t -> messageStateMap.put(t.getMessage(), t.getTarget()));
+            transitionMap.put(materialize(id), messageStateMap);
+        }
+        return transitionMap;
+    }
+
+    /**
+     * Creates a snapshot of the index reading its compressed sparse
+     * row layout from disk in chunks without loading any page. The
+     * states of the snapshot are materialized on demand.
+     *
+     * @return the snapshot of the transitions
+     */
+    @Override
+    public TransitionGraph<State, Message> snapshot() {
+        int[] offsets = readInts(outIndexOffset, stateCount + 1);
+        int count = offsets[stateCount];
+        int[] targets = new int[count];
+        int[] messageIds = new int[count];
+        for (int start = 0; start < count; start += SNAPSHOT_CHUNK) {
+            int length = Math.min(SNAPSHOT_CHUNK, count - start);
+            int[] edges = readInts(outEdgesOffset + (long) start * EDGE_RECORD, 2 * length);
+            for (int e = 0; e < length; e++) {
+                messageIds[start + e] = edges[2 * e];
+                targets[start + e] = edges[2 * e + 1];
+            }
+        }
+        return TransitionGraph.of(new StateList(), this::findId, messages, offsets, targets, messageIds, getVersion());
+    }
+
+    /**
+     * Creates a stream of the transitions of the index backed
+     * by a snapshot of the index, hence not affected by later
+     * modifications and evenly split in parallel streams.
+     *
+     * @return the stream of transitions
+     */
+    @Override
+    public Stream<StateTransition> transitions() {
+        return StreamSupport.stream(snapshot().transitionSpliterator(StateTransition::new), false);
+    }
+
+    @Override
+    public void add(StateTransition transition) {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void addAll(@NonNull Collection<StateTransition> transitions) {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void remove(StateTransition transition) {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void remove(State state) {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void remove(String stateName) {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void removeAllTransitions() {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public void clear() {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    @Override
+    public List<State> prune() {
+        throw new UnsupportedOperationException("Paged transition indexes are immutable");
+    }
+
+    /**
+     * Finds the target of the transition from the given
+     * origin upon the message
+     *
+     * @param origin the origin state id
+     * @param m the message
+     * @return the target state id or -1 if not found
+     */
+    private int findTarget(int origin, Message m) {
+        Integer message = messageIds.get(m);
+        if ((origin >= 0) && (message != null)) {
+            Page page = getPage(origin);
+            for (int e = page.outIndex[origin - page.first]; e < page.outIndex[origin - page.first + 1]; e++) {
+                if (page.outEdges[2 * e] == message) {
+                    return page.outEdges[2 * e + 1];
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Collects the transitions of the given state
+     *
+     * @param id the state id
+     * @param outgoing true for outgoing transitions, false for incoming
+     * @return the transitions
+     */
+    private Collection<StateTransition> collectTransitions(int id, boolean outgoing) {
+        Page page = getPage(id);
+        int[] index = outgoing ? page.outIndex : page.inIndex;
+        int[] edges = outgoing ? page.outEdges : page.inEdges;
+        State state = page.materialize(id);
+        Map<Integer, State> states = new HashMap<>();
+        Collection<StateTransition> transitions = new ArrayList<>();
+        for (int e = index[id - page.first]; e < index[id - page.first + 1]; e++) {
+            int adjacent = edges[2 * e + 1];
+            State other = (adjacent == id) ? state : states.computeIfAbsent(adjacent, this::materialize);
+            Message message = messages.get(edges[2 * e]);
+            transitions.add(outgoing ? new StateTransition(state, message, other) : new StateTransition(other, message, state));
+        }
+        return transitions;
+    }
+
+    /**
+     * Creates the state instance for the given id
+     * loading its page if needed.
+     *
+     * @param id the state id
+     * @return the state
+     */
+    private State materialize(int id) {
+        return getPage(id).materialize(id);
+    }
+
+    /**
+     * Retrieves the id of the given state name looking
+     * it up in the resident pages or probing the hash table
+     * on disk if not resident.
+     *
+     * @param stateName the state name
+     * @return the id or -1 if not found
+     */
+    private int findId(String stateName) {
+        Integer resident = residentIds.get(stateName);
+        if (resident != null) {
+            return resident;
+        }
+        int length = stateName.getBytes(StandardCharsets.UTF_8).length;
+        int hash = stateName.hashCode();
+        int slot = hash & (slotCount - 1);
+        int value;
+        while ((value = read(slotsOffset + 4L * slot, 4).getInt(0)) != 0) {
+            int id = value - 1;
+            ByteBuffer record = read(statesOffset + (long) id * STATE_RECORD, STATE_RECORD);
+            if ((record.getInt(8) == hash) && (record.getInt(4) == length)) {
+                Page page = getPage(id);
+                if (page.names[id - page.first].equals(stateName)) {
+                    return id;
+                }
+            }
+            slot = (slot + 1) & (slotCount - 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Retrieves the id of the given state name or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state name
+     * @return the id
+     */
+    private int getId(String stateName) {
+        int id = findId(stateName);
+        if (id < 0) {
+            throw new NullStateException("State [" + stateName + "] not found");
+        }
+        return id;
+    }
+
+    /**
+     * Retrieves the page of the given state reading it
+     * from disk if not resident.
+     *
+     * @param id the state id
+     * @return the page
+     */
+    private Page getPage(int id) {
+        Page page = pages.get(id / pageSize);
+        if (page == null) {
+            return fault(id / pageSize);
+        }
+        page.referenced = true;
+        return page;
+    }
+
+    /**
+     * Reads the given page from disk (unless loaded concurrently)
+     * evicting the pages not referenced since the last eviction
+     * round if the maximum number of pages is exceeded.
+     *
+     * @param number the page number
+     * @return the page
+     */
+    private synchronized Page fault(int number) {
+        Page page = pages.get(number);
+        if (page != null) {
+            return page;
+        }
+        while (pages.size() >= maxPages) {
+            int candidate = residentOrder.poll();
+            Page resident = pages.get(candidate);
+            if (resident.referenced) {
+                resident.referenced = false;
+                residentOrder.add(candidate);
+            } else {
+                pages.remove(candidate);
+                for (String name : resident.names) {
+                    residentIds.remove(name);
+                }
+            }
+        }
+        page = loadPage(number);
+        for (int i = 0; i < page.names.length; i++) {
+            residentIds.put(page.names[i], page.first + i);
+        }
+        pages.put(number, page);
+        residentOrder.add(number);
+        pageFaults++;
+        return page;
+    }
+
+    /**
+     * Reads the given page from disk
+     *
+     * @param number the page number
+     * @return the page
+     */
+    private Page loadPage(int number) {
+        int first = number * pageSize;
+        int last = Math.min(first + pageSize, stateCount);
+        int count = last - first;
+        Page page = new Page(first, count);
+
+        ByteBuffer records = read(statesOffset + (long) first * STATE_RECORD, count * STATE_RECORD);
+        int[] outIndex = readInts(outIndexOffset + 4L * first, count + 1);
+        int[] inIndex = readInts(inIndexOffset + 4L * first, count + 1);
+        page.outEdges = readInts(outEdgesOffset + (long) outIndex[0] * EDGE_RECORD, 2 * (outIndex[count] - outIndex[0]));
+        page.inEdges = readInts(inEdgesOffset + (long) inIndex[0] * EDGE_RECORD, 2 * (inIndex[count] - inIndex[0]));
+        page.outIndex = rebase(outIndex);
+        page.inIndex = rebase(inIndex);
+
+        // The strings of consecutive states are stored contiguously
+        int start = records.getInt(0);
+        int end = (last < stateCount) ? read(statesOffset + (long) last * STATE_RECORD, 4).getInt(0) : messageDataOffset - dataOffset;
+        ByteBuffer data = read(dataOffset + (long) start, end - start);
+        for (int i = 0; i < count; i++) {
+            int record = i * STATE_RECORD;
+            page.names[i] = decodeString(data, records.getInt(record) - start, records.getInt(record + 4));
+            page.finals[i] = (records.getInt(record + 12) & FINAL_FLAG) != 0;
+            int propertiesOffset = records.getInt(record + 16);
+            if (propertiesOffset >= 0) {
+                Map<String, String> properties = new LinkedHashMap<>();
+                int position = propertiesOffset - start;
+                int size = data.getInt(position);
+                position += 4;
+                for (int p = 0; p < size; p++) {
+                    int keyLength = data.getInt(position);
+                    String key = decodeString(data, position + 4, keyLength);
+                    position += 4 + keyLength;
+                    int valueLength = data.getInt(position);
+                    properties.put(key, decodeString(data, position + 4, valueLength));
+                    position += 4 + valueLength;
+                }
+                page.properties[i] = properties;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Rebases the given adjacency index so the first
+     * edge of the page is at position 0.
+     *
+     * @param index the adjacency index
+     * @return the rebased index
+     */
+    private static int[] rebase(int[] index) {
+        int base = index[0];
+        for (int i = 0; i < index.length; i++) {
+            index[i] -= base;
+        }
+        return index;
+    }
+
+    /**
+     * Reads the given number of ints at the given position
+     *
+     * @param position the position in the file
+     * @param count the number of ints
+     * @return the ints read
+     */
+    private int[] readInts(long position, int count) {
+        int[] values = new int[count];
+        read(position, 4 * count).asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Reads a string at the given position
+     *
+     * @param position the position in the file
+     * @param length the length of the encoded string
+     * @return the string
+     */
+    private String readString(long position, int length) {
+        return decodeString(read(position, length), 0, length);
+    }
+
+    /**
+     * Reads the given number of bytes at the given position
+     * using positional reads (safe for concurrent use).
+     *
+     * @param position the position in the file
+     * @param length the number of bytes
+     * @return the buffer holding the bytes read
+     */
+    private ByteBuffer read(long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IllegalArgumentException("Truncated compiled transition table");
+                }
+            }
+        } catch (IOException e) {
+            throw new FileImportException("Error reading compiled transition table", e);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Decodes the string stored in the buffer
+     *
+     * @param buffer the buffer
+     * @param offset the offset in the buffer
+     * @param length the length of the encoded string
+     * @return the string
+     */
+    private static String decodeString(ByteBuffer buffer, int offset, int length) {
+        byte[] encoded = new byte[length];
+        buffer.get(offset, encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the given channel ignoring errors
+     *
+     * @param channel the channel
+     */
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            // Nothing to do
+        }
+    }
+
+    /**
+     * The states of the index by id materialized on demand
+     */
+    private class StateList extends AbstractList<State> implements RandomAccess {
+
+        @Override
+        public State get(int id) {
+            return materialize(Objects.checkIndex(id, stateCount));
+        }
+
+        @Override
+        public int size() {
+            return stateCount;
+        }
+    }
+
+    /**
+     * The decoded information of a range of consecutive states
+     */
+    private static class Page {
+
+        /** The id of the first state */
+        private final int first;
+
+        /** The names of the states */
+        private final String[] names;
+
+        /** The final flags of the states */
+        private final boolean[] finals;
+
+        /** The properties of the states (if any) */
+        private final Map<String, String>[] properties;
+
+        /** The outgoing transitions index */
+        private int[] outIndex;
+
+        /** The outgoing transitions (message, target) */
+        private int[] outEdges;
+
+        /** The incoming transitions index */
+        private int[] inIndex;
+
+        /** The incoming transitions (message, origin) */
+        private int[] inEdges;
+
+        /** Flag set when the page is used, cleared by the eviction rounds */
+        private volatile boolean referenced;
+
+        /**
+         * Creates an empty page
+         *
+         * @param first the id of the first state
+         * @param count the number of states
+         */
+        @SuppressWarnings("unchecked")
+        Page(int first, int count) {
+            this.first = first;
+            this.names = new String[count];
+            this.finals = new boolean[count];
+            this.properties = new Map[count];
+        }
+
+        /**
+         * Creates the state instance for the given id
+         *
+         * @param id the state id
+         * @return the state
+         */
+        State materialize(int id) {
+            State state = new State(names[id - first]);
+            state.setFinal(finals[id - first]);
+            Optional.ofNullable(properties[id - first]).ifPresent(props -> props.forEach(state::addProperty));
+            return state;
+        }
+    }
+}
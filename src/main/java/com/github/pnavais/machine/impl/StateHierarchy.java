@@ -0,0 +1,278 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Precomputes the tables of a hierarchy of nested states so the
+ * ancestors of a state and the exit/entry paths between states are
+ * resolved without walking the hierarchy.
+ * <p>
+ * Every state gets an int id and its chain of ancestors (the state itself, its parent, ...
+ * up to the root) is stored in a single flat array. Checking whether a state is an ancestor
+ * of another takes constant time (a single position of the chain) while the lowest common
+ * ancestor is found by a binary search over the depths of the aligned chains. The leaf state
+ * entered when a composite state is targeted (following the initial substates) is also
+ * precomputed for every state.
+ * </p>
+ * The table is an immutable snapshot of the states of the index and the hierarchy
+ * at the given version.
+ */
+public class StateHierarchy {
+
+    /** The state ids by name */
+    private final Map<String, Integer> ids;
+
+    /** The states by id */
+    private final State[] states;
+
+    /** The depth of every state (0 for roots) */
+    private final int[] depths;
+
+    /** The position of the chain of every state (plus the total) */
+    private final int[] chainOffsets;
+
+    /** The chains of ancestors of every state starting by itself */
+    private final int[] chains;
+
+    /** The leaf entered for every state */
+    private final int[] leaves;
+
+    /**
+     * The version of the transition index
+     */
+    @Getter
+    private final long version;
+
+    /**
+     * Precomputes the tables of the given hierarchy
+     *
+     * @param transitionIndex the transition index
+     * @param parents the name of the parent of every nested state
+     * @param initialSubstates the name of the initial substate of every composite state
+     */
+    public StateHierarchy(@NonNull TransitionIndex<State, Message, StateTransition> transitionIndex,
+                          @NonNull Map<String, String> parents, @NonNull Map<String, String> initialSubstates) {
+        this.version = transitionIndex.getVersion();
+
+        // States of the index first, then the ones only known by the hierarchy
+        this.ids = new HashMap<>();
+        List<State> stateList = new ArrayList<>();
+        transitionIndex.snapshot().getNodes().forEach(s -> register(s, stateList));
+        parents.forEach((child, parent) -> {
+            register(State.named(parent), stateList);
+            register(State.named(child), stateList);
+        });
+        this.states = stateList.toArray(new State[0]);
+        int n = states.length;
+
+        int[] parentIds = new int[n];
+        Arrays.fill(parentIds, -1);
+        int[] firstChild = new int[n];
+        Arrays.fill(firstChild, -1);
+        parents.forEach((child, parent) -> {
+            int childId = ids.get(child);
+            int parentId = ids.get(parent);
+            parentIds[childId] = parentId;
+            firstChild[parentId] = (firstChild[parentId] < 0) ? childId : firstChild[parentId];
+        });
+        initialSubstates.forEach((parent, child) -> firstChild[ids.get(parent)] = ids.get(child));
+
+        // Flatten the chains of ancestors
+        this.depths = new int[n];
+        this.chainOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int p = parentIds[i]; p >= 0; p = parentIds[p]) {
+                depths[i]++;
+            }
+            chainOffsets[i + 1] = chainOffsets[i] + depths[i] + 1;
+        }
+        this.chains = new int[chainOffsets[n]];
+        for (int i = 0; i < n; i++) {
+            int position = chainOffsets[i];
+            for (int p = i; p >= 0; p = parentIds[p]) {
+                chains[position++] = p;
+            }
+        }
+
+        this.leaves = new int[n];
+        for (int i = 0; i < n; i++) {
+            int leaf = i;
+            while (firstChild[leaf] >= 0) {
+                leaf = firstChild[leaf];
+            }
+            leaves[i] = leaf;
+        }
+    }
+
+    /**
+     * Assigns an id to the given state if not registered yet
+     *
+     * @param state the state
+     * @param stateList the states by id
+     */
+    private void register(State state, List<State> stateList) {
+        if (!ids.containsKey(state.getName())) {
+            ids.put(state.getName(), stateList.size());
+            stateList.add(state);
+        }
+    }
+
+    /**
+     * Retrieves the id of the given state
+     *
+     * @param stateName the name of the state
+     * @return the state id or -1 if not found
+     */
+    public int indexOf(@NonNull String stateName) {
+        Integer id = ids.get(stateName);
+        return (id != null) ? id : -1;
+    }
+
+    /**
+     * Retrieves the state with the given id
+     *
+     * @param id the state id
+     * @return the state
+     */
+    public State getState(int id) {
+        return states[id];
+    }
+
+    /**
+     * Retrieves the depth of the given state in the hierarchy
+     *
+     * @param id the state id
+     * @return the depth (0 for top level states)
+     */
+    public int getDepth(int id) {
+        return depths[id];
+    }
+
+    /**
+     * Retrieves the ancestor of the given state at the given level
+     * (0 being the state itself, 1 its parent, ...).
+     *
+     * @param id the state id
+     * @param level the level
+     * @return the ancestor id or -1 if the state is not deep enough
+     */
+    public int getAncestor(int id, int level) {
+        return (level <= depths[id]) ? chains[chainOffsets[id] + level] : -1;
+    }
+
+    /**
+     * Retrieves the leaf state entered when the
+     * given state is targeted.
+     *
+     * @param id the state id
+     * @return the leaf id
+     */
+    public int getLeaf(int id) {
+        return leaves[id];
+    }
+
+    /**
+     * Checks whether a state contains another one
+     * (or is the same state).
+     *
+     * @param ancestor the id of the containing state
+     * @param id the id of the contained state
+     * @return true if contained, false otherwise
+     */
+    public boolean isAncestor(int ancestor, int id) {
+        return (depths[ancestor] <= depths[id]) && (chains[chainOffsets[id] + depths[id] - depths[ancestor]] == ancestor);
+    }
+
+    /**
+     * Finds the deepest state containing both states
+     *
+     * @param first the first state id
+     * @param second the second state id
+     * @return the lowest common ancestor id or -1 if not found
+     */
+    public int getLowestCommonAncestor(int first, int second) {
+        if (depths[first] > depths[second]) {
+            int swap = first;
+            first = second;
+            second = swap;
+        }
+        // Align both chains at the depth of the shallower state
+        int aligned = chains[chainOffsets[second] + depths[second] - depths[first]];
+        if (aligned == first) {
+            return first;
+        }
+        if (chains[chainOffsets[first] + depths[first]] != chains[chainOffsets[aligned] + depths[first]]) {
+            return -1;
+        }
+        // Ancestors at a given depth match for all the depths above the common ancestor
+        int low = 0;
+        int high = depths[first];
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (chains[chainOffsets[first] + depths[first] - middle] == chains[chainOffsets[aligned] + depths[first] - middle]) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return chains[chainOffsets[first] + depths[first] - low];
+    }
+
+    /**
+     * Retrieves the states exited when moving from the source to the target
+     * state, i.e. from the source up to the lowest common ancestor (exclusive).
+     *
+     * @param source the source state id
+     * @param target the target state id
+     * @return the exited states from the innermost one
+     */
+    public List<State> getExitPath(int source, int target) {
+        int ancestor = getLowestCommonAncestor(source, leaves[target]);
+        List<State> path = new ArrayList<>();
+        for (int c = chainOffsets[source]; (c < chainOffsets[source + 1]) && (chains[c] != ancestor); c++) {
+            path.add(states[chains[c]]);
+        }
+        return path;
+    }
+
+    /**
+     * Retrieves the states entered when moving from the source to the target
+     * state, i.e. from the lowest common ancestor (exclusive) down to the leaf
+     * entered for the target.
+     *
+     * @param source the source state id
+     * @param target the target state id
+     * @return the entered states from the outermost one
+     */
+    public List<State> getEntryPath(int source, int target) {
+        int leaf = leaves[target];
+        int ancestor = getLowestCommonAncestor(source, leaf);
+        LinkedList<State> path = new LinkedList<>();
+        for (int c = chainOffsets[leaf]; (c < chainOffsets[leaf + 1]) && (chains[c] != ancestor); c++) {
+            path.addFirst(states[chains[c]]);
+        }
+        return new ArrayList<>(path);
+    }
+}
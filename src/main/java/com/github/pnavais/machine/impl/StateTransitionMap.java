@@ -19,17 +19,22 @@ import com.github.pnavais.machine.api.exception.NullStateException;
 import com.github.pnavais.machine.api.exception.ValidationException;
 import com.github.pnavais.machine.api.message.Message;
 import com.github.pnavais.machine.api.transition.TransitionIndex;
+import com.github.pnavais.machine.api.transition.TransitionVisitor;
 import com.github.pnavais.machine.api.validator.TransitionValidator;
 import com.github.pnavais.machine.api.validator.ValidationResult;
 import com.github.pnavais.machine.model.State;
 import com.github.pnavais.machine.model.StateTransition;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NonNull;
 
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The State Machine contains a simple map of Transitions between
@@ -72,15 +77,41 @@ import java.util.stream.Collectors;
  * </pre>
  *
  * After this operation State B is not reachable
+ *
+ * Additionally, the index keeps the reverse adjacency of every state
+ * (i.e. the states having at least one transition targeting it) allowing
+ * to traverse the incoming transitions of a state without scanning
+ * the whole map.
+ *
+ * In order to reduce the memory footprint, states without transitions
+ * share the same empty (and immutable) map whereas the rest of states use
+ * an {@link AdaptiveMap} storing small number of transitions inline.
  */
 @Getter
 public class StateTransitionMap implements TransitionIndex<State, Message, StateTransition> {
 
+    /**
+     * The transitions shared by all states without transitions
+     */
+    private static final Map<Message, State> NO_TRANSITIONS = Collections.emptyMap();
+
     /**
      * The transitions stored by the state machine
      */
     private Map<State, Map<Message, State>> transitionMap;
 
+    /**
+     * The reverse adjacency i.e. the origin states of transitions
+     * targeting a given state
+     */
+    @Getter(AccessLevel.NONE)
+    private final Map<State, Set<State>> predecessorsMap;
+
+    /**
+     * The modification version of the index
+     */
+    private long version;
+
     /**
      * The transition validator
      */
@@ -120,6 +151,8 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
     public StateTransitionMap(@NonNull Map<State, Map<Message, State>> transitionMap, @NonNull TransitionValidator<State, Message, StateTransition> transitionValidator) {
         this.transitionMap = transitionMap;
         this.transitionValidator = transitionValidator;
+        this.predecessorsMap = new HashMap<>();
+        transitionMap.forEach((origin, messageStateMap) -> messageStateMap.values().forEach(target -> linkPredecessor(origin, target)));
     }
 
     /**
@@ -143,35 +176,52 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
      * @param transition transition to add
      */
     private void addTransition(StateTransition transition) {
+        // Merge the states information from the transition retrieving the stored states
+        State origin = findAndMerge(transition.getOrigin());
+        State target = findAndMerge(transition.getTarget());
+
         // Retrieve the current transitions mapping
-        Map<Message, State> messageStateMap = Optional.ofNullable(transitionMap.get(transition.getOrigin())).orElse(new LinkedHashMap<>());
+        Map<Message, State> messageStateMap = transitionMap.get(origin);
+        if ((messageStateMap == null) || (messageStateMap == NO_TRANSITIONS)) {
+            messageStateMap = new AdaptiveMap<>();
+            transitionMap.put(origin, messageStateMap);
+        }
 
         // Update origin with mappings
-        messageStateMap.put(transition.getMessage(), find(transition.getTarget().getName()).orElse(transition.getTarget()));
-
-        // Update the transition map
-        if (!transitionMap.containsKey(transition.getOrigin())) {
-            transitionMap.put(transition.getOrigin(), messageStateMap);
-        }
+        State previousTarget = messageStateMap.put(transition.getMessage(), target);
+        unlinkPredecessor(origin, previousTarget, messageStateMap);
+        linkPredecessor(origin, target);
 
         // Add target to the index if not found
-        if (!transitionMap.containsKey(transition.getTarget())) {
-            transitionMap.put(transition.getTarget(), new LinkedHashMap<>());
+        if (!transitionMap.containsKey(target)) {
+            transitionMap.put(target, NO_TRANSITIONS);
         }
+        version++;
+    }
 
-        // Merge the states information from the transition
-        mergeStates(transition);
+    /**
+     * Registers the origin as predecessor of the given target
+     * in the reverse adjacency.
+     *
+     * @param origin the origin state
+     * @param target the target state
+     */
+    private void linkPredecessor(State origin, State target) {
+        predecessorsMap.computeIfAbsent(target, s -> Collections.newSetFromMap(new AdaptiveMap<>())).add(origin);
     }
 
     /**
-     * Merges the states information from the transition
-     * to their counterparts currently stored in the index.
+     * Removes the origin from the predecessors of the given
+     * target in case no other transition from origin leads to it.
      *
-     * @param transition the transition
+     * @param origin the origin state
+     * @param target the previous target state (if any)
+     * @param messageStateMap the current transitions of the origin
      */
-    private void mergeStates(StateTransition transition) {
-        findAndMerge(transition.getOrigin());
-        findAndMerge(transition.getTarget());
+    private void unlinkPredecessor(State origin, State target, Map<Message, State> messageStateMap) {
+        if ((target != null) && (!messageStateMap.containsValue(target))) {
+            Optional.ofNullable(predecessorsMap.get(target)).ifPresent(predecessors -> predecessors.remove(origin));
+        }
     }
 
     /**
@@ -179,11 +229,15 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
      * in the index.
      *
      * @param state the state to merge
+     * @return the state stored in the index or the given one if not found
      */
-    private void findAndMerge(State state) {
-        transitionMap.keySet().stream()
+    private State findAndMerge(State state) {
+        return transitionMap.keySet().stream()
                 .filter(s -> s.equals(state))
-                .findFirst().ifPresent(s -> s.merge(state));
+                .findFirst().map(s -> {
+                    s.merge(state);
+                    return s;
+                }).orElse(state);
     }
 
     /**
@@ -197,7 +251,10 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
     public void remove(StateTransition transition) {
         // Update the current transitions mapping
         validateAndExecute(transition,TransitionValidator.Operation.REMOVE,
-                t -> Optional.ofNullable(transitionMap.get(transition.getOrigin())).ifPresent(m -> m.remove(transition.getMessage())));
+                t -> Optional.ofNullable(transitionMap.get(transition.getOrigin())).ifPresent(m -> {
+                    unlinkPredecessor(transition.getOrigin(), m.remove(transition.getMessage()), m);
+                    version++;
+                }));
     }
 
     /**
@@ -239,13 +296,17 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
         // Remove transition mappings
         Map<Message, State> messageStateMap = Optional.ofNullable(transitionMap.get(state))
                 .orElseThrow(getNullTransitionException(state.getName()));
+        messageStateMap.values().forEach(target -> Optional.ofNullable(predecessorsMap.get(target)).ifPresent(p -> p.remove(state)));
         messageStateMap.clear();
 
         // Remove state
         transitionMap.remove(state);
 
         // Remove transitions using the state as target
-        transitionMap.values().forEach(m -> m.values().removeIf(s -> s.getName().equals(state.getName())));
+        Optional.ofNullable(predecessorsMap.remove(state)).ifPresent(predecessors ->
+                predecessors.forEach(origin -> Optional.ofNullable(transitionMap.get(origin))
+                        .ifPresent(m -> m.values().removeIf(s -> s.getName().equals(state.getName())))));
+        version++;
     }
 
     /**
@@ -265,7 +326,9 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
      */
     @Override
     public void removeAllTransitions() {
-        this.transitionMap.forEach((state, messageStateMap) -> messageStateMap.clear());
+        this.transitionMap.replaceAll((state, messageStateMap) -> NO_TRANSITIONS);
+        this.predecessorsMap.clear();
+        this.version++;
     }
 
     /**
@@ -274,6 +337,8 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
     @Override
     public void clear() {
         this.transitionMap.clear();
+        this.predecessorsMap.clear();
+        this.version++;
     }
 
     /**
@@ -375,12 +440,14 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
 
         // Remove states that are not involved in any transition
         emptyStates.forEach(emptyState -> {
-            if (transitionMap.keySet().stream().noneMatch(state -> transitionMap.get(state).containsValue(emptyState))) {
+            if (Optional.ofNullable(predecessorsMap.get(emptyState)).map(Set::isEmpty).orElse(true)) {
                 transitionMap.remove(emptyState);
+                predecessorsMap.remove(emptyState);
                 orphanStates.add(emptyState);
             }
         });
 
+        version += orphanStates.isEmpty() ? 0 : 1;
         return orphanStates;
     }
 
@@ -417,7 +484,38 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
     }
 
     /**
-     * Retrieves the transitions as a map
+     * Retrieves the transitions targeting the given state
+     * or throws a {@link NullStateException}
+     * if not found.
+     * The reverse adjacency is used so only the predecessors
+     * of the state are visited.
+     *
+     * @param state the state
+     *
+     * @return the incoming transitions
+     */
+    @Override
+    public Collection<StateTransition> getIncomingTransitions(@NonNull State state) {
+        if (!transitionMap.containsKey(state)) {
+            throw getNullTransitionException(state.getName()).get();
+        }
+
+        Collection<StateTransition> transitions = new ArrayList<>();
+        predecessorsMap.getOrDefault(state, Collections.emptySet()).forEach(origin ->
+                transitionMap.get(origin).forEach((message, target) -> {
+                    if (target.equals(state)) {
+                        transitions.add(new StateTransition(origin, message, target));
+                    }
+                }));
+        return transitions;
+    }
+
+    /**
+     * Retrieves the transitions as a map.
+     * Modifying directly the returned map bypasses the
+     * reverse adjacency and the version maintained by the index
+     * (the transitions of states without transitions cannot
+     * be modified as they share the same immutable empty map).
      *
      * @return the transitions as a map
      */
@@ -441,6 +539,65 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
         return transitions;
     }
 
+    /**
+     * Visits all the transitions stored in the transition map
+     * without building transition instances.
+     *
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull TransitionVisitor<State, Message> visitor) {
+        OriginVisitor originVisitor = new OriginVisitor(visitor);
+        transitionMap.forEach((origin, transitions) -> {
+            originVisitor.origin = origin;
+            transitions.forEach(originVisitor);
+        });
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param state the state
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull State state, @NonNull TransitionVisitor<State, Message> visitor) {
+        Map<Message, State> transitions = transitionMap.get(state);
+        if (transitions == null) {
+            throw getNullTransitionException(state.getName()).get();
+        }
+        OriginVisitor originVisitor = new OriginVisitor(visitor);
+        originVisitor.origin = state;
+        transitions.forEach(originVisitor);
+    }
+
+    /**
+     * Visits the transitions from the given state
+     * without building transition instances or throws
+     * a {@link NullStateException} if not found.
+     *
+     * @param stateName the state's name
+     * @param visitor the transition visitor
+     */
+    @Override
+    public void forEachTransition(@NonNull String stateName, @NonNull TransitionVisitor<State, Message> visitor) {
+        forEachTransition(find(stateName).orElseThrow(getNullTransitionException(stateName)), visitor);
+    }
+
+    /**
+     * Creates a stream of the transitions of the index backed
+     * by a snapshot of the index, hence not affected by later
+     * modifications and evenly split in parallel streams.
+     *
+     * @return the stream of transitions
+     */
+    @Override
+    public Stream<StateTransition> transitions() {
+        return StreamSupport.stream(snapshot().transitionSpliterator(StateTransition::new), false);
+    }
+
     /**
      * Adds all supplied transitions to the index.
      * @param transitions the transitions to add
@@ -450,4 +607,52 @@ public class StateTransitionMap implements TransitionIndex<State, Message, State
         transitions.forEach(this::add);
     }
 
+    /**
+     * Replaces all the transitions of the given origin in a single
+     * step bypassing the validation, intended for derived machines
+     * generating their transitions (e.g. products). The origin and
+     * targets must be the states already stored in the index (if present)
+     * as no lookup or merge is performed. The version changes once.
+     *
+     * @param origin the origin state
+     * @param messageStateMap the transitions of the origin
+     */
+    public void putTransitions(@NonNull State origin, @NonNull Map<Message, State> messageStateMap) {
+        Map<Message, State> previous = transitionMap.put(origin, messageStateMap.isEmpty() ? NO_TRANSITIONS : messageStateMap);
+        if (previous != null) {
+            previous.values().forEach(target -> Optional.ofNullable(predecessorsMap.get(target)).ifPresent(p -> p.remove(origin)));
+        }
+        messageStateMap.values().forEach(target -> {
+            linkPredecessor(origin, target);
+            transitionMap.putIfAbsent(target, NO_TRANSITIONS);
+        });
+        version++;
+    }
+
+    /**
+     * Adapts a transition visitor to the (message, target) entries
+     * of the transitions of a given origin.
+     */
+    private static class OriginVisitor implements BiConsumer<Message, State> {
+
+        /** The transition visitor */
+        private final TransitionVisitor<State, Message> visitor;
+
+        /** The origin of the visited transitions */
+        private State origin;
+
+        /**
+         * Creates the adapter for the given visitor
+         *
+         * @param visitor the transition visitor
+         */
+        OriginVisitor(TransitionVisitor<State, Message> visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void accept(Message message, State target) {
+            visitor.visit(origin, message, target);
+        }
+    }
 }
@@ -31,7 +31,6 @@ import com.github.pnavais.machine.model.StateTransition;
 import lombok.Getter;
 import lombok.Setter;
 
-import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -114,15 +113,7 @@ public class StateTransitionValidator implements TransitionValidator<State, Mess
 
         // When removing a transition, check that it is available
         if (Operation.REMOVE.equals(operation)) {
-            boolean found = false;
-            Map<State, Map<Message, State>> transitionsMap = transitionIndex.getTransitionsAsMap();
-            Map<Message, State> transitionsFound = transitionsMap.get(transition.getOrigin());
-            if (transitionsFound != null) {
-                State target = transitionsFound.get(transition.getMessage());
-                found = transition.getTarget().equals(target);
-            }
-
-            if (!found) {
+            if (!transitionIndex.contains(transition)) {
                 result.setException(new IllegalTransitionException("Cannot find transition [" + transition + "]"));
                 result.setValid(false);
             }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.impl;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A service running timers shared by any number of state machines
+ * on a single {@link TimingWheel}.
+ * <p>
+ * Time is measured by a pluggable {@link Clock} in ticks of a given duration so timers fire
+ * with the precision of a tick. Expired timers are only run when the service is advanced, either
+ * explicitly (e.g. after moving a {@link VirtualClock}) or periodically by a scheduled executor,
+ * a single periodic task serving all the timers. Timers are run outside the lock of the service
+ * so they can schedule or cancel other timers.
+ * </p>
+ */
+public class TimerService {
+
+    /** The default duration of a tick */
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(10);
+
+    /**
+     * The clock measuring time
+     */
+    @Getter
+    private final Clock clock;
+
+    /**
+     * The duration of a tick
+     */
+    @Getter
+    private final Duration tick;
+
+    /** The duration of a tick in milliseconds */
+    private final long tickMillis;
+
+    /** The wheel of pending timers */
+    private final TimingWheel<Runnable> wheel;
+
+    /**
+     * Creates the service using the system clock
+     * and the default tick duration.
+     */
+    public TimerService() {
+        this(Clock.systemUTC(), DEFAULT_TICK);
+    }
+
+    /**
+     * Creates the service using the given clock
+     * and tick duration.
+     *
+     * @param clock the clock
+     * @param tick the duration of a tick
+     */
+    public TimerService(@NonNull Clock clock, @NonNull Duration tick) {
+        if (tick.toMillis() < 1) {
+            throw new IllegalArgumentException("The tick must last at least one millisecond");
+        }
+        this.clock = clock;
+        this.tick = tick;
+        this.tickMillis = tick.toMillis();
+        this.wheel = new TimingWheel<>(currentTick());
+    }
+
+    /**
+     * Schedules a task to be run after the given delay
+     * (rounded up to the next tick).
+     *
+     * @param delay the delay
+     * @param task the task
+     * @return the handle of the timer
+     */
+    public synchronized long schedule(@NonNull Duration delay, @NonNull Runnable task) {
+        long deadline = Math.floorDiv(clock.millis() + delay.toMillis() + tickMillis - 1, tickMillis);
+        return wheel.schedule(deadline, task);
+    }
+
+    /**
+     * Cancels the timer with the given handle
+     *
+     * @param handle the handle of the timer
+     * @return true if cancelled, false if already run or cancelled
+     */
+    public synchronized boolean cancel(long handle) {
+        return wheel.cancel(handle);
+    }
+
+    /**
+     * Retrieves the number of pending timers
+     *
+     * @return the number of pending timers
+     */
+    public synchronized int getPendingTimers() {
+        return wheel.size();
+    }
+
+    /**
+     * Runs the timers expired according to the clock
+     * in order of expiration.
+     *
+     * @return the number of timers run
+     */
+    public int advance() {
+        List<Runnable> expired = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(currentTick(), expired::add);
+        }
+        expired.forEach(Runnable::run);
+        return expired.size();
+    }
+
+    /**
+     * Advances the service periodically (every tick)
+     * using the given executor.
+     *
+     * @param executor the executor
+     * @return the future of the periodic task
+     */
+    public ScheduledFuture<?> start(@NonNull ScheduledExecutorService executor) {
+        return executor.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the current tick according to the clock
+     *
+     * @return the current tick
+     */
+    private long currentTick() {
+        return Math.floorDiv(clock.millis(), tickMillis);
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.impl;
+
+import lombok.NonNull;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel holding timers expiring at a given tick.
+ * <p>
+ * The wheel has several levels of 64 slots, the slots of level i covering 64<sup>i</sup> ticks,
+ * so timers are placed in the level matching their distance to the current tick and moved to the
+ * lower levels (cascaded) as time advances. Every slot is an intrusive doubly linked list of timers
+ * stored in parallel arrays so scheduling and cancelling are O(1) without allocating any node. Empty
+ * slots are skipped using a bitmap of occupied slots per level, jumping straight to the next tick
+ * with timers to expire or cascade.
+ * </p>
+ * <p>
+ * Timers are identified by handles combining the position of the timer and a generation
+ * counter so cancelling a timer already expired or cancelled has no effect. Timers beyond
+ * the range of the wheel are parked in the last level and rescheduled when reached.
+ * </p>
+ * This class is not thread safe.
+ *
+ * @param <T> the type of the payload of the timers
+ */
+public class TimingWheel<T> {
+
+    /** The number of bits of the slot index */
+    private static final int SLOT_BITS = 6;
+
+    /** The number of slots of every level */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /** The number of levels */
+    private static final int LEVELS = 6;
+
+    /** The maximum distance of a timer to the current tick */
+    private static final long MAX_DISTANCE = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /** The first timer of every slot (or -1 if empty) */
+    private final int[] heads;
+
+    /** The occupied slots of every level */
+    private final long[] occupied;
+
+    /** The next timer of the slot of every timer */
+    private int[] next;
+
+    /** The previous timer of the slot of every timer */
+    private int[] previous;
+
+    /** The slot of every timer (or -1 if free) */
+    private int[] slots;
+
+    /** The generation of every timer */
+    private int[] generations;
+
+    /** The tick of expiration of every timer */
+    private long[] deadlines;
+
+    /** The payload of every timer */
+    private Object[] payloads;
+
+    /** The first free timer (or -1 if none) */
+    private int free;
+
+    /** The number of timers allocated */
+    private int allocated;
+
+    /** The number of pending timers */
+    private int size;
+
+    /** The next tick to process */
+    private long tick;
+
+    /**
+     * Creates the wheel starting at the given tick
+     *
+     * @param startTick the current tick
+     */
+    public TimingWheel(long startTick) {
+        this.heads = new int[LEVELS * SLOTS];
+        Arrays.fill(heads, -1);
+        this.occupied = new long[LEVELS];
+        this.next = new int[64];
+        this.previous = new int[64];
+        this.slots = new int[64];
+        this.generations = new int[64];
+        this.deadlines = new long[64];
+        this.payloads = new Object[64];
+        this.free = -1;
+        this.tick = startTick;
+    }
+
+    /**
+     * Schedules a timer expiring at the given tick (or
+     * at the next tick processed if already elapsed).
+     *
+     * @param deadline the tick of expiration
+     * @param payload the payload of the timer
+     * @return the handle of the timer
+     */
+    public long schedule(long deadline, @NonNull T payload) {
+        int timer = allocate();
+        deadlines[timer] = Math.max(deadline, tick);
+        payloads[timer] = payload;
+        insert(timer);
+        size++;
+        return ((long) generations[timer] << 32) | timer;
+    }
+
+    /**
+     * Cancels the timer with the given handle
+     *
+     * @param handle the handle of the timer
+     * @return true if cancelled, false if already expired or cancelled
+     */
+    public boolean cancel(long handle) {
+        int timer = (int) handle;
+        if ((timer < 0) || (timer >= allocated) || (slots[timer] < 0) || (generations[timer] != (int) (handle >>> 32))) {
+            return false;
+        }
+        unlink(timer);
+        release(timer);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel up to the given tick (inclusive)
+     * handing the payloads of the expired timers to the consumer
+     * in order of expiration.
+     *
+     * @param now the current tick
+     * @param expired the consumer of the expired payloads
+     */
+    @SuppressWarnings("unchecked")
+    public void advance(long now, @NonNull Consumer<T> expired) {
+        while (tick <= now) {
+            int index = (int) (tick & (SLOTS - 1));
+            if ((occupied[0] & (1L << index)) == 0) {
+                long event = nextEvent();
+                if (event > now) {
+                    tick = now + 1;
+                    return;
+                }
+                if (event > tick) {
+                    tick = event;
+                    continue;
+                }
+            }
+            if (index == 0) {
+                for (int level = 1; level < LEVELS; level++) {
+                    int slot = (int) ((tick >>> (SLOT_BITS * level)) & (SLOTS - 1));
+                    cascade(level * SLOTS + slot, level, slot);
+                    if (slot != 0) {
+                        break;
+                    }
+                }
+            }
+            int timer = heads[index];
+            heads[index] = -1;
+            occupied[0] &= ~(1L << index);
+            while (timer >= 0) {
+                int following = next[timer];
+                if (deadlines[timer] > tick) {
+                    // Parked beyond the range of the wheel
+                    insert(timer);
+                } else {
+                    T payload = (T) payloads[timer];
+                    release(timer);
+                    size--;
+                    expired.accept(payload);
+                }
+                timer = following;
+            }
+            tick++;
+        }
+    }
+
+    /**
+     * Retrieves the number of pending timers
+     *
+     * @return the number of pending timers
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Retrieves the next tick to be processed
+     *
+     * @return the next tick
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Finds the next tick (from the current one) expiring
+     * or cascading the timers of an occupied slot.
+     *
+     * @return the next tick or {@link Long#MAX_VALUE} if empty
+     */
+    private long nextEvent() {
+        long event = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] == 0) {
+                continue;
+            }
+            // The slots of the level are processed at the multiples of its span
+            int bits = SLOT_BITS * level;
+            long span = 1L << bits;
+            long first = ((tick - 1) | (span - 1)) + 1;
+            int slot = (int) ((first >>> bits) & (SLOTS - 1));
+            int distance = Long.numberOfTrailingZeros(Long.rotateRight(occupied[level], slot));
+            event = Math.min(event, first + distance * span);
+        }
+        return event;
+    }
+
+    /**
+     * Moves the timers of the given slot to the lower levels
+     *
+     * @param position the position of the slot
+     * @param level the level of the slot
+     * @param slot the slot in the level
+     */
+    private void cascade(int position, int level, int slot) {
+        int timer = heads[position];
+        heads[position] = -1;
+        occupied[level] &= ~(1L << slot);
+        while (timer >= 0) {
+            int following = next[timer];
+            insert(timer);
+            timer = following;
+        }
+    }
+
+    /**
+     * Links the timer to the slot matching its deadline
+     *
+     * @param timer the timer
+     */
+    private void insert(int timer) {
+        long distance = Math.min(deadlines[timer] - tick, MAX_DISTANCE);
+        long target = tick + distance;
+        int level = 0;
+        while ((level < LEVELS - 1) && (distance >= (1L << (SLOT_BITS * (level + 1))))) {
+            level++;
+        }
+        int slot = (int) ((target >>> (SLOT_BITS * level)) & (SLOTS - 1));
+        int position = level * SLOTS + slot;
+        slots[timer] = position;
+        previous[timer] = -1;
+        next[timer] = heads[position];
+        if (heads[position] >= 0) {
+            previous[heads[position]] = timer;
+        }
+        heads[position] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    /**
+     * Unlinks the timer from its slot
+     *
+     * @param timer the timer
+     */
+    private void unlink(int timer) {
+        int position = slots[timer];
+        if (previous[timer] >= 0) {
+            next[previous[timer]] = next[timer];
+        } else {
+            heads[position] = next[timer];
+        }
+        if (next[timer] >= 0) {
+            previous[next[timer]] = previous[timer];
+        }
+        if (heads[position] < 0) {
+            occupied[position / SLOTS] &= ~(1L << (position % SLOTS));
+        }
+    }
+
+    /**
+     * Allocates a timer reusing a free one if possible
+     *
+     * @return the timer
+     */
+    private int allocate() {
+        if (free >= 0) {
+            int timer = free;
+            free = next[timer];
+            return timer;
+        }
+        if (allocated == next.length) {
+            int capacity = allocated * 2;
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+        }
+        return allocated++;
+    }
+
+    /**
+     * Releases the timer invalidating its handle
+     *
+     * @param timer the timer
+     */
+    private void release(int timer) {
+        slots[timer] = -1;
+        payloads[timer] = null;
+        generations[timer]++;
+        next[timer] = free;
+        free = timer;
+    }
+}
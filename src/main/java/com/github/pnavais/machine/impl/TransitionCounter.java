@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.impl;
+
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.TransitionStatistics;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the number of times each transition is traversed.
+ * The counter can be safely shared by several threads and
+ * provides immutable snapshots of the counts as {@link TransitionStatistics}.
+ * <p>
+ * Counts are kept by origin, message and target so recording a traversal
+ * already seen does not allocate any object.
+ * </p>
+ */
+public class TransitionCounter {
+
+    /** The number of traversals of each transition by origin, message and target */
+    private final Map<State, Map<Message, Map<State, LongAdder>>> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Records a new traversal of the given transition
+     *
+     * @param transition the transition
+     */
+    public void record(@NonNull StateTransition transition) {
+        record(transition.getOrigin(), transition.getMessage(), transition.getTarget());
+    }
+
+    /**
+     * Records a new traversal of the transition from the
+     * origin to the target upon the given message
+     *
+     * @param origin the origin of the transition
+     * @param message the message of the transition
+     * @param target the target of the transition
+     */
+    public void record(@NonNull State origin, @NonNull Message message, @NonNull State target) {
+        Map<Message, Map<State, LongAdder>> messageCounts = counts.get(origin);
+        if (messageCounts == null) {
+            messageCounts = counts.computeIfAbsent(origin, s -> new ConcurrentHashMap<>());
+        }
+        Map<State, LongAdder> targetCounts = messageCounts.get(message);
+        if (targetCounts == null) {
+            targetCounts = messageCounts.computeIfAbsent(message, m -> new ConcurrentHashMap<>());
+        }
+        LongAdder count = targetCounts.get(target);
+        if (count == null) {
+            count = targetCounts.computeIfAbsent(target, s -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Retrieves the number of traversals recorded for the given transition
+     *
+     * @param transition the transition
+     * @return the number of traversals
+     */
+    public long getCount(@NonNull StateTransition transition) {
+        LongAdder count = counts.getOrDefault(transition.getOrigin(), Collections.emptyMap())
+                .getOrDefault(transition.getMessage(), Collections.emptyMap())
+                .get(transition.getTarget());
+        return (count != null) ? count.sum() : 0L;
+    }
+
+    /**
+     * Creates an immutable snapshot of the current counts
+     *
+     * @return the transition statistics
+     */
+    public TransitionStatistics snapshot() {
+        Map<StateTransition, Long> snapshot = new LinkedHashMap<>();
+        counts.forEach((origin, messageCounts) -> messageCounts.forEach((message, targetCounts) ->
+                targetCounts.forEach((target, count) -> snapshot.put(new StateTransition(origin, message, target), count.sum()))));
+        return new TransitionStatistics(snapshot);
+    }
+
+    /**
+     * Discards all the recorded counts
+     */
+    public void reset() {
+        counts.clear();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.impl;
+
+import lombok.NonNull;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock whose time only moves when explicitly advanced,
+ * allowing to drive timers in virtual time (e.g. in tests or
+ * simulations). The clock can be safely shared by several threads.
+ */
+public class VirtualClock extends Clock {
+
+    /** The current instant */
+    private volatile Instant instant;
+
+    /** The time zone */
+    private final ZoneId zone;
+
+    /**
+     * Creates the clock at the given instant in UTC
+     *
+     * @param instant the initial instant
+     */
+    public VirtualClock(@NonNull Instant instant) {
+        this(instant, ZoneOffset.UTC);
+    }
+
+    /**
+     * Creates the clock at the given instant and zone
+     *
+     * @param instant the initial instant
+     * @param zone the time zone
+     */
+    public VirtualClock(@NonNull Instant instant, @NonNull ZoneId zone) {
+        this.instant = instant;
+        this.zone = zone;
+    }
+
+    /**
+     * Moves the clock forward
+     *
+     * @param duration the time elapsed
+     */
+    public synchronized void advance(@NonNull Duration duration) {
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException("The clock cannot move backwards");
+        }
+        instant = instant.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new VirtualClock(instant, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return instant;
+    }
+}
@@ -74,6 +74,17 @@ public abstract class AbstractWrappedState extends State {
         return this.state.isFinal();
     }
 
+    /**
+     * Retrieves the number of modifications applied in
+     * place to this state or the wrapped one.
+     *
+     * @return the number of modifications
+     */
+    @Override
+    public int getModifications() {
+        return super.getModifications() + this.state.getModifications();
+    }
+
     @Override
     public boolean equals(Object o) {
         return state.equals(o);
@@ -73,6 +73,7 @@ public class State extends AbstractNode {
     public State addProperty(@NonNull String key, @NonNull String value) {
         properties = Optional.ofNullable(properties).orElse(new LinkedHashMap<>());
         properties.put(key, value);
+        modified();
         return this;
     }
 
@@ -84,7 +85,9 @@ public class State extends AbstractNode {
      * @return self for chaining purposes
      */
     public State removeProperty(@NonNull String key) {
-        Optional.ofNullable(properties).ifPresent(props -> props.remove(key));
+        if ((properties != null) && (properties.remove(key) != null)) {
+            modified();
+        }
         return this;
     }
 
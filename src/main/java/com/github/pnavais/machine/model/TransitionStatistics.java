@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package com.github.pnavais.machine.model;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of the number of times each transition
+ * has been traversed. The number of visits of every state is derived
+ * from the counts of the transitions targeting it.
+ */
+@Getter
+public class TransitionStatistics {
+
+    /** The number of traversals of each transition */
+    private final Map<StateTransition, Long> transitionCounts;
+
+    /** The number of arrivals to each state */
+    private final Map<State, Long> stateCounts;
+
+    /** The total number of traversals */
+    private final long total;
+
+    /** The maximum number of traversals of a single transition */
+    private final long maxTransitionCount;
+
+    /** The maximum number of arrivals to a single state */
+    private final long maxStateCount;
+
+    /**
+     * Creates the statistics from the given transition counts.
+     *
+     * @param counts the number of traversals of each transition
+     */
+    public TransitionStatistics(@NonNull Map<StateTransition, Long> counts) {
+        Map<StateTransition, Long> transitions = new LinkedHashMap<>();
+        Map<State, Long> states = new LinkedHashMap<>();
+        long sum = 0;
+        long maxTransition = 0;
+        for (Map.Entry<StateTransition, Long> entry : counts.entrySet()) {
+            long count = Math.max(entry.getValue(), 0L);
+            transitions.merge(entry.getKey(), count, Long::sum);
+            states.merge(entry.getKey().getTarget(), count, Long::sum);
+            sum += count;
+            maxTransition = Math.max(maxTransition, transitions.get(entry.getKey()));
+        }
+
+        this.transitionCounts = Collections.unmodifiableMap(transitions);
+        this.stateCounts = Collections.unmodifiableMap(states);
+        this.total = sum;
+        this.maxTransitionCount = maxTransition;
+        this.maxStateCount = states.values().stream().mapToLong(Long::longValue).max().orElse(0L);
+    }
+
+    /**
+     * Retrieves the number of traversals of the given transition
+     *
+     * @param transition the transition
+     * @return the number of traversals
+     */
+    public long getCount(@NonNull StateTransition transition) {
+        return transitionCounts.getOrDefault(transition, 0L);
+    }
+
+    /**
+     * Retrieves the number of arrivals to the given state
+     *
+     * @param state the state
+     * @return the number of arrivals
+     */
+    public long getCount(@NonNull State state) {
+        return stateCounts.getOrDefault(state, 0L);
+    }
+
+    /**
+     * Retrieves the smallest set of transitions carrying at least
+     * the given ratio of the total traffic, sorted by
+     * number of traversals in descending order.
+     *
+     * @param ratio the ratio of the traffic (between 0 and 1)
+     * @return the busiest transitions
+     */
+    public List<StateTransition> getBusiestTransitions(double ratio) {
+        List<StateTransition> sorted = new ArrayList<>(transitionCounts.keySet());
+        sorted.sort(Comparator.comparing(transitionCounts::get, Comparator.reverseOrder()));
+
+        double threshold = Math.min(Math.max(ratio, 0.0), 1.0) * total;
+        List<StateTransition> busiest = new ArrayList<>();
+        long accumulated = 0;
+        for (StateTransition transition : sorted) {
+            if ((accumulated >= threshold) || (transitionCounts.get(transition) == 0)) {
+                break;
+            }
+            accumulated += transitionCounts.get(transition);
+            busiest.add(transition);
+        }
+
+        return busiest;
+    }
+}
@@ -16,6 +16,14 @@
 
 package com.github.pnavais.machine;
 
+import com.github.pnavais.machine.analysis.CoverageGeneratorTest;
+import com.github.pnavais.machine.analysis.EquivalenceCheckerTest;
+import com.github.pnavais.machine.analysis.MarkovAnalyzerTest;
+import com.github.pnavais.machine.analysis.MonteCarloSimulatorTest;
+import com.github.pnavais.machine.analysis.TraceReplayerTest;
+import com.github.pnavais.machine.analysis.GraphAnalyzerTest;
+import com.github.pnavais.machine.analysis.PathFinderTest;
+import com.github.pnavais.machine.analysis.StateMachineMinimizerTest;
 import com.github.pnavais.machine.builder.StateMachineBuilderTest;
 import com.github.pnavais.machine.core.*;
 import com.github.pnavais.machine.exporter.DOTExporterTest;
@@ -29,13 +37,32 @@ import org.junit.platform.suite.api.SuiteDisplayName;
 @SuiteDisplayName("State Machine tests")
 @SelectClasses({StateMachineComponentsTest.class,
         StateTransitionMapTest.class,
+        AdaptiveMapTest.class,
+        OffHeapTransitionMapTest.class,
+        CompiledTransitionTableTest.class,
+        PagedTransitionIndexTest.class,
         StateMachineCoreTest.class,
         StateMachineTraversalTest. class,
         StateTransitionCheckerTest.class,
         StateMachineMessagingTest.class,
+        NondeterministicStateMachineTest.class,
+        ProductStateMachineTest.class,
+        HierarchicalStateMachineTest.class,
+        OrthogonalStateMachineTest.class,
+        SubmachineStateMachineTest.class,
+        TimingWheelTest.class,
+        TimedStateMachineTest.class,
         StateMachineBuilderTest.class,
         DOTExporterTest.class,
         YAMLExporterTest.class,
-        YAMLImporterTest.class})
+        YAMLImporterTest.class,
+        GraphAnalyzerTest.class,
+        StateMachineMinimizerTest.class,
+        PathFinderTest.class,
+        CoverageGeneratorTest.class,
+        EquivalenceCheckerTest.class,
+        TraceReplayerTest.class,
+        MonteCarloSimulatorTest.class,
+        MarkovAnalyzerTest.class})
 public class StateMachineTestSuite {
 }
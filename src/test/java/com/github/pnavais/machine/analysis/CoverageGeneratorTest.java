@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.impl.TransitionCounter;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests related to {@link CoverageGenerator}
+ */
+public class CoverageGeneratorTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testTransitionTour() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("a")
+                .from("B").to("C").on("b")
+                .from("C").to("A").on("c")
+                .from("A").to("C").on("d")
+                .build();
+
+        // A single tour (the transition back to A closing the circuit is discarded)
+        List<List<Message>> sequences = CoverageGenerator.of(stateMachine.getTransitionsIndex()).generateTransitionTour();
+        assertThat("Sequence count mismatch", sequences.size(), is(1));
+        assertThat("Sequence length mismatch", sequences.get(0).size(), is(4));
+        assertThat("Covered transitions mismatch", replay(stateMachine, sequences), is(new HashSet<>(stateMachine.getTransitionsIndex().getAllTransitions())));
+    }
+
+    @Test
+    public void testTransitionTourWithResets() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("a")
+                .from("A").to("C").on("b")
+                .from("B").to(State.from("D").isFinal(true).build()).on("c")
+                .from("C").to("D").on("d")
+                .from("E").to("A").on("e")
+                .build();
+
+        CoverageGenerator<State, Message> generator = CoverageGenerator.of(stateMachine.getTransitionsIndex());
+        List<List<Message>> sequences = generator.generateTransitionTour();
+        assertThat("Sequences mismatch", sequences.stream().map(this::payloads).collect(Collectors.toList()),
+                contains(List.of("a", "c"), List.of("b", "d")));
+        assertThat("Uncoverable transitions mismatch", generator.getUncoverableTransitions().cardinality(), is(1));
+    }
+
+    @Test
+    public void testKPathCoverage() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("a")
+                .from("B").to("A").on("b")
+                .from("B").to("C").on("c")
+                .selfLoop("C").on("d")
+                .build();
+
+        CoverageGenerator<State, Message> generator = CoverageGenerator.of(stateMachine.getTransitionsIndex());
+        List<List<Object>> sequences = generator.generateKPaths(2, 100).stream().map(this::payloads).collect(Collectors.toList());
+        Set<List<Object>> windows = new HashSet<>();
+        sequences.forEach(s -> IntStream.rangeClosed(0, s.size() - 2).forEach(i -> windows.add(s.subList(i, i + 2))));
+        assertThat("Paths mismatch", windows, is(Set.of(List.of("a", "b"), List.of("a", "c"), List.of("b", "a"),
+                List.of("c", "d"), List.of("d", "d"))));
+        assertThat("Sequence count mismatch", generator.generateKPaths(2, 2).size(), is(2));
+    }
+
+    @Test
+    public void testLargeTransitionTour() {
+        // A ring with chords leaving many unbalanced states
+        int size = 20_000;
+        State[] states = IntStream.range(0, size).mapToObj(i -> new State("S" + i)).toArray(State[]::new);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        IntStream.range(0, size).forEach(i -> {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            messageStateMap.put(StringMessage.from("next"), states[(i + 1) % size]);
+            if (i % 3 == 0) {
+                messageStateMap.put(StringMessage.from("jump"), states[(i * 7 + 11) % size]);
+            }
+            transitionMap.put(states[i], messageStateMap);
+        });
+        StateMachine stateMachine = new StateMachine(new StateTransitionMap(transitionMap));
+
+        List<List<Message>> sequences = CoverageGenerator.of(stateMachine.getTransitionsIndex()).generateTransitionTour();
+        int transitions = stateMachine.getTransitionsIndex().getAllTransitions().size();
+        assertThat("Covered transitions mismatch", replay(stateMachine, sequences).size(), is(transitions));
+        assertTrue(sequences.stream().mapToInt(List::size).sum() < 2 * transitions, "Tour too long");
+    }
+
+    /**
+     * Replays the given sequences from the initial state retrieving
+     * the transitions traversed.
+     *
+     * @param stateMachine the state machine
+     * @param sequences the sequences of messages
+     * @return the transitions traversed
+     */
+    private Set<StateTransition> replay(StateMachine stateMachine, List<List<Message>> sequences) {
+        TransitionCounter counter = new TransitionCounter();
+        stateMachine.setTransitionCounter(counter);
+        sequences.forEach(sequence -> {
+            stateMachine.init();
+            sequence.forEach(stateMachine::send);
+        });
+        stateMachine.setTransitionCounter(null);
+        return counter.snapshot().getTransitionCounts().keySet();
+    }
+
+    /**
+     * Retrieves the payloads of the given messages
+     *
+     * @param messages the messages
+     * @return the payloads
+     */
+    private List<Object> payloads(List<Message> messages) {
+        return messages.stream().map(m -> m.getPayload().get()).collect(Collectors.toList());
+    }
+}
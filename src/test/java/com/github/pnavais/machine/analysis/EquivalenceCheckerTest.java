@@ -0,0 +1,186 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link EquivalenceChecker} and {@link StateMachineDiff}
+ */
+public class EquivalenceCheckerTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testEquivalentStateMachines() {
+        StateMachine first = StateMachine.newBuilder()
+                .from("A").to(State.from("B").isFinal(true).build()).on("x")
+                .selfLoop("A").on("y")
+                .build();
+        StateMachine second = StateMachine.newBuilder()
+                .from("P").to(State.from("Q").isFinal(true).build()).on("x")
+                .from("P").to("R").on("y")
+                .from("R").to(State.from("S").isFinal(true).build()).on("x")
+                .from("R").to("P").on("y")
+                .build();
+
+        EquivalenceResult result = EquivalenceChecker.check(first, second);
+        assertTrue(result.isEquivalent(), "Machines should be equivalent");
+        assertTrue(result.getDistinguishingSequence().isEmpty(), "Sequence should be empty");
+
+        second.add(new StateTransition("R", "x", "T"));
+        result = EquivalenceChecker.check(first, second);
+        assertFalse(result.isEquivalent(), "Machines should not be equivalent");
+        assertThat("Sequence mismatch", payloads(result.getDistinguishingSequence()), contains("y", "x"));
+    }
+
+    @Test
+    public void testEquivalenceWithFallbacks() {
+        StateMachine first = StateMachine.newBuilder()
+                .from("A").to(State.from("B").isFinal(true).build()).on(Messages.ANY)
+                .build();
+        StateMachine second = StateMachine.newBuilder()
+                .from("P").to(State.from("Q").isFinal(true).build()).on("x")
+                .from("P").to("Q").on(Messages.ANY)
+                .build();
+        StateMachine third = StateMachine.newBuilder()
+                .from("P").to(State.from("Q").isFinal(true).build()).on("x")
+                .build();
+
+        assertTrue(EquivalenceChecker.check(first, second).isEquivalent(), "Machines should be equivalent");
+        EquivalenceResult result = EquivalenceChecker.check(first, third);
+        assertFalse(result.isEquivalent(), "Machines should not be equivalent");
+        assertThat("Sequence mismatch", result.getDistinguishingSequence(), contains(Messages.ANY));
+
+        // Properties are only observed when requested
+        StateMachine colored = StateMachine.newBuilder()
+                .from(State.from("A").property("color", "red").build()).to(State.from("B").isFinal(true).build()).on(Messages.ANY)
+                .build();
+        assertTrue(EquivalenceChecker.check(first, colored).isEquivalent(), "Machines should be equivalent");
+        assertThat("Sequence mismatch", EquivalenceChecker.check(first, colored, "color").getDistinguishingSequence().size(), is(0));
+        assertFalse(EquivalenceChecker.check(first, colored, "color").isEquivalent(), "Machines should not be equivalent");
+    }
+
+    @Test
+    public void testLargeEquivalence() {
+        // About 900,000 transitions in total
+        StateMachine first = createRing(100_000, -1);
+        StateMachine second = createRing(200_000, -1);
+        assertTrue(EquivalenceChecker.check(first, second).isEquivalent(), "Machines should be equivalent");
+
+        // The shortest way to the non final sink skips ten states 15,000 times
+        EquivalenceResult result = EquivalenceChecker.check(first, createRing(200_000, 150_000));
+        assertFalse(result.isEquivalent(), "Machines should not be equivalent");
+        List<Object> sequence = payloads(result.getDistinguishingSequence());
+        assertThat("Sequence length mismatch", sequence.size(), is(15_001));
+        assertThat("Sequence mismatch", sequence.get(15_000), is("stop"));
+
+        // The sequence is accepted by the machine reaching the final state
+        first.init();
+        sequence.forEach(m -> first.send(m.toString()));
+        assertTrue(first.getCurrent().isFinal(), "Final state should be reached");
+    }
+
+    @Test
+    public void testStateMachineDiff() {
+        StateMachine oldVersion = StateMachine.newBuilder()
+                .from("A").to("B").on("x")
+                .from("B").to("C").on("y")
+                .build();
+        StateMachine newVersion = StateMachine.newBuilder()
+                .from("A").to(State.from("B").property("color", "red").build()).on("x")
+                .from("B").to("D").on("y")
+                .build();
+
+        StateMachineDiff diff = StateMachineDiff.of(oldVersion, newVersion);
+        assertFalse(diff.isEmpty(), "Diff should not be empty");
+        assertThat("Added states mismatch", names(diff.getAddedStates()), contains("D"));
+        assertThat("Removed states mismatch", names(diff.getRemovedStates()), contains("C"));
+        assertThat("Modified states mismatch", names(diff.getModifiedStates()), contains("B"));
+        assertThat("Added transitions mismatch", diff.getAddedTransitions(), contains(new StateTransition("B", "y", "D")));
+        assertThat("Removed transitions mismatch", diff.getRemovedTransitions(), contains(new StateTransition("B", "y", "C")));
+        assertTrue(StateMachineDiff.of(oldVersion, oldVersion).isEmpty(), "Diff should be empty");
+    }
+
+    /**
+     * Creates a ring of states moving one state forward (next), one state
+     * backwards (back) or ten states forward (skip) where every 100th state
+     * leads to a final sink state without transitions upon the stop message.
+     * The transitions map is built in bulk.
+     *
+     * @param size the number of states
+     * @param skipped the position of a sink turned non final (or -1)
+     * @return the state machine
+     */
+    private StateMachine createRing(int size, int skipped) {
+        State[] states = IntStream.range(0, size).mapToObj(i -> State.named("S" + i)).toArray(State[]::new);
+        Message next = StringMessage.from("next");
+        Message back = StringMessage.from("back");
+        Message skip = StringMessage.from("skip");
+        Message stop = StringMessage.from("stop");
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            messageStateMap.put(next, states[(i + 1) % size]);
+            messageStateMap.put(back, states[(i + size - 1) % size]);
+            messageStateMap.put(skip, states[(i + 10) % size]);
+            transitionMap.put(states[i], messageStateMap);
+            if (i % 100 == 0) {
+                State sink = State.from("F" + i).isFinal(i != skipped).build();
+                messageStateMap.put(stop, sink);
+                transitionMap.put(sink, new LinkedHashMap<>());
+            }
+        }
+        return new StateMachine(new StateTransitionMap(transitionMap));
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the payloads of the given messages
+     *
+     * @param messages the messages
+     * @return the payloads
+     */
+    private List<Object> payloads(List<Message> messages) {
+        return messages.stream().map(m -> m.getPayload().get()).collect(Collectors.toList());
+    }
+}
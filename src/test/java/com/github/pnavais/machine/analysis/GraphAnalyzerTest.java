@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Unit tests related to {@link GraphAnalyzer}
+ */
+public class GraphAnalyzerTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testStateMachineAnalysis() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("1")
+                .from("B").to("C").on("2")
+                .from("C").to("A").on("3")
+                .from("C").to(State.from("D").isFinal(true).build()).on("4")
+                .from("B").to("E").on("5")
+                .selfLoop("E").on("6")
+                .from("F").to("A").on("7")
+                .build();
+
+        GraphAnalyzer<State, Message> analyzer = GraphAnalyzer.of(stateMachine.getTransitionsIndex());
+        assertThat("Reachable states mismatch", names(analyzer.getReachableStates()), contains("A", "B", "C", "D", "E"));
+        assertThat("Unreachable states mismatch", names(analyzer.getUnreachableStates()), contains("F"));
+        assertThat("Trap states mismatch", names(analyzer.getTrapStates()), contains("E"));
+        assertThat("Dead transitions mismatch", analyzer.getDeadTransitions(StateTransition::new), contains(new StateTransition("F", "7", "A")));
+        assertThat("Dead transitions mismatch", analyzer.getDeadTransitionPositions().cardinality(), is(1));
+
+        assertThat("Component count mismatch", analyzer.getComponentCount(), is(4));
+        List<List<String>> components = analyzer.getStronglyConnectedComponents().stream().map(this::names).collect(Collectors.toList());
+        assertThat("Components mismatch", components, contains(List.of("D"), List.of("E"), List.of("A", "B", "C"), List.of("F")));
+    }
+
+    @Test
+    public void testLargeGraphAnalysis() {
+        // A long chain with back edges closing cycles of 1000 states (except the last block) and a wide fan-out at the start
+        int size = 200_000;
+        State[] states = IntStream.range(0, size).mapToObj(i -> new State("S" + i)).toArray(State[]::new);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        IntStream.range(0, size).forEach(i -> transitionMap.put(states[i], new LinkedHashMap<>()));
+        IntStream.range(0, size - 1).forEach(i -> transitionMap.get(states[i]).put(StringMessage.from("next"), states[i + 1]));
+        IntStream.range(1, size / 1000).forEach(i -> transitionMap.get(states[i * 1000 - 1]).put(StringMessage.from("back"), states[(i - 1) * 1000]));
+        IntStream.range(0, 5000).forEach(i -> transitionMap.get(states[0]).put(StringMessage.from("m" + i), states[i * 37 % size]));
+
+        GraphAnalyzer<State, Message> analyzer = new GraphAnalyzer<>(TransitionGraph.of(transitionMap, 0), 0);
+        assertThat("Reachable states mismatch", analyzer.getReachable().cardinality(), is(size));
+        assertThat("Component count mismatch", analyzer.getComponentCount(), is((size / 1000 - 1) + 1000));
+        assertThat("Trap states mismatch", analyzer.getTrapStates().size(), is(size));
+        assertThat("Dead transitions mismatch", analyzer.getDeadTransitionPositions().isEmpty(), is(true));
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+}
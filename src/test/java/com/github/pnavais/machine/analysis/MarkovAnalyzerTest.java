@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link MarkovAnalyzer}
+ */
+public class MarkovAnalyzerTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testAbsorptionAnalysis() {
+        // Gambler's ruin with 4 coins starting with 1
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("S1").to(State.from("S0").isFinal(true).build()).on("lose")
+                .from("S1").to("S2").on("win")
+                .from("S2").to("S1").on("lose")
+                .from("S2").to("S3").on("win")
+                .from("S3").to("S2").on("lose")
+                .from("S3").to(State.from("S4").isFinal(true).build()).on("win")
+                .build();
+
+        MarkovAnalyzer analyzer = MarkovAnalyzer.of(stateMachine);
+        Map<State, Double> absorption = analyzer.getAbsorptionProbabilities();
+        assertThat("Absorption count mismatch", absorption.size(), is(2));
+        assertThat("Absorption mismatch", absorption.get(State.named("S0")), closeTo(0.75, 1e-6));
+        assertThat("Absorption mismatch", absorption.get(State.named("S4")), closeTo(0.25, 1e-6));
+
+        Map<State, Double> steps = analyzer.getExpectedSteps();
+        assertThat("Expected steps mismatch", steps.get(State.named("S1")), closeTo(3.0, 1e-6));
+        assertThat("Expected steps mismatch", steps.get(State.named("S2")), closeTo(4.0, 1e-6));
+        assertThat("Expected steps mismatch", steps.get(State.named("S4")), is(0.0));
+
+        Map<State, Double> hitting = analyzer.getHittingProbabilities("S4");
+        assertThat("Hitting probability mismatch", hitting.get(State.named("S2")), closeTo(0.5, 1e-6));
+        assertThat("Hitting probability mismatch", hitting.get(State.named("S3")), closeTo(0.75, 1e-6));
+        assertThat("Hitting probability mismatch", hitting.get(State.named("S0")), is(0.0));
+
+        analyzer.setMaxIterations(1);
+        assertThrows(IllegalStateException.class, analyzer::getExpectedSteps, "Exception mismatch");
+    }
+
+    @Test
+    public void testStationaryDistribution() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("3")
+                .selfLoop("A").on("7")
+                .from("B").to("A").on("6")
+                .selfLoop("B").on("4")
+                .build();
+
+        // The weight of every transition is given by its message
+        MarkovAnalyzer analyzer = MarkovAnalyzer.of(stateMachine, t -> Double.parseDouble(t.getMessage().getPayload().get().toString()));
+        Map<State, Double> distribution = analyzer.getStationaryDistribution();
+        assertThat("Distribution mismatch", distribution.get(State.named("A")), closeTo(2.0 / 3, 1e-6));
+        assertThat("Distribution mismatch", distribution.get(State.named("B")), closeTo(1.0 / 3, 1e-6));
+        assertTrue(analyzer.getAbsorptionProbabilities().isEmpty(), "No state should be absorbing");
+        assertTrue(analyzer.getExpectedSteps().values().stream().allMatch(s -> s.isInfinite()), "Absorption should not be certain");
+
+        // Periodic chains converge too
+        StateMachine periodic = StateMachine.newBuilder()
+                .from("A").to("B").on("next")
+                .from("B").to("A").on("next")
+                .build();
+        assertThat("Distribution mismatch", MarkovAnalyzer.of(periodic).getStationaryDistribution().get(State.named("B")), closeTo(0.5, 1e-6));
+    }
+
+    @Test
+    public void testLargeChainAnalysis() {
+        // Every state leaves to the final state or jumps to another state with the same probability
+        int size = 100_000;
+        State end = State.from("END").isFinal(true).build();
+        State[] states = IntStream.range(0, size).mapToObj(i -> new State("S" + i)).toArray(State[]::new);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        IntStream.range(0, size).forEach(i -> {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            messageStateMap.put(StringMessage.from("jump"), states[(int) ((i * 7919L + 13) % size)]);
+            messageStateMap.put(StringMessage.from("leave"), end);
+            transitionMap.put(states[i], messageStateMap);
+        });
+        transitionMap.put(end, new LinkedHashMap<>());
+
+        MarkovAnalyzer analyzer = MarkovAnalyzer.of(new StateMachine(new StateTransitionMap(transitionMap)));
+        analyzer.setPool(new ForkJoinPool(4));
+        assertThat("Absorption mismatch", analyzer.getAbsorptionProbabilities().get(end), closeTo(1.0, 1e-6));
+        Map<State, Double> steps = analyzer.getExpectedSteps();
+        assertTrue(IntStream.range(0, size).allMatch(i -> Math.abs(steps.get(states[i]) - 2.0) < 1e-6), "Expected steps mismatch");
+        assertThat("Hitting probability mismatch", analyzer.getHittingProbabilities("END").get(states[size - 1]), closeTo(1.0, 1e-6));
+    }
+}
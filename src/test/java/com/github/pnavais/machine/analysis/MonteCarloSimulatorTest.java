@@ -0,0 +1,98 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.model.State;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link MonteCarloSimulator}
+ */
+public class MonteCarloSimulatorTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testAbsorptionProbabilities() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to(State.from("B").isFinal(true).property("weight", "3").build()).on("accept")
+                .from("A").to(State.from("C").isFinal(true).property("weight", "1").build()).on("reject")
+                .build();
+
+        MonteCarloSimulator simulator = MonteCarloSimulator.weighted(stateMachine, "weight");
+        simulator.setSeed(42);
+        SimulationResult result = simulator.simulate(200_000);
+        assertThat("Walks mismatch", result.getWalks(), is(200_000L));
+        assertThat("Truncated walks mismatch", result.getTruncatedWalks(), is(0L));
+        assertThat("Absorption mismatch", result.getAbsorptionProbabilities().get(State.named("B")), closeTo(0.75, 0.01));
+        assertThat("Absorption mismatch", result.getAbsorptionProbabilities().get(State.named("C")), closeTo(0.25, 0.01));
+        assertThat("Visits mismatch", result.getVisitCounts().get(State.named("A")), is(200_000L));
+        assertThat("Mean length mismatch", result.getMeanPathLength(), is(1.0));
+
+        // Same seed, same results
+        SimulationResult other = simulator.simulate(200_000);
+        assertThat("Results mismatch", other.getVisitCounts(), is(result.getVisitCounts()));
+    }
+
+    @Test
+    public void testPathLengthDistribution() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .selfLoop("A").on("retry")
+                .from("A").to(State.from("B").isFinal(true).build()).on("done")
+                .build();
+
+        MonteCarloSimulator simulator = MonteCarloSimulator.of(stateMachine);
+        simulator.setSeed(7);
+        SimulationResult result = simulator.simulate(1_000_000);
+        long[] lengths = result.getPathLengths();
+        assertThat("Length count mismatch", lengths[0], is(0L));
+        assertThat("Length frequency mismatch", (double) lengths[1] / result.getWalks(), closeTo(0.5, 0.005));
+        assertThat("Length frequency mismatch", (double) lengths[2] / result.getWalks(), closeTo(0.25, 0.005));
+        assertThat("Mean length mismatch", result.getMeanPathLength(), closeTo(2.0, 0.01));
+        assertThat("Median length mismatch", result.getPathLengthPercentile(0.5), is(1));
+        assertThat("Visit frequency mismatch", result.getVisitFrequencies().get(State.named("A")), closeTo(2.0, 0.01));
+        assertThat("Absorption mismatch", result.getAbsorptionProbabilities().get(State.named("B")), is(1.0));
+    }
+
+    @Test
+    public void testSuppliedWeights() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("next")
+                .from("B").to("A").on("back")
+                .from("B").to("C").on("leave")
+                .build();
+
+        // Never leave so every walk is truncated
+        MonteCarloSimulator simulator = MonteCarloSimulator.of(stateMachine, t -> t.getMessage().getPayload().get().equals("leave") ? 0 : 1);
+        simulator.setMaxSteps(10);
+        SimulationResult result = simulator.simulate(1000);
+        assertThat("Truncated walks mismatch", result.getTruncatedWalks(), is(1000L));
+        assertTrue(result.getAbsorptionProbabilities().isEmpty(), "No walk should be absorbed");
+        assertTrue(Double.isNaN(result.getMeanPathLength()), "Mean length should be undefined");
+
+        // C has no transitions so it absorbs the walks starting there
+        simulator.setInitialState("C");
+        assertThat("Absorption mismatch", simulator.simulate(10).getAbsorptionProbabilities().get(State.named("C")), is(1.0));
+        assertThrows(NullStateException.class, () -> simulator.setInitialState("Z"), "Exception mismatch");
+        assertThrows(IllegalArgumentException.class, () -> MonteCarloSimulator.of(stateMachine, t -> -1), "Exception mismatch");
+    }
+}
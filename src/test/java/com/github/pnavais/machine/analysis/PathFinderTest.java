@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link PathFinder}
+ */
+public class PathFinderTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testShortestPaths() {
+        StateMachine stateMachine = createStateMachine();
+        PathFinder<State, Message> finder = PathFinder.of(stateMachine.getTransitionsIndex());
+
+        Path<State, Message> path = finder.findPath("A", "D").orElse(null);
+        assertNotNull(path, "Error retrieving path");
+        assertThat("Nodes mismatch", names(path.getNodes()), contains("A", "C", "D"));
+        assertThat("Messages mismatch", payloads(path.getMessages()), contains("toC", "toD"));
+        assertThat("Cost mismatch", path.getCost(), is(2.0));
+        assertThat("Distance mismatch", finder.getDistance("A", "A"), is(0.0));
+        assertTrue(Double.isInfinite(finder.getDistance("D", "A")), "Distance mismatch");
+        assertFalse(finder.findPath("D", "A").isPresent(), "Path should not be found");
+        assertThat("Reachable targets mismatch", names(finder.getReachableTargets("A")), contains("A", "B", "C", "E", "D"));
+        assertThat("Cached trees mismatch", finder.getCachedTrees(), is(2));
+        assertThrows(NullStateException.class, () -> finder.findPath("A", "Z"), "Exception mismatch");
+
+        // Modifications discard the cached trees
+        stateMachine.add(new StateTransition("A", "toD", "D"));
+        assertThat("Messages mismatch", payloads(finder.findMessages("A", "D").orElse(List.of())), contains("toD"));
+        assertThat("Cached trees mismatch", finder.getCachedTrees(), is(1));
+    }
+
+    @Test
+    public void testWeightedShortestPaths() {
+        StateMachine stateMachine = createStateMachine();
+        PathFinder<State, Message> finder = PathFinder.weighted(stateMachine.getTransitionsIndex(), "cost");
+
+        Path<State, Message> path = finder.findPath("A", "D").orElse(null);
+        assertNotNull(path, "Error retrieving path");
+        assertThat("Nodes mismatch", names(path.getNodes()), contains("A", "B", "E", "D"));
+        assertThat("Cost mismatch", path.getCost(), is(3.0));
+        assertThat("Reachable targets mismatch", names(finder.getReachableTargets("A")), contains("A", "B", "E", "D", "C"));
+
+        finder.setNextHopsEnabled(true);
+        assertThat("Next message mismatch", finder.getNextMessage("A", "D").map(m -> m.getPayload().get()).orElse(null), is("toB"));
+        assertThat("Next message mismatch", finder.getNextMessage("B", "D").map(m -> m.getPayload().get()).orElse(null), is("toE"));
+        assertFalse(finder.getNextMessage("D", "A").isPresent(), "Message should not be found");
+        assertFalse(finder.getNextMessage("A", "A").isPresent(), "Message should not be found");
+    }
+
+    /**
+     * Creates a state machine with the following transitions and costs :
+     * A -- toB --> B(1), A -- toC --> C(5), B -- toE --> E(1), C -- toD --> D(1), E -- toD --> D
+     *
+     * @return the state machine
+     */
+    @Override
+    protected StateMachine createStateMachine() {
+        return StateMachine.newBuilder()
+                .from("A").to(State.from("B").property("cost", "1").build()).on("toB")
+                .from("A").to(State.from("C").property("cost", "5").build()).on("toC")
+                .from("B").to(State.from("E").property("cost", "1").build()).on("toE")
+                .from("C").to("D").on("toD")
+                .from("E").to("D").on("toD")
+                .build();
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * Retrieves the payloads of the given messages
+     *
+     * @param messages the messages
+     * @return the payloads
+     */
+    private List<Object> payloads(List<Message> messages) {
+        return messages.stream().map(m -> m.getPayload().get()).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests related to {@link StateMachineMinimizer}
+ */
+public class StateMachineMinimizerTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testStateMachineMinimization() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("a")
+                .from("A").to("C").on("b")
+                .from("B").to(State.from("D").isFinal(true).build()).on("a")
+                .from("C").to("D").on("a")
+                .from("X").to("A").on("a")
+                .build();
+
+        StateMachine minimized = StateMachineMinimizer.minimize(stateMachine);
+        assertThat("States mismatch", names(minimized), contains("A", "B", "D"));
+        assertThat("Transition count mismatch", minimized.getTransitionsIndex().size(), is(3));
+        assertTrue(minimized.find("D").map(State::isFinal).orElse(false), "Final flag mismatch");
+
+        minimized.init();
+        assertThat("Current state mismatch", minimized.send("b").send("a").getCurrent().getName(), is("D"));
+
+        // The original machine remains untouched
+        assertTrue(stateMachine.find("C").isPresent(), "Original state removed");
+    }
+
+    @Test
+    public void testStateMachineMinimizationWithProperties() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to(State.from("B").property("color", "red").build()).on("a")
+                .from("A").to(State.from("C").property("color", "blue").build()).on("b")
+                .from("B").to(State.from("D").isFinal(true).build()).on("a")
+                .from("C").to("D").on("a")
+                .build();
+
+        assertThat("States mismatch", names(StateMachineMinimizer.minimize(stateMachine)), contains("A", "B", "D"));
+        assertThat("States mismatch", names(StateMachineMinimizer.minimize(stateMachine, "color")), contains("A", "B", "C", "D"));
+    }
+
+    @Test
+    public void testStateMachineMinimizationWithAnyMessage() {
+        StateMachine stateMachine = StateMachine.newBuilder()
+                .from("A").to("B").on("x")
+                .from("A").to("C").on("y")
+                .from("A").to("D").on("z")
+                .from("B").to(State.from("F").isFinal(true).build()).on(Messages.ANY)
+                .from("C").to("F").on("x")
+                .from("C").to("F").on("y")
+                .from("C").to("F").on("z")
+                .from("C").to("F").on(Messages.ANY)
+                .from("D").to("F").on("x")
+                .from("D").to("F").on("y")
+                .from("D").to("F").on("z")
+                .build();
+
+        // D remains in place upon unknown messages so it cannot be merged with B
+        StateMachine minimized = StateMachineMinimizer.minimize(stateMachine);
+        assertThat("States mismatch", names(minimized), contains("A", "B", "D", "F"));
+        minimized.init();
+        assertThat("Current state mismatch", minimized.send("y").send("w").getCurrent().getName(), is("F"));
+    }
+
+    @Test
+    public void testLargeStateMachineMinimization() {
+        // A ring of states labelled with their position modulo 3
+        int size = 30_000;
+        State[] states = IntStream.range(0, size).mapToObj(i -> State.from("S" + i).property("mod", String.valueOf(i % 3)).build()).toArray(State[]::new);
+        Map<State, Map<Message, State>> transitionMap = new LinkedHashMap<>();
+        IntStream.range(0, size).forEach(i -> {
+            Map<Message, State> messageStateMap = new LinkedHashMap<>();
+            messageStateMap.put(StringMessage.from("next"), states[(i + 1) % size]);
+            messageStateMap.put(StringMessage.from("back"), states[(i + size - 1) % size]);
+            transitionMap.put(states[i], messageStateMap);
+        });
+
+        StateMachine minimized = StateMachineMinimizer.minimize(new StateMachine(new StateTransitionMap(transitionMap)), "mod");
+        assertThat("States mismatch", names(minimized), contains("S0", "S1", "S2"));
+        minimized.init();
+        assertThat("Current state mismatch", minimized.send("back").send("back").getCurrent().getName(), is("S1"));
+    }
+
+    /**
+     * Retrieves the names of the states of the given machine
+     *
+     * @param stateMachine the state machine
+     * @return the names of the states
+     */
+    private List<String> names(StateMachine stateMachine) {
+        return stateMachine.getTransitionsIndex().getTransitionsAsMap().keySet().stream().map(State::getName).collect(Collectors.toList());
+    }
+}
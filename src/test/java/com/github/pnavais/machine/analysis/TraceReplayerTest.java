@@ -0,0 +1,174 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.analysis;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link TraceReplayer}
+ */
+public class TraceReplayerTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testTraceReplay() {
+        TraceReplayer replayer = TraceReplayer.of(createOrderMachine());
+
+        TraceResult result = replayer.replay(trace("create", "pay"));
+        assertThat("Verdict mismatch", result.getVerdict(), is(TraceResult.Verdict.ACCEPTED));
+        assertTrue(result.isConformant(), "Trace should be conformant");
+        assertThat("Step mismatch", result.getStep(), is(2));
+        assertThat("State mismatch", result.getState().getName(), is("PAID"));
+
+        result = replayer.replay(trace("create", "ship", "pay"));
+        assertThat("Verdict mismatch", result.getVerdict(), is(TraceResult.Verdict.STUCK));
+        assertFalse(result.isConformant(), "Trace should not be conformant");
+        assertThat("Step mismatch", result.getStep(), is(1));
+        assertThat("State mismatch", result.getState().getName(), is("OPEN"));
+
+        result = replayer.replay(trace("create", "pay", "refund"));
+        assertThat("Verdict mismatch", result.getVerdict(), is(TraceResult.Verdict.ABORTED));
+        assertThat("Step mismatch", result.getStep(), is(2));
+        assertThat("State mismatch", result.getState().getName(), is("PAID"));
+
+        // Unknown messages use the ANY fallback
+        result = replayer.replay(trace("create", "hold", "unknown", "cancel"));
+        assertThat("Verdict mismatch", result.getVerdict(), is(TraceResult.Verdict.ACCEPTED));
+        assertThat("State mismatch", result.getState().getName(), is("CANCELLED"));
+
+        result = TraceReplayer.of(createOrderMachine(), "OPEN").replay(trace("hold"));
+        assertThat("Verdict mismatch", result.getVerdict(), is(TraceResult.Verdict.INCOMPLETE));
+        assertThat("State mismatch", result.getState().getName(), is("HELD"));
+        assertThrows(NullStateException.class, () -> TraceReplayer.of(createOrderMachine(), "Z"), "Exception mismatch");
+    }
+
+    @Test
+    public void testConformanceReport() throws IOException {
+        TraceReplayer replayer = TraceReplayer.of(createOrderMachine());
+        List<List<Message>> traces = Arrays.asList(
+                trace("create", "pay"),
+                trace("create"),
+                trace("create", "ship"),
+                trace("create", "pay", "pay"),
+                trace());
+
+        ConformanceReport report = replayer.replayAll(traces);
+        checkReport(report);
+        assertThat("Violations mismatch", report.getViolations().stream().map(TraceResult::getIndex).collect(Collectors.toList()), contains(2L, 3L));
+
+        Path file = Files.createTempFile("traces", ".txt");
+        try {
+            Files.write(file, Arrays.asList("create, pay", "create", "create, ship", "create,pay,pay", ""));
+            checkReport(replayer.replayFile(file, ","));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testParallelTraceReplay() {
+        TraceReplayer replayer = TraceReplayer.of(createOrderMachine());
+        replayer.setBatchSize(1000);
+        replayer.setMaxViolations(100);
+
+        // Every seventh trace gets stuck
+        int count = 200_000;
+        Iterator<List<Message>> traces = IntStream.range(0, count)
+                .mapToObj(i -> (i % 7 == 0) ? trace("create", "ship") : trace("create", "hold", "cancel"))
+                .iterator();
+        ConformanceReport report = replayer.replayAll(traces);
+
+        long stuck = (count + 6) / 7;
+        assertThat("Trace count mismatch", report.getTraceCount(), is((long) count));
+        assertThat("Stuck count mismatch", report.getCount(TraceResult.Verdict.STUCK), is(stuck));
+        assertThat("Accepted count mismatch", report.getCount(TraceResult.Verdict.ACCEPTED), is(count - stuck));
+        assertThat("Violations mismatch", report.getViolations().size(), is(100));
+        assertTrue(IntStream.range(0, 100).allMatch(i -> report.getViolations().get(i).getIndex() == i * 7L), "Violations order mismatch");
+        assertThat("Visits mismatch", report.getVisitCounts().get(State.named("HELD")), is(count - stuck));
+    }
+
+    /**
+     * Checks the report of the sample traces
+     *
+     * @param report the report
+     */
+    private void checkReport(ConformanceReport report) {
+        assertThat("Trace count mismatch", report.getTraceCount(), is(5L));
+        assertThat("Conformant count mismatch", report.getConformantCount(), is(3L));
+        assertThat("Accepted count mismatch", report.getCount(TraceResult.Verdict.ACCEPTED), is(1L));
+        assertThat("Incomplete count mismatch", report.getCount(TraceResult.Verdict.INCOMPLETE), is(2L));
+        assertThat("Violations mismatch", report.getViolations().size(), is(2));
+        assertThat("Stuck counts mismatch", names(report.getStuckCounts()), is(Map.of("OPEN", 1L)));
+        assertThat("Aborted counts mismatch", names(report.getAbortedCounts()), is(Map.of("PAID", 1L)));
+        assertThat("Visits mismatch", names(report.getVisitCounts()), is(Map.of("NEW", 5L, "OPEN", 4L, "PAID", 2L)));
+    }
+
+    /**
+     * Creates the order processing state machine
+     *
+     * @return the state machine
+     */
+    private StateMachine createOrderMachine() {
+        return StateMachine.newBuilder()
+                .from("NEW").to("OPEN").on("create")
+                .from("OPEN").to(State.from("PAID").isFinal(true).build()).on("pay")
+                .from("OPEN").to("HELD").on("hold")
+                .selfLoop("HELD").on(Messages.ANY)
+                .from("HELD").to(State.from("CANCELLED").isFinal(true).build()).on("cancel")
+                .build();
+    }
+
+    /**
+     * Creates a trace with the given message keys
+     *
+     * @param keys the keys of the messages
+     * @return the trace
+     */
+    private List<Message> trace(String... keys) {
+        return Arrays.stream(keys).map(StringMessage::from).collect(Collectors.toList());
+    }
+
+    /**
+     * Converts the given counts by state into counts by name
+     *
+     * @param counts the counts by state
+     * @return the counts by name
+     */
+    private Map<String, Long> names(Map<State, Long> counts) {
+        return counts.entrySet().stream().collect(Collectors.toMap(e -> e.getKey().getName(), Map.Entry::getValue));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.impl.AdaptiveMap;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link com.github.pnavais.machine.impl.AdaptiveMap}
+ */
+public class AdaptiveMapTest {
+
+    @Test
+    public void testInlineMapOperations() {
+        Map<String, Integer> map = new AdaptiveMap<>();
+        assertTrue(map.isEmpty(), "Map should be empty");
+        assertNull(map.put("a", 1), "Previous value mismatch");
+        assertNull(map.put("b", 2), "Previous value mismatch");
+        assertNull(map.put("c", 3), "Previous value mismatch");
+        assertThat("Previous value mismatch", map.put("a", 4), is(1));
+
+        assertThat("Size mismatch", map.size(), is(3));
+        assertThat("Value mismatch", map.get("a"), is(4));
+        assertTrue(map.containsValue(3), "Value not found");
+        assertFalse(map.containsKey("d"), "Key should not be found");
+        assertThat("Order mismatch", new ArrayList<>(map.keySet()).toString(), is("[a, b, c]"));
+
+        assertThat("Removed value mismatch", map.remove("b"), is(2));
+        assertNull(map.remove("b"), "Removed value mismatch");
+        map.values().removeIf(v -> v == 3);
+        assertThat("Map contents mismatch", map, is(Map.of("a", 4)));
+
+        map.clear();
+        assertTrue(map.isEmpty(), "Map should be empty");
+    }
+
+    @Test
+    public void testHashedMapOperations() {
+        Map<Integer, String> expected = new LinkedHashMap<>();
+        Map<Integer, String> map = new AdaptiveMap<>();
+        IntStream.range(0, AdaptiveMap.INLINE_CAPACITY * 2).map(i -> AdaptiveMap.INLINE_CAPACITY * 2 - i).forEach(i -> {
+            expected.put(i, "v" + i);
+            map.put(i, "v" + i);
+        });
+
+        assertThat("Map contents mismatch", map, is(expected));
+        assertThat("Order mismatch", new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+
+        // Shrink back to the inline representation
+        IntStream.range(0, AdaptiveMap.INLINE_CAPACITY * 2 - 2).forEach(i -> {
+            assertThat("Removed value mismatch", map.remove(i + 3), is(expected.remove(i + 3)));
+        });
+        assertThat("Map contents mismatch", map, is(expected));
+        assertThat("Order mismatch", new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+
+        map.put(5, "v5");
+        expected.put(5, "v5");
+        assertThat("Order mismatch", new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.impl.CompiledTransitionTable;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link com.github.pnavais.machine.impl.CompiledTransitionTable}
+ */
+public class CompiledTransitionTableTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testCompiledTransitionTableMapping() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 300).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 31), StringMessage.from("m" + (i % 7)), "S" + ((i * 13) % 47))));
+        transitionMap.add(new StateTransition(State.named("S1"), Messages.ANY, State.from("Ω").isFinal(true).property("color", "red").build()));
+
+        Path file = Files.createTempFile("compiled", ".smt");
+        try {
+            CompiledTransitionTable.compile(transitionMap, file);
+            CompiledTransitionTable table = CompiledTransitionTable.map(file);
+
+            assertThat("Size mismatch", table.size(), is(transitionMap.size()));
+            assertThat("First state mismatch", table.getFirst(), is(transitionMap.getFirst()));
+            assertThat("Transitions mismatch", table.getTransitionsAsMap(), is(transitionMap.getTransitionsAsMap()));
+            assertThat("Transitions mismatch", new ArrayList<>(table.getAllTransitions()), is(new ArrayList<>(transitionMap.getAllTransitions())));
+            transitionMap.getTransitionsAsMap().keySet().forEach(s -> {
+                assertThat("Transitions mismatch", new ArrayList<>(table.getTransitions(s)), is(new ArrayList<>(transitionMap.getTransitions(s))));
+                assertThat("Incoming transitions mismatch", table.getIncomingTransitions(s).size(), is(transitionMap.getIncomingTransitions(s).size()));
+                assertThat("Next state mismatch", table.getNext(s, StringMessage.from("m3")), is(transitionMap.getNext(s, StringMessage.from("m3"))));
+                assertThat("Previous state mismatch", table.getPrevious(s, StringMessage.from("m3")), is(transitionMap.getPrevious(s, StringMessage.from("m3"))));
+            });
+
+            State last = table.find("Ω").orElse(null);
+            assertNotNull(last, "Error retrieving state");
+            assertTrue(last.isFinal(), "Final flag mismatch");
+            assertThat("Property mismatch", last.getProperty("color").orElse(null), is("red"));
+            assertTrue(table.contains(new StateTransition(State.named("S1"), Messages.ANY, State.named("Ω"))), "Transition not found");
+            assertFalse(table.contains(new StateTransition(State.named("S1"), Messages.ANY, State.named("S2"))), "Transition should not be found");
+            assertFalse(table.find("Z").isPresent(), "State should not be found");
+            assertThrows(NullStateException.class, () -> table.getTransitions("Z"), "Exception mismatch");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testCompiledTransitionTableVisitor() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 200).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 23), StringMessage.from("m" + (i % 5)), "S" + ((i * 7) % 29))));
+        transitionMap.add(new StateTransition("S3", "loop", "S3"));
+        CompiledTransitionTable table = CompiledTransitionTable.of(transitionMap);
+
+        List<StateTransition> visited = new ArrayList<>();
+        table.forEachTransition((origin, message, target) -> visited.add(new StateTransition(origin, message, target)));
+        assertThat("Visited transitions mismatch", visited, is(new ArrayList<>(transitionMap.getAllTransitions())));
+        transitionMap.getTransitionsAsMap().keySet().forEach(s -> {
+            List<StateTransition> outgoing = new ArrayList<>();
+            table.forEachTransition(s, (origin, message, target) -> outgoing.add(new StateTransition(origin, message, target)));
+            assertThat("Visited transitions mismatch", outgoing, is(new ArrayList<>(transitionMap.getTransitions(s))));
+        });
+        assertThrows(NullStateException.class, () -> table.forEachTransition("Z", (origin, message, target) -> {}), "Exception mismatch");
+    }
+
+    @Test
+    public void testCompiledTransitionTableSnapshot() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 200).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 23), StringMessage.from("m" + (i % 5)), "S" + ((i * 7) % 29))));
+        checkSnapshot(CompiledTransitionTable.of(transitionMap).snapshot(), transitionMap.snapshot());
+    }
+
+    @Test
+    public void testCompiledTransitionTableImmutability() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        transitionMap.add(new StateTransition("A", "1", "B"));
+        CompiledTransitionTable table = CompiledTransitionTable.of(transitionMap);
+
+        assertThat("Version mismatch", table.getVersion(), is(0L));
+        assertThrows(UnsupportedOperationException.class, () -> table.add(new StateTransition("B", "2", "C")), "Exception mismatch");
+        assertThrows(UnsupportedOperationException.class, () -> table.remove("A"), "Exception mismatch");
+        assertThrows(UnsupportedOperationException.class, table::clear, "Exception mismatch");
+
+        Path file = Files.createTempFile("invalid", ".smt");
+        try {
+            Files.writeString(file, "Not a compiled transition table");
+            assertThrows(IllegalArgumentException.class, () -> CompiledTransitionTable.map(file), "Exception mismatch");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Checks the given snapshot matches the expected one
+     *
+     * @param graph the snapshot
+     * @param expected the expected snapshot
+     */
+    static void checkSnapshot(TransitionGraph<State, Message> graph, TransitionGraph<State, Message> expected) {
+        assertThat("Nodes mismatch", graph.getNodes(), is(expected.getNodes()));
+        assertArrayEquals(expected.getOffsets(), graph.getOffsets(), "Offsets mismatch");
+        for (int e = 0; e < expected.getTransitionCount(); e++) {
+            assertThat("Target mismatch", graph.getName(graph.getTarget(e)), is(expected.getName(expected.getTarget(e))));
+            assertThat("Message mismatch", graph.getMessage(graph.getMessageId(e)), is(expected.getMessage(expected.getMessageId(e))));
+        }
+        expected.getNodes().forEach(n -> assertThat("Node id mismatch", graph.indexOf(n.getName()), is(expected.indexOf(n.getName()))));
+        assertThat("Node id mismatch", graph.indexOf("Z"), is(-1));
+    }
+
+    @Test
+    public void testStateMachineWithCompiledTransitionTable() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        transitionMap.add(new StateTransition("A", "1", "B"));
+        transitionMap.add(new StateTransition("B", Messages.ANY, "C"));
+        transitionMap.add(new StateTransition("C", "2", "A"));
+
+        StateMachine machine = new StateMachine(CompiledTransitionTable.of(transitionMap));
+        machine.init();
+        assertThat("Current state mismatch", machine.send("1").send("x").getCurrent().getName(), is("C"));
+        assertThat("Current state mismatch", machine.send("2").getCurrent().getName(), is("A"));
+        assertThat("Transitions mismatch", machine.getTransitions("C"), contains(new StateTransition("C", "2", "A")));
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.HierarchicalStateMachine;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.impl.StateHierarchy;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.impl.TransitionCounter;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link HierarchicalStateMachine}
+ */
+public class HierarchicalStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testMessageBubbling() {
+        HierarchicalStateMachine machine = createHierarchicalMachine();
+        machine.init();
+        assertThat("Current state mismatch", machine.getCurrent().getName(), is("IDLE"));
+
+        // Entering a composite state enters its initial substates
+        assertThat("Current state mismatch", machine.send("start").getCurrent().getName(), is("LOADING"));
+        assertThat("Current state mismatch", machine.send("loaded").getCurrent().getName(), is("FAST"));
+        assertTrue(machine.isIn("ACTIVE"), "Current state should be inside ACTIVE");
+        assertTrue(machine.isIn("RUNNING"), "Current state should be inside RUNNING");
+        assertFalse(machine.isIn("IDLE"), "Current state should not be inside IDLE");
+        assertThat("Current state mismatch", machine.send("throttle").getCurrent().getName(), is("SLOW"));
+
+        // The innermost ancestor handles the message
+        assertThat("Current state mismatch", machine.send("cancel").getCurrent().getName(), is("LOADING"));
+        assertThat("Current state mismatch", machine.send("cancel").getCurrent().getName(), is("IDLE"));
+        assertThat("Current state mismatch", machine.send("unknown").getCurrent().getName(), is("IDLE"));
+        assertThat("Current state mismatch", machine.send("start").send("timeout").getCurrent().getName(), is("ERROR"));
+
+        // Hierarchy changes are applied on the fly
+        machine.setInitialSubstate("RUNNING", "SLOW");
+        machine.setCurrent("RUNNING");
+        assertThat("Current state mismatch", machine.getCurrent().getName(), is("SLOW"));
+        machine.add(new StateTransition("ACTIVE", "reset", "IDLE"));
+        assertThat("Current state mismatch", machine.send("reset").getCurrent().getName(), is("IDLE"));
+    }
+
+    @Test
+    public void testTransitionCounting() {
+        HierarchicalStateMachine machine = createHierarchicalMachine();
+        TransitionCounter counter = new TransitionCounter();
+        machine.setTransitionCounter(counter);
+        machine.init();
+        machine.send("start").send("loaded").send("cancel");
+        assertThat("Current state mismatch", machine.getCurrent().getName(), is("LOADING"));
+
+        // The transitions of the index are counted, not the leaves entered or left
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("IDLE", "start", "ACTIVE")), is(1L));
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("LOADING", "loaded", "RUNNING")), is(1L));
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("RUNNING", "cancel", "LOADING")), is(1L));
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("FAST", "cancel", "LOADING")), is(0L));
+        List<StateTransition> traversed = counter.snapshot().getBusiestTransitions(1.0);
+        assertThat("Traversed transitions mismatch", traversed.size(), is(3));
+        assertTrue(traversed.stream().allMatch(t -> machine.getTransitionsIndex().contains(t)), "Unknown transition counted");
+    }
+
+    @Test
+    public void testHierarchyPaths() {
+        HierarchicalStateMachine machine = createHierarchicalMachine();
+        assertThat("Parent mismatch", machine.getParent("FAST").map(State::getName).orElse(null), is("RUNNING"));
+        assertFalse(machine.getParent("IDLE").isPresent(), "IDLE should not have parent");
+        assertThat("Ancestors mismatch", names(machine.getAncestors("SLOW")), contains("RUNNING", "ACTIVE"));
+
+        assertThat("Exit path mismatch", names(machine.getExitPath("SLOW", "IDLE")), contains("SLOW", "RUNNING", "ACTIVE"));
+        assertThat("Entry path mismatch", names(machine.getEntryPath("SLOW", "IDLE")), contains("IDLE"));
+        assertThat("Exit path mismatch", names(machine.getExitPath("LOADING", "RUNNING")), contains("LOADING"));
+        assertThat("Entry path mismatch", names(machine.getEntryPath("LOADING", "RUNNING")), contains("RUNNING", "FAST"));
+        assertThat("Entry path mismatch", names(machine.getEntryPath("IDLE", "ACTIVE")), contains("ACTIVE", "LOADING"));
+        assertTrue(machine.getExitPath("FAST", "FAST").isEmpty(), "Exit path should be empty");
+
+        assertThrows(IllegalArgumentException.class, () -> machine.addSubstate("FAST", "ACTIVE"), "Exception mismatch");
+        assertThrows(IllegalArgumentException.class, () -> machine.setInitialSubstate("ACTIVE", "FAST"), "Exception mismatch");
+        assertThrows(NullStateException.class, () -> machine.getAncestors("Z"), "Exception mismatch");
+    }
+
+    @Test
+    public void testLowestCommonAncestors() {
+        // Random tree where the parent always precedes the child
+        int size = 5000;
+        Random random = new Random(11);
+        Map<String, String> parents = new LinkedHashMap<>();
+        int[] parentIds = new int[size];
+        parentIds[0] = -1;
+        for (int i = 1; i < size; i++) {
+            parentIds[i] = (random.nextInt(10) == 0) ? -1 : random.nextInt(i);
+            if (parentIds[i] >= 0) {
+                parents.put("S" + i, "S" + parentIds[i]);
+            }
+        }
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        transitionMap.add(new StateTransition("S0", "next", "S1"));
+        StateHierarchy hierarchy = new StateHierarchy(transitionMap, parents, Collections.emptyMap());
+
+        for (int t = 0; t < 20_000; t++) {
+            int first = random.nextInt(size);
+            int second = random.nextInt(size);
+            if ((hierarchy.indexOf("S" + first) < 0) || (hierarchy.indexOf("S" + second) < 0)) {
+                // Isolated top level state
+                continue;
+            }
+            Set<Integer> ancestors = new HashSet<>();
+            for (int p = first; p >= 0; p = parentIds[p]) {
+                ancestors.add(p);
+            }
+            int expected = second;
+            while ((expected >= 0) && !ancestors.contains(expected)) {
+                expected = parentIds[expected];
+            }
+            int actual = hierarchy.getLowestCommonAncestor(hierarchy.indexOf("S" + first), hierarchy.indexOf("S" + second));
+            assertThat("Common ancestor mismatch", (actual >= 0) ? hierarchy.getState(actual).getName() : null,
+                    is((expected >= 0) ? "S" + expected : null));
+        }
+    }
+
+    /**
+     * Creates a hierarchical state machine with a composite
+     * state nesting another composite state.
+     *
+     * @return the state machine
+     */
+    private HierarchicalStateMachine createHierarchicalMachine() {
+        StateMachine flat = StateMachine.newBuilder()
+                .from("IDLE").to("ACTIVE").on("start")
+                .from("ACTIVE").to("IDLE").on("cancel")
+                .from("ACTIVE").to(State.from("ERROR").isFinal(true).build()).on("timeout")
+                .from("LOADING").to("RUNNING").on("loaded")
+                .from("RUNNING").to("LOADING").on("cancel")
+                .from("FAST").to("SLOW").on("throttle")
+                .build();
+        return new HierarchicalStateMachine(flat.getTransitionsIndex())
+                .addSubstate("ACTIVE", "LOADING")
+                .addSubstate("ACTIVE", "RUNNING")
+                .addSubstate("RUNNING", "FAST")
+                .addSubstate("RUNNING", "SLOW");
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+}
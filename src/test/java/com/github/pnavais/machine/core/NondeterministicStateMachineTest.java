@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.NondeterministicStateMachine;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link NondeterministicStateMachine}
+ */
+public class NondeterministicStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testNondeterministicTransitions() {
+        // Recognizes sequences ending in "a b"
+        NondeterministicStateMachine machine = new NondeterministicStateMachine()
+                .add("Q0", "a", "Q0")
+                .add("Q0", "b", "Q0")
+                .add("Q0", "a", "Q1")
+                .add(new StateTransition(State.named("Q1"), "b", State.from("Q2").isFinal(true).build()));
+
+        machine.init();
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("Q0"));
+        machine.send("a");
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("Q0", "Q1"));
+        assertFalse(machine.isAccepting(), "Machine should not accept");
+        machine.send("b");
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("Q0", "Q2"));
+        assertTrue(machine.isAccepting(), "Machine should accept");
+        assertThat("Targets mismatch", names(machine.getTargets("Q0", Messages.EMPTY)).size(), is(0));
+        assertThat("Targets mismatch", names(machine.getTargets("Q0", StringMessage.from("a"))), contains("Q0", "Q1"));
+
+        // Replay the same input to hit the cached sets
+        long misses = machine.getCacheMisses();
+        machine.init();
+        machine.send("a").send("b");
+        assertThat("Cache misses mismatch", machine.getCacheMisses(), is(misses));
+        assertTrue(machine.isActive("Q2"), "State should be active");
+        assertThrows(NullStateException.class, () -> machine.setCurrent("Z"), "Exception mismatch");
+    }
+
+    @Test
+    public void testEpsilonClosureAndFallbacks() {
+        NondeterministicStateMachine machine = new NondeterministicStateMachine()
+                .add(new StateTransition(State.named("A"), Messages.EMPTY, State.named("B")))
+                .add(new StateTransition(State.named("B"), Messages.EMPTY, State.named("C")))
+                .add(new StateTransition(State.named("C"), Messages.ANY, State.named("D")))
+                .add("B", "x", "E")
+                .add("C", "x", "F");
+
+        machine.init();
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("A", "B", "C"));
+        machine.send("x");
+        // A has no transitions so it remains active with its closure
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("A", "B", "C", "E", "F"));
+        machine.setCurrent("C");
+        machine.send("y");
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("D"));
+
+        // Modifications keep the active states
+        machine.add(new StateTransition(State.named("D"), Messages.EMPTY, State.named("G")));
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("D", "G"));
+    }
+
+    @Test
+    public void testOverlappingMachines() {
+        StateMachine first = StateMachine.newBuilder()
+                .from("A1").to("A2").on("x")
+                .from("A2").to(State.from("A3").isFinal(true).build()).on("y")
+                .build();
+        StateMachine second = StateMachine.newBuilder()
+                .from("B1").to("B2").on("y")
+                .from("B2").to("B1").on("y")
+                .build();
+
+        NondeterministicStateMachine machine = new NondeterministicStateMachine(2)
+                .addAll(first)
+                .addAll(second);
+        machine.setCurrent("A1", "B1");
+        machine.send("x").send("y");
+        assertThat("Active states mismatch", names(machine.getCurrent()), contains("A3", "B2"));
+        assertThat("Cached sets mismatch", machine.getCachedSets(), is(1));
+
+        // Every step of a long run reuses the cached sets
+        NondeterministicStateMachine ring = new NondeterministicStateMachine();
+        IntStream.range(0, 300).forEach(i -> ring.add("S" + i, "next", "S" + ((i + 1) % 300)).add("S" + i, "next", "S" + ((i + 2) % 300)));
+        ring.init();
+        IntStream.range(0, 1000).forEach(i -> ring.send("next"));
+        assertThat("Active states mismatch", ring.getCurrent().size(), is(300));
+        assertTrue(ring.getCacheHits() > 600, "Cache should be used");
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(Set<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.Status;
+import com.github.pnavais.machine.api.exception.IllegalTransitionException;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.impl.OffHeapTransitionMap;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.FilteredState;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link com.github.pnavais.machine.impl.OffHeapTransitionMap}
+ */
+public class OffHeapTransitionMapTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testOffHeapTransitionMapInit() {
+        OffHeapTransitionMap transitionMap = createTransitionMap();
+        assertThat("Size mismatch", transitionMap.size(), is(3));
+        assertThat("First state mismatch", transitionMap.getFirst().map(State::getName).orElse(null), is("A"));
+
+        Optional<State> next = transitionMap.getNext(State.named("A"), StringMessage.from("1"));
+        assertTrue(next.isPresent(), "Error retrieving next state");
+        assertThat("Next state mismatch", next.get().getName(), is("B"));
+        assertFalse(transitionMap.getNext(State.named("A"), StringMessage.from("2")).isPresent(), "Next state should not be found");
+
+        Optional<State> c = transitionMap.find("C");
+        assertTrue(c.isPresent(), "Error retrieving state");
+        assertTrue(c.get().isFinal(), "Final flag mismatch");
+        assertThat("Property mismatch", c.get().getProperty("shape").orElse(null), is("box"));
+        assertFalse(transitionMap.find("Z").isPresent(), "State should not be found");
+    }
+
+    @Test
+    public void testOffHeapTransitionMapMatchesHeapMap() {
+        OffHeapTransitionMap offHeapMap = new OffHeapTransitionMap();
+        StateTransitionMap heapMap = new StateTransitionMap();
+
+        // Generate a graph with some states having a big fan-out
+        IntStream.range(0, 500).forEach(i -> {
+            StateTransition transition = new StateTransition("S" + (i % 37), StringMessage.from("m" + (i % 11)), "S" + ((i * 7) % 53));
+            offHeapMap.add(transition);
+            heapMap.add(transition);
+        });
+        IntStream.range(0, 20).forEach(i -> {
+            StateTransition transition = new StateTransition("S" + i, StringMessage.from("m" + (i % 11)), "S" + ((i * 7) % 53));
+            if (heapMap.contains(transition)) {
+                offHeapMap.remove(transition);
+                heapMap.remove(transition);
+            }
+        });
+        offHeapMap.remove("S5");
+        heapMap.remove("S5");
+
+        assertThat("Size mismatch", offHeapMap.size(), is(heapMap.size()));
+        assertThat("Transitions mismatch", offHeapMap.getTransitionsAsMap(), is(heapMap.getTransitionsAsMap()));
+        assertThat("Transitions mismatch", new ArrayList<>(offHeapMap.getAllTransitions()), is(new ArrayList<>(heapMap.getAllTransitions())));
+        heapMap.getTransitionsAsMap().keySet().forEach(s -> {
+            assertThat("Transitions mismatch", new ArrayList<>(offHeapMap.getTransitions(s)), is(new ArrayList<>(heapMap.getTransitions(s))));
+            assertThat("Incoming transitions mismatch", offHeapMap.getIncomingTransitions(s).size(), is(heapMap.getIncomingTransitions(s).size()));
+            assertThat("Previous state mismatch", offHeapMap.getPrevious(s, StringMessage.from("m3")), is(heapMap.getPrevious(s, StringMessage.from("m3"))));
+        });
+        List<StateTransition> visited = new ArrayList<>();
+        offHeapMap.forEachTransition((origin, message, target) -> visited.add(new StateTransition(origin, message, target)));
+        assertThat("Visited transitions mismatch", visited, is(new ArrayList<>(heapMap.getAllTransitions())));
+        assertThat("Pruned states mismatch", offHeapMap.prune(), is(heapMap.prune()));
+    }
+
+    @Test
+    public void testOffHeapTransitionMapRemoval() {
+        OffHeapTransitionMap transitionMap = createTransitionMap();
+        long version = transitionMap.getVersion();
+
+        assertThrows(IllegalTransitionException.class, () -> transitionMap.remove(new StateTransition("A", "1", "C")), "Exception mismatch");
+        transitionMap.remove(new StateTransition("A", "1", "B"));
+        assertThat("Version mismatch", transitionMap.getVersion() > version, is(true));
+        assertThat("Transitions mismatch", transitionMap.getAllTransitions(), contains(new StateTransition("B", "2", "C")));
+
+        transitionMap.remove("B");
+        assertThat("Size mismatch", transitionMap.size(), is(2));
+        assertThrows(NullStateException.class, () -> transitionMap.getTransitions("B"), "Exception mismatch");
+        assertThat("Pruned states mismatch", transitionMap.prune(), contains(State.named("A"), State.named("C")));
+
+        // Add again a removed state
+        transitionMap.add(new StateTransition("B", "3", "A"));
+        assertThat("Transitions mismatch", transitionMap.getIncomingTransitions(State.named("A")), contains(new StateTransition("B", "3", "A")));
+
+        transitionMap.removeAllTransitions();
+        assertThat("Size mismatch", transitionMap.size(), is(2));
+        assertTrue(transitionMap.getAllTransitions().isEmpty(), "Transitions should be removed");
+        transitionMap.clear();
+        assertThat("Size mismatch", transitionMap.size(), is(0));
+        assertFalse(transitionMap.getFirst().isPresent(), "First state should not be found");
+    }
+
+    @Test
+    public void testStateMachineWithOffHeapTransitionMap() {
+        StateMachine machine = new StateMachine(new OffHeapTransitionMap());
+        FilteredState stateD = FilteredState.from(State.named("D"));
+        stateD.setReceptionHandler(context -> Status.ABORT);
+        machine.add(new StateTransition("A", "1", "B"));
+        machine.add(new StateTransition("B", Messages.ANY, "C"));
+        machine.add(new StateTransition(State.named("C"), StringMessage.from("2"), stateD));
+
+        machine.init();
+        assertThat("Current state mismatch", machine.send("1").send("x").getCurrent().getName(), is("C"));
+        assertThat("Current state mismatch", machine.send("2").getCurrent().getName(), is("C"));
+    }
+
+    /**
+     * Creates the test transition map
+     *
+     * @return the transition map
+     */
+    private OffHeapTransitionMap createTransitionMap() {
+        OffHeapTransitionMap transitionMap = new OffHeapTransitionMap();
+        transitionMap.add(new StateTransition("A", StringMessage.from("1"), "B"));
+        transitionMap.add(new StateTransition("B", StringMessage.from("2"), State.from("C").isFinal(true).property("shape", "box").build()));
+        return transitionMap;
+    }
+}
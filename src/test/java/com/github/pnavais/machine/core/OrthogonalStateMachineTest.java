@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.OrthogonalStateMachine;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.Status;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.model.FilteredState;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link OrthogonalStateMachine}
+ */
+public class OrthogonalStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testOrthogonalRegions() {
+        OrthogonalStateMachine machine = new OrthogonalStateMachine()
+                .addRegion("payment", StateMachine.newBuilder()
+                        .from("UNPAID").to(State.from("PAID").isFinal(true).build()).on("pay")
+                        .build())
+                .addRegion("shipping", StateMachine.newBuilder()
+                        .from("PENDING").to("SHIPPED").on("ship")
+                        .from("SHIPPED").to(State.from("DELIVERED").isFinal(true).build()).on("deliver")
+                        .build());
+        machine.init();
+        assertThat("Region count mismatch", machine.size(), is(2));
+        assertThat("Regions mismatch", machine.getRegionNames(), contains("payment", "shipping"));
+        assertThat("Current states mismatch", names(machine.getCurrent()), contains("UNPAID", "PENDING"));
+
+        Map<String, Optional<State>> next = machine.dispatch(StringMessage.from("ship"));
+        assertFalse(next.get("payment").isPresent(), "Payment should not move");
+        assertThat("Next state mismatch", next.get("shipping").map(State::getName).orElse(null), is("SHIPPED"));
+        assertTrue(machine.isIn("shipping", "SHIPPED"), "Shipping region state mismatch");
+        assertFalse(machine.isComplete(), "Machine should not be complete");
+
+        machine.send("pay").send("deliver");
+        assertThat("Current states mismatch", names(machine.getCurrent()), contains("PAID", "DELIVERED"));
+        assertTrue(machine.isComplete(), "Machine should be complete");
+
+        StateMachine region = machine.getRegion("payment").orElse(null);
+        assertThrows(IllegalArgumentException.class, () -> machine.addRegion("payment", new StateMachine()), "Exception mismatch");
+        assertThrows(IllegalArgumentException.class, () -> machine.addRegion("other", region), "Exception mismatch");
+        assertThrows(NullStateException.class, () -> machine.isIn("billing", "PAID"), "Exception mismatch");
+    }
+
+    @Test
+    public void testConcurrentRegions() {
+        OrthogonalStateMachine sequential = createFilteredRegions();
+        OrthogonalStateMachine concurrent = createFilteredRegions();
+        concurrent.setConcurrent(true);
+        concurrent.setPool(new ForkJoinPool(4));
+        sequential.init();
+        concurrent.init();
+
+        // Odd regions reject the arrival
+        for (int i = 0; i < 3; i++) {
+            Map<String, Optional<State>> expected = sequential.dispatch(StringMessage.from("next"));
+            Map<String, Optional<State>> actual = concurrent.dispatch(StringMessage.from("next"));
+            assertThat("Results mismatch", actual, is(expected));
+            assertThat("Regions order mismatch", actual.keySet().stream().collect(Collectors.toList()), is(sequential.getRegionNames()));
+            assertThat("Current states mismatch", concurrent.getCurrent(), is(sequential.getCurrent()));
+        }
+        assertTrue(concurrent.isIn("R0", "B"), "Region state mismatch");
+        assertTrue(concurrent.isIn("R1", "A"), "Region state mismatch");
+
+        // The exception of the first failing region is raised
+        OrthogonalStateMachine failing = new OrthogonalStateMachine()
+                .addRegion("first", createFailingRegion(new IllegalStateException("first")))
+                .addRegion("second", createFailingRegion(new UnsupportedOperationException("second")));
+        failing.setConcurrent(true);
+        failing.init();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IllegalStateException.class, () -> failing.send("next"), "Exception mismatch");
+        }
+    }
+
+    /**
+     * Creates a composite with regions whose filters
+     * take some time to accept or reject the messages.
+     *
+     * @return the composite state machine
+     */
+    private OrthogonalStateMachine createFilteredRegions() {
+        OrthogonalStateMachine machine = new OrthogonalStateMachine();
+        for (int i = 0; i < 8; i++) {
+            boolean accept = (i % 2 == 0);
+            FilteredState target = new FilteredState(new State("B"));
+            target.setReceptionHandler(context -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return accept ? Status.PROCEED : Status.ABORT;
+            });
+            machine.addRegion("R" + i, StateMachine.newBuilder()
+                    .from("A").to(target).on("next")
+                    .build());
+        }
+        return machine;
+    }
+
+    /**
+     * Creates a region whose filter raises the given exception
+     *
+     * @param exception the exception
+     * @return the region
+     */
+    private StateMachine createFailingRegion(RuntimeException exception) {
+        FilteredState target = new FilteredState(new State("B"));
+        target.setReceptionHandler(context -> {
+            throw exception;
+        });
+        return StateMachine.newBuilder().from("A").to(target).on("next").build();
+    }
+
+    /**
+     * Retrieves the names of the current states
+     *
+     * @param current the current states by region
+     * @return the names of the states
+     */
+    private List<String> names(Map<String, State> current) {
+        return current.values().stream().map(State::getName).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
+import com.github.pnavais.machine.impl.CompiledTransitionTable;
+import com.github.pnavais.machine.impl.PagedTransitionIndex;
+import com.github.pnavais.machine.impl.StateTransitionMap;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link com.github.pnavais.machine.impl.PagedTransitionIndex}
+ */
+public class PagedTransitionIndexTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testPagedTransitionIndexLoading() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 400).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 61), StringMessage.from("m" + (i % 5)), "S" + ((i * 17) % 83))));
+        transitionMap.add(new StateTransition(State.named("S60"), Messages.ANY, State.from("END").isFinal(true).property("color", "red").build()));
+
+        Path file = Files.createTempFile("paged", ".smt");
+        CompiledTransitionTable.compile(transitionMap, file);
+        try (PagedTransitionIndex index = PagedTransitionIndex.open(file, 8, 3)) {
+            assertThat("Resident pages mismatch", index.getResidentPages(), is(0));
+            assertThat("Size mismatch", index.size(), is(transitionMap.size()));
+            transitionMap.getTransitionsAsMap().keySet().forEach(s -> {
+                assertThat("Transitions mismatch", new ArrayList<>(index.getTransitions(s)), is(new ArrayList<>(transitionMap.getTransitions(s))));
+                assertThat("Incoming transitions mismatch", index.getIncomingTransitions(s).size(), is(transitionMap.getIncomingTransitions(s).size()));
+                assertThat("Next state mismatch", index.getNext(s, StringMessage.from("m2")), is(transitionMap.getNext(s, StringMessage.from("m2"))));
+                assertThat("Previous state mismatch", index.getPrevious(s, StringMessage.from("m2")), is(transitionMap.getPrevious(s, StringMessage.from("m2"))));
+                assertThat("Resident pages mismatch", index.getResidentPages(), lessThanOrEqualTo(3));
+            });
+            assertThat("Transitions mismatch", index.getTransitionsAsMap(), is(transitionMap.getTransitionsAsMap()));
+            assertTrue(index.getPageFaults() > index.size() / 8, "Pages should have been evicted");
+
+            State last = index.find("END").orElse(null);
+            assertNotNull(last, "Error retrieving state");
+            assertTrue(last.isFinal(), "Final flag mismatch");
+            assertThat("Property mismatch", last.getProperty("color").orElse(null), is("red"));
+            assertFalse(index.find("Z").isPresent(), "State should not be found");
+            assertThrows(NullStateException.class, () -> index.getTransitions("Z"), "Exception mismatch");
+            assertThrows(UnsupportedOperationException.class, () -> index.remove("S1"), "Exception mismatch");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testPagedTransitionIndexVisitor() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 300).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 41), StringMessage.from("m" + (i % 4)), "S" + ((i * 11) % 53))));
+        transitionMap.add(new StateTransition("S7", "loop", "S7"));
+
+        Path file = Files.createTempFile("paged", ".smt");
+        CompiledTransitionTable.compile(transitionMap, file);
+        try (PagedTransitionIndex index = PagedTransitionIndex.open(file, 4, 2)) {
+            List<StateTransition> visited = new ArrayList<>();
+            index.forEachTransition((origin, message, target) -> visited.add(new StateTransition(origin, message, target)));
+            assertThat("Visited transitions mismatch", visited, is(new ArrayList<>(transitionMap.getAllTransitions())));
+            transitionMap.getTransitionsAsMap().keySet().forEach(s -> {
+                List<StateTransition> outgoing = new ArrayList<>();
+                index.forEachTransition(s, (origin, message, target) -> outgoing.add(new StateTransition(origin, message, target)));
+                assertThat("Visited transitions mismatch", outgoing, is(new ArrayList<>(transitionMap.getTransitions(s))));
+            });
+            assertThat("Resident pages mismatch", index.getResidentPages(), lessThanOrEqualTo(2));
+            assertThrows(NullStateException.class, () -> index.forEachTransition("Z", (origin, message, target) -> {}), "Exception mismatch");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testPagedTransitionIndexSnapshot() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 300).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 41), StringMessage.from("m" + (i % 4)), "S" + ((i * 11) % 53))));
+
+        Path file = Files.createTempFile("paged", ".smt");
+        CompiledTransitionTable.compile(transitionMap, file);
+        try (PagedTransitionIndex index = PagedTransitionIndex.open(file, 4, 2)) {
+            // The layout is read without loading any page
+            TransitionGraph<State, Message> graph = index.snapshot();
+            assertThat("Resident pages mismatch", index.getResidentPages(), is(0));
+            CompiledTransitionTableTest.checkSnapshot(graph, transitionMap.snapshot());
+            assertThat("Resident pages mismatch", index.getResidentPages(), lessThanOrEqualTo(2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testStateMachineWithPagedTransitionIndex() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 100).forEach(i -> transitionMap.add(new StateTransition("S" + i, "next", "S" + (i + 1))));
+
+        Path file = Files.createTempFile("paged", ".smt");
+        CompiledTransitionTable.compile(transitionMap, file);
+        try (PagedTransitionIndex index = PagedTransitionIndex.open(file, 4, 2)) {
+            StateMachine machine = new StateMachine(index);
+            machine.init();
+            assertThat("Resident pages mismatch", index.getResidentPages(), is(1));
+            IntStream.range(0, 10).forEach(i -> machine.send("next"));
+            assertThat("Current state mismatch", machine.getCurrent().getName(), is("S10"));
+            assertThat("Resident pages mismatch", index.getResidentPages(), lessThanOrEqualTo(2));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testConcurrentPagedLookups() throws IOException {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 2000).forEach(i -> transitionMap.add(new StateTransition("S" + i, "next", "S" + ((i + 1) % 2000))));
+
+        Path file = Files.createTempFile("paged", ".smt");
+        CompiledTransitionTable.compile(transitionMap, file);
+        try (PagedTransitionIndex index = PagedTransitionIndex.open(file, 16, 8)) {
+            // Resident lookups do not read from disk
+            State first = index.getFirst().orElseThrow();
+            long faults = index.getPageFaults();
+            IntStream.range(0, 1000).forEach(i -> index.getNext(first, StringMessage.from("next")));
+            assertThat("Page faults mismatch", index.getPageFaults(), is(faults));
+
+            // Concurrent lookups evicting pages
+            long mismatches = IntStream.range(0, 200_000).parallel()
+                    .filter(i -> !index.getNext(State.named("S" + (i % 2000)), Messages.EMPTY).isEmpty()
+                            || !index.find("S" + (i % 2000)).map(s -> index.getTransitions(s).iterator().next().getTarget().getName())
+                            .orElse("").equals("S" + ((i + 1) % 2000)))
+                    .count();
+            assertThat("Lookups mismatch", mismatches, is(0L));
+            assertThat("Resident pages mismatch", index.getResidentPages(), lessThanOrEqualTo(8));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
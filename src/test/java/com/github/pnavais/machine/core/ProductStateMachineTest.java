@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.ProductStateMachine;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link ProductStateMachine}
+ */
+public class ProductStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testLazyProductStateMachine() {
+        StateMachine first = createFirstMachine();
+        StateMachine second = createSecondMachine();
+        ProductStateMachine product = ProductStateMachine.of(createFirstMachine(), createSecondMachine());
+        assertThat("Machine count mismatch", product.getMachineCount(), is(2));
+        assertThat("Current state mismatch", product.getCurrent().getName(), is("(A,P)"));
+        assertThat("Expanded states mismatch", product.getExpandedStates(), is(0));
+
+        // The product behaves as the machines stepped independently
+        Random random = new Random(7);
+        String[] messages = { "x", "y", "z", "w" };
+        for (int i = 0; i < 500; i++) {
+            String message = messages[random.nextInt(messages.length)];
+            first.send(message);
+            second.send(message);
+            product.send(message);
+            assertThat("Components mismatch", names(product.getComponents(product.getCurrent().getName())),
+                    contains(first.getCurrent().getName(), second.getCurrent().getName()));
+        }
+        assertTrue(product.getExpandedStates() <= 9, "Expanded states mismatch");
+    }
+
+    @Test
+    public void testLongLazyRun() {
+        // Two independent rings of 300 and 200 states (60,000 tuples)
+        ProductStateMachine product = ProductStateMachine.of(createRing("R", 300, "a"), createRing("S", 200, "b"));
+        Random random = new Random(11);
+        int first = 0;
+        int second = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (random.nextBoolean()) {
+                product.send("a");
+                first = (first + 1) % 300;
+            } else {
+                product.send("b");
+                second = (second + 1) % 200;
+            }
+        }
+        assertThat("Current state mismatch", product.getCurrent().getName(), is("(R" + first + ",S" + second + ")"));
+        assertTrue(product.getExpandedStates() > 10_000, "Expanded states mismatch");
+        assertThat("Incoming transitions mismatch", product.getTransitionsIndex().getIncomingTransitions(product.getCurrent()).isEmpty(), is(false));
+    }
+
+    @Test
+    public void testLazyMaximumStates() {
+        ProductStateMachine product = ProductStateMachine.of(2, createRing("R", 5, "a"), createSecondMachine());
+        assertThrows(IllegalStateException.class, () -> product.send("a"), "Exception mismatch");
+
+        // The failed expansion is retried instead of leaving a dead end
+        assertThrows(IllegalStateException.class, () -> product.send("a"), "Exception mismatch");
+        assertThat("Expanded states mismatch", product.getExpandedStates(), is(0));
+        assertThat("Current state mismatch", product.getCurrent().getName(), is("(R0,P)"));
+        assertThat("Next state mismatch", ProductStateMachine.of(3, createRing("R", 5, "a"), createSecondMachine())
+                .send("a").getCurrent().getName(), is("(R1,P)"));
+    }
+
+    @Test
+    public void testTupleNamesEscaped() {
+        StateMachine first = StateMachine.newBuilder().from("A,B").to("A").on("x").build();
+        StateMachine second = StateMachine.newBuilder().from("C").to("B,C").on("x").build();
+        ProductStateMachine product = ProductStateMachine.compose(10, first, second);
+        assertThat("Current state mismatch", product.getCurrent().getName(), is("(A\\,B,C)"));
+        assertThat("Components mismatch", names(product.getComponents("(A\\,B,C)")), contains("A,B", "C"));
+
+        // Distinct tuples with the same joined names are not merged
+        assertThat("Next state mismatch", product.send("x").getCurrent().getName(), is("(A,B\\,C)"));
+        assertThat("Components mismatch", names(product.getComponents(product.getCurrent().getName())), contains("A", "B,C"));
+        assertThat("States mismatch", product.getTransitionsIndex().getTransitionsAsMap().size(), is(2));
+    }
+
+    @Test
+    public void testEagerProductStateMachine() {
+        ProductStateMachine product = ProductStateMachine.compose(100, createFirstMachine(), createSecondMachine());
+        assertThat("States mismatch", product.getTransitionsIndex().getTransitionsAsMap().keySet().stream()
+                .map(State::getName).collect(Collectors.toList()), contains("(A,P)", "(B,Q)", "(A,Q)", "(C,Q)", "(B,P)", "(C,P)"));
+        assertThat("Next state mismatch", product.send("w").send("x").send("y").getCurrent().getName(), is("(C,P)"));
+        assertFalse(product.getCurrent().isFinal(), "Final flag mismatch");
+        assertThat("Next state mismatch", product.send("x").getCurrent().getName(), is("(C,Q)"));
+
+        assertThrows(IllegalStateException.class, () -> ProductStateMachine.compose(3, createFirstMachine(), createSecondMachine()),
+                "Exception mismatch");
+        assertThrows(IllegalArgumentException.class, ProductStateMachine::of, "Exception mismatch");
+    }
+
+    /**
+     * Creates a machine with the following transitions :
+     * A -- x --> B, B -- y --> C*, B -- * --> A
+     *
+     * @return the state machine
+     */
+    private StateMachine createFirstMachine() {
+        return StateMachine.newBuilder()
+                .from("A").to("B").on("x")
+                .from("B").to(State.from("C").isFinal(true).build()).on("y")
+                .from("B").to("A").on(Messages.ANY)
+                .build();
+    }
+
+    /**
+     * Creates a machine with the following transitions :
+     * P -- x --> Q, Q -- x --> P, P -- w --> Q
+     *
+     * @return the state machine
+     */
+    private StateMachine createSecondMachine() {
+        return StateMachine.newBuilder()
+                .from("P").to("Q").on("x")
+                .from("Q").to("P").on("x")
+                .from("P").to("Q").on("w")
+                .build();
+    }
+
+    /**
+     * Creates a ring of states advancing upon the given message
+     *
+     * @param prefix the prefix of the state names
+     * @param size the number of states
+     * @param message the message
+     * @return the state machine
+     */
+    private StateMachine createRing(String prefix, int size, String message) {
+        StateMachine ring = new StateMachine();
+        for (int i = 0; i < size; i++) {
+            ring.add(new StateTransition(prefix + i, message, prefix + ((i + 1) % size)));
+        }
+        ring.init();
+        return ring;
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+}
@@ -20,15 +20,19 @@ import com.github.pnavais.machine.AbstractStateMachineTest;
 import com.github.pnavais.machine.StateMachine;
 import com.github.pnavais.machine.api.Status;
 import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.api.exception.TransitionLoopException;
 import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.impl.TransitionCounter;
 import com.github.pnavais.machine.model.FilteredState;
 import com.github.pnavais.machine.model.State;
 import com.github.pnavais.machine.model.StateTransition;
 import com.github.pnavais.machine.model.StringMessage;
+import com.github.pnavais.machine.model.TransitionStatistics;
 import org.junit.jupiter.api.Test;
 
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -63,6 +67,33 @@ public class StateMachineTraversalTest extends AbstractStateMachineTest {
         assertThat("Previous state mismatch", previous.get(), is(initial));
     }
 
+    @Test
+    public void testTransitionCounting() {
+        StateMachine machine = createStateMachine();
+        machine.add(new StateTransition("B", Messages.ANY, "A"));
+        TransitionCounter counter = new TransitionCounter();
+        machine.setTransitionCounter(counter);
+        machine.init();
+        machine.send("1b").send("x").send("1b").send("2");
+
+        StateTransition anyTransition = new StateTransition("B", Messages.ANY, "A");
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("A", "1b", "B")), is(2L));
+        assertThat("Transition count mismatch", counter.getCount(anyTransition), is(1L));
+        assertThat("Transition count mismatch", counter.getCount(new StateTransition("A", "1c", "C")), is(0L));
+
+        TransitionStatistics statistics = counter.snapshot();
+        assertThat("Total count mismatch", statistics.getTotal(), is(4L));
+        assertThat("State count mismatch", statistics.getCount(State.named("B")), is(2L));
+        assertThat("Busiest transitions mismatch", statistics.getBusiestTransitions(0.5).size(), is(1));
+        assertThat("Busiest transitions mismatch", statistics.getBusiestTransitions(1.0).size(), is(3));
+
+        counter.reset();
+        machine.setTransitionCounter(null);
+        machine.send("x");
+        assertThat("Snapshot should be immutable", statistics.getCount(anyTransition), is(1L));
+        assertThat("Transition count mismatch", counter.getCount(anyTransition), is(0L));
+    }
+
     @Test
     public void testSetUnavailableCurrentState() {
         StateMachine machine = createStateMachine();
@@ -165,6 +196,41 @@ public class StateMachineTraversalTest extends AbstractStateMachineTest {
         assertEquals("A", machine.send(Messages.ANY).getCurrent().getName(), "Error traversing machine with empty message");
     }
 
+    @Test
+    public void testRunToCompletion() {
+        AtomicInteger arrivals = new AtomicInteger();
+        FilteredState stateD = new FilteredState(new State("D"));
+        stateD.setReceptionHandler(context -> {
+            arrivals.incrementAndGet();
+            return Status.PROCEED;
+        });
+
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to("B")
+                .from("B").to("C")
+                .from("C").to(stateD)
+                .from(stateD).to("E")
+                .from("E").to("F").on("go")
+                .build();
+
+        assertEquals("E", machine.runToCompletion().getCurrent().getName(), "Error running to completion");
+        assertThat("Arrivals mismatch", arrivals.get(), is(1));
+        assertEquals("E", machine.runToCompletion().getCurrent().getName(), "Error running to completion");
+
+        machine.init();
+        assertThrows(TransitionLoopException.class, () -> machine.runToCompletion(3), "Exception mismatch");
+
+        // Chains are updated after modifications
+        machine.add(new StateTransition(new State("E"), Messages.ANY, State.from("G").isFinal(true).build()));
+        machine.init();
+        assertEquals("G", machine.runToCompletion().getCurrent().getName(), "Error running to completion");
+
+        machine.add(new StateTransition("F", Messages.EMPTY, "H"));
+        machine.add(new StateTransition("H", Messages.EMPTY, "F"));
+        machine.setCurrent("F");
+        assertThrows(TransitionLoopException.class, machine::runToCompletion, "Exception mismatch");
+    }
+
     /**
      * Creates a state Machine for test purposes
      * with the following transitions :
@@ -17,10 +17,13 @@
 package com.github.pnavais.machine.core;
 
 import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
 import com.github.pnavais.machine.api.exception.IllegalTransitionException;
+import com.github.pnavais.machine.api.exception.NullStateException;
 import com.github.pnavais.machine.api.exception.NullTransitionException;
 import com.github.pnavais.machine.api.exception.ValidationException;
 import com.github.pnavais.machine.api.message.Message;
+import com.github.pnavais.machine.api.transition.TransitionGraph;
 import com.github.pnavais.machine.api.transition.TransitionIndex;
 import com.github.pnavais.machine.api.validator.TransitionValidator;
 import com.github.pnavais.machine.api.validator.ValidationResult;
@@ -31,11 +34,17 @@ import com.github.pnavais.machine.model.StateTransition;
 import com.github.pnavais.machine.model.StringMessage;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -203,6 +212,117 @@ public class StateTransitionMapTest extends AbstractStateMachineTest {
 
     }
 
+    @Test
+    public void testStateTransitionMapIncomingTransitions() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        transitionMap.add(new StateTransition("A", StringMessage.from("1"), "D"));
+        transitionMap.add(new StateTransition("A", StringMessage.from("2"), "D"));
+        transitionMap.add(new StateTransition("B", StringMessage.from("3"), "D"));
+        transitionMap.add(new StateTransition("C", StringMessage.from("4"), "B"));
+
+        assertThat("Error retrieving incoming transitions", transitionMap.getIncomingTransitions(State.named("D")).size(), is(3));
+        assertThat("Error retrieving incoming transitions", transitionMap.getIncomingTransitions(State.named("A")).size(), is(0));
+
+        // Redirect a transition and remove another one
+        transitionMap.add(new StateTransition("A", StringMessage.from("1"), "C"));
+        transitionMap.remove(new StateTransition("B", StringMessage.from("3"), "D"));
+        assertThat("Error retrieving incoming transitions", transitionMap.getIncomingTransitions(State.named("D")),
+                contains(new StateTransition("A", StringMessage.from("2"), "D")));
+        assertThat("Error retrieving incoming transitions", transitionMap.getIncomingTransitions(State.named("C")),
+                contains(new StateTransition("A", StringMessage.from("1"), "C")));
+
+        // Remove a predecessor
+        transitionMap.remove("A");
+        assertThat("Error retrieving incoming transitions", transitionMap.getIncomingTransitions(State.named("D")).size(), is(0));
+        assertThat("Error retrieving transitions", transitionMap.prune(), contains(State.named("D")));
+        assertThrows(NullStateException.class, () -> transitionMap.getIncomingTransitions(State.named("A")), "Exception mismatch");
+    }
+
+    @Test
+    public void testStateTransitionMapVersion() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        long version = transitionMap.getVersion();
+        transitionMap.add(new StateTransition("A", StringMessage.from("1"), "B"));
+        assertThat("Error updating version", transitionMap.getVersion() > version, is(true));
+
+        version = transitionMap.getVersion();
+        transitionMap.getNext(State.named("A"), StringMessage.from("1"));
+        transitionMap.prune();
+        assertThat("Error updating version", transitionMap.getVersion(), is(version));
+
+        transitionMap.remove(new StateTransition("A", StringMessage.from("1"), "B"));
+        assertThat("Error updating version", transitionMap.getVersion() > version, is(true));
+    }
+
+    @Test
+    public void testStateTransitionMapVisitor() {
+        StateTransitionMap transitionMap = createStateTransitionMap();
+        transitionMap.add(new StateTransition("A", StringMessage.from("2"), "C"));
+
+        List<StateTransition> visited = new ArrayList<>();
+        transitionMap.forEachTransition((origin, message, target) -> visited.add(new StateTransition(origin, message, target)));
+        assertThat("Visited transitions mismatch", visited, is(new ArrayList<>(transitionMap.getAllTransitions())));
+
+        visited.clear();
+        transitionMap.forEachTransition("A", (origin, message, target) -> visited.add(new StateTransition(origin, message, target)));
+        assertThat("Visited transitions mismatch", visited, is(new ArrayList<>(transitionMap.getTransitions("A"))));
+        assertThrows(NullStateException.class, () -> transitionMap.forEachTransition("Z", (origin, message, target) -> {}), "Exception mismatch");
+
+        StateMachine machine = new StateMachine(transitionMap);
+        List<State> siblings = new ArrayList<>();
+        machine.forEachSibling("A", siblings::add);
+        assertThat("Siblings mismatch", siblings, contains(State.named("B"), State.named("C")));
+        assertThat("Siblings mismatch", machine.getSiblings("A"), is(siblings));
+    }
+
+    @Test
+    public void testStateTransitionMapStreams() {
+        StateTransitionMap transitionMap = new StateTransitionMap();
+        IntStream.range(0, 1000).forEach(i -> transitionMap.add(new StateTransition("S" + (i % 97), StringMessage.from("m" + (i % 13)), "S" + ((i * 7) % 101))));
+
+        assertThat("States mismatch", transitionMap.states().parallel().collect(Collectors.toList()), is(new ArrayList<>(transitionMap.getTransitionsAsMap().keySet())));
+        assertThat("Transitions mismatch", transitionMap.transitions().parallel().collect(Collectors.toList()), is(new ArrayList<>(transitionMap.getAllTransitions())));
+
+        Spliterator<StateTransition> spliterator = transitionMap.snapshot().transitionSpliterator(StateTransition::new);
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE), "Characteristics mismatch");
+        long size = spliterator.estimateSize();
+        Spliterator<StateTransition> prefix = spliterator.trySplit();
+        assertNotNull(prefix, "Spliterator not split");
+        assertThat("Split size mismatch", prefix.estimateSize() + spliterator.estimateSize(), is(size));
+        assertTrue(Math.abs(prefix.estimateSize() - spliterator.estimateSize()) < size / 10, "Unbalanced split");
+    }
+
+    @Test
+    public void testStateTransitionMapSnapshot() {
+        StateTransitionMap transitionMap = createStateTransitionMap();
+        transitionMap.add(new StateTransition("A", StringMessage.from("2"), "C"));
+        transitionMap.add(new StateTransition("C", StringMessage.from("1"), "A"));
+        TransitionGraph<State, Message> graph = transitionMap.snapshot();
+
+        assertThat("Node count mismatch", graph.getNodeCount(), is(3));
+        assertThat("Transition count mismatch", graph.getTransitionCount(), is(4));
+        assertThat("Message count mismatch", graph.getMessageCount(), is(2));
+        assertThat("Version mismatch", graph.getVersion(), is(transitionMap.getVersion()));
+        int a = graph.indexOf("A");
+        int c = graph.indexOf("C");
+        assertThat("Node mismatch", graph.getName(a), is("A"));
+        assertThat("Node mismatch", graph.indexOf("Z"), is(-1));
+        assertThat("Degree mismatch", graph.getDegree(a), is(2));
+        assertArrayEquals(new int[]{0, 2, 3, 4}, graph.getOffsets(), "Offsets mismatch");
+        assertThat("Target mismatch", graph.getName(graph.getTarget(graph.getOffset(a) + 1)), is("C"));
+        assertThat("Message mismatch", graph.getMessage(graph.getMessageId(graph.getOffset(c))), is(StringMessage.from("1")));
+        assertThat("Next mismatch", graph.getNext(a, graph.getMessages().indexOf(StringMessage.from("2"))), is(c));
+
+        // The snapshot is not affected by later changes
+        transitionMap.remove(new StateTransition("A", StringMessage.from("1"), "B"));
+        assertThat("Transition count mismatch", graph.getTransitionCount(), is(4));
+
+        TransitionGraph<State, Message> transposed = graph.transpose();
+        assertThat("Transition count mismatch", transposed.getTransitionCount(), is(4));
+        assertThat("Degree mismatch", transposed.getDegree(c), is(2));
+        assertArrayEquals(new int[]{2, 0, 0, 1}, transposed.getTargets(), "Origins mismatch");
+    }
+
     @Test
     public void testStateTransitionMapRemovalByUnavailableTransition() {
         StateTransitionMap transitionMap = new StateTransitionMap();
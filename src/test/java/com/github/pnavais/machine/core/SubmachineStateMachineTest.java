@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.SubmachineCatalog;
+import com.github.pnavais.machine.SubmachineStateMachine;
+import com.github.pnavais.machine.api.exception.NullStateException;
+import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StringMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests related to {@link SubmachineStateMachine}
+ */
+public class SubmachineStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testSubmachineInvocation() {
+        SubmachineCatalog catalog = createCatalog();
+        SubmachineStateMachine cursor = new SubmachineStateMachine(catalog, "order");
+        cursor.init();
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("NEW"));
+        assertThat("Active submachine mismatch", cursor.getActiveSubmachine(), is("order"));
+
+        cursor.send("submit");
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("REVIEW"));
+        assertThat("Active submachine mismatch", cursor.getActiveSubmachine(), is("approval"));
+        assertThat("Call stack mismatch", names(cursor.getCallStack()), contains("CHECK"));
+
+        // Returning from approval enters payment
+        cursor.send("approve");
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("CHARGE"));
+        assertThat("Active submachine mismatch", cursor.getActiveSubmachine(), is("payment"));
+        assertThat("Call stack mismatch", names(cursor.getCallStack()), contains("PAY"));
+
+        assertThat("Next state mismatch", cursor.getNext(StringMessage.from("charged")).map(State::getName).orElse(null), is("SHIPPED"));
+        assertThat("Depth mismatch", cursor.getDepth(), is(0));
+
+        // A second cursor shares the definitions
+        SubmachineStateMachine other = new SubmachineStateMachine(catalog, "order");
+        other.init();
+        other.send("submit").send("reject");
+        assertThat("Current state mismatch", other.getCurrent().getName(), is("CANCELLED"));
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("SHIPPED"));
+        assertThat("Definitions should not be modified", catalog.get("approval").map(s -> s.getCurrent().getName()).orElse(null), is("REVIEW"));
+    }
+
+    @Test
+    public void testRecursiveSubmachines() {
+        SubmachineCatalog catalog = new SubmachineCatalog()
+                .register("nested", StateMachine.newBuilder()
+                        .from("A").to(State.from("B").property(SubmachineCatalog.SUBMACHINE_PROPERTY, "nested").build()).on("down")
+                        .from("A").to(State.from("END").isFinal(true).build()).on("up")
+                        .from("B").to(State.from("F").isFinal(true).build()).on("END")
+                        .from("B").to("F").on("F")
+                        .build());
+
+        SubmachineStateMachine cursor = new SubmachineStateMachine(catalog, "nested");
+        cursor.init();
+        cursor.send("down").send("down").send("down");
+        assertThat("Depth mismatch", cursor.getDepth(), is(3));
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("A"));
+
+        // Final states cascade back to the root
+        cursor.send("up");
+        assertThat("Depth mismatch", cursor.getDepth(), is(0));
+        assertThat("Current state mismatch", cursor.getCurrent().getName(), is("F"));
+
+        SubmachineStateMachine bounded = new SubmachineStateMachine(catalog, "nested", 2);
+        bounded.init();
+        bounded.send("down").send("down");
+        assertThrows(IllegalStateException.class, () -> bounded.send("down"), "Exception mismatch");
+    }
+
+    @Test
+    public void testMissingSubmachines() {
+        SubmachineCatalog catalog = createCatalog()
+                .register("broken", StateMachine.newBuilder()
+                        .from("A").to(State.from("B").property(SubmachineCatalog.SUBMACHINE_PROPERTY, "ghost").build()).on("go")
+                        .build());
+        assertThat("Catalog size mismatch", catalog.size(), is(4));
+        assertThat("Missing submachines mismatch", catalog.getMissingSubmachines(), contains("ghost"));
+
+        SubmachineStateMachine cursor = new SubmachineStateMachine(catalog, "broken");
+        cursor.init();
+        assertThrows(NullStateException.class, () -> cursor.send("go"), "Exception mismatch");
+        assertThrows(NullStateException.class, () -> new SubmachineStateMachine(catalog, "ghost"), "Exception mismatch");
+    }
+
+    /**
+     * Creates a catalog with an order flow invoking
+     * the approval and payment flows.
+     *
+     * @return the catalog
+     */
+    private SubmachineCatalog createCatalog() {
+        return new SubmachineCatalog()
+                .register("order", StateMachine.newBuilder()
+                        .from("NEW").to(submachineState("CHECK", "approval")).on("submit")
+                        .from("CHECK").to(submachineState("PAY", "payment")).on("APPROVED")
+                        .from("CHECK").to(State.from("CANCELLED").isFinal(true).build()).on("REJECTED")
+                        .from("PAY").to(State.from("SHIPPED").isFinal(true).build()).on("DONE")
+                        .build())
+                .register("approval", StateMachine.newBuilder()
+                        .from("REVIEW").to(State.from("APPROVED").isFinal(true).build()).on("approve")
+                        .from("REVIEW").to(State.from("REJECTED").isFinal(true).build()).on("reject")
+                        .build())
+                .register("payment", StateMachine.newBuilder()
+                        .from("CHARGE").to(State.from("DONE").isFinal(true).build()).on("charged")
+                        .build());
+    }
+
+    /**
+     * Creates a state invoking the given submachine
+     *
+     * @param name the name of the state
+     * @param submachine the name of the submachine
+     * @return the state
+     */
+    private State submachineState(String name, String submachine) {
+        return State.from(name).property(SubmachineCatalog.SUBMACHINE_PROPERTY, submachine).build();
+    }
+
+    /**
+     * Retrieves the names of the given states
+     *
+     * @param states the states
+     * @return the names of the states
+     */
+    private List<String> names(List<State> states) {
+        return states.stream().map(State::getName).collect(Collectors.toList());
+    }
+}
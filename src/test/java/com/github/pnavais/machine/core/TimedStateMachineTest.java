@@ -0,0 +1,130 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.StateMachine;
+import com.github.pnavais.machine.TimedStateMachine;
+import com.github.pnavais.machine.impl.TimerService;
+import com.github.pnavais.machine.impl.VirtualClock;
+import com.github.pnavais.machine.model.State;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests related to {@link TimedStateMachine}
+ */
+public class TimedStateMachineTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testTimeoutTransition() {
+        VirtualClock clock = new VirtualClock(Instant.EPOCH);
+        TimerService timerService = new TimerService(clock, TimerService.DEFAULT_TICK);
+        TimedStateMachine stateMachine = createStateMachine(timerService);
+        stateMachine.init();
+        assertTrue(stateMachine.isTimeoutPending(), "Timeout should be pending");
+
+        clock.advance(Duration.ofSeconds(29));
+        assertThat("Timers run mismatch", timerService.advance(), is(0));
+        assertThat("Current state mismatch", stateMachine.getCurrent().getName(), is("WAITING"));
+
+        clock.advance(Duration.ofSeconds(1));
+        assertThat("Timers run mismatch", timerService.advance(), is(1));
+        assertThat("Current state mismatch", stateMachine.getCurrent().getName(), is("EXPIRED"));
+        assertFalse(stateMachine.isTimeoutPending(), "No timeout should be pending");
+    }
+
+    @Test
+    public void testTimeoutCancellation() {
+        VirtualClock clock = new VirtualClock(Instant.EPOCH);
+        TimerService timerService = new TimerService(clock, TimerService.DEFAULT_TICK);
+        TimedStateMachine stateMachine = createStateMachine(timerService);
+        stateMachine.init();
+
+        // Leaving the state cancels the timer
+        clock.advance(Duration.ofSeconds(20));
+        stateMachine.send("answer");
+        assertThat("Current state mismatch", stateMachine.getCurrent().getName(), is("ANSWERED"));
+        assertThat("Pending timers mismatch", timerService.getPendingTimers(), is(0));
+        clock.advance(Duration.ofMinutes(5));
+        assertThat("Timers run mismatch", timerService.advance(), is(0));
+
+        // Re-entering the state restarts the timer with a custom message
+        stateMachine.send("retry");
+        clock.advance(Duration.ofSeconds(20));
+        stateMachine.send("ping");
+        assertThat("Current state mismatch", stateMachine.getCurrent().getName(), is("WAITING"));
+        clock.advance(Duration.ofSeconds(20));
+        assertThat("Timers run mismatch", timerService.advance(), is(0));
+        clock.advance(Duration.ofSeconds(10));
+        timerService.advance();
+        assertThat("Current state mismatch", stateMachine.getCurrent().getName(), is("EXPIRED"));
+
+        stateMachine.setCurrent("ANSWERED");
+        stateMachine.send("retry");
+        stateMachine.cancelTimeout();
+        assertThat("Pending timers mismatch", timerService.getPendingTimers(), is(0));
+    }
+
+    @Test
+    public void testSharedTimerService() {
+        VirtualClock clock = new VirtualClock(Instant.EPOCH);
+        TimerService timerService = new TimerService(clock, Duration.ofMillis(100));
+        TimedStateMachine[] machines = IntStream.range(0, 10_000).mapToObj(i -> createStateMachine(timerService)).toArray(TimedStateMachine[]::new);
+        for (int i = 0; i < machines.length; i++) {
+            machines[i].init();
+            if (i % 2 == 0) {
+                machines[i].send("answer");
+            }
+            clock.advance(Duration.ofMillis(1));
+        }
+        assertThat("Pending timers mismatch", timerService.getPendingTimers(), is(machines.length / 2));
+
+        clock.advance(Duration.ofSeconds(30));
+        assertThat("Timers run mismatch", timerService.advance(), is(machines.length / 2));
+        for (int i = 0; i < machines.length; i++) {
+            assertThat("Current state mismatch", machines[i].getCurrent().getName(), is((i % 2 == 0) ? "ANSWERED" : "EXPIRED"));
+        }
+    }
+
+    /**
+     * Creates a timed state machine waiting 30 seconds for an answer
+     *
+     * @param timerService the timer service
+     * @return the state machine
+     */
+    private TimedStateMachine createStateMachine(TimerService timerService) {
+        State waiting = State.from("WAITING")
+                .property(TimedStateMachine.TIMEOUT_PROPERTY, "PT30S")
+                .property(TimedStateMachine.TIMEOUT_MESSAGE_PROPERTY, "expire")
+                .build();
+        StateMachine definition = StateMachine.newBuilder()
+                .from(waiting).to("ANSWERED").on("answer")
+                .from(waiting).to(waiting).on("ping")
+                .from(waiting).to(State.from("EXPIRED").isFinal(true).build()).on("expire")
+                .from("ANSWERED").to(waiting).on("retry")
+                .build();
+        return new TimedStateMachine(definition.getTransitionsIndex(), timerService);
+    }
+}
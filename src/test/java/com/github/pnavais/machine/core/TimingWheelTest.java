@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Pablo Navais
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.github.pnavais.machine.core;
+
+import com.github.pnavais.machine.AbstractStateMachineTest;
+import com.github.pnavais.machine.impl.TimingWheel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Unit tests related to {@link TimingWheel}
+ */
+public class TimingWheelTest extends AbstractStateMachineTest {
+
+    @Test
+    public void testTimerExpiration() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        wheel.schedule(5, "A");
+        long b = wheel.schedule(70, "B");
+        wheel.schedule(5000, "C");
+        wheel.schedule(300_000, "D");
+        wheel.schedule(3, "E");
+        assertThat("Size mismatch", wheel.size(), is(5));
+
+        List<String> expired = new ArrayList<>();
+        wheel.advance(4, expired::add);
+        assertThat("Expired timers mismatch", expired, contains("E"));
+        assertTrue(wheel.cancel(b), "Timer should be cancelled");
+        assertFalse(wheel.cancel(b), "Timer already cancelled");
+
+        wheel.advance(4999, expired::add);
+        assertThat("Expired timers mismatch", expired, contains("E", "A"));
+        wheel.advance(5000, expired::add);
+        assertThat("Expired timers mismatch", expired, contains("E", "A", "C"));
+        wheel.advance(299_999, expired::add);
+        assertThat("Expired timers mismatch", expired.size(), is(3));
+        wheel.advance(300_000, expired::add);
+        assertThat("Expired timers mismatch", expired, contains("E", "A", "C", "D"));
+        assertThat("Size mismatch", wheel.size(), is(0));
+
+        // Deadlines in the past expire on the next tick
+        wheel.schedule(10, "F");
+        wheel.advance(300_001, expired::add);
+        assertThat("Expired timers mismatch", expired, contains("E", "A", "C", "D", "F"));
+    }
+
+    @Test
+    public void testFarFutureTimers() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1000);
+        long far = 1L << 40;
+        wheel.schedule(far, far);
+        List<Long> expired = new ArrayList<>();
+        wheel.advance(far - 1, expired::add);
+        assertThat("Timer expired too early", expired.isEmpty(), is(true));
+        wheel.advance(far, expired::add);
+        assertThat("Expired timers mismatch", expired, contains(far));
+        assertThat("Tick mismatch", wheel.getTick(), is(far + 1));
+    }
+
+    @Test
+    public void testSparseTimersAcrossLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(7);
+        List<Long> deadlines = new ArrayList<>();
+        for (int level = 1; level <= 7; level++) {
+            long span = 1L << (6 * level);
+            deadlines.addAll(Arrays.asList(span - 1, span, span + 1, 3 * span + 5));
+        }
+        deadlines.forEach(deadline -> wheel.schedule(deadline, deadline));
+        deadlines.sort(null);
+
+        List<Long> expired = new ArrayList<>();
+        for (long deadline : deadlines) {
+            wheel.advance(deadline - 1, expired::add);
+            assertThat("Timer expired too early", expired.contains(deadline), is(false));
+            wheel.advance(deadline, expired::add);
+            assertThat("Timer not expired", expired.get(expired.size() - 1), is(deadline));
+        }
+        assertThat("Expired timers mismatch", expired, is(deadlines));
+        assertThat("Size mismatch", wheel.size(), is(0));
+    }
+
+    @Test
+    public void testMillionsOfTimers() {
+        int count = 2_000_000;
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        SplittableRandom random = new SplittableRandom(42);
+        long[] deadlines = new long[count];
+        long[] handles = new long[count];
+        for (int i = 0; i < count; i++) {
+            deadlines[i] = random.nextLong(1, 1_000_000);
+            handles[i] = wheel.schedule(deadlines[i], i);
+        }
+        // Cancel every other timer
+        for (int i = 0; i < count; i += 2) {
+            assertTrue(wheel.cancel(handles[i]), "Timer should be cancelled");
+        }
+        assertThat("Size mismatch", wheel.size(), is(count / 2));
+
+        int[] fired = {0};
+        boolean[] late = {false};
+        long[] now = {0};
+        for (long tick = 50_000; tick <= 1_000_000; tick += 50_000) {
+            now[0] = tick;
+            wheel.advance(tick, i -> {
+                late[0] |= (i % 2 == 0) || (deadlines[i] > now[0]) || (deadlines[i] <= now[0] - 50_000);
+                fired[0]++;
+            });
+        }
+        assertThat("Timers expired at the wrong time", late[0], is(false));
+        assertThat("Expired timers mismatch", fired[0], is(count / 2));
+        assertThat("Size mismatch", wheel.size(), is(0));
+    }
+}
@@ -18,15 +18,21 @@ package com.github.pnavais.machine.exporter;
 
 import com.github.pnavais.machine.StateMachine;
 import com.github.pnavais.machine.api.exception.FileExportException;
+import com.github.pnavais.machine.api.exception.NullStateException;
 import com.github.pnavais.machine.api.message.Messages;
 import com.github.pnavais.machine.exporter.util.ColorTranslator;
+import com.github.pnavais.machine.exporter.util.HeatScale;
+import com.github.pnavais.machine.impl.TransitionCounter;
 import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
 import org.junit.jupiter.api.Test;
 
 import java.awt.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -252,6 +258,76 @@ public class DOTExporterTest extends AbstractExporterTest {
         }
     }
 
+    /**
+     * Exports the neighborhood of the current state
+     * and checks the collapsed transitions.
+     */
+    @Test
+    public void testStateMachineNeighborhoodExport() {
+        String expected = "digraph G {" + NL +
+                TB + "rankdir=\"LR\";" + NL +
+                TB + "C -> D [label=\"3\"];" + NL +
+                TB + "B -> C [label=\"2\"];" + NL +
+                TB + "\"D \u2026\" [shape=\"plaintext\", label=\"\u2026 (1)\"];" + NL +
+                TB + "D -> \"D \u2026\" [style=\"dashed\"];" + NL +
+                TB + "\"\u2026 B\" [shape=\"plaintext\", label=\"\u2026 (1)\"];" + NL +
+                TB + "\"\u2026 B\" -> B [style=\"dashed\"];" + NL +
+                "}";
+
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to("B").on("1")
+                .from("B").to("C").on("2")
+                .from("C").to("D").on("3")
+                .from("D").to("E").on("4").build();
+        machine.setCurrent("C");
+
+        String exported = DOTExporter.builder().build().exportNeighborhood(machine, 1);
+        assertNotNull(exported, "Error retrieving exported state machine contents");
+        assertThat("Error comparing exported output", exported, is(expected));
+    }
+
+    /**
+     * Exports the neighborhood of a set of states
+     * and checks the output.
+     */
+    @Test
+    public void testStateMachineNeighborhoodOfStatesExport() {
+        String expected = "digraph G {" + NL +
+                TB + "rankdir=\"LR\";" + NL +
+                TB + "E [style=\"filled\", fillcolor=\""+DOTExporter.DEFAULT_FINAL_COLOR+"\", final=\"true\"];" + NL +
+                TB + "\"A \u2026\" [shape=\"plaintext\", label=\"\u2026 (2)\"];" + NL +
+                TB + "A -> \"A \u2026\" [style=\"dashed\"];" + NL +
+                TB + "\"\u2026 E\" [shape=\"plaintext\", label=\"\u2026 (1)\"];" + NL +
+                TB + "\"\u2026 E\" -> E [style=\"dashed\"];" + NL +
+                "}";
+
+        String expectedWithB = "digraph G {" + NL +
+                TB + "rankdir=\"LR\";" + NL +
+                TB + "E [style=\"filled\", fillcolor=\""+DOTExporter.DEFAULT_FINAL_COLOR+"\", final=\"true\"];" + NL +
+                TB + "A -> B [label=\"1\"];" + NL +
+                TB + "\"A \u2026\" [shape=\"plaintext\", label=\"\u2026 (1)\"];" + NL +
+                TB + "A -> \"A \u2026\" [style=\"dashed\"];" + NL +
+                TB + "\"\u2026 E\" [shape=\"plaintext\", label=\"\u2026 (1)\"];" + NL +
+                TB + "\"\u2026 E\" -> E [style=\"dashed\"];" + NL +
+                "}";
+
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to("B").on("1")
+                .from("A").to("C").on("2")
+                .from("C").to("D").on("3")
+                .from("D").to(State.from("E").isFinal(true).build()).on("4").build();
+
+        DOTExporter exporter = DOTExporter.builder().build();
+        String exported = exporter.exportNeighborhood(machine, Arrays.asList(State.named("A"), State.named("E")), 0);
+        assertThat("Error comparing exported output", exported, is(expected));
+
+        exported = exporter.exportNeighborhood(machine, Arrays.asList(State.named("A"), State.named("B"), State.named("E")), 0);
+        assertThat("Error comparing exported output", exported, is(expectedWithB));
+
+        assertThrows(NullStateException.class, () -> exporter.exportNeighborhood(machine, Collections.singletonList(State.named("Z")), 1),
+                "Exception mismatch");
+    }
+
     @Test
     public void testStateMachineWithWhiteSpaces() {
         String expected = "digraph G {" + NL +
@@ -267,4 +343,90 @@ public class DOTExporterTest extends AbstractExporterTest {
 
     }
 
+    /**
+     * Exports a state machine several times in incremental
+     * mode and checks the output matches the full export
+     * after changing the current state and the transitions.
+     */
+    @Test
+    public void testIncrementalStateMachineExport() {
+        StateMachine machine = StateMachine.newBuilder()
+                .from(State.from("A").property("shape", "box").build()).to("B").on("1")
+                .from("B").to(State.from("C").isFinal(true).build()).on("2").build();
+        machine.init();
+
+        DOTExporter fullExporter = DOTExporter.builder().showCurrent(true).build();
+        DOTExporter incrementalExporter = DOTExporter.builder().showCurrent(true).incremental(true).build();
+        assertThat("Error comparing exported output", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+        assertThat("Error comparing re-exported output", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        machine.setCurrent("B");
+        assertThat("Error comparing exported output after changing current state", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        machine.add(new StateTransition("B", "3", State.from("D").property("color", "red").build()));
+        machine.remove(new StateTransition("A", "1", "B"));
+        assertThat("Error comparing exported output after changing transitions", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        incrementalExporter.setUseHSB(true);
+        fullExporter.setUseHSB(true);
+        assertThat("Error comparing exported output after changing colors", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+        assertThat("Error comparing exported neighborhood", incrementalExporter.exportNeighborhood(machine, 1), is(fullExporter.exportNeighborhood(machine, 1)));
+    }
+
+    /**
+     * Exports a state machine in incremental mode and checks
+     * the output matches the full export after modifying states
+     * in place (without changing the version of the index).
+     */
+    @Test
+    public void testIncrementalExportAfterStateChange() {
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to("B").on("1")
+                .from("B").to("C").on("2").build();
+
+        DOTExporter fullExporter = DOTExporter.builder().build();
+        DOTExporter incrementalExporter = DOTExporter.builder().incremental(true).build();
+        assertThat("Error comparing exported output", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        long version = machine.getTransitionsIndex().getVersion();
+        machine.find("C").ifPresent(s -> s.setFinal(true));
+        machine.find("B").ifPresent(s -> s.addProperty("color", "blue"));
+        assertThat("Version should not change", machine.getTransitionsIndex().getVersion(), is(version));
+        String exported = incrementalExporter.export(machine);
+        assertThat("Error comparing exported output after changing states", exported, is(fullExporter.export(machine)));
+        assertThat("Property not exported", exported.contains("blue"), is(true));
+    }
+
+    /**
+     * Exports a state machine annotated with the traffic
+     * statistics and checks the output.
+     */
+    @Test
+    public void testStateMachineTrafficExport() {
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to("B").on("1")
+                .from("B").to("C").on("2")
+                .from("B").to("A").on("3").build();
+        TransitionCounter counter = new TransitionCounter();
+        machine.setTransitionCounter(counter);
+        machine.init();
+        machine.send("1").send("3").send("1").send("2");
+
+        String hot = ColorTranslator.toRGBColor(HeatScale.toColor(HeatScale.BUCKETS));
+        String warm = ColorTranslator.toRGBColor(HeatScale.toColor(HeatScale.BUCKETS - 1));
+        String expected = "digraph G {" + NL +
+                TB + "rankdir=\"LR\";" + NL +
+                TB + "A [style=\"filled\", fillcolor=\"" + warm + "\", traffic=\"1\"];" + NL +
+                TB + "B [style=\"filled\", fillcolor=\"" + hot + "\", traffic=\"2\"];" + NL +
+                TB + "C [style=\"filled\", fillcolor=\"" + warm + "\", traffic=\"1\"];" + NL +
+                TB + "A -> B [label=\"1\", penwidth=\"6\", color=\"" + hot + "\", traffic=\"2\"];" + NL +
+                TB + "B -> C [label=\"2\", penwidth=\"5\", color=\"" + warm + "\", traffic=\"1\"];" + NL +
+                TB + "B -> A [label=\"3\", penwidth=\"5\", color=\"" + warm + "\", traffic=\"1\"];" + NL +
+                "}";
+
+        String exported = DOTExporter.builder().statistics(counter.snapshot()).build().export(machine);
+        assertNotNull(exported, "Error retrieving exported state machine contents");
+        assertThat("Error comparing exported output", exported, is(expected));
+    }
+
 }
@@ -19,7 +19,9 @@ package com.github.pnavais.machine.exporter;
 import com.github.pnavais.machine.StateMachine;
 import com.github.pnavais.machine.api.exception.FileExportException;
 import com.github.pnavais.machine.api.message.Messages;
+import com.github.pnavais.machine.impl.TransitionCounter;
 import com.github.pnavais.machine.model.State;
+import com.github.pnavais.machine.model.StateTransition;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -317,4 +319,76 @@ public class YAMLExporterTest extends AbstractExporterTest {
         }
     }
 
+    /**
+     * Exports a state machine several times in incremental
+     * mode and checks the output matches the full export
+     * after changing the current state and the transitions.
+     */
+    @Test
+    public void testIncrementalStateMachineExport() {
+        StateMachine machine = StateMachine.newBuilder()
+                .from(State.from("A").property("shape", "box").build()).to("B").on("1")
+                .from("B").to(State.from("C").isFinal(true).build()).on("2").build();
+        machine.init();
+
+        YAMLExporter fullExporter = YAMLExporter.builder().showCurrent(true).build();
+        YAMLExporter incrementalExporter = YAMLExporter.builder().showCurrent(true).incremental(true).build();
+        assertThat("Error comparing exported output", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        machine.setCurrent("C");
+        assertThat("Error comparing exported output after changing current state", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        machine.add(new StateTransition("B", "3", "A"));
+        assertThat("Error comparing exported output after changing transitions", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+
+        incrementalExporter.setMarginSize(YAMLExporter.MarginSize.TWO_SP);
+        fullExporter.setMarginSize(YAMLExporter.MarginSize.TWO_SP);
+        assertThat("Error comparing exported output after changing margins", incrementalExporter.export(machine), is(fullExporter.export(machine)));
+    }
+
+    /**
+     * Exports a state machine annotated with the traffic
+     * statistics and checks the output.
+     */
+    @Test
+    public void testStateMachineTrafficExport() {
+        String expected = "states:" + NL +
+                "  - state:" + NL +
+                "      name: \"A\"" + NL +
+                "  - state:" + NL +
+                "      name: \"B\"" + NL +
+                "      properties:" + NL +
+                "        shape: \"box\"" + NL +
+                "        traffic: \"1\"" + NL +
+                "  - state:" + NL +
+                "      name: \"C\"" + NL +
+                "transitions:" + NL +
+                "  - transition:" + NL +
+                "      source: \"A\"" + NL +
+                "      target: \"B\"" + NL +
+                "      message: \"1\"" + NL +
+                "      properties:" + NL +
+                "        traffic: \"1\"" + NL +
+                "  - transition:" + NL +
+                "      source: \"B\"" + NL +
+                "      target: \"C\"" + NL +
+                "      message: \"2\"";
+
+        StateMachine machine = StateMachine.newBuilder()
+                .from("A").to(State.from("B").property("shape", "box").build()).on("1")
+                .from("B").to("C").on("2").build();
+        TransitionCounter counter = new TransitionCounter();
+        machine.setTransitionCounter(counter);
+        machine.init();
+        machine.send("1");
+
+        String exported = YAMLExporter.builder()
+                .marginSize(YAMLExporter.MarginSize.TWO_SP)
+                .statistics(counter.snapshot())
+                .build().export(machine);
+
+        assertNotNull(exported, "Error retrieving exported state machine contents");
+        assertThat("Error comparing exported output", exported, is(expected));
+    }
+
 }